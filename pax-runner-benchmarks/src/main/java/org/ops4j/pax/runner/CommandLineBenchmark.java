@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ops4j.io.FileUtils;
+import org.ops4j.pax.runner.benchmarks.Bundles;
+
+/**
+ * Benchmarks {@link CommandLineImpl} parsing of an args file with many options and provision specs.
+ *
+ * @since 1.8.6
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class CommandLineBenchmark
+{
+
+    /**
+     * Number of lines in args file.
+     */
+    @Param( { "100", "1000", "10000" } )
+    public int lines;
+
+    private File m_workDir;
+    private String m_argsOption;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        m_workDir = Bundles.createWorkDir();
+        final File argsFile = new File( m_workDir, "runner.args" );
+        final Writer out = new OutputStreamWriter( new FileOutputStream( argsFile ), "UTF-8" );
+        try
+        {
+            out.write( "# generated args file\n" );
+            for( int i = 0; i < lines; i++ )
+            {
+                if( i % 4 == 0 )
+                {
+                    out.write( "--vmOptions=-Dbenchmark.property" + i + "=value" + i + "\n" );
+                }
+                else if( i % 4 == 1 )
+                {
+                    out.write( "--option" + i + "=value" + i + "\n" );
+                }
+                else
+                {
+                    out.write( "mvn:org.example/bundle" + i + "/1.0." + i + "@5\n" );
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        m_argsOption = "--args=" + argsFile.toURI().toURL().toExternalForm();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        FileUtils.delete( m_workDir );
+    }
+
+    @Benchmark
+    public CommandLine parseArgsFile()
+    {
+        return new CommandLineImpl( "--platform=felix", m_argsOption );
+    }
+
+}
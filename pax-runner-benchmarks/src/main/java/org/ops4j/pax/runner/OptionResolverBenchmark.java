@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link OptionResolverImpl#get(String)} against the default runner configuration. As the resolver caches
+ * resolved options, uncached resolutions are measured with a new resolver per invocation.
+ *
+ * @since 1.8.6
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class OptionResolverBenchmark
+{
+
+    private CommandLine m_commandLine;
+    private Configuration m_config;
+    private OptionResolver m_cachedResolver;
+
+    @Setup
+    public void setUp()
+    {
+        m_commandLine = new CommandLineImpl( "--platform=felix", "--dir=benchmark", "--vmo=-Xmx512m" );
+        m_config = new ConfigurationImpl( "classpath:META-INF/runner.properties" );
+        m_cachedResolver = new OptionResolverImpl( m_commandLine, m_config );
+        m_cachedResolver.get( "org.ops4j.pax.runner.platform.workingDirectory" );
+    }
+
+    /**
+     * Option set on command line.
+     */
+    @Benchmark
+    public String commandLineOption()
+    {
+        return new OptionResolverImpl( m_commandLine, m_config ).get( "platform" );
+    }
+
+    /**
+     * Option set on command line via an alias.
+     */
+    @Benchmark
+    public String aliasedOption()
+    {
+        return new OptionResolverImpl( m_commandLine, m_config ).get( "workingDirectory" );
+    }
+
+    /**
+     * Option with a default value containing a placeholder of an aliased option.
+     */
+    @Benchmark
+    public String placeholderOption()
+    {
+        return new OptionResolverImpl( m_commandLine, m_config ).get( "org.ops4j.pax.runner.platform.workingDirectory" );
+    }
+
+    /**
+     * Option not set at all, so all possibilities are looked up.
+     */
+    @Benchmark
+    public String missingOption()
+    {
+        return new OptionResolverImpl( m_commandLine, m_config ).get( "org.ops4j.pax.runner.benchmark.missing" );
+    }
+
+    /**
+     * Option already resolved.
+     */
+    @Benchmark
+    public String cachedOption()
+    {
+        return m_cachedResolver.get( "org.ops4j.pax.runner.platform.workingDirectory" );
+    }
+
+}
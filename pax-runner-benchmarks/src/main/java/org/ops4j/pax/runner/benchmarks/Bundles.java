@@ -0,0 +1,212 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.ops4j.pax.runner.platform.BundleReference;
+import org.ops4j.pax.runner.platform.BundleReferenceBean;
+
+/**
+ * Generates the synthetic bundles and files used by benchmarks.
+ *
+ * @since 1.8.6
+ */
+public class Bundles
+{
+
+    /**
+     * Utility class.
+     */
+    private Bundles()
+    {
+        // utility class
+    }
+
+    /**
+     * Creates an empty temporary directory.
+     *
+     * @return created directory
+     *
+     * @throws IOException if directory cannot be created
+     */
+    public static File createWorkDir()
+        throws IOException
+    {
+        final File workDir = File.createTempFile( "runner-benchmark", "" );
+        workDir.delete();
+        if( !workDir.mkdirs() )
+        {
+            throw new IOException( "Cannot create [" + workDir + "]" );
+        }
+        return workDir;
+    }
+
+    /**
+     * Creates a bundle jar, with a manifest having the symbolic name "bundle.[index]".
+     *
+     * @param dir   directory to create the bundle in
+     * @param index index of bundle
+     *
+     * @return created bundle file
+     *
+     * @throws IOException if bundle cannot be written
+     */
+    public static File createBundle( final File dir, final int index )
+        throws IOException
+    {
+        final File file = new File( dir, "bundle" + index + ".jar" );
+        writeBundle( file, index );
+        return file;
+    }
+
+    /**
+     * Creates a file based maven repository containing bundles with the group id
+     * "org.ops4j.pax.runner.benchmark", artifact ids "bundle[index]" and version "1.0.[index]".
+     *
+     * @param repository repository directory
+     * @param count      number of bundles
+     *
+     * @return mvn urls of created bundles
+     *
+     * @throws IOException if bundles cannot be written
+     */
+    public static List<String> createRepository( final File repository, final int count )
+        throws IOException
+    {
+        final List<String> urls = new ArrayList<String>();
+        for( int i = 0; i < count; i++ )
+        {
+            final String artifact = "bundle" + i;
+            final String version = "1.0." + i;
+            final File dir = new File( repository, "org/ops4j/pax/runner/benchmark/" + artifact + "/" + version );
+            dir.mkdirs();
+            writeBundle( new File( dir, artifact + "-" + version + ".jar" ), i );
+            final Writer pom = new OutputStreamWriter(
+                new FileOutputStream( new File( dir, artifact + "-" + version + ".pom" ) ), "UTF-8"
+            );
+            try
+            {
+                pom.write( "<project>\n" );
+                pom.write( "  <modelVersion>4.0.0</modelVersion>\n" );
+                pom.write( "  <groupId>org.ops4j.pax.runner.benchmark</groupId>\n" );
+                pom.write( "  <artifactId>" + artifact + "</artifactId>\n" );
+                pom.write( "  <version>" + version + "</version>\n" );
+                pom.write( "</project>\n" );
+            }
+            finally
+            {
+                pom.close();
+            }
+            urls.add( "mvn:org.ops4j.pax.runner.benchmark/" + artifact + "/" + version );
+        }
+        return urls;
+    }
+
+    private static void writeBundle( final File file, final int index )
+        throws IOException
+    {
+        final Manifest manifest = new Manifest();
+        final Attributes attributes = manifest.getMainAttributes();
+        attributes.put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+        attributes.putValue( "Bundle-ManifestVersion", "2" );
+        attributes.putValue( "Bundle-SymbolicName", "bundle." + index + ";singleton:=true" );
+        attributes.putValue( "Bundle-Version", "1.0." + index );
+        attributes.putValue( "Export-Package", "org.example.bundle" + index + ";version=\"1.0." + index + "\"" );
+        final JarOutputStream out = new JarOutputStream( new FileOutputStream( file ), manifest );
+        out.close();
+    }
+
+    /**
+     * Creates references to bundles in a directory, without creating the bundle files.
+     *
+     * @param dir   directory containing the bundles
+     * @param count number of bundles
+     *
+     * @return list of bundle references
+     *
+     * @throws IOException if urls cannot be created
+     */
+    public static List<BundleReference> createReferences( final File dir, final int count )
+        throws IOException
+    {
+        final List<BundleReference> references = new ArrayList<BundleReference>();
+        for( int i = 0; i < count; i++ )
+        {
+            references.add(
+                new BundleReferenceBean(
+                    "bundle." + i,
+                    new File( dir, "bundle" + i + ".jar" ).toURI().toURL(),
+                    i % 2 == 0 ? 5 : null,
+                    i % 3 == 0 ? null : Boolean.TRUE,
+                    false
+                )
+            );
+        }
+        return references;
+    }
+
+    /**
+     * Creates a platform definition with a default profile and a profile containing the specified number of bundles.
+     *
+     * @param file  definition file
+     * @param count number of bundles in profile
+     *
+     * @throws IOException if definition cannot be written
+     */
+    public static void createDefinition( final File file, final int count )
+        throws IOException
+    {
+        final Writer out = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        try
+        {
+            out.write( "<platform>\n" );
+            out.write( "  <name>Benchmark</name>\n" );
+            out.write( "  <system>file:system.jar</system>\n" );
+            out.write( "  <packages>org.osgi.framework; version=1.4.0, org.osgi.util.tracker; version=1.3.3</packages>\n" );
+            out.write( "  <profile name=\"minimal\" default=\"true\"/>\n" );
+            out.write( "  <profile name=\"benchmark\" extends=\"minimal\">\n" );
+            for( int i = 0; i < count; i++ )
+            {
+                out.write( "    <bundle>\n" );
+                out.write( "      <name>bundle." + i + "</name>\n" );
+                out.write( "      <url>file:bundles/bundle" + i + ".jar</url>\n" );
+                if( i % 2 == 0 )
+                {
+                    out.write( "      <startLevel>5</startLevel>\n" );
+                }
+                out.write( "    </bundle>\n" );
+            }
+            out.write( "  </profile>\n" );
+            out.write( "</platform>\n" );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+}
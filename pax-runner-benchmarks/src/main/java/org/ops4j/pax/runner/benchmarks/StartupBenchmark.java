@@ -0,0 +1,256 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import org.ops4j.io.FileUtils;
+
+/**
+ * End to end startup benchmark. Generates a synthetic file based maven repository for each number of bundles and
+ * launches the runner for each platform and executor twice, once with an empty working directory and local repository
+ * (cold) and once more reusing them (warm). Every launch runs in a separate jvm ({@link StartupProbe}).
+ * The only repositories used are the synthetic one and the user local repository (as a file repository) so no network
+ * access is done, but the frameworks must be already available in the user local repository.
+ * Results are written as a json array to the output file and to standard output.
+ *
+ * Supported options (all optional):
+ * <pre>
+ * --bundles=100,1000,10000
+ * --platforms=felix,equinox,knopflerfish,concierge
+ * --executors=noop,default
+ * --output=startup-benchmark.json
+ * </pre>
+ *
+ * @since 1.8.6
+ */
+public class StartupBenchmark
+{
+
+    /**
+     * Utility class.
+     */
+    private StartupBenchmark()
+    {
+        // utility class
+    }
+
+    public static void main( final String... args )
+        throws Exception
+    {
+        String bundles = "100,1000,10000";
+        String platforms = "felix,equinox,knopflerfish,concierge";
+        String executors = "noop,default";
+        String output = "startup-benchmark.json";
+        for( String arg : args )
+        {
+            if( arg.startsWith( "--bundles=" ) )
+            {
+                bundles = arg.substring( "--bundles=".length() );
+            }
+            else if( arg.startsWith( "--platforms=" ) )
+            {
+                platforms = arg.substring( "--platforms=".length() );
+            }
+            else if( arg.startsWith( "--executors=" ) )
+            {
+                executors = arg.substring( "--executors=".length() );
+            }
+            else if( arg.startsWith( "--output=" ) )
+            {
+                output = arg.substring( "--output=".length() );
+            }
+            else
+            {
+                throw new IllegalArgumentException( "Unknown option [" + arg + "]" );
+            }
+        }
+
+        final File userRepository = new File( System.getProperty( "user.home" ), ".m2/repository" );
+        final List<String> results = new ArrayList<String>();
+        final File baseDir = Bundles.createWorkDir();
+        try
+        {
+            for( String count : bundles.split( "," ) )
+            {
+                final File repository = new File( baseDir, "repository-" + count );
+                final File argsFile = new File( baseDir, "runner-" + count + ".args" );
+                writeArgs( argsFile, Bundles.createRepository( repository, Integer.parseInt( count.trim() ) ) );
+                for( String platform : platforms.split( "," ) )
+                {
+                    for( String executor : executors.split( "," ) )
+                    {
+                        final File launchDir = new File(
+                            baseDir, platform.trim() + "-" + executor.trim() + "-" + count.trim()
+                        );
+                        final List<String> command = new ArrayList<String>();
+                        command.add( new File( System.getProperty( "java.home" ), "bin/java" ).getAbsolutePath() );
+                        command.add( "-cp" );
+                        command.add( System.getProperty( "java.class.path" ) );
+                        command.add( StartupProbe.class.getName() );
+                        command.add( executor.trim() );
+                        command.add( "--nologo" );
+                        command.add( "--platform=" + platform.trim() );
+                        command.add( "--dir=" + new File( launchDir, "runner" ).getAbsolutePath() );
+                        command.add( "--localRepository=" + new File( launchDir, "m2" ).getAbsolutePath() );
+                        command.add(
+                            "--repositories=" + repository.toURI().toURL().toExternalForm()
+                            + "," + userRepository.toURI().toURL().toExternalForm()
+                        );
+                        command.add( "--args=" + argsFile.toURI().toURL().toExternalForm() );
+                        for( String phase : new String[]{ "cold", "warm" } )
+                        {
+                            results.add(
+                                launch( command, launchDir, platform.trim(), executor.trim(), count.trim(), phase )
+                            );
+                        }
+                        FileUtils.delete( launchDir );
+                    }
+                }
+                FileUtils.delete( repository );
+            }
+        }
+        finally
+        {
+            FileUtils.delete( baseDir );
+        }
+
+        final StringBuilder json = new StringBuilder();
+        json.append( "[\n" );
+        for( int i = 0; i < results.size(); i++ )
+        {
+            json.append( "  " ).append( results.get( i ) ).append( i < results.size() - 1 ? ",\n" : "\n" );
+        }
+        json.append( "]\n" );
+        final Writer out = new OutputStreamWriter( new FileOutputStream( output ), "UTF-8" );
+        try
+        {
+            out.write( json.toString() );
+        }
+        finally
+        {
+            out.close();
+        }
+        System.out.print( json );
+    }
+
+    /**
+     * Launches the runner in a separate jvm and measures it.
+     *
+     * @return json object with the launch measurements
+     */
+    private static String launch( final List<String> command,
+                                  final File launchDir,
+                                  final String platform,
+                                  final String executor,
+                                  final String bundles,
+                                  final String phase )
+        throws IOException, InterruptedException
+    {
+        // file modification times may have a granularity of one second
+        final long since = System.currentTimeMillis() / 1000 * 1000;
+        final long start = System.nanoTime();
+        final Process process = new ProcessBuilder( command ).redirectErrorStream( true ).start();
+        long runMillis = -1;
+        long peakRss = -1;
+        final BufferedReader reader = new BufferedReader( new InputStreamReader( process.getInputStream() ) );
+        try
+        {
+            String line;
+            while( ( line = reader.readLine() ) != null )
+            {
+                if( line.startsWith( StartupProbe.RESULT_PREFIX ) )
+                {
+                    final String[] values = line.substring( StartupProbe.RESULT_PREFIX.length() ).split( " " );
+                    runMillis = Long.parseLong( values[ 0 ] );
+                    peakRss = Long.parseLong( values[ 1 ] );
+                }
+                else
+                {
+                    System.err.println( line );
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        final int exitCode = process.waitFor();
+        final long launchMillis = ( System.nanoTime() - start ) / 1000000;
+        return "{"
+               + "\"platform\": \"" + platform + "\", "
+               + "\"executor\": \"" + executor + "\", "
+               + "\"bundles\": " + bundles + ", "
+               + "\"phase\": \"" + phase + "\", "
+               + "\"launchMillis\": " + launchMillis + ", "
+               + "\"runMillis\": " + runMillis + ", "
+               + "\"bytesWritten\": " + bytesWritten( launchDir, since ) + ", "
+               + "\"peakRssKb\": " + peakRss + ", "
+               + "\"exitCode\": " + exitCode
+               + "}";
+    }
+
+    /**
+     * Sums up the size of files modified since the specified time.
+     *
+     * @return number of bytes
+     */
+    private static long bytesWritten( final File file, final long since )
+    {
+        if( file.isDirectory() )
+        {
+            long bytes = 0;
+            final File[] children = file.listFiles();
+            if( children != null )
+            {
+                for( File child : children )
+                {
+                    bytes += bytesWritten( child, since );
+                }
+            }
+            return bytes;
+        }
+        return file.lastModified() >= since ? file.length() : 0;
+    }
+
+    private static void writeArgs( final File argsFile, final List<String> urls )
+        throws IOException
+    {
+        final Writer out = new OutputStreamWriter( new FileOutputStream( argsFile ), "UTF-8" );
+        try
+        {
+            out.write( "# generated by startup benchmark\n" );
+            for( String url : urls )
+            {
+                out.write( url + "\n" );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+}
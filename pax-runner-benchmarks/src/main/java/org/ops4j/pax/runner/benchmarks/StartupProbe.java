@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import org.ops4j.pax.runner.Run;
+import org.ops4j.pax.runner.platform.DefaultJavaRunner;
+
+/**
+ * Launches the runner in the current jvm and reports the time spent in runner and the peak memory of the jvm, as a
+ * line starting with {@link #RESULT_PREFIX}. Started as a separate process by {@link StartupBenchmark}, so every
+ * launch starts from a fresh jvm.
+ * First argument is the executor ("noop" or "default"), the rest are runner arguments. With the default executor the
+ * framework process is spawned without waiting for it to exit, and is stopped when this jvm exits.
+ *
+ * @since 1.8.6
+ */
+public class StartupProbe
+{
+
+    /**
+     * Prefix of result line.
+     */
+    static final String RESULT_PREFIX = "STARTUP-PROBE ";
+
+    /**
+     * Utility class.
+     */
+    private StartupProbe()
+    {
+        // utility class
+    }
+
+    public static void main( final String... args )
+    {
+        final String executor = args[ 0 ];
+        final String[] runnerArgs = Arrays.copyOfRange( args, 1, args.length );
+        final long start = System.nanoTime();
+        try
+        {
+            if( "noop".equals( executor ) )
+            {
+                Run.main( null, append( runnerArgs, "--executor=noop" ) );
+            }
+            else
+            {
+                Run.main( new DefaultJavaRunner( false ), runnerArgs );
+            }
+        }
+        catch( Throwable t )
+        {
+            t.printStackTrace();
+            System.exit( 1 );
+        }
+        final long runMillis = ( System.nanoTime() - start ) / 1000000;
+        System.out.println( RESULT_PREFIX + runMillis + " " + readPeakRss() );
+        // stops the framework process, if any, via the shutdown hook of java runner
+        System.exit( 0 );
+    }
+
+    /**
+     * Reads the peak resident set size of current process.
+     *
+     * @return peak rss in kilobytes or -1 if it cannot be determined (only linux is supported)
+     */
+    private static long readPeakRss()
+    {
+        final File status = new File( "/proc/self/status" );
+        if( !status.isFile() )
+        {
+            return -1;
+        }
+        BufferedReader reader = null;
+        try
+        {
+            reader = new BufferedReader( new FileReader( status ) );
+            String line;
+            while( ( line = reader.readLine() ) != null )
+            {
+                if( line.startsWith( "VmHWM:" ) )
+                {
+                    return Long.parseLong( line.substring( "VmHWM:".length() ).replace( "kB", "" ).trim() );
+                }
+            }
+            return -1;
+        }
+        catch( IOException e )
+        {
+            return -1;
+        }
+        finally
+        {
+            if( reader != null )
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch( IOException ignore )
+                {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static String[] append( final String[] args, final String arg )
+    {
+        final String[] result = Arrays.copyOf( args, args.length + 1 );
+        result[ args.length ] = arg;
+        return result;
+    }
+
+}
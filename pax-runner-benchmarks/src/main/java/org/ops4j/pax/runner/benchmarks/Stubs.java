@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Creates stubs of collaborators that are required but not exercised by benchmarks (e.g. bundle context).
+ *
+ * @since 1.8.6
+ */
+public class Stubs
+{
+
+    /**
+     * Utility class.
+     */
+    private Stubs()
+    {
+        // utility class
+    }
+
+    /**
+     * Creates a stub of an interface that returns null (or false / 0 for primitives) from all methods.
+     *
+     * @param type interface to be stubbed
+     *
+     * @return stub
+     */
+    public static <T> T stub( final Class<T> type )
+    {
+        return type.cast(
+            Proxy.newProxyInstance(
+                type.getClassLoader(),
+                new Class<?>[]{ type },
+                new InvocationHandler()
+                {
+                    public Object invoke( final Object proxy, final Method method, final Object[] args )
+                    {
+                        if( "toString".equals( method.getName() ) )
+                        {
+                            return "Stub of " + type.getName();
+                        }
+                        final Class<?> returnType = method.getReturnType();
+                        if( returnType == Boolean.TYPE )
+                        {
+                            return Boolean.FALSE;
+                        }
+                        if( returnType == Integer.TYPE )
+                        {
+                            return 0;
+                        }
+                        if( returnType == Long.TYPE )
+                        {
+                            return 0L;
+                        }
+                        return null;
+                    }
+                }
+            )
+        );
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.handler.internal;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.osgi.service.url.AbstractURLStreamHandlerService;
+
+/**
+ * Contention benchmark of {@link URLStreamHandlerProxy}: one proxy shared by all threads, as the proxy registered for
+ * a protocol is shared by all downloads. The throughput with 8 threads should scale with the number of cores compared
+ * to the single threaded one, as long as the proxy does not serialize the calls.
+ *
+ * @since 1.8.6
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class URLStreamHandlerProxyBenchmark
+{
+
+    /**
+     * Cpu work done by the handler service for opening a connection, in jmh tokens.
+     */
+    @Param( { "0", "1000" } )
+    public long work;
+
+    private URLStreamHandlerProxy m_proxy;
+    private URL m_url;
+
+    @Setup
+    public void setUp()
+        throws MalformedURLException
+    {
+        final long work = this.work;
+        m_proxy = new URLStreamHandlerProxy(
+            new AbstractURLStreamHandlerService()
+            {
+                public URLConnection openConnection( final URL url )
+                {
+                    Blackhole.consumeCPU( work );
+                    return null;
+                }
+            }
+        );
+        m_url = new URL( null, "benchmark:org.example/bundle/1.0.0", m_proxy );
+    }
+
+    @Benchmark
+    @Threads( 1 )
+    public URLConnection openConnectionSingleThread()
+        throws Exception
+    {
+        return m_proxy.openConnection( m_url );
+    }
+
+    @Benchmark
+    @Threads( 8 )
+    public URLConnection openConnectionContended()
+        throws Exception
+    {
+        return m_proxy.openConnection( m_url );
+    }
+
+    @Benchmark
+    @Threads( 8 )
+    public URL parseContended()
+        throws MalformedURLException
+    {
+        return new URL( null, "benchmark:org.example/bundle/1.0.0", m_proxy );
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ops4j.io.FileUtils;
+import org.ops4j.pax.runner.benchmarks.Bundles;
+import org.ops4j.pax.runner.benchmarks.Stubs;
+import org.ops4j.pax.runner.platform.PlatformBuilder;
+import org.ops4j.pax.runner.platform.PlatformContext;
+import org.ops4j.pax.runner.platform.concierge.internal.ConciergePlatformBuilder;
+import org.ops4j.pax.runner.platform.equinox.internal.EquinoxPlatformBuilderF380;
+import org.ops4j.pax.runner.platform.felix.internal.FelixPlatformBuilderF160;
+import org.ops4j.pax.runner.platform.knopflerfish.internal.KnopflerfishPlatformBuilderF300;
+import org.ops4j.util.property.PropertiesPropertyResolver;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Benchmarks {@link PlatformBuilder#prepare(PlatformContext)} of each supported framework, that writes the framework
+ * configuration for all provisioned bundles.
+ *
+ * @since 1.8.6
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class PlatformBuilderBenchmark
+{
+
+    /**
+     * Framework to prepare.
+     */
+    @Param( { "felix", "equinox", "knopflerfish", "concierge" } )
+    public String platform;
+    /**
+     * Number of provisioned bundles.
+     */
+    @Param( { "100", "1000", "5000" } )
+    public int bundles;
+
+    private File m_workDir;
+    private PlatformBuilder m_builder;
+    private PlatformContext m_context;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        m_workDir = Bundles.createWorkDir();
+        m_builder = createBuilder( platform, Stubs.stub( BundleContext.class ) );
+        m_context = new PlatformContextImpl();
+        m_context.setConfiguration( new ConfigurationImpl( new PropertiesPropertyResolver( new Properties() ) ) );
+        m_context.setWorkingDirectory( m_workDir );
+        m_context.setFilePathStrategy( new RelativeFilePathStrategy( m_workDir ) );
+        m_context.setBundles( Bundles.createReferences( new File( m_workDir, "bundles" ), bundles ) );
+        m_context.setProperties( new Properties() );
+        m_context.setSystemPackages( "org.osgi.framework; version=1.4.0,org.osgi.util.tracker; version=1.3.3" );
+        m_context.setExecutionEnvironment( "J2SE-1.5" );
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        FileUtils.delete( m_workDir );
+    }
+
+    @Benchmark
+    public void prepare()
+        throws Exception
+    {
+        m_builder.prepare( m_context );
+    }
+
+    private static PlatformBuilder createBuilder( final String platform, final BundleContext bundleContext )
+    {
+        if( "felix".equals( platform ) )
+        {
+            return new FelixPlatformBuilderF160( bundleContext, "4.2.1" );
+        }
+        if( "equinox".equals( platform ) )
+        {
+            return new EquinoxPlatformBuilderF380( bundleContext, "3.8.2" );
+        }
+        if( "knopflerfish".equals( platform ) )
+        {
+            return new KnopflerfishPlatformBuilderF300( bundleContext, "3.5.0" );
+        }
+        if( "concierge".equals( platform ) )
+        {
+            return new ConciergePlatformBuilder( bundleContext, "1.0.0" );
+        }
+        throw new IllegalArgumentException( "Unknown platform [" + platform + "]" );
+    }
+
+}
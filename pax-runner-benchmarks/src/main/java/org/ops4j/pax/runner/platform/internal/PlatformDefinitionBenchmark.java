@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ops4j.io.FileUtils;
+import org.ops4j.io.StreamUtils;
+import org.ops4j.pax.runner.benchmarks.Bundles;
+import org.ops4j.pax.runner.platform.BundleReference;
+
+/**
+ * Benchmarks parsing of a platform definition and looking up its profile bundles.
+ *
+ * @since 1.8.6
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class PlatformDefinitionBenchmark
+{
+
+    /**
+     * Number of bundles in definition profile.
+     */
+    @Param( { "10", "1000", "5000" } )
+    public int bundles;
+
+    private File m_workDir;
+    private byte[] m_definition;
+    private PlatformDefinition m_parsed;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        m_workDir = Bundles.createWorkDir();
+        final File definitionFile = new File( m_workDir, "definition.xml" );
+        Bundles.createDefinition( definitionFile, bundles );
+        final ByteArrayOutputStream definition = new ByteArrayOutputStream();
+        StreamUtils.copyStream( new FileInputStream( definitionFile ), definition, true );
+        m_definition = definition.toByteArray();
+        m_parsed = parse();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        FileUtils.delete( m_workDir );
+    }
+
+    @Benchmark
+    public PlatformDefinition parse()
+        throws Exception
+    {
+        return new PlatformDefinitionImpl( new ByteArrayInputStream( m_definition ), 5 );
+    }
+
+    @Benchmark
+    public List<BundleReference> getPlatformBundles()
+    {
+        return m_parsed.getPlatformBundles( "benchmark" );
+    }
+
+    @Benchmark
+    public List<BundleReference> getDefaultPlatformBundles()
+    {
+        return m_parsed.getPlatformBundles( null );
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ops4j.io.FileUtils;
+import org.ops4j.pax.runner.benchmarks.Bundles;
+import org.ops4j.pax.runner.benchmarks.Stubs;
+import org.ops4j.pax.runner.platform.PlatformBuilder;
+
+/**
+ * Benchmarks {@link PlatformImpl#determineCachingName(File, String)}, done for every downloaded bundle.
+ *
+ * @since 1.8.6
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class PlatformImplBenchmark
+{
+
+    private File m_workDir;
+    private File m_bundle;
+    private File m_notABundle;
+    private PlatformImpl m_platform;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        m_workDir = Bundles.createWorkDir();
+        m_bundle = Bundles.createBundle( m_workDir, 1 );
+        m_notABundle = new File( m_workDir, "plain.jar" );
+        new JarOutputStream( new FileOutputStream( m_notABundle ) ).close();
+        m_platform = new PlatformImpl( Stubs.stub( PlatformBuilder.class ) );
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        FileUtils.delete( m_workDir );
+    }
+
+    @Benchmark
+    public String determineCachingNameOfBundle()
+    {
+        return m_platform.determineCachingName( m_bundle, "default" );
+    }
+
+    @Benchmark
+    public String determineCachingNameOfPlainJar()
+    {
+        return m_platform.determineCachingName( m_notABundle, "default" );
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link RelativeFilePathStrategy#normalizeAsUrl}, done for every bundle written to framework
+ * configuration.
+ *
+ * @since 1.8.6
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class RelativeFilePathStrategyBenchmark
+{
+
+    private RelativeFilePathStrategy m_strategy;
+    private File m_bundleFile;
+    private URL m_bundleURL;
+    private URL m_remoteURL;
+
+    @Setup
+    public void setUp()
+        throws Exception
+    {
+        final File workDir = new File( System.getProperty( "java.io.tmpdir" ), "runner" ).getAbsoluteFile();
+        m_strategy = new RelativeFilePathStrategy( workDir );
+        m_bundleFile = new File( workDir, "bundles/org.example.bundle_1.0.0.jar" );
+        m_bundleURL = m_bundleFile.toURI().toURL();
+        m_remoteURL = new URL( "http://repo1.maven.org/maven2/org/example/bundle/1.0.0/bundle-1.0.0.jar" );
+    }
+
+    @Benchmark
+    public String normalizeFile()
+    {
+        return m_strategy.normalizeAsUrl( m_bundleFile );
+    }
+
+    @Benchmark
+    public String normalizeFileURL()
+    {
+        return m_strategy.normalizeAsUrl( m_bundleURL );
+    }
+
+    @Benchmark
+    public String normalizeRemoteURL()
+    {
+        return m_strategy.normalizeAsUrl( m_remoteURL );
+    }
+
+}
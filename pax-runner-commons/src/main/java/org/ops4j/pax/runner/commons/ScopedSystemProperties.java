@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.commons;
+
+import java.util.Properties;
+
+/**
+ * System properties that can be scoped to the current thread. While a thread has properties bound, system properties
+ * read and set by that thread via {@link System#getProperty(String)}, {@link System#getProperty(String, String)} and
+ * {@link System#setProperty(String, String)} (the way scanners set properties) are the bound ones, so runs in
+ * different threads of the same jvm do not see each other's properties, as neither does a platform launched in process.
+ * Threads without bound properties see and change the system properties as usual.
+ * <p/>
+ * Only those accessors are scoped. {@link System#clearProperty(String)} and the map view of the system properties
+ * (as get, put, remove, keySet, propertyNames or stringPropertyNames) always access the system properties of the
+ * jvm, whatever is bound to the current thread.
+ *
+ * @since 1.8.6
+ */
+public class ScopedSystemProperties
+    extends Properties
+{
+
+    /**
+     * Properties bound to the current thread. Null if current thread has no bound properties.
+     */
+    private final ThreadLocal<Properties> m_bound = new ThreadLocal<Properties>();
+
+    /**
+     * Creates scoped system properties with the content of current system properties.
+     *
+     * @param properties current system properties
+     */
+    private ScopedSystemProperties( final Properties properties )
+    {
+        super();
+        synchronized( properties )
+        {
+            putAll( properties );
+        }
+    }
+
+    /**
+     * Installs scoped system properties in place of the current system properties, if not already installed.
+     *
+     * @return installed scoped system properties
+     */
+    public static synchronized ScopedSystemProperties install()
+    {
+        final Properties current = System.getProperties();
+        if( current instanceof ScopedSystemProperties )
+        {
+            return (ScopedSystemProperties) current;
+        }
+        final ScopedSystemProperties scoped = new ScopedSystemProperties( current );
+        System.setProperties( scoped );
+        return scoped;
+    }
+
+    /**
+     * Binds properties to the current thread.
+     *
+     * @param properties properties to bind
+     */
+    public void bind( final Properties properties )
+    {
+        m_bound.set( properties );
+    }
+
+    /**
+     * Unbinds the properties bound to the current thread, if any.
+     */
+    public void unbind()
+    {
+        m_bound.remove();
+    }
+
+    /**
+     * Returns a copy of the not scoped system properties, to be used as defaults of properties to be bound.
+     *
+     * @return copy of system properties
+     */
+    public synchronized Properties snapshot()
+    {
+        final Properties snapshot = new Properties();
+        snapshot.putAll( this );
+        return snapshot;
+    }
+
+    /**
+     * Delegates to bound properties, if any.
+     *
+     * @see java.util.Properties#getProperty(String)
+     */
+    @Override
+    public String getProperty( final String key )
+    {
+        final Properties bound = m_bound.get();
+        return bound != null ? bound.getProperty( key ) : super.getProperty( key );
+    }
+
+    /**
+     * Delegates to bound properties, if any.
+     *
+     * @see java.util.Properties#getProperty(String, String)
+     */
+    @Override
+    public String getProperty( final String key, final String defaultValue )
+    {
+        final Properties bound = m_bound.get();
+        return bound != null ? bound.getProperty( key, defaultValue ) : super.getProperty( key, defaultValue );
+    }
+
+    /**
+     * Delegates to bound properties, if any.
+     *
+     * @see java.util.Properties#setProperty(String, String)
+     */
+    @Override
+    public Object setProperty( final String key, final String value )
+    {
+        final Properties bound = m_bound.get();
+        return bound != null ? bound.setProperty( key, value ) : super.setProperty( key, value );
+    }
+
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.commons;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records timed spans of the launch phases of a run. Tracing is started via {@link #start(File)}, which binds the
+ * returned trace to the current thread and to the threads it creates. Spans begun by those threads are recorded in
+ * the bound trace, while in other threads they are no-op, so concurrent runs each record their own trace. Once
+ * stopped by its owner, via {@link #stop()}, or once a span of a category given to {@link #stopAfter(String...)}
+ * ended, the recorded spans are written to the file as Chrome trace-event json (to be opened in chrome://tracing) and
+ * a summary is printed to console.
+ *
+ * @since 1.8.6
+ */
+public class Trace
+{
+
+    /**
+     * Span returned while tracing is not started.
+     */
+    private static final Span NOOP = new Span( null, null, null );
+    /**
+     * Maximum number of spans listed in summary.
+     */
+    private static final int SLOWEST = 10;
+
+    /**
+     * Trace bound to the current thread, inherited by the threads it creates.
+     */
+    private static final InheritableThreadLocal<Trace> BOUND = new InheritableThreadLocal<Trace>();
+
+    /**
+     * File to write the trace to.
+     */
+    private final File m_file;
+    /**
+     * Start of tracing (nanoseconds).
+     */
+    private final long m_start;
+    /**
+     * Ended spans.
+     */
+    private final ConcurrentLinkedQueue<Span> m_spans;
+    /**
+     * Categories of spans that end the trace. Cannot be null.
+     */
+    private volatile List<String> m_stopCategories;
+    /**
+     * True once the trace was stopped.
+     */
+    private boolean m_stopped;
+
+    private Trace( final File file )
+    {
+        m_file = file;
+        m_start = System.nanoTime();
+        m_spans = new ConcurrentLinkedQueue<Span>();
+        m_stopCategories = Collections.emptyList();
+    }
+
+    /**
+     * Starts a trace and binds it to the current thread.
+     *
+     * @param file file to write the trace to
+     *
+     * @return started trace, to be stopped by the caller, or null if there is no file
+     */
+    public static Trace start( final File file )
+    {
+        if( file == null )
+        {
+            return null;
+        }
+        final Trace trace = new Trace( file );
+        BOUND.set( trace );
+        return trace;
+    }
+
+    /**
+     * Makes the trace stop once a span of one of the categories ended, as when the launched platform is up and the
+     * trace should not wait for the platform to exit.
+     *
+     * @param categories span categories
+     *
+     * @return itself, for fluent api usage
+     */
+    public Trace stopAfter( final String... categories )
+    {
+        m_stopCategories = Arrays.asList( categories );
+        return this;
+    }
+
+    /**
+     * Stops tracing, writes the trace file and prints the summary. Has no effect if the trace is already stopped.
+     */
+    public void stop()
+    {
+        if( BOUND.get() == this )
+        {
+            BOUND.remove();
+        }
+        synchronized( this )
+        {
+            if( m_stopped )
+            {
+                return;
+            }
+            m_stopped = true;
+        }
+        final long duration = System.nanoTime() - m_start;
+        final List<Span> spans = new ArrayList<Span>( m_spans );
+        // threads created while tracing keep a reference to the trace
+        m_spans.clear();
+        try
+        {
+            write( spans );
+            printSummary( System.out, spans, duration );
+        }
+        catch( IOException e )
+        {
+            System.out.println( "Trace could not be written to [" + m_file + "]: " + e.getMessage() );
+        }
+    }
+
+    private synchronized boolean isStopped()
+    {
+        return m_stopped;
+    }
+
+    /**
+     * Begins a span in the trace bound to the current thread. The span is recorded only once ended.
+     *
+     * @param category span category (e.g. download)
+     * @param name     span name (e.g. downloaded url)
+     *
+     * @return begun span
+     */
+    public static Span begin( final String category, final String name )
+    {
+        final Trace trace = BOUND.get();
+        if( trace == null || trace.isStopped() )
+        {
+            return NOOP;
+        }
+        return new Span( trace, category, name );
+    }
+
+    private void write( final List<Span> spans )
+        throws IOException
+    {
+        final File parent = m_file.getAbsoluteFile().getParentFile();
+        if( parent != null )
+        {
+            parent.mkdirs();
+        }
+        final Writer out = new OutputStreamWriter( new FileOutputStream( m_file ), "UTF-8" );
+        try
+        {
+            out.write( "{\"displayTimeUnit\":\"ms\",\"traceEvents\":[" );
+            final Map<Long, String> threads = new TreeMap<Long, String>();
+            boolean first = true;
+            for( Span span : spans )
+            {
+                threads.put( span.m_threadId, span.m_threadName );
+                if( !first )
+                {
+                    out.write( "," );
+                }
+                first = false;
+                out.write( "\n{\"ph\":\"X\",\"pid\":1" );
+                out.write( ",\"tid\":" + span.m_threadId );
+                out.write( ",\"ts\":" + ( span.m_begin - m_start ) / 1000 );
+                out.write( ",\"dur\":" + ( span.m_end - span.m_begin ) / 1000 );
+                out.write( ",\"cat\":" + quote( span.m_category ) );
+                out.write( ",\"name\":" + quote( span.m_name ) );
+                out.write( ",\"args\":{" );
+                boolean firstArg = true;
+                for( Map.Entry<String, Object> arg : span.getArgs().entrySet() )
+                {
+                    if( !firstArg )
+                    {
+                        out.write( "," );
+                    }
+                    firstArg = false;
+                    out.write( quote( arg.getKey() ) + ":" );
+                    out.write( arg.getValue() instanceof Number
+                               ? String.valueOf( arg.getValue() )
+                               : quote( String.valueOf( arg.getValue() ) ) );
+                }
+                out.write( "}}" );
+            }
+            for( Map.Entry<Long, String> thread : threads.entrySet() )
+            {
+                if( !first )
+                {
+                    out.write( "," );
+                }
+                first = false;
+                out.write( "\n{\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getKey() );
+                out.write( ",\"name\":\"thread_name\",\"args\":{\"name\":" + quote( thread.getValue() ) + "}}" );
+            }
+            out.write( "\n]}\n" );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    private void printSummary( final PrintStream out, final List<Span> spans, final long duration )
+    {
+        // totals per category, in order of first appearance
+        final Map<String, long[]> categories = new LinkedHashMap<String, long[]>();
+        for( Span span : spans )
+        {
+            long[] totals = categories.get( span.m_category );
+            if( totals == null )
+            {
+                totals = new long[3];
+                categories.put( span.m_category, totals );
+            }
+            totals[ 0 ]++;
+            totals[ 1 ] += span.m_end - span.m_begin;
+            totals[ 2 ] = Math.max( totals[ 2 ], span.m_end - span.m_begin );
+        }
+        out.println();
+        out.println( "Launch trace written to [" + m_file + "] (" + millis( duration ) + " ms)" );
+        out.println( String.format( "  %-20s %8s %10s %10s", "Phase", "Count", "Total ms", "Max ms" ) );
+        for( Map.Entry<String, long[]> entry : categories.entrySet() )
+        {
+            final long[] totals = entry.getValue();
+            out.println(
+                String.format(
+                    "  %-20s %8d %10d %10d", entry.getKey(), totals[ 0 ], millis( totals[ 1 ] ), millis( totals[ 2 ] )
+                )
+            );
+        }
+        final List<Span> slowest = new ArrayList<Span>( spans );
+        Collections.sort( slowest, new Comparator<Span>()
+        {
+            public int compare( final Span span1, final Span span2 )
+            {
+                final long duration1 = span1.m_end - span1.m_begin;
+                final long duration2 = span2.m_end - span2.m_begin;
+                return duration1 > duration2 ? -1 : ( duration1 == duration2 ? 0 : 1 );
+            }
+        }
+        );
+        out.println( "  Slowest:" );
+        for( Span span : slowest.subList( 0, Math.min( SLOWEST, slowest.size() ) ) )
+        {
+            final Map<String, Object> args = span.getArgs();
+            out.println(
+                String.format(
+                    "  %8d ms %-10s %s%s", millis( span.m_end - span.m_begin ), span.m_category, span.m_name,
+                    args.isEmpty() ? "" : " " + args
+                )
+            );
+        }
+        out.println();
+    }
+
+    private static long millis( final long nanos )
+    {
+        return nanos / 1000000;
+    }
+
+    private static String quote( final String value )
+    {
+        if( value == null )
+        {
+            return "null";
+        }
+        final StringBuilder quoted = new StringBuilder( value.length() + 2 );
+        quoted.append( '"' );
+        for( int i = 0; i < value.length(); i++ )
+        {
+            final char c = value.charAt( i );
+            if( c == '"' || c == '\\' )
+            {
+                quoted.append( '\\' ).append( c );
+            }
+            else if( c < 0x20 )
+            {
+                quoted.append( String.format( "\\u%04x", (int) c ) );
+            }
+            else
+            {
+                quoted.append( c );
+            }
+        }
+        return quoted.append( '"' ).toString();
+    }
+
+    /**
+     * Timed span of a launch phase. Spans are meant to be used by the thread that began them, as in:
+     * <pre>
+     * final Trace.Span span = Trace.begin( "category", "name" );
+     * try
+     * {
+     *     ...
+     * }
+     * finally
+     * {
+     *     span.end();
+     * }
+     * </pre>
+     */
+    public static class Span
+    {
+
+        private final Trace m_trace;
+        private final String m_category;
+        private final String m_name;
+        private final long m_threadId;
+        private final String m_threadName;
+        private final long m_begin;
+        private long m_end;
+        private Map<String, Object> m_args;
+
+        private Span( final Trace trace, final String category, final String name )
+        {
+            m_trace = trace;
+            m_category = category;
+            m_name = name;
+            m_threadId = Thread.currentThread().getId();
+            m_threadName = Thread.currentThread().getName();
+            m_begin = trace == null ? 0 : System.nanoTime();
+        }
+
+        /**
+         * Adds an argument to the span (e.g. bytes downloaded).
+         *
+         * @param key   argument name
+         * @param value argument value
+         *
+         * @return itself, for fluent api usage
+         */
+        public Span arg( final String key, final Object value )
+        {
+            if( m_trace != null )
+            {
+                synchronized( this )
+                {
+                    if( m_args == null )
+                    {
+                        m_args = new LinkedHashMap<String, Object>();
+                    }
+                    m_args.put( key, value );
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Ends the span. Has no effect if span was already ended.
+         */
+        public void end()
+        {
+            if( m_trace != null )
+            {
+                synchronized( this )
+                {
+                    if( m_end != 0 )
+                    {
+                        return;
+                    }
+                    m_end = System.nanoTime();
+                }
+                if( !m_trace.isStopped() )
+                {
+                    m_trace.m_spans.add( this );
+                    if( m_trace.m_stopCategories.contains( m_category ) )
+                    {
+                        m_trace.stop();
+                    }
+                }
+            }
+        }
+
+        private synchronized Map<String, Object> getArgs()
+        {
+            if( m_args == null )
+            {
+                return Collections.emptyMap();
+            }
+            return m_args;
+        }
+
+    }
+
+}
@@ -72,7 +72,7 @@ public class Activator
      * Performs cleanup:<br/>
      * * Stop the service tracker;<br/>
      * * Unregister all url stream handles;<br/>
-     * * Release extender;<br/>
+     * * Remove extender from url stream handler factories and release it;<br/>
      * * Release bundle context.
      *
      * @see org.osgi.framework.BundleActivator#stop(org.osgi.framework.BundleContext)
@@ -86,7 +86,11 @@ public class Activator
             m_serviceTracker.close();
             m_serviceTracker = null;
         }
-        m_extender = null;
+        if( m_extender != null )
+        {
+            m_extender.stop();
+            m_extender = null;
+        }
         m_bundleContext = null;
         LOGGER.debug( "URL stream handler service extender stopped" );
     }
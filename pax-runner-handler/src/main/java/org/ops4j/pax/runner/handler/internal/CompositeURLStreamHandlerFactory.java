@@ -19,13 +19,18 @@ package org.ops4j.pax.runner.handler.internal;
 
 import java.net.URLStreamHandler;
 import java.net.URLStreamHandlerFactory;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.ops4j.lang.NullArgumentException;
 
 /**
  * An composite URLStreamHandlerFactory that used it's internal list of registred URLStreamHandlerFactories to find out
  * if they can handle the requestd protocol. First one that canhandle (does not return null) will be returned.
+ * The factory that handles a protocol, or the fact that none does, is cached per protocol until factories are
+ * registered / unregistered or the cache is invalidated via {@link #invalidate()}.
  *
  * @author Alin Dreghiciu
  * @see java.net.URLStreamHandlerFactory
@@ -35,17 +40,34 @@ public class CompositeURLStreamHandlerFactory
     implements URLStreamHandlerFactory
 {
 
+    /**
+     * Cache entry marking that no factory handles the protocol.
+     */
+    private static final URLStreamHandlerFactory NO_FACTORY = new URLStreamHandlerFactory()
+    {
+        public URLStreamHandler createURLStreamHandler( final String protocol )
+        {
+            return null;
+        }
+    };
+
     /**
      * List of URLStreamHandlerFactories to delegate to.
      */
     private final List<URLStreamHandlerFactory> m_factories;
+    /**
+     * Map between protocol and the factory that handles it (or {@link #NO_FACTORY}). Replaced on invalidation, so a
+     * lookup running concurrently with an invalidation will cache its result in the discarded map.
+     */
+    private volatile ConcurrentMap<String, URLStreamHandlerFactory> m_cache;
 
     /**
      * Creates a new composite url stream handler factory.
      */
     public CompositeURLStreamHandlerFactory()
     {
-        m_factories = new ArrayList<URLStreamHandlerFactory>();
+        m_factories = new CopyOnWriteArrayList<URLStreamHandlerFactory>();
+        m_cache = new ConcurrentHashMap<String, URLStreamHandlerFactory>();
     }
 
     /**
@@ -55,15 +77,74 @@ public class CompositeURLStreamHandlerFactory
      * @see java.net.URLStreamHandlerFactory
      */
     public URLStreamHandler createURLStreamHandler( final String protocol )
+    {
+        if( protocol == null )
+        {
+            return findURLStreamHandler( protocol, null );
+        }
+        final ConcurrentMap<String, URLStreamHandlerFactory> cache = m_cache;
+        final URLStreamHandlerFactory cached = cache.get( protocol );
+        if( cached == NO_FACTORY )
+        {
+            return null;
+        }
+        if( cached != null )
+        {
+            final URLStreamHandler handler = cached.createURLStreamHandler( protocol );
+            if( handler != null )
+            {
+                return handler;
+            }
+        }
+        return findURLStreamHandler( protocol, cache );
+    }
+
+    /**
+     * Returns the registered factories, in the order they are searched.
+     *
+     * @return unmodifiable list of factories
+     */
+    public List<URLStreamHandlerFactory> getFactories()
+    {
+        return Collections.unmodifiableList( m_factories );
+    }
+
+    /**
+     * Invalidates the cached protocol resolutions. To be called when the protocols handled by one of the registered
+     * factories changes.
+     */
+    public void invalidate()
+    {
+        m_cache = new ConcurrentHashMap<String, URLStreamHandlerFactory>();
+    }
+
+    /**
+     * Probes all registered factories for the protocol and caches the result.
+     *
+     * @param protocol protocol
+     * @param cache    cache to store the result into, or null if result should not be cached
+     *
+     * @return found handler or null if none of the factories handles the protocol
+     */
+    private URLStreamHandler findURLStreamHandler( final String protocol,
+                                                   final ConcurrentMap<String, URLStreamHandlerFactory> cache )
     {
         for( URLStreamHandlerFactory factory : m_factories )
         {
             final URLStreamHandler handler = factory.createURLStreamHandler( protocol );
             if( handler != null )
             {
+                if( cache != null )
+                {
+                    cache.put( protocol, factory );
+                }
                 return handler;
             }
         }
+        if( cache != null )
+        {
+            cache.put( protocol, NO_FACTORY );
+        }
         return null;
     }
 
@@ -78,6 +159,7 @@ public class CompositeURLStreamHandlerFactory
     {
         NullArgumentException.validateNotNull( factory, "Registered factory" );
         m_factories.add( factory );
+        invalidate();
         return this;
     }
 
@@ -93,6 +175,7 @@ public class CompositeURLStreamHandlerFactory
     {
         NullArgumentException.validateNotNull( factory, "Unregistered factory" );
         m_factories.remove( factory );
+        invalidate();
         return this;
     }
 
@@ -20,8 +20,8 @@ package org.ops4j.pax.runner.handler.internal;
 import java.net.URLStreamHandler;
 import java.net.URLStreamHandlerFactory;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.osgi.service.url.URLStreamHandlerService;
@@ -48,13 +48,17 @@ public class URLStreamHandlerExtender
      * Map between protocol and URLStreamHandlerService proxy.
      */
     private final Map<String, URLStreamHandlerProxy> m_proxies;
+    /**
+     * True if the extender was registered as URLStreamHandlerFactory.
+     */
+    private volatile boolean m_started;
 
     /**
      * Creates a new extender.
      */
     public URLStreamHandlerExtender()
     {
-        m_proxies = new HashMap<String, URLStreamHandlerProxy>();
+        m_proxies = new ConcurrentHashMap<String, URLStreamHandlerProxy>();
     }
 
     /**
@@ -64,6 +68,16 @@ public class URLStreamHandlerExtender
     public void start()
     {
         URLUtils.setURLStreamHandlerFactory( this );
+        m_started = true;
+    }
+
+    /**
+     * Removes itself from the URL stream handler factories, so a stopped extender is not referenced anymore.
+     */
+    public void stop()
+    {
+        m_started = false;
+        URLUtils.removeURLStreamHandlerFactory( this );
     }
 
     /**
@@ -79,10 +93,13 @@ public class URLStreamHandlerExtender
         );
         NullArgumentException.validateNotEmptyContent( protocols, true, "Protocol" );
         NullArgumentException.validateNotNull( urlStreamHandlerService, "URL stream handler service" );
+        // one proxy for all protocols, so the service always calls back the same URLStreamHandlerSetter
+        final URLStreamHandlerProxy proxy = createProxy( urlStreamHandlerService );
         for( String protocol : protocols )
         {
-            m_proxies.put( protocol, createProxy( urlStreamHandlerService ) );
+            m_proxies.put( protocol, proxy );
         }
+        protocolsChanged();
 
     }
 
@@ -99,6 +116,7 @@ public class URLStreamHandlerExtender
         {
             m_proxies.remove( protocol );
         }
+        protocolsChanged();
     }
 
     /**
@@ -113,6 +131,17 @@ public class URLStreamHandlerExtender
         return m_proxies.get( protocol );
     }
 
+    /**
+     * Invalidates the protocols cached by the composite factory we may be part of.
+     */
+    private void protocolsChanged()
+    {
+        if( m_started )
+        {
+            URLUtils.invalidateURLStreamHandlerFactory();
+        }
+    }
+
     /**
      * URLStreamHandlerProxy factory method.
      *
@@ -29,6 +29,8 @@ import org.ops4j.lang.NullArgumentException;
 /**
  * A proxy that get's registred with the JVM as URLStreamhandler but actualy delegates to the URLStreamHandlerService
  * OSGi style.
+ * The proxy holds no mutable state so it does not synchronize; it can be used by many threads at the same time (as
+ * during concurrent downloads) and it is up to the delegate handler service to be thread safe.
  */
 public class URLStreamHandlerProxy
     extends URLStreamHandler
@@ -57,7 +59,7 @@ public class URLStreamHandlerProxy
      * @see URLStreamHandler#equals(java.net.URL,java.net.URL)
      */
     @Override
-    protected synchronized boolean equals( final URL first, final URL second )
+    protected boolean equals( final URL first, final URL second )
     {
         return m_handler.equals( first, second );
     }
@@ -68,7 +70,7 @@ public class URLStreamHandlerProxy
      * @see URLStreamHandler#getDefaultPort()
      */
     @Override
-    protected synchronized int getDefaultPort()
+    protected int getDefaultPort()
     {
         return m_handler.getDefaultPort();
     }
@@ -79,7 +81,7 @@ public class URLStreamHandlerProxy
      * @see URLStreamHandler#getHostAddress(java.net.URL)
      */
     @Override
-    protected synchronized InetAddress getHostAddress( final URL url )
+    protected InetAddress getHostAddress( final URL url )
     {
         return m_handler.getHostAddress( url );
     }
@@ -90,7 +92,7 @@ public class URLStreamHandlerProxy
      * @see URLStreamHandler#hashCode(java.net.URL)
      */
     @Override
-    protected synchronized int hashCode( final URL url )
+    protected int hashCode( final URL url )
     {
         return m_handler.hashCode( url );
     }
@@ -101,7 +103,7 @@ public class URLStreamHandlerProxy
      * @see URLStreamHandler#hostsEqual(java.net.URL,java.net.URL)
      */
     @Override
-    protected synchronized boolean hostsEqual( URL first, URL second )
+    protected boolean hostsEqual( URL first, URL second )
     {
         return m_handler.hostsEqual( first, second );
     }
@@ -112,7 +114,7 @@ public class URLStreamHandlerProxy
      * @see URLStreamHandler#openConnection(java.net.URL)
      */
     @Override
-    protected synchronized URLConnection openConnection( final URL url )
+    protected URLConnection openConnection( final URL url )
         throws IOException
     {
         return m_handler.openConnection( url );
@@ -124,7 +126,7 @@ public class URLStreamHandlerProxy
      * @see URLStreamHandler#parseURL(java.net.URL,String,int,int)
      */
     @Override
-    protected synchronized void parseURL( final URL url, final String spec, final int start, final int limit )
+    protected void parseURL( final URL url, final String spec, final int start, final int limit )
     {
         m_handler.parseURL( this, url, spec, start, limit );
     }
@@ -135,7 +137,7 @@ public class URLStreamHandlerProxy
      * @see URLStreamHandler#sameFile(java.net.URL,java.net.URL)
      */
     @Override
-    protected synchronized boolean sameFile( URL first, URL second )
+    protected boolean sameFile( URL first, URL second )
     {
         return m_handler.sameFile( first, second );
     }
@@ -166,7 +168,7 @@ public class URLStreamHandlerProxy
      * @see URLStreamHandler#toExternalForm(java.net.URL)
      */
     @Override
-    protected synchronized String toExternalForm( final URL url )
+    protected String toExternalForm( final URL url )
     {
         return m_handler.toExternalForm( url );
     }
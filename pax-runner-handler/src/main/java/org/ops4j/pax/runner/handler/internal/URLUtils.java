@@ -91,6 +91,43 @@ public class URLUtils
         }
     }
 
+    /**
+     * Removes a URL stream handler factory set via {@link #setURLStreamHandlerFactory(URLStreamHandlerFactory)}, so
+     * it is not referenced anymore. If the factory is part of a composite it is unregistered from the composite, if
+     * it is the factory set in URL the factory is reset. Otherwise the method returns silently.
+     *
+     * @param urlStreamHandlerFactory factory to be removed
+     */
+    public static void removeURLStreamHandlerFactory( final URLStreamHandlerFactory urlStreamHandlerFactory )
+    {
+        synchronized( URL.class )
+        {
+            final URLStreamHandlerFactory currentFactory = getURLStreamHandlerFactory();
+            if( currentFactory instanceof CompositeURLStreamHandlerFactory )
+            {
+                ( (CompositeURLStreamHandlerFactory) currentFactory ).unregisterFactory( urlStreamHandlerFactory );
+            }
+            else if( currentFactory == urlStreamHandlerFactory )
+            {
+                resetURLStreamHandlerFactory();
+            }
+        }
+    }
+
+    /**
+     * Invalidates the protocol resolutions cached by the current URLStreamHandlerFactory, if it is a composite.
+     * To be called when the protocols handled by a factory registered via
+     * {@link #setURLStreamHandlerFactory(URLStreamHandlerFactory)} change.
+     */
+    public static void invalidateURLStreamHandlerFactory()
+    {
+        final URLStreamHandlerFactory currentFactory = getURLStreamHandlerFactory();
+        if( currentFactory instanceof CompositeURLStreamHandlerFactory )
+        {
+            ( (CompositeURLStreamHandlerFactory) currentFactory ).invalidate();
+        }
+    }
+
     /**
      * Resets the current URLStreamHandlerFactory and returns the current factory.
      *
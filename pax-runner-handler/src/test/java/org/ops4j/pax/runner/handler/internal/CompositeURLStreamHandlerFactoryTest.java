@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.handler.internal;
+
+import java.net.URLStreamHandler;
+import java.net.URLStreamHandlerFactory;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.osgi.service.url.URLStreamHandlerService;
+
+public class CompositeURLStreamHandlerFactoryTest
+{
+
+    // second lookup should go directly to the factory that handled the protocol
+    @Test
+    public void cachesResolvingFactory()
+    {
+        URLStreamHandlerFactory factory1 = createMock( URLStreamHandlerFactory.class );
+        URLStreamHandlerFactory factory2 = createMock( URLStreamHandlerFactory.class );
+        URLStreamHandler handler = new URLStreamHandlerProxy( createMock( URLStreamHandlerService.class ) );
+        expect( factory1.createURLStreamHandler( "foo" ) ).andReturn( null );
+        expect( factory2.createURLStreamHandler( "foo" ) ).andReturn( handler ).times( 2 );
+        replay( factory1, factory2 );
+        CompositeURLStreamHandlerFactory composite = new CompositeURLStreamHandlerFactory()
+            .registerFactory( factory1 )
+            .registerFactory( factory2 );
+        assertSame( "Handler", handler, composite.createURLStreamHandler( "foo" ) );
+        assertSame( "Handler", handler, composite.createURLStreamHandler( "foo" ) );
+        verify( factory1, factory2 );
+    }
+
+    // a miss should be cached too
+    @Test
+    public void cachesMiss()
+    {
+        URLStreamHandlerFactory factory = createMock( URLStreamHandlerFactory.class );
+        expect( factory.createURLStreamHandler( "foo" ) ).andReturn( null );
+        replay( factory );
+        CompositeURLStreamHandlerFactory composite = new CompositeURLStreamHandlerFactory().registerFactory( factory );
+        assertNull( "Handler", composite.createURLStreamHandler( "foo" ) );
+        assertNull( "Handler", composite.createURLStreamHandler( "foo" ) );
+        verify( factory );
+    }
+
+    // after invalidation a miss should be looked up again
+    @Test
+    public void invalidate()
+    {
+        URLStreamHandlerFactory factory = createMock( URLStreamHandlerFactory.class );
+        URLStreamHandler handler = new URLStreamHandlerProxy( createMock( URLStreamHandlerService.class ) );
+        expect( factory.createURLStreamHandler( "foo" ) ).andReturn( null );
+        expect( factory.createURLStreamHandler( "foo" ) ).andReturn( handler );
+        replay( factory );
+        CompositeURLStreamHandlerFactory composite = new CompositeURLStreamHandlerFactory().registerFactory( factory );
+        assertNull( "Handler", composite.createURLStreamHandler( "foo" ) );
+        composite.invalidate();
+        assertSame( "Handler", handler, composite.createURLStreamHandler( "foo" ) );
+        verify( factory );
+    }
+
+    // registering a factory should invalidate cached misses
+    @Test
+    public void registerFactoryInvalidates()
+    {
+        URLStreamHandlerFactory factory1 = createMock( URLStreamHandlerFactory.class );
+        URLStreamHandlerFactory factory2 = createMock( URLStreamHandlerFactory.class );
+        URLStreamHandler handler = new URLStreamHandlerProxy( createMock( URLStreamHandlerService.class ) );
+        expect( factory1.createURLStreamHandler( "foo" ) ).andReturn( null ).times( 2 );
+        expect( factory2.createURLStreamHandler( "foo" ) ).andReturn( handler );
+        replay( factory1, factory2 );
+        CompositeURLStreamHandlerFactory composite = new CompositeURLStreamHandlerFactory().registerFactory( factory1 );
+        assertNull( "Handler", composite.createURLStreamHandler( "foo" ) );
+        composite.registerFactory( factory2 );
+        assertSame( "Handler", handler, composite.createURLStreamHandler( "foo" ) );
+        verify( factory1, factory2 );
+    }
+
+    // when the cached factory does not handle the protocol anymore the others should be probed
+    @Test
+    public void cachedFactoryDoesNotHandleProtocolAnymore()
+    {
+        URLStreamHandlerFactory factory1 = createMock( URLStreamHandlerFactory.class );
+        URLStreamHandlerFactory factory2 = createMock( URLStreamHandlerFactory.class );
+        URLStreamHandler handler = new URLStreamHandlerProxy( createMock( URLStreamHandlerService.class ) );
+        expect( factory1.createURLStreamHandler( "foo" ) ).andReturn( handler );
+        expect( factory1.createURLStreamHandler( "foo" ) ).andReturn( null ).times( 2 );
+        expect( factory2.createURLStreamHandler( "foo" ) ).andReturn( handler );
+        replay( factory1, factory2 );
+        CompositeURLStreamHandlerFactory composite = new CompositeURLStreamHandlerFactory()
+            .registerFactory( factory1 )
+            .registerFactory( factory2 );
+        assertSame( "Handler", handler, composite.createURLStreamHandler( "foo" ) );
+        assertSame( "Handler", handler, composite.createURLStreamHandler( "foo" ) );
+        verify( factory1, factory2 );
+    }
+
+}
@@ -122,4 +122,18 @@ public class URLStreamHandlerExtenderTest
         assertEquals( "URL stream handler ", proxy, extender.createURLStreamHandler( "protocol" ) );
     }
 
+    // protocols registered together should share the proxy
+    @Test
+    public void registerMultipleProtocols()
+    {
+        URLStreamHandlerExtender extender = new URLStreamHandlerExtender();
+        extender.register( new String[]{ "protocol1", "protocol2" }, createMock( URLStreamHandlerService.class ) );
+        assertNotNull( "URL stream handler", extender.createURLStreamHandler( "protocol1" ) );
+        assertSame(
+            "URL stream handler",
+            extender.createURLStreamHandler( "protocol1" ),
+            extender.createURLStreamHandler( "protocol2" )
+        );
+    }
+
 }
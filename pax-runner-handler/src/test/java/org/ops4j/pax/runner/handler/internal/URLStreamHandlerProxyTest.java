@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.handler.internal;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.osgi.service.url.AbstractURLStreamHandlerService;
+
+public class URLStreamHandlerProxyTest
+{
+
+    private static final int THREADS = 4;
+
+    // all threads have to be in openConnection at the same time for the barrier to trip
+    @Test
+    public void concurrentOpenConnection()
+        throws Exception
+    {
+        final CyclicBarrier barrier = new CyclicBarrier( THREADS );
+        final URLStreamHandlerProxy proxy = new URLStreamHandlerProxy(
+            new AbstractURLStreamHandlerService()
+            {
+                public URLConnection openConnection( final URL url )
+                    throws IOException
+                {
+                    try
+                    {
+                        barrier.await( 10, TimeUnit.SECONDS );
+                    }
+                    catch( Exception e )
+                    {
+                        throw new IOException( "Connections were not opened concurrently" );
+                    }
+                    return null;
+                }
+            }
+        );
+        final URL url = new URL( null, "test:concurrent", proxy );
+        final ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+        try
+        {
+            final List<Future<URLConnection>> results = new ArrayList<Future<URLConnection>>();
+            for( int i = 0; i < THREADS; i++ )
+            {
+                results.add(
+                    executor.submit(
+                        new Callable<URLConnection>()
+                        {
+                            public URLConnection call()
+                                throws Exception
+                            {
+                                return proxy.openConnection( url );
+                            }
+                        }
+                    )
+                );
+            }
+            for( Future<URLConnection> result : results )
+            {
+                assertNull( "Connection", result.get() );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    // parsing calls back the proxy as URLStreamHandlerSetter
+    @Test
+    public void parseURL()
+        throws Exception
+    {
+        final URL url = new URL( null, "test:some/path", new URLStreamHandlerProxy(
+            new AbstractURLStreamHandlerService()
+            {
+                public URLConnection openConnection( final URL url )
+                {
+                    return null;
+                }
+            }
+        )
+        );
+        assertEquals( "Protocol", "test", url.getProtocol() );
+        assertEquals( "Path", "some/path", url.getPath() );
+        assertEquals( "External form", "test:some/path", url.toExternalForm() );
+    }
+
+}
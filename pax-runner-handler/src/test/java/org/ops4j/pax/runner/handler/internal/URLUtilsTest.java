@@ -20,6 +20,7 @@ package org.ops4j.pax.runner.handler.internal;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLStreamHandlerFactory;
+import java.util.Arrays;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 import org.junit.Before;
@@ -112,4 +113,33 @@ public class URLUtilsTest
         verify( factory1, factory2 );
     }
 
+    /**
+     * Tests that a factory set directly is reset on remove.
+     */
+    @Test
+    public void removeURLStreamHandlerFactory()
+    {
+        URLStreamHandlerFactory factory = createMock( URLStreamHandlerFactory.class );
+        URLUtils.setURLStreamHandlerFactory( factory );
+        URLUtils.removeURLStreamHandlerFactory( factory );
+        assertNull( "Factory", URLUtils.getURLStreamHandlerFactory() );
+    }
+
+    /**
+     * Tests that a factory is unregistered from the composite on remove and other factories are kept.
+     */
+    @Test
+    public void removeURLStreamHandlerFactoryFromComposite()
+    {
+        URLStreamHandlerFactory factory1 = createMock( URLStreamHandlerFactory.class );
+        URLStreamHandlerFactory factory2 = createMock( URLStreamHandlerFactory.class );
+        URLUtils.setURLStreamHandlerFactory( factory1 );
+        URLUtils.setURLStreamHandlerFactory( factory2 );
+        URLUtils.removeURLStreamHandlerFactory( factory2 );
+        assertEquals(
+            "Factories", Arrays.asList( factory1 ),
+            ( (CompositeURLStreamHandlerFactory) URLUtils.getURLStreamHandlerFactory() ).getFactories()
+        );
+    }
+
 }
\ No newline at end of file
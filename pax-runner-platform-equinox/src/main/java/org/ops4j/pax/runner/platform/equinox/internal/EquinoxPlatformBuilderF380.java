@@ -21,6 +21,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.runner.platform.*;
+import org.ops4j.pax.runner.platform.builder.LaunchProperties;
 import org.ops4j.util.collections.PropertiesWriter;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -37,7 +38,7 @@ import java.util.*;
  * @since August 20, 2007
  */
 public class EquinoxPlatformBuilderF380
-    implements PlatformBuilder
+    implements EmbeddedPlatformBuilder
 {
 
     /**
@@ -516,6 +517,38 @@ public class EquinoxPlatformBuilderF380
         return vmOptions.toArray( new String[vmOptions.size()] );
     }
 
+    /**
+     * Returns the same settings as the ones written to config.ini, using the equinox directory as storage
+     * (configuration area).
+     *
+     * @see org.ops4j.pax.runner.platform.EmbeddedPlatformBuilder
+     *      #getFrameworkProperties(org.ops4j.pax.runner.platform.PlatformContext)
+     */
+    public Map<String, String> getFrameworkProperties( final PlatformContext context )
+    {
+        NullArgumentException.validateNotNull( context, "Platform context" );
+        final Configuration configuration = context.getConfiguration();
+        final File configDirectory = new File( context.getWorkingDirectory(), CONFIG_DIRECTORY );
+        final Map<String, String> properties = LaunchProperties.create( context, configDirectory );
+        properties.put( PROP_INSTALL_AREA, configDirectory.getAbsolutePath() );
+        final Boolean usePersistedState = configuration.usePersistedState();
+        if( usePersistedState != null && !usePersistedState )
+        {
+            properties.put( "osgi.clean", "true" );
+        }
+        final Integer bundleStartLevel = configuration.getBundleStartLevel();
+        if( bundleStartLevel != null )
+        {
+            properties.put( "osgi.bundles.defaultStartLevel", bundleStartLevel.toString() );
+        }
+        final String bootDelegation = configuration.getBootDelegation();
+        properties.put(
+            Constants.FRAMEWORK_BOOTDELEGATION,
+            bootDelegation == null ? BOOT_DELEGATION_PACKAGES : bootDelegation + "," + BOOT_DELEGATION_PACKAGES
+        );
+        return properties;
+    }
+
     /**
      * {@inheritDoc}
      */
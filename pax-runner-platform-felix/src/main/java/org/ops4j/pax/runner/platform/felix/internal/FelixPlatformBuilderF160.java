@@ -17,16 +17,24 @@
  */
 package org.ops4j.pax.runner.platform.felix.internal;
 
+import java.io.File;
+import java.util.Map;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.runner.platform.EmbeddedPlatformBuilder;
+import org.ops4j.pax.runner.platform.PlatformContext;
+import org.ops4j.pax.runner.platform.builder.LaunchProperties;
 import org.osgi.framework.BundleContext;
 
 /**
- * Platform builder for felix platform after 1.6.0.
+ * Platform builder for felix platform after 1.6.0. Felix versions that implement the OSGi launch api (2.0.0 and later)
+ * can also be launched embedded.
  *
  * @author Alin Dreghiciu
  * @since 0.18.0, April 06, 2009
  */
 public class FelixPlatformBuilderF160
     extends FelixPlatformBuilderF140T141
+    implements EmbeddedPlatformBuilder
 {
 
     /**
@@ -47,4 +55,26 @@ public class FelixPlatformBuilderF160
     {
         return "org.osgi.framework.startlevel.beginning";
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the same settings as the ones written to config.ini, with the same storage directory.
+     *
+     * @see org.ops4j.pax.runner.platform.EmbeddedPlatformBuilder
+     *      #getFrameworkProperties(org.ops4j.pax.runner.platform.PlatformContext)
+     */
+    public Map<String, String> getFrameworkProperties( final PlatformContext context )
+    {
+        NullArgumentException.validateNotNull( context, "Platform context" );
+        final File configDirectory = new File( context.getWorkingDirectory(), CONFIG_DIRECTORY );
+        final Map<String, String> properties = LaunchProperties.create(
+            context, new File( new File( configDirectory, CACHE_DIRECTORY ), "runner" )
+        );
+        final Integer bundleStartLevel = context.getConfiguration().getBundleStartLevel();
+        if( bundleStartLevel != null )
+        {
+            properties.put( "felix.startlevel.bundle", bundleStartLevel.toString() );
+        }
+        return properties;
+    }
+
+}
@@ -331,4 +331,38 @@ public class FelixPlatformBuilderF160Test
         verify( m_bundleContext, m_configuration );
     }
 
+    // test that the embedded launch properties match the settings written to config.ini
+    @Test
+    public void getFrameworkProperties()
+    {
+        expect( m_configuration.usePersistedState() ).andReturn( false );
+        expect( m_configuration.getStartLevel() ).andReturn( 10 );
+        expect( m_configuration.getBundleStartLevel() ).andReturn( 20 );
+        expect( m_configuration.getBootDelegation() ).andReturn( "javax.*" );
+        m_platformContext.setExecutionEnvironment( "J2SE-1.5" );
+        m_platformContext.setSystemPackages( "javax.swing" );
+        final Properties properties = new Properties();
+        properties.setProperty( "myProperty", "myValue" );
+        m_platformContext.setProperties( properties );
+
+        replay( m_bundleContext, m_configuration );
+        final Map<String, String> frameworkProperties =
+            new FelixPlatformBuilderF160( m_bundleContext, "version" ).getFrameworkProperties( m_platformContext );
+        verify( m_bundleContext, m_configuration );
+
+        final Map<String, String> expected = new HashMap<String, String>();
+        expected.put(
+            "org.osgi.framework.storage",
+            new File( m_workDir, "felix" + File.separator + "cache" + File.separator + "runner" ).getAbsolutePath()
+        );
+        expected.put( "org.osgi.framework.storage.clean", "onFirstInit" );
+        expected.put( "org.osgi.framework.startlevel.beginning", "10" );
+        expected.put( "felix.startlevel.bundle", "20" );
+        expected.put( "org.osgi.framework.executionenvironment", "J2SE-1.5" );
+        expected.put( "org.osgi.framework.bootdelegation", "javax.*" );
+        expected.put( "org.osgi.framework.system.packages", "javax.swing" );
+        expected.put( "myProperty", "myValue" );
+        assertEquals( "Framework properties", expected, frameworkProperties );
+    }
+
 }
\ No newline at end of file
@@ -39,9 +39,10 @@ import org.osgi.framework.Constants;
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.runner.platform.BundleReference;
 import org.ops4j.pax.runner.platform.Configuration;
-import org.ops4j.pax.runner.platform.PlatformBuilder;
+import org.ops4j.pax.runner.platform.EmbeddedPlatformBuilder;
 import org.ops4j.pax.runner.platform.PlatformContext;
 import org.ops4j.pax.runner.platform.PlatformException;
+import org.ops4j.pax.runner.platform.builder.LaunchProperties;
 import org.ops4j.util.collections.PropertiesWriter;
 
 /**
@@ -51,7 +52,7 @@ import org.ops4j.util.collections.PropertiesWriter;
  * @since 1.2.0, July 20, 2009
  */
 public class KnopflerfishPlatformBuilderF300
-    implements PlatformBuilder
+    implements EmbeddedPlatformBuilder
 {
 
     /**
@@ -402,6 +403,30 @@ public class KnopflerfishPlatformBuilderF300
         return vmOptions.toArray( new String[vmOptions.size()] );
     }
 
+    /**
+     * Returns the same settings as the ones written to config.ini. The framework must not exit the jvm on shutdown, as
+     * the jvm is not its own.
+     *
+     * @see org.ops4j.pax.runner.platform.EmbeddedPlatformBuilder
+     *      #getFrameworkProperties(org.ops4j.pax.runner.platform.PlatformContext)
+     */
+    public Map<String, String> getFrameworkProperties( final PlatformContext context )
+    {
+        NullArgumentException.validateNotNull( context, "Platform context" );
+        final Map<String, String> properties = LaunchProperties.create(
+            context, new File( new File( context.getWorkingDirectory(), CONFIG_DIRECTORY ), CACHE_DIRECTORY )
+        );
+        properties.put( "org.knopflerfish.framework.exitonshutdown", "false" );
+        properties.put( "org.knopflerfish.startlevel.use", "true" );
+        // knopflerfish system packages are set as base, as in config.ini
+        final String systemPackages = properties.remove( Constants.FRAMEWORK_SYSTEMPACKAGES );
+        if( systemPackages != null )
+        {
+            properties.put( "org.knopflerfish.framework.system.packages.base", systemPackages );
+        }
+        return properties;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -239,6 +239,75 @@ public interface Configuration
      */
     Boolean useAbsoluteFilePaths();
 
+    /**
+     * Returns the maximum number of bundles that can be downloaded in the same time.
+     * Default value is 1 (bundles are downloaded one after another).
+     *
+     * @return value of download threads option
+     */
+    Integer getDownloadThreads();
+
+    /**
+     * Returns true if downloaded files should be shared with other working directories via the bundle store.
+     * Default value is "false".
+     *
+     * @return value of use bundle store option
+     */
+    Boolean useBundleStore();
+
+    /**
+     * Returns the bundle store option - optional; a directory shared by all working directories on the host, where
+     * downloaded files are stored by their content checksum.
+     * Default value is ".pax/runner/store" in user home directory.
+     *
+     * @return value of bundle store option
+     */
+    String getBundleStore();
+
+    /**
+     * Returns the maximum size, in megabytes, of the files kept in the bundle store. Least recently used files are
+     * evicted once the store grows bigger.
+     * Default value is 1024. 0 means no limit.
+     *
+     * @return value of bundle store max size option
+     */
+    Integer getBundleStoreMaxSize();
+
+    /**
+     * Returns the number of days a file is kept in the bundle store since it was last used.
+     * Default value is 30. 0 means no limit.
+     *
+     * @return value of bundle store max age option
+     */
+    Integer getBundleStoreMaxAge();
+
+    /**
+     * Returns the maximum number of bundles that can be downloaded in the same time from the same host.
+     * Default value is 4. 0 means no limit. Applies only to http, https and ftp urls: mvn: urls are downloaded by the
+     * mvn handler, which is not limited.
+     *
+     * @return value of downloads per host option
+     */
+    Integer getDownloadsPerHost();
+
+    /**
+     * Returns the timeout, in milliseconds, of connecting to the host of a downloaded bundle.
+     * Default value is 30000 (30 seconds). 0 means no timeout. Applies to http, https and ftp urls; mvn: urls get the
+     * timeout of the mvn handler (org.ops4j.pax.url.mvn.timeout), which runner defaults to the read timeout.
+     *
+     * @return value of connect timeout option
+     */
+    Integer getConnectTimeout();
+
+    /**
+     * Returns the timeout, in milliseconds, of waiting for the content of a downloaded bundle.
+     * Default value is 60000 (60 seconds). 0 means no timeout. Applies to http, https and ftp urls; runner also uses it
+     * as the default timeout of the mvn handler (org.ops4j.pax.url.mvn.timeout).
+     *
+     * @return value of read timeout option
+     */
+    Integer getReadTimeout();
+
     /**
      * Returns a raw configuration property by name.
      *
@@ -28,6 +28,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.ops4j.io.Pipe;
 import org.ops4j.pax.runner.commons.Info;
+import org.ops4j.pax.runner.commons.Trace;
 import org.ops4j.pax.runner.platform.internal.CommandLineBuilder;
 
 /**
@@ -124,6 +125,7 @@ public class DefaultJavaRunner
 
         LOG.debug( "Start command line [" + Arrays.toString( commandLine.toArray() ) + "]" );
 
+        final Trace.Span span = Trace.begin( "spawn", mainClass );
         try
         {
             LOG.debug( "Starting platform process." );
@@ -133,6 +135,10 @@ public class DefaultJavaRunner
         {
             throw new PlatformException( "Could not start up the process", e );
         }
+        finally
+        {
+            span.end();
+        }
 
         m_shutdownHook = createShutdownHook( m_frameworkProcess );
         Runtime.getRuntime().addShutdownHook( m_shutdownHook );
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform;
+
+/**
+ * Queue of bundles to be downloaded in background while the rest of the bundles to be provisioned are still being
+ * resolved. Downloads started by the queue are taken over by the next {@link Platform#start} of the
+ * {@link QueueingPlatform} that created the queue, so bundles already downloaded are not downloaded again.
+ *
+ * @since 1.8.6
+ */
+public interface DownloadQueue
+{
+
+    /**
+     * Starts downloading a bundle in background. Bundles that are not downloaded by the platform (as when original
+     * urls are kept) are ignored.
+     *
+     * @param bundle bundle to be downloaded; mandatory
+     */
+    void offer( BundleReference bundle );
+
+    /**
+     * Closes the queue. If the queue was not taken over by platform start, pending downloads are cancelled.
+     */
+    void close();
+
+}
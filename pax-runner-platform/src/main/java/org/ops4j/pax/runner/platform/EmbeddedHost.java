@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Hosts many frameworks launched embedded in the same jvm, in the same time. Each framework is launched by its own
+ * {@link EmbeddedJavaRunner} (see {@link #createRunner()}) with its own framework properties and, as long as each
+ * launch uses its own working directory, its own storage; bundles are loaded by the class loaders of their framework.
+ * The class loader of a platform classpath (framework system jar and system files) is read-only, so it is created
+ * once and shared by all frameworks launched from the same classpath, instead of loading the framework classes again
+ * for each of them. Frameworks must support more instances per class loader, as felix does.
+ * Unlike {@link InProcessJavaRunner} no system properties or url stream handler factory are changed.
+ *
+ * @since 1.8.6
+ */
+public class EmbeddedHost
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOG = LogFactory.getLog( EmbeddedHost.class );
+
+    /**
+     * Shared class loaders by platform classpath.
+     */
+    private final Map<List<String>, URLClassLoader> m_classLoaders;
+    /**
+     * Runners with a launched framework.
+     */
+    private final Set<EmbeddedJavaRunner> m_runners;
+
+    /**
+     * Constructor.
+     */
+    public EmbeddedHost()
+    {
+        m_classLoaders = new HashMap<List<String>, URLClassLoader>();
+        m_runners = new LinkedHashSet<EmbeddedJavaRunner>();
+    }
+
+    /**
+     * Creates a runner that launches one framework in this host. The runner does not wait for framework exit.
+     *
+     * @return embedded java runner
+     */
+    public EmbeddedJavaRunner createRunner()
+    {
+        return new EmbeddedJavaRunner( this );
+    }
+
+    /**
+     * Returns the number of launched frameworks.
+     *
+     * @return number of frameworks
+     */
+    public int getFrameworkCount()
+    {
+        synchronized( m_runners )
+        {
+            return m_runners.size();
+        }
+    }
+
+    /**
+     * Returns the launched frameworks (org.osgi.framework.launch.Framework instances).
+     *
+     * @return list of frameworks
+     */
+    public List<Object> getFrameworks()
+    {
+        final List<Object> frameworks = new ArrayList<Object>();
+        for( EmbeddedJavaRunner runner : getRunners() )
+        {
+            final Object framework = runner.getFramework();
+            if( framework != null )
+            {
+                frameworks.add( framework );
+            }
+        }
+        return frameworks;
+    }
+
+    /**
+     * Stops all launched frameworks and releases the shared class loaders.
+     */
+    public void shutdown()
+    {
+        final List<EmbeddedJavaRunner> runners = getRunners();
+        LOG.debug( "Stopping [" + runners.size() + "] embedded frameworks" );
+        for( EmbeddedJavaRunner runner : runners )
+        {
+            runner.shutdown();
+        }
+        synchronized( m_classLoaders )
+        {
+            m_classLoaders.clear();
+        }
+    }
+
+    /**
+     * Returns the class loader of a platform classpath, shared by all frameworks launched from the same classpath.
+     *
+     * @param urls platform classpath
+     *
+     * @return shared class loader
+     */
+    ClassLoader getClassLoader( final URL[] urls )
+    {
+        // keyed by external form as URL.equals may resolve host names
+        final List<String> key = new ArrayList<String>( urls.length );
+        for( URL url : urls )
+        {
+            key.add( url.toExternalForm() );
+        }
+        synchronized( m_classLoaders )
+        {
+            URLClassLoader classLoader = m_classLoaders.get( key );
+            if( classLoader == null )
+            {
+                LOG.debug( "Creating shared platform class loader for " + key );
+                classLoader = EmbeddedJavaRunner.createClassLoader( urls );
+                m_classLoaders.put( key, classLoader );
+            }
+            return classLoader;
+        }
+    }
+
+    /**
+     * Called by a hosted runner once its framework was launched.
+     *
+     * @param runner hosted runner
+     */
+    void started( final EmbeddedJavaRunner runner )
+    {
+        synchronized( m_runners )
+        {
+            m_runners.add( runner );
+        }
+    }
+
+    /**
+     * Called by a hosted runner when its framework is stopped.
+     *
+     * @param runner hosted runner
+     */
+    void stopped( final EmbeddedJavaRunner runner )
+    {
+        synchronized( m_runners )
+        {
+            m_runners.remove( runner );
+        }
+    }
+
+    private List<EmbeddedJavaRunner> getRunners()
+    {
+        synchronized( m_runners )
+        {
+            return new ArrayList<EmbeddedJavaRunner>( m_runners );
+        }
+    }
+
+}
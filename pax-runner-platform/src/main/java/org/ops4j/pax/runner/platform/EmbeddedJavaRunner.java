@@ -0,0 +1,603 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.pax.runner.commons.Info;
+import org.ops4j.pax.runner.commons.Trace;
+
+/**
+ * Java runner that launches the platform embedded, in the current jvm, through the OSGi launch api
+ * (org.osgi.framework.launch.FrameworkFactory) instead of starting a process that reads the configuration files back.
+ * The framework is loaded by an isolated class loader out of the platform classpath and the bundles are installed
+ * directly. Only platforms with an {@link EmbeddedPlatformBuilder} can be launched this way.
+ * As the framework classes are not visible to runner, the framework is driven reflectively.
+ * Runners created by an {@link EmbeddedHost} share the class loader of the platform classpath with the other
+ * frameworks of the host.
+ *
+ * @since 1.8.6
+ */
+public class EmbeddedJavaRunner
+    implements StoppableJavaRunner
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOG = LogFactory.getLog( EmbeddedJavaRunner.class );
+    /**
+     * Service loader file that names the framework factory.
+     */
+    private static final String FRAMEWORK_FACTORY = "META-INF/services/org.osgi.framework.launch.FrameworkFactory";
+    /**
+     * Start level service.
+     */
+    private static final String START_LEVEL = "org.osgi.service.startlevel.StartLevel";
+    /**
+     * Maximum time to wait for the framework to stop on shutdown, in milliseconds.
+     */
+    private static final long STOP_TIMEOUT = 30000;
+
+    /**
+     * If the launch should wait for platform shutdown.
+     */
+    private final boolean m_wait;
+    /**
+     * Host that shares the platform class loader. Null if not hosted.
+     */
+    private final EmbeddedHost m_host;
+    /**
+     * Launched framework. Null if not launched.
+     */
+    private Object m_framework;
+
+    /**
+     * Constructor.
+     */
+    public EmbeddedJavaRunner()
+    {
+        this( true );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param wait should wait for framework exit
+     */
+    public EmbeddedJavaRunner( final boolean wait )
+    {
+        m_wait = wait;
+        m_host = null;
+    }
+
+    /**
+     * Constructor of a runner hosted by an embedded host. Does not wait for framework exit.
+     *
+     * @param host embedded host
+     */
+    EmbeddedJavaRunner( final EmbeddedHost host )
+    {
+        m_wait = false;
+        m_host = host;
+    }
+
+    /**
+     * Platforms that do not support an embedded launch end up here.
+     *
+     * @throws PlatformException always
+     */
+    public void exec( final String[] vmOptions,
+                      final String[] classpath,
+                      final String mainClass,
+                      final String[] programOptions,
+                      final String javaHome,
+                      final File workingDir,
+                      final String[] environmentVariables )
+        throws PlatformException
+    {
+        throw new PlatformException(
+            "Platform with main class [" + mainClass + "] does not support an embedded launch"
+        );
+    }
+
+    /**
+     * Platforms that do not support an embedded launch end up here.
+     *
+     * @throws PlatformException always
+     */
+    public void exec( final String[] vmOptions,
+                      final String[] classpath,
+                      final String mainClass,
+                      final String[] programOptions,
+                      final String javaHome,
+                      final File workingDir )
+        throws PlatformException
+    {
+        exec( vmOptions, classpath, mainClass, programOptions, javaHome, workingDir, null );
+    }
+
+    /**
+     * Launches the framework.
+     *
+     * @param classpath           platform classpath, with entries relative to working directory or absolute
+     * @param frameworkProperties properties the framework is created with
+     * @param bundles             bundles to install
+     * @param bundleStartLevel    start level of bundles that do not have one; can be null
+     * @param workingDirectory    working directory
+     *
+     * @throws PlatformException if the framework cannot be launched
+     */
+    public void launch( final String[] classpath,
+                        final Map<String, String> frameworkProperties,
+                        final List<BundleReference> bundles,
+                        final Integer bundleStartLevel,
+                        final File workingDirectory )
+        throws PlatformException
+    {
+        final Object framework;
+        synchronized( this )
+        {
+            if( m_framework != null )
+            {
+                throw new PlatformException( "Platform already started" );
+            }
+            final Trace.Span span = Trace.begin( "embed", "framework" );
+            try
+            {
+                final URL[] urls = toURLs( classpath, workingDirectory );
+                framework = start(
+                    m_host == null ? createClassLoader( urls ) : m_host.getClassLoader( urls ),
+                    frameworkProperties,
+                    bundles,
+                    bundleStartLevel
+                );
+            }
+            finally
+            {
+                span.end();
+            }
+            m_framework = framework;
+            if( m_host != null )
+            {
+                m_host.started( this );
+            }
+        }
+        if( m_host != null )
+        {
+            // hosted frameworks live alongside each other, there is nothing to wait for
+            return;
+        }
+        LOG.info( "Runner has successfully finished his job!" );
+        Info.println(); // print an empty line
+        if( m_wait )
+        {
+            try
+            {
+                invoke( framework, "waitForStop", 0L );
+            }
+            catch( Exception e )
+            {
+                throw new PlatformException( "Cannot wait for the framework to stop", e );
+            }
+            finally
+            {
+                synchronized( this )
+                {
+                    if( m_framework == framework )
+                    {
+                        m_framework = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the launched framework, an org.osgi.framework.launch.Framework loaded by the isolated class loader.
+     *
+     * @return launched framework or null if not launched
+     */
+    public synchronized Object getFramework()
+    {
+        return m_framework;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void shutdown()
+    {
+        final Object framework;
+        synchronized( this )
+        {
+            framework = m_framework;
+            m_framework = null;
+        }
+        if( framework == null )
+        {
+            return;
+        }
+        if( m_host != null )
+        {
+            m_host.stopped( this );
+        }
+        LOG.debug( "Stopping embedded framework" );
+        try
+        {
+            invoke( framework, "stop" );
+            invoke( framework, "waitForStop", STOP_TIMEOUT );
+        }
+        catch( Exception e )
+        {
+            LOG.warn( "Cannot stop the embedded framework: " + e.getMessage() );
+        }
+    }
+
+    /**
+     * Creates the framework, installs the bundles and starts it.
+     *
+     * @param classLoader         isolated class loader of the framework
+     * @param frameworkProperties properties the framework is created with
+     * @param bundles             bundles to install
+     * @param bundleStartLevel    start level of bundles that do not have one; can be null
+     *
+     * @return started framework
+     *
+     * @throws PlatformException if the framework cannot be started
+     */
+    private static Object start( final ClassLoader classLoader,
+                                 final Map<String, String> frameworkProperties,
+                                 final List<BundleReference> bundles,
+                                 final Integer bundleStartLevel )
+        throws PlatformException
+    {
+        final ClassLoader tcclBackup = Thread.currentThread().getContextClassLoader();
+        Object framework = null;
+        try
+        {
+            Thread.currentThread().setContextClassLoader( classLoader );
+            final Object factory = classLoader.loadClass( getFrameworkFactoryName( classLoader ) ).newInstance();
+            framework = invoke( factory, "newFramework", new HashMap<String, String>( frameworkProperties ) );
+            invoke( framework, "init" );
+            final Object bundleContext = invoke( framework, "getBundleContext" );
+            final Object startLevel = getService( bundleContext, START_LEVEL );
+            if( startLevel != null && bundleStartLevel != null )
+            {
+                invoke( startLevel, "setInitialBundleStartLevel", bundleStartLevel );
+            }
+            final List<Object> toStart = new ArrayList<Object>();
+            if( bundles != null )
+            {
+                for( BundleReference reference : bundles )
+                {
+                    final Object bundle = install( bundleContext, reference );
+                    if( startLevel != null && reference.getStartLevel() != null )
+                    {
+                        invoke( startLevel, "setBundleStartLevel", bundle, reference.getStartLevel() );
+                    }
+                    if( reference.shouldStart() != null && reference.shouldStart() )
+                    {
+                        toStart.add( bundle );
+                    }
+                }
+            }
+            // bundles are only marked as started; they start once the framework reaches their start level
+            for( Object bundle : toStart )
+            {
+                invoke( bundle, "start" );
+            }
+            invoke( framework, "start" );
+            return framework;
+        }
+        catch( PlatformException e )
+        {
+            stopQuietly( framework );
+            throw e;
+        }
+        catch( Exception e )
+        {
+            stopQuietly( framework );
+            throw new PlatformException( "Cannot launch the embedded framework", e );
+        }
+        finally
+        {
+            Thread.currentThread().setContextClassLoader( tcclBackup );
+        }
+    }
+
+    /**
+     * Installs a bundle from its content, so the framework does not have to resolve the url itself.
+     *
+     * @param bundleContext system bundle context
+     * @param reference     bundle to install
+     *
+     * @return installed bundle
+     *
+     * @throws Exception if the bundle cannot be installed
+     */
+    private static Object install( final Object bundleContext, final BundleReference reference )
+        throws Exception
+    {
+        final URL url = reference.getURL();
+        if( url == null )
+        {
+            throw new PlatformException( "The file from bundle to install cannot be null" );
+        }
+        LOG.debug( "Installing bundle [" + url + "]" );
+        final InputStream in = url.openStream();
+        try
+        {
+            return invoke( bundleContext, "installBundle", url.toExternalForm(), in );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns a service of the framework.
+     *
+     * @param bundleContext system bundle context
+     * @param clazz         service class name
+     *
+     * @return service or null if not available
+     *
+     * @throws Exception if the service cannot be looked up
+     */
+    private static Object getService( final Object bundleContext, final String clazz )
+        throws Exception
+    {
+        final Object reference = invoke( bundleContext, "getServiceReference", clazz );
+        if( reference == null )
+        {
+            LOG.debug( "Service [" + clazz + "] is not available. Start levels will not be set" );
+            return null;
+        }
+        return invoke( bundleContext, "getService", reference );
+    }
+
+    /**
+     * Returns the class name of the framework factory, as named by the service loader file of the platform.
+     *
+     * @param classLoader isolated class loader of the framework
+     *
+     * @return framework factory class name
+     *
+     * @throws PlatformException if the platform does not have a framework factory
+     * @throws IOException       if the service loader file cannot be read
+     */
+    private static String getFrameworkFactoryName( final ClassLoader classLoader )
+        throws PlatformException, IOException
+    {
+        final URL url = classLoader.getResource( FRAMEWORK_FACTORY );
+        if( url == null )
+        {
+            throw new PlatformException(
+                "Platform does not support the OSGi launch api (no " + FRAMEWORK_FACTORY + ")"
+            );
+        }
+        final BufferedReader reader = new BufferedReader( new InputStreamReader( url.openStream(), "UTF-8" ) );
+        try
+        {
+            String line;
+            while( ( line = reader.readLine() ) != null )
+            {
+                final int comment = line.indexOf( '#' );
+                if( comment >= 0 )
+                {
+                    line = line.substring( 0, comment );
+                }
+                line = line.trim();
+                if( line.length() > 0 )
+                {
+                    return line;
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        throw new PlatformException( "Platform does not name a framework factory in " + FRAMEWORK_FACTORY );
+    }
+
+    /**
+     * Invokes a public method of a framework object, found by name and arguments.
+     *
+     * @param target    framework object
+     * @param name      method name
+     * @param arguments method arguments
+     *
+     * @return method result
+     *
+     * @throws Exception re-thrown from the invoked method or if the method cannot be found
+     */
+    private static Object invoke( final Object target, final String name, final Object... arguments )
+        throws Exception
+    {
+        final Method method = findMethod( target.getClass(), name, arguments );
+        if( method == null )
+        {
+            throw new NoSuchMethodException( target.getClass().getName() + "." + name );
+        }
+        try
+        {
+            return method.invoke( target, arguments );
+        }
+        catch( InvocationTargetException e )
+        {
+            if( e.getCause() instanceof Exception )
+            {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Finds a public method by name and arguments, declared by a public class or interface (framework implementation
+     * classes are not necessarily public).
+     *
+     * @param clazz     class to search
+     * @param name      method name
+     * @param arguments method arguments
+     *
+     * @return found method or null if not found
+     */
+    private static Method findMethod( final Class<?> clazz, final String name, final Object[] arguments )
+    {
+        if( Modifier.isPublic( clazz.getModifiers() ) )
+        {
+            for( Method method : clazz.getMethods() )
+            {
+                if( method.getName().equals( name ) && Modifier.isPublic( method.getDeclaringClass().getModifiers() )
+                    && isApplicable( method.getParameterTypes(), arguments ) )
+                {
+                    return method;
+                }
+            }
+        }
+        for( Class<?> implemented : clazz.getInterfaces() )
+        {
+            final Method method = findMethod( implemented, name, arguments );
+            if( method != null )
+            {
+                return method;
+            }
+        }
+        return clazz.getSuperclass() == null ? null : findMethod( clazz.getSuperclass(), name, arguments );
+    }
+
+    /**
+     * Checks if arguments can be passed to parameters.
+     *
+     * @param types     parameter types
+     * @param arguments arguments
+     *
+     * @return true if applicable
+     */
+    private static boolean isApplicable( final Class<?>[] types, final Object[] arguments )
+    {
+        if( types.length != arguments.length )
+        {
+            return false;
+        }
+        for( int i = 0; i < types.length; i++ )
+        {
+            final Object argument = arguments[ i ];
+            if( types[ i ].isPrimitive() )
+            {
+                if( !( ( types[ i ] == Integer.TYPE && argument instanceof Integer )
+                       || ( types[ i ] == Long.TYPE && argument instanceof Long ) ) )
+                {
+                    return false;
+                }
+            }
+            else if( argument != null && !types[ i ].isInstance( argument ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void stopQuietly( final Object framework )
+    {
+        if( framework != null )
+        {
+            try
+            {
+                invoke( framework, "stop" );
+            }
+            catch( Exception ignore )
+            {
+                // already failing
+            }
+        }
+    }
+
+    /**
+     * Creates the isolated class loader of the framework.
+     *
+     * @param urls classpath urls
+     *
+     * @return class loader
+     */
+    static URLClassLoader createClassLoader( final URL[] urls )
+    {
+        return new URLClassLoader( urls, EmbeddedJavaRunner.class.getClassLoader().getParent() );
+    }
+
+    /**
+     * Converts classpath entries to urls.
+     *
+     * @param classpath        classpath entries
+     * @param workingDirectory directory relative entries are relative to
+     *
+     * @return classpath urls
+     *
+     * @throws PlatformException if classpath entries cannot be converted to urls
+     */
+    private static URL[] toURLs( final String[] classpath, final File workingDirectory )
+        throws PlatformException
+    {
+        final List<URL> urls = new ArrayList<URL>();
+        if( classpath != null )
+        {
+            for( String path : classpath )
+            {
+                if( path.trim().length() == 0 )
+                {
+                    continue;
+                }
+                File file = new File( path );
+                if( !file.isAbsolute() && workingDirectory != null )
+                {
+                    file = new File( workingDirectory, path );
+                }
+                try
+                {
+                    urls.add( file.toURI().toURL() );
+                }
+                catch( MalformedURLException e )
+                {
+                    throw new PlatformException( "Cannot setup target framework classpath", e );
+                }
+            }
+        }
+        return urls.toArray( new URL[urls.size()] );
+    }
+
+}
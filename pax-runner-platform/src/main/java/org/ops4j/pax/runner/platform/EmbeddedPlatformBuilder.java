@@ -0,0 +1,47 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform;
+
+import java.util.Map;
+
+/**
+ * A {@link PlatformBuilder} of a platform that can be launched embedded, through the OSGi launch api
+ * (org.osgi.framework.launch.FrameworkFactory), by an {@link EmbeddedJavaRunner}. An embedded launch does not use the
+ * configuration files written by {@link #prepare(PlatformContext)} nor the main class: the framework is created with
+ * the properties returned by {@link #getFrameworkProperties(PlatformContext)} and the bundles are installed directly.
+ *
+ * @since 1.8.6
+ */
+public interface EmbeddedPlatformBuilder
+    extends PlatformBuilder
+{
+
+    /**
+     * Returns the properties the framework is created with (storage, start level, system packages, ...) including the
+     * platform properties.
+     *
+     * @param context context information
+     *
+     * @return framework properties
+     *
+     * @throws PlatformException if the properties cannot be determined
+     */
+    Map<String, String> getFrameworkProperties( PlatformContext context )
+        throws PlatformException;
+
+}
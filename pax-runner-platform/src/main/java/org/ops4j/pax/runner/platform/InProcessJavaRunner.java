@@ -20,6 +20,8 @@ package org.ops4j.pax.runner.platform;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.ops4j.pax.runner.commons.Info;
+import org.ops4j.pax.runner.commons.ScopedSystemProperties;
+import org.ops4j.pax.runner.commons.Trace;
 import org.ops4j.pax.runner.handler.internal.URLUtils;
 
 import java.io.File;
@@ -35,6 +37,8 @@ import java.util.Properties;
 
 /**
  * In process Java Runner. No external process will be started.
+ * The system properties set via vm options are bound to the thread running the framework main method, so they are not
+ * seen by (and do not replace the system properties of) other runs of the same jvm.
  *
  * @author Alin Dreghiciu (adreghiciu@gmail.com)
  * @since 0.20.0, May 10, 2009
@@ -89,18 +93,27 @@ public class InProcessJavaRunner
         m_frameworkActive = true;
 
         final URLClassLoader classLoader = createClassLoader( classpath );
-        final Properties systemProps = extractSystemProperties( vmOptions );
+        final ScopedSystemProperties scopedProps = ScopedSystemProperties.install();
+        final Properties systemProps = extractSystemProperties( scopedProps.snapshot(), vmOptions );
 
         final ClassLoader tcclBackup = Thread.currentThread().getContextClassLoader();
-        final Properties systemPropsBackup = System.getProperties();
         final URLStreamHandlerFactory handlerFactoryBackup = URLUtils.resetURLStreamHandlerFactory();
         try
         {
             Thread.currentThread().setContextClassLoader( classLoader );
-            System.setProperties( systemProps );
+            scopedProps.bind( systemProps );
 
-            final Class<?> clazz = classLoader.loadClass( mainClass );
-            final Method mainMethod = clazz.getMethod( "main", String[].class );
+            final Method mainMethod;
+            final Trace.Span span = Trace.begin( "spawn", mainClass );
+            try
+            {
+                final Class<?> clazz = classLoader.loadClass( mainClass );
+                mainMethod = clazz.getMethod( "main", String[].class );
+            }
+            finally
+            {
+                span.end();
+            }
 
             LOG.info( "Runner has successfully finished his job!" );
             Info.println(); // print an empty line
@@ -126,7 +139,7 @@ public class InProcessJavaRunner
         finally
         {
             URLUtils.setURLStreamHandlerFactory( handlerFactoryBackup );
-            System.setProperties( systemPropsBackup );
+            scopedProps.unbind();
             Thread.currentThread().setContextClassLoader( tcclBackup );
         }
     }
@@ -167,14 +180,15 @@ public class InProcessJavaRunner
     /**
      * Extract from provided virtual machine options the system properties = vm option sthat start with -D.
      *
-     * @param vmOptions virtual machine options
+     * @param currentProps current system properties
+     * @param vmOptions    virtual machine options
      *
      * @return current system properties + configured system properties
      */
-    private static Properties extractSystemProperties( final String[] vmOptions )
+    static Properties extractSystemProperties( final Properties currentProps, final String[] vmOptions )
     {
         final Properties systemProps = new Properties();
-        systemProps.putAll( System.getProperties() );
+        systemProps.putAll( currentProps );
         for( String vmOption : vmOptions )
         {
             if( vmOption.startsWith( "-D" ) && vmOption.length() > 3 && vmOption.contains( "=" ) )
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform;
+
+import java.util.Dictionary;
+
+/**
+ * Platform that can download bundles in background, before it is started. Platforms that do not implement it download
+ * all bundles on start.
+ *
+ * @since 1.8.6
+ */
+public interface QueueingPlatform
+    extends Platform
+{
+
+    /**
+     * Creates a queue of bundles to be downloaded in background, before the platform is started. Downloads are done
+     * using the same configuration as for start up.
+     *
+     * @param config service configuration properties
+     *
+     * @return a download queue
+     *
+     * @throws org.ops4j.pax.runner.platform.PlatformException
+     *          if something goes wrong
+     */
+    DownloadQueue createDownloadQueue( Dictionary config )
+        throws PlatformException;
+
+}
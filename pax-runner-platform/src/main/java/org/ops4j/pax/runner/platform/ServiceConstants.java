@@ -121,6 +121,38 @@ public interface ServiceConstants
      * Use absolute file paths property name.
      */
     static final String CONFIG_USE_ABSOLUTE_FILE_PATHS = PID + ".useAbsoluteFilePaths";
+    /**
+     * Number of concurrent downloads property name.
+     */
+    static final String CONFIG_DOWNLOAD_THREADS = PID + ".downloadThreads";
+    /**
+     * Use bundle store property name.
+     */
+    static final String CONFIG_USE_BUNDLE_STORE = PID + ".useBundleStore";
+    /**
+     * Bundle store directory property name.
+     */
+    static final String CONFIG_BUNDLE_STORE = PID + ".bundleStore";
+    /**
+     * Bundle store maximum size property name.
+     */
+    static final String CONFIG_BUNDLE_STORE_MAX_SIZE = PID + ".bundleStoreMaxSize";
+    /**
+     * Bundle store maximum age property name.
+     */
+    static final String CONFIG_BUNDLE_STORE_MAX_AGE = PID + ".bundleStoreMaxAge";
+    /**
+     * Maximum number of concurrent downloads from the same host property name.
+     */
+    static final String CONFIG_DOWNLOADS_PER_HOST = PID + ".downloadsPerHost";
+    /**
+     * Download connect timeout property name.
+     */
+    static final String CONFIG_CONNECT_TIMEOUT = PID + ".connectTimeout";
+    /**
+     * Download read timeout property name.
+     */
+    static final String CONFIG_READ_TIMEOUT = PID + ".readTimeout";
 
     /**
      * Environment Options property name.
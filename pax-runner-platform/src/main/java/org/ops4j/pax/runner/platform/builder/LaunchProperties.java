@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.builder;
+
+import java.io.File;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.runner.platform.Configuration;
+import org.ops4j.pax.runner.platform.PlatformContext;
+import org.osgi.framework.Constants;
+
+/**
+ * Builds the standard OSGi launch properties of a framework launched embedded (see
+ * {@link org.ops4j.pax.runner.platform.EmbeddedPlatformBuilder}), out of the platform context. Platform builders add
+ * their framework specific properties on top.
+ *
+ * @since 1.8.6
+ */
+public class LaunchProperties
+{
+
+    /**
+     * Framework storage directory.
+     */
+    public static final String FRAMEWORK_STORAGE = "org.osgi.framework.storage";
+    /**
+     * Framework storage cleaning policy.
+     */
+    public static final String FRAMEWORK_STORAGE_CLEAN = "org.osgi.framework.storage.clean";
+    /**
+     * Framework beginning start level.
+     */
+    public static final String FRAMEWORK_BEGINNING_STARTLEVEL = "org.osgi.framework.startlevel.beginning";
+
+    /**
+     * Utility class.
+     */
+    private LaunchProperties()
+    {
+        // utility class
+    }
+
+    /**
+     * Creates the launch properties: storage, storage cleaning, beginning start level, execution environment, boot
+     * delegation, system packages and the platform properties.
+     *
+     * @param context          platform context
+     * @param storageDirectory framework storage directory
+     *
+     * @return launch properties
+     */
+    public static Map<String, String> create( final PlatformContext context, final File storageDirectory )
+    {
+        NullArgumentException.validateNotNull( context, "Platform context" );
+        NullArgumentException.validateNotNull( storageDirectory, "Storage directory" );
+        final Configuration configuration = context.getConfiguration();
+        final Map<String, String> properties = new TreeMap<String, String>();
+        properties.put( FRAMEWORK_STORAGE, storageDirectory.getAbsolutePath() );
+        final Boolean usePersistedState = configuration.usePersistedState();
+        if( usePersistedState != null && !usePersistedState )
+        {
+            properties.put( FRAMEWORK_STORAGE_CLEAN, "onFirstInit" );
+        }
+        final Integer startLevel = configuration.getStartLevel();
+        if( startLevel != null )
+        {
+            properties.put( FRAMEWORK_BEGINNING_STARTLEVEL, startLevel.toString() );
+        }
+        if( context.getExecutionEnvironment() != null )
+        {
+            properties.put( Constants.FRAMEWORK_EXECUTIONENVIRONMENT, context.getExecutionEnvironment() );
+        }
+        final String bootDelegation = configuration.getBootDelegation();
+        if( bootDelegation != null )
+        {
+            properties.put( Constants.FRAMEWORK_BOOTDELEGATION, bootDelegation );
+        }
+        if( context.getSystemPackages() != null )
+        {
+            properties.put( Constants.FRAMEWORK_SYSTEMPACKAGES, context.getSystemPackages() );
+        }
+        // platform properties are visible to bundles as framework properties instead of system properties
+        final Properties platformProperties = context.getProperties();
+        if( platformProperties != null )
+        {
+            final Enumeration<?> names = platformProperties.propertyNames();
+            while( names.hasMoreElements() )
+            {
+                final String name = (String) names.nextElement();
+                properties.put( name, platformProperties.getProperty( name ) );
+            }
+        }
+        return properties;
+    }
+
+}
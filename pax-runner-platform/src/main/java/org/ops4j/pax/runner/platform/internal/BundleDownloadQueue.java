@@ -0,0 +1,217 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.runner.platform.BundleReference;
+import org.ops4j.pax.runner.platform.DownloadQueue;
+
+/**
+ * Download queue that downloads offered bundles in background, using the same download settings as platform start
+ * up. Pending downloads are kept by url, so once the queue is taken over by platform start, bundles already offered
+ * are not downloaded again.
+ *
+ * @since 1.8.6
+ */
+public class BundleDownloadQueue
+    implements DownloadQueue
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( BundleDownloadQueue.class );
+
+    /**
+     * Platform doing the downloads. Cannot be null.
+     */
+    private final PlatformImpl m_platform;
+    /**
+     * Executor of downloads. Cannot be null.
+     */
+    private final DownloadExecutor m_downloader;
+    /**
+     * Working directory, bundle store and metadata index. Cannot be null.
+     */
+    private final DownloadContext m_downloadContext;
+    /**
+     * Download settings, as resolved from platform configuration.
+     */
+    private final boolean m_overwrite;
+    private final boolean m_autoWrap;
+    private final boolean m_keepOriginalUrls;
+    private final boolean m_validateBundles;
+    private final boolean m_skipInvalidBundles;
+    /**
+     * Pending downloads keyed by url and overwrite flag.
+     */
+    private final Map<String, Future<File>> m_downloads;
+    /**
+     * True if queue was closed or taken over by platform start.
+     */
+    private boolean m_closed;
+
+    /**
+     * Creates a new download queue.
+     *
+     * @param platform           platform doing the downloads; mandatory
+     * @param downloader         executor of downloads; mandatory
+     * @param downloadContext    working directory, bundle store and metadata index; mandatory
+     * @param overwrite          if the bundles should be overwritten
+     * @param autoWrap           wheather or not auto wrapping should take place
+     * @param keepOriginalUrls   if the provisioned bundles should be cached or not
+     * @param validateBundles    if downloaded bundles osgi headers should be checked
+     * @param skipInvalidBundles if invalid bundles (failing validation) should be skipped
+     */
+    public BundleDownloadQueue( final PlatformImpl platform,
+                                final DownloadExecutor downloader,
+                                final DownloadContext downloadContext,
+                                final boolean overwrite,
+                                final boolean autoWrap,
+                                final boolean keepOriginalUrls,
+                                final boolean validateBundles,
+                                final boolean skipInvalidBundles )
+    {
+        NullArgumentException.validateNotNull( platform, "Platform" );
+        NullArgumentException.validateNotNull( downloader, "Downloader" );
+        NullArgumentException.validateNotNull( downloadContext, "Download context" );
+        m_platform = platform;
+        m_downloader = downloader;
+        m_downloadContext = downloadContext;
+        m_overwrite = overwrite;
+        m_autoWrap = autoWrap;
+        m_keepOriginalUrls = keepOriginalUrls;
+        m_validateBundles = validateBundles;
+        m_skipInvalidBundles = skipInvalidBundles;
+        m_downloads = new HashMap<String, Future<File>>();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void offer( final BundleReference bundle )
+    {
+        NullArgumentException.validateNotNull( bundle, "Bundle" );
+        if( m_closed || m_keepOriginalUrls || bundle.getURL() == null )
+        {
+            return;
+        }
+        final URL url = m_platform.determineDownloadURL( bundle.getURL(), m_autoWrap );
+        if( !m_platform.shouldDownload( url, m_keepOriginalUrls ) )
+        {
+            return;
+        }
+        final boolean overwrite = m_overwrite || bundle.shouldUpdate();
+        final String key = key( url, overwrite );
+        if( !m_downloads.containsKey( key ) )
+        {
+            LOGGER.debug( "Downloading [" + url + "] in background" );
+            m_downloads.put(
+                key,
+                m_platform.downloadBundle(
+                    m_downloader, m_downloadContext, url, bundle.getName(), overwrite, false, m_validateBundles,
+                    m_skipInvalidBundles
+                )
+            );
+        }
+    }
+
+    /**
+     * Cancels pending downloads and saves the indexes, unless the queue was taken over by platform start.
+     */
+    public synchronized void close()
+    {
+        if( m_closed )
+        {
+            return;
+        }
+        m_closed = true;
+        m_downloader.shutdown();
+        m_downloadContext.saveIndexes();
+    }
+
+    /**
+     * Takes over the queue, if still open and created with the same download settings. Once taken over, closing the
+     * queue has no effect, as the executor and indexes are managed by the caller.
+     *
+     * @param workDir            working directory
+     * @param overwrite          if the bundles should be overwritten
+     * @param autoWrap           wheather or not auto wrapping should take place
+     * @param keepOriginalUrls   if the provisioned bundles should be cached or not
+     * @param validateBundles    if downloaded bundles osgi headers should be checked
+     * @param skipInvalidBundles if invalid bundles (failing validation) should be skipped
+     *
+     * @return true if taken over, false if the queue cannot be used with the specified settings
+     */
+    synchronized boolean takeOver( final File workDir,
+                                   final boolean overwrite,
+                                   final boolean autoWrap,
+                                   final boolean keepOriginalUrls,
+                                   final boolean validateBundles,
+                                   final boolean skipInvalidBundles )
+    {
+        if( m_closed
+            || !m_downloadContext.getWorkingDirectory().equals( workDir )
+            || m_overwrite != overwrite
+            || m_autoWrap != autoWrap
+            || m_keepOriginalUrls != keepOriginalUrls
+            || m_validateBundles != validateBundles
+            || m_skipInvalidBundles != skipInvalidBundles )
+        {
+            return false;
+        }
+        m_closed = true;
+        return true;
+    }
+
+    /**
+     * Returns the download of an url, if the url was offered.
+     *
+     * @param url       url to be downloaded
+     * @param overwrite if the bundle should be overwritten
+     *
+     * @return pending download or null if the url was not offered
+     */
+    synchronized Future<File> getDownload( final URL url, final boolean overwrite )
+    {
+        return m_downloads.get( key( url, overwrite ) );
+    }
+
+    DownloadExecutor getDownloader()
+    {
+        return m_downloader;
+    }
+
+    DownloadContext getDownloadContext()
+    {
+        return m_downloadContext;
+    }
+
+    private static String key( final URL url, final boolean overwrite )
+    {
+        return ( overwrite ? "overwrite:" : "" ) + url.toExternalForm();
+    }
+
+}
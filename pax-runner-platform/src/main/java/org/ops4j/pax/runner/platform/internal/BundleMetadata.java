@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import org.ops4j.lang.NullArgumentException;
+import org.osgi.framework.Constants;
+
+/**
+ * Metadata of a downloaded file, as needed for caching and validation: manifest headers and content checksum.
+ *
+ * @since 1.8.6
+ */
+public class BundleMetadata
+{
+
+    /**
+     * True if the file is a readable jar.
+     */
+    private final boolean m_jar;
+    /**
+     * True if the jar has a manifest.
+     */
+    private final boolean m_manifest;
+    /**
+     * Bundle-SymbolicName header, including directives. Null if not present.
+     */
+    private final String m_symbolicName;
+    /**
+     * Bundle-Version header. Null if not present.
+     */
+    private final String m_version;
+    /**
+     * Bundle-Name header. Null if not present.
+     */
+    private final String m_name;
+    /**
+     * SHA-256 checksum of file content. Null if not known.
+     */
+    private final String m_checksum;
+
+    /**
+     * Creates a new bundle metadata.
+     *
+     * @param jar          true if the file is a readable jar
+     * @param manifest     true if the jar has a manifest
+     * @param symbolicName Bundle-SymbolicName header
+     * @param version      Bundle-Version header
+     * @param name         Bundle-Name header
+     * @param checksum     SHA-256 checksum of file content
+     */
+    public BundleMetadata( final boolean jar,
+                           final boolean manifest,
+                           final String symbolicName,
+                           final String version,
+                           final String name,
+                           final String checksum )
+    {
+        m_jar = jar;
+        m_manifest = manifest;
+        m_symbolicName = symbolicName;
+        m_version = version;
+        m_name = name;
+        m_checksum = checksum;
+    }
+
+    /**
+     * Reads metadata from a file, without calculating the content checksum.
+     *
+     * @param file file to read from
+     *
+     * @return file metadata
+     */
+    public static BundleMetadata read( final File file )
+    {
+        NullArgumentException.validateNotNull( file, "File" );
+        JarFile jar = null;
+        try
+        {
+            // verify that is a valid jar. Do not verify that is signed (the false param).
+            jar = new JarFile( file, false );
+            final Manifest manifest = jar.getManifest();
+            if( manifest == null )
+            {
+                return new BundleMetadata( true, false, null, null, null, null );
+            }
+            return new BundleMetadata(
+                true,
+                true,
+                manifest.getMainAttributes().getValue( Constants.BUNDLE_SYMBOLICNAME ),
+                manifest.getMainAttributes().getValue( Constants.BUNDLE_VERSION ),
+                manifest.getMainAttributes().getValue( Constants.BUNDLE_NAME ),
+                null
+            );
+        }
+        catch( IOException ignore )
+        {
+            return new BundleMetadata( false, false, null, null, null, null );
+        }
+        finally
+        {
+            if( jar != null )
+            {
+                try
+                {
+                    jar.close();
+                }
+                catch( IOException ignore )
+                {
+                    // just ignore as this is less probably to happen.
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of this metadata having the provided checksum.
+     *
+     * @param checksum content checksum
+     *
+     * @return metadata with checksum
+     */
+    public BundleMetadata withChecksum( final String checksum )
+    {
+        return new BundleMetadata( m_jar, m_manifest, m_symbolicName, m_version, m_name, checksum );
+    }
+
+    /**
+     * Returns true if file is a valid bundle: a readable jar that has a manifest containing at least an entry for
+     * Bundle-SymbolicName or Bundle-Name (R3).
+     *
+     * @return true if file is a valid bundle
+     */
+    public boolean isValidBundle()
+    {
+        return m_jar && m_manifest && ( m_symbolicName != null || m_name != null );
+    }
+
+    public boolean isJar()
+    {
+        return m_jar;
+    }
+
+    public boolean hasManifest()
+    {
+        return m_manifest;
+    }
+
+    public String getSymbolicName()
+    {
+        return m_symbolicName;
+    }
+
+    public String getVersion()
+    {
+        return m_version;
+    }
+
+    public String getName()
+    {
+        return m_name;
+    }
+
+    public String getChecksum()
+    {
+        return m_checksum;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return new StringBuilder()
+            .append( "{" )
+            .append( "symbolicName=" ).append( m_symbolicName )
+            .append( ",version=" ).append( m_version )
+            .append( ",valid=" ).append( isValidBundle() )
+            .append( ",checksum=" ).append( m_checksum )
+            .append( "}" )
+            .toString();
+    }
+
+}
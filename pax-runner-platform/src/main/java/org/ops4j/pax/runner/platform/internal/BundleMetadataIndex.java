@@ -0,0 +1,348 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+
+/**
+ * Persistent index of downloaded files metadata. Entries are keyed by the file path and are valid as long as the size
+ * and last modification time of the file did not change, so on a warm start no jar has to be opened.
+ * The index is loaded once on creation and written back on {@link #save()}, only if changed. Indexes got via
+ * {@link #open(File)} stay loaded for the life of the jvm, so a long running process (as the launch daemon) does not load
+ * them again on every launch.
+ *
+ * @since 1.8.6
+ */
+public class BundleMetadataIndex
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( BundleMetadataIndex.class );
+    /**
+     * Property key suffixes.
+     */
+    private static final String SIZE = ".size";
+    private static final String LAST_MODIFIED = ".lastModified";
+    private static final String JAR = ".jar";
+    private static final String MANIFEST = ".manifest";
+    private static final String SYMBOLIC_NAME = ".symbolicName";
+    private static final String VERSION = ".version";
+    private static final String NAME = ".name";
+    private static final String CHECKSUM = ".checksum";
+    /**
+     * Indexes opened so far, by absolute path of the index file.
+     */
+    private static final ConcurrentMap<String, BundleMetadataIndex> OPENED =
+        new ConcurrentHashMap<String, BundleMetadataIndex>();
+
+    /**
+     * File where the index is persisted. Cannot be null.
+     */
+    private final File m_file;
+    /**
+     * Entries, keyed by absolute file path.
+     */
+    private final Map<String, Entry> m_entries;
+    /**
+     * True if entries changed since loaded.
+     */
+    private volatile boolean m_changed;
+    /**
+     * Size and last modification time of the file, as last loaded or saved.
+     */
+    private volatile String m_fileStamp;
+
+    /**
+     * Creates a new index, loading the entries from the file, if the file exists.
+     *
+     * @param file file where the index is persisted; mandatory
+     */
+    public BundleMetadataIndex( final File file )
+    {
+        NullArgumentException.validateNotNull( file, "Index file" );
+        m_file = file;
+        m_entries = new ConcurrentHashMap<String, Entry>();
+        load();
+    }
+
+    /**
+     * Returns the index persisted in a file. An index opened before is reused as long as the file was not changed since
+     * the index loaded or saved it (as by another process), otherwise the index is loaded again.
+     *
+     * @param file file where the index is persisted; mandatory
+     *
+     * @return index
+     */
+    public static BundleMetadataIndex open( final File file )
+    {
+        NullArgumentException.validateNotNull( file, "Index file" );
+        final String path = file.getAbsolutePath();
+        final BundleMetadataIndex opened = OPENED.get( path );
+        if( opened != null && stamp( opened.m_file ).equals( opened.m_fileStamp ) )
+        {
+            return opened;
+        }
+        final BundleMetadataIndex index = new BundleMetadataIndex( file );
+        OPENED.put( path, index );
+        return index;
+    }
+
+    /**
+     * Forgets the opened indexes persisted in a directory (or its sub directories), as when the directory is not used
+     * anymore. The indexes are not saved; a later {@link #open(File)} loads them again.
+     *
+     * @param directory directory of the index files; mandatory
+     */
+    public static void close( final File directory )
+    {
+        NullArgumentException.validateNotNull( directory, "Directory" );
+        final String prefix = directory.getAbsolutePath() + File.separator;
+        for( String path : OPENED.keySet() )
+        {
+            if( path.startsWith( prefix ) )
+            {
+                OPENED.remove( path );
+            }
+        }
+    }
+
+    /**
+     * Returns the metadata of a file, either from index, if the file did not change, or by reading the file.
+     *
+     * @param file file to get metadata for
+     *
+     * @return file metadata
+     *
+     * @throws IOException if content checksum cannot be calculated
+     */
+    public BundleMetadata get( final File file )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( file, "File" );
+        final String path = file.getAbsolutePath();
+        final long size = file.length();
+        final long lastModified = file.lastModified();
+        final Entry entry = m_entries.get( path );
+        if( entry != null && entry.size == size && entry.lastModified == lastModified )
+        {
+            return entry.metadata;
+        }
+        LOGGER.trace( "Reading metadata of [" + file + "]" );
+        final BundleMetadata metadata = BundleMetadata.read( file ).withChecksum( BundleStore.checksum( file ) );
+        m_entries.put( path, new Entry( size, lastModified, metadata ) );
+        m_changed = true;
+        return metadata;
+    }
+
+    /**
+     * Moves the entry of a file to another path, to be used after a file is renamed.
+     *
+     * @param from path before rename
+     * @param to   path after rename
+     */
+    public void moved( final File from, final File to )
+    {
+        final Entry entry = m_entries.remove( from.getAbsolutePath() );
+        if( entry != null )
+        {
+            m_entries.put( to.getAbsolutePath(), entry );
+            m_changed = true;
+        }
+    }
+
+    /**
+     * Saves the index, if changed since loaded. Entries of files that do not exist anymore are dropped.
+     */
+    public synchronized void save()
+    {
+        if( !m_changed )
+        {
+            return;
+        }
+        final Properties properties = new Properties();
+        for( Map.Entry<String, Entry> mapEntry : m_entries.entrySet() )
+        {
+            final String path = mapEntry.getKey();
+            if( !new File( path ).exists() )
+            {
+                continue;
+            }
+            final Entry entry = mapEntry.getValue();
+            properties.setProperty( path + SIZE, String.valueOf( entry.size ) );
+            properties.setProperty( path + LAST_MODIFIED, String.valueOf( entry.lastModified ) );
+            properties.setProperty( path + JAR, String.valueOf( entry.metadata.isJar() ) );
+            properties.setProperty( path + MANIFEST, String.valueOf( entry.metadata.hasManifest() ) );
+            setIfNotNull( properties, path + SYMBOLIC_NAME, entry.metadata.getSymbolicName() );
+            setIfNotNull( properties, path + VERSION, entry.metadata.getVersion() );
+            setIfNotNull( properties, path + NAME, entry.metadata.getName() );
+            setIfNotNull( properties, path + CHECKSUM, entry.metadata.getChecksum() );
+        }
+        OutputStream out = null;
+        try
+        {
+            m_file.getParentFile().mkdirs();
+            final File temp = new File( m_file.getParentFile(), m_file.getName() + ".tmp" );
+            out = new FileOutputStream( temp );
+            properties.store( out, "Pax Runner bundle metadata" );
+            out.close();
+            out = null;
+            m_file.delete();
+            if( !temp.renameTo( m_file ) )
+            {
+                LOGGER.warn( "Cannot rename " + temp + " to " + m_file );
+                return;
+            }
+            m_changed = false;
+            m_fileStamp = stamp( m_file );
+        }
+        catch( IOException e )
+        {
+            LOGGER.warn( "Cannot save bundle metadata index " + m_file + " due to: " + e.getMessage() );
+        }
+        finally
+        {
+            if( out != null )
+            {
+                try
+                {
+                    out.close();
+                }
+                catch( IOException ignore )
+                {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads index entries from file. If the file cannot be read the index starts empty.
+     */
+    private void load()
+    {
+        m_fileStamp = stamp( m_file );
+        if( !m_file.isFile() )
+        {
+            return;
+        }
+        final Properties properties = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( m_file );
+            properties.load( in );
+        }
+        catch( IOException e )
+        {
+            LOGGER.debug( "Cannot read bundle metadata index " + m_file + " due to: " + e.getMessage() );
+            return;
+        }
+        finally
+        {
+            if( in != null )
+            {
+                try
+                {
+                    in.close();
+                }
+                catch( IOException ignore )
+                {
+                    // ignore
+                }
+            }
+        }
+        for( Object key : properties.keySet() )
+        {
+            final String sizeKey = (String) key;
+            if( !sizeKey.endsWith( SIZE ) )
+            {
+                continue;
+            }
+            final String path = sizeKey.substring( 0, sizeKey.length() - SIZE.length() );
+            try
+            {
+                m_entries.put(
+                    path,
+                    new Entry(
+                        Long.parseLong( properties.getProperty( path + SIZE ) ),
+                        Long.parseLong( properties.getProperty( path + LAST_MODIFIED ) ),
+                        new BundleMetadata(
+                            Boolean.valueOf( properties.getProperty( path + JAR ) ),
+                            Boolean.valueOf( properties.getProperty( path + MANIFEST ) ),
+                            properties.getProperty( path + SYMBOLIC_NAME ),
+                            properties.getProperty( path + VERSION ),
+                            properties.getProperty( path + NAME ),
+                            properties.getProperty( path + CHECKSUM )
+                        )
+                    )
+                );
+            }
+            catch( NumberFormatException ignore )
+            {
+                // skip the invalid entry, metadata will be read again from file
+            }
+        }
+    }
+
+    private static String stamp( final File file )
+    {
+        return file.isFile() ? file.length() + "@" + file.lastModified() : "";
+    }
+
+    private static void setIfNotNull( final Properties properties, final String key, final String value )
+    {
+        if( value != null )
+        {
+            properties.setProperty( key, value );
+        }
+    }
+
+    /**
+     * An index entry.
+     */
+    private static class Entry
+    {
+
+        final long size;
+        final long lastModified;
+        final BundleMetadata metadata;
+
+        Entry( final long size, final long lastModified, final BundleMetadata metadata )
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.metadata = metadata;
+        }
+
+    }
+
+}
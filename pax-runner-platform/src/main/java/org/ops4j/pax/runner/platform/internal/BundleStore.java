@@ -0,0 +1,668 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+
+/**
+ * A host wide store of downloaded files, shared by all working directories. Files are stored once, under the name of
+ * their SHA-256 checksum, and a small entry per url remembers the checksum (and the http validators) of the content
+ * downloaded from that url. Working directories are populated via hard links to the stored files, falling back to a
+ * copy if hard links are not supported (by the file system or by the running JVM).
+ * Only content that does not change behind the same url is stored: maven snapshots are never stored and content of
+ * http urls has to be revalidated before being used. Entries not used for a while, or the least recently used ones
+ * when the store grows too big, are evicted.
+ * All changes to the store are made by renaming a temporary file, so more runners can share the store safely.
+ *
+ * @since 1.8.6
+ */
+public class BundleStore
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( BundleStore.class );
+    /**
+     * Directory of url entries, relative to store directory.
+     */
+    private static final String URLS_DIRECTORY = "urls";
+    /**
+     * Entry property of content checksum.
+     */
+    private static final String CHECKSUM = "checksum";
+    /**
+     * Entry property of ETag header.
+     */
+    private static final String ETAG = "etag";
+    /**
+     * Entry property of Last-Modified header.
+     */
+    private static final String LAST_MODIFIED = "lastModified";
+    /**
+     * Entry property of remote checksum header.
+     */
+    private static final String REMOTE_CHECKSUM = "remoteChecksum";
+    /**
+     * Extension of temporary files.
+     */
+    private static final String TEMP_EXTENSION = ".tmp";
+    /**
+     * Time, in milliseconds, a stored file without an entry is kept, as its entry may be written right now.
+     */
+    private static final long ORPHAN_GRACE_PERIOD = 60 * 60 * 1000L;
+    /**
+     * Files.createLink(Path,Path) method, if available (Java 7+). Null if not available.
+     */
+    private static final Method CREATE_LINK;
+    /**
+     * File.toPath() method, if available (Java 7+). Null if not available.
+     */
+    private static final Method TO_PATH;
+
+    static
+    {
+        Method createLink = null;
+        Method toPath = null;
+        try
+        {
+            final Class<?> pathClass = Class.forName( "java.nio.file.Path" );
+            createLink = Class.forName( "java.nio.file.Files" ).getMethod( "createLink", pathClass, pathClass );
+            toPath = File.class.getMethod( "toPath" );
+        }
+        catch( Exception ignore )
+        {
+            // hard links are not supported by this JVM so files will be copied
+            createLink = null;
+            toPath = null;
+        }
+        CREATE_LINK = createLink;
+        TO_PATH = toPath;
+    }
+
+    /**
+     * Store directory. Cannot be null.
+     */
+    private final File m_directory;
+    /**
+     * Maximum size of stored files, in bytes. 0 means no limit.
+     */
+    private final long m_maxSize;
+    /**
+     * Maximum time, in milliseconds, an entry is kept since last used. 0 means no limit.
+     */
+    private final long m_maxAge;
+
+    /**
+     * Creates a new bundle store, without limits.
+     *
+     * @param directory store directory; mandatory
+     */
+    public BundleStore( final File directory )
+    {
+        this( directory, 0, 0 );
+    }
+
+    /**
+     * Creates a new bundle store.
+     *
+     * @param directory store directory; mandatory
+     * @param maxSize   maximum size of stored files, in bytes; 0 means no limit
+     * @param maxAge    maximum time, in milliseconds, an entry is kept since last used; 0 means no limit
+     */
+    public BundleStore( final File directory, final long maxSize, final long maxAge )
+    {
+        NullArgumentException.validateNotNull( directory, "Bundle store directory" );
+        m_directory = directory;
+        m_maxSize = maxSize;
+        m_maxAge = maxAge;
+    }
+
+    /**
+     * Looks up the stored file for the content downloaded from an url. Finding the content marks the entry as used.
+     *
+     * @param url url of the file
+     *
+     * @return stored file or null if the url content is not stored
+     */
+    public File find( final URL url )
+    {
+        NullArgumentException.validateNotNull( url, "URL" );
+        final Properties entry = readEntry( getEntryFile( url ) );
+        if( entry == null )
+        {
+            return null;
+        }
+        final File stored = new File( m_directory, entry.getProperty( CHECKSUM ) );
+        if( !stored.isFile() )
+        {
+            return null;
+        }
+        getEntryFile( url ).setLastModified( System.currentTimeMillis() );
+        return stored;
+    }
+
+    /**
+     * Returns the validators of the stored content of an url.
+     *
+     * @param url url of the file
+     *
+     * @return validators or null if there are no validators or the url content is not stored
+     */
+    public DownloadValidators getValidators( final URL url )
+    {
+        NullArgumentException.validateNotNull( url, "URL" );
+        final Properties entry = readEntry( getEntryFile( url ) );
+        if( entry == null )
+        {
+            return null;
+        }
+        final DownloadValidators validators = new DownloadValidators(
+            entry.getProperty( ETAG ), entry.getProperty( LAST_MODIFIED ), entry.getProperty( REMOTE_CHECKSUM )
+        );
+        return validators.isEmpty() ? null : validators;
+    }
+
+    /**
+     * Checks if the content of an url can be stored. Maven snapshots change behind the same url and urls wrapping a
+     * remote url cannot be revalidated, so they are not stored.
+     *
+     * @param url url of the file
+     *
+     * @return true if the url content can be stored
+     */
+    public static boolean isStorable( final URL url )
+    {
+        NullArgumentException.validateNotNull( url, "URL" );
+        final String externalForm = url.toExternalForm();
+        if( externalForm.contains( "SNAPSHOT" ) )
+        {
+            return false;
+        }
+        return "mvn".equals( url.getProtocol() )
+               || needsRevalidation( url )
+               || !externalForm.matches( ".*(https?|ftp)://.*" );
+    }
+
+    /**
+     * Checks if the stored content of an url has to be revalidated before being used, because it can change behind the
+     * same url.
+     *
+     * @param url url of the file
+     *
+     * @return true for http urls
+     */
+    public static boolean needsRevalidation( final URL url )
+    {
+        NullArgumentException.validateNotNull( url, "URL" );
+        return "http".equals( url.getProtocol() ) || "https".equals( url.getProtocol() );
+    }
+
+    /**
+     * Adds the content of a downloaded file to store and remembers it as the content of the url.
+     *
+     * @param url  url from where the file was downloaded
+     * @param file downloaded file
+     *
+     * @return stored file
+     *
+     * @throws IOException if the file could not be stored
+     */
+    public File store( final URL url, final File file )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( file, "File" );
+        return store( url, file, checksum( file ), null );
+    }
+
+    /**
+     * Adds the content of a downloaded file, with an already known checksum, to store and remembers it as the content
+     * of the url.
+     *
+     * @param url        url from where the file was downloaded
+     * @param file       downloaded file
+     * @param checksum   SHA-256 checksum of file content
+     * @param validators validators of the downloaded content; can be null
+     *
+     * @return stored file
+     *
+     * @throws IOException if the file could not be stored
+     */
+    public File store( final URL url, final File file, final String checksum, final DownloadValidators validators )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( url, "URL" );
+        NullArgumentException.validateNotNull( file, "File" );
+        NullArgumentException.validateNotEmpty( checksum, "Checksum" );
+        final File stored = new File( m_directory, checksum );
+        if( !stored.isFile() )
+        {
+            m_directory.mkdirs();
+            final File temp = File.createTempFile( checksum, TEMP_EXTENSION, m_directory );
+            temp.delete();
+            linkOrCopy( file, temp );
+            if( !temp.renameTo( stored ) )
+            {
+                // most probably another runner stored the same content in the same time
+                temp.delete();
+                if( !stored.isFile() )
+                {
+                    throw new IOException( "Cannot rename " + temp + " to " + stored );
+                }
+            }
+            LOGGER.debug( "Stored [" + url + "] as [" + stored + "]" );
+        }
+        writeEntry( url, checksum, validators );
+        return stored;
+    }
+
+    /**
+     * Returns the store directory.
+     *
+     * @return store directory
+     */
+    public File getDirectory()
+    {
+        return m_directory;
+    }
+
+    /**
+     * Evicts the entries not used for longer then the maximum age and, if the stored files are bigger then the maximum
+     * size, the least recently used entries, then removes the stored files no longer referenced by an entry. Files
+     * linked into working directories are not affected, as they are links to the same content.
+     */
+    public void evict()
+    {
+        final long now = System.currentTimeMillis();
+        final File[] entryFiles = new File( m_directory, URLS_DIRECTORY ).listFiles();
+        final File[] storedFiles = m_directory.listFiles();
+        if( entryFiles == null || storedFiles == null )
+        {
+            return;
+        }
+        long size = 0;
+        for( File stored : storedFiles )
+        {
+            if( stored.isFile() )
+            {
+                size += stored.length();
+            }
+        }
+        // least recently used entries first
+        final List<File> entries = new ArrayList<File>( Arrays.asList( entryFiles ) );
+        Collections.sort( entries, new Comparator<File>()
+        {
+            public int compare( final File first, final File second )
+            {
+                final long firstUsed = first.lastModified();
+                final long secondUsed = second.lastModified();
+                return firstUsed < secondUsed ? -1 : ( firstUsed == secondUsed ? 0 : 1 );
+            }
+        } );
+        final Map<String, Integer> references = new HashMap<String, Integer>();
+        final Map<File, String> checksums = new HashMap<File, String>();
+        for( File entryFile : entries )
+        {
+            final Properties entry = readEntry( entryFile );
+            if( entry != null )
+            {
+                final String checksum = entry.getProperty( CHECKSUM );
+                checksums.put( entryFile, checksum );
+                references.put( checksum, references.containsKey( checksum ) ? references.get( checksum ) + 1 : 1 );
+            }
+        }
+        for( File entryFile : entries )
+        {
+            final boolean expired = m_maxAge > 0 && now - entryFile.lastModified() > m_maxAge;
+            if( !expired && ( m_maxSize <= 0 || size <= m_maxSize ) )
+            {
+                break;
+            }
+            if( !entryFile.delete() )
+            {
+                continue;
+            }
+            final String checksum = checksums.get( entryFile );
+            if( checksum == null )
+            {
+                continue;
+            }
+            final int remaining = references.get( checksum ) - 1;
+            references.put( checksum, remaining );
+            if( remaining == 0 )
+            {
+                final File stored = new File( m_directory, checksum );
+                final long length = stored.length();
+                if( stored.delete() )
+                {
+                    LOGGER.debug( "Evicted [" + stored + "] from bundle store" );
+                    size -= length;
+                }
+            }
+        }
+        // stored files without an entry are left over by interrupted runners
+        for( File stored : storedFiles )
+        {
+            if( stored.isFile() && !references.containsKey( stored.getName() )
+                && now - stored.lastModified() > ORPHAN_GRACE_PERIOD )
+            {
+                stored.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads the entry of an url.
+     *
+     * @param entryFile entry file
+     *
+     * @return entry properties or null if there is no entry or the entry cannot be read
+     */
+    private static Properties readEntry( final File entryFile )
+    {
+        if( !entryFile.isFile() )
+        {
+            return null;
+        }
+        final Properties entry = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( entryFile );
+            entry.load( in );
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+        finally
+        {
+            close( in );
+        }
+        final String checksum = entry.getProperty( CHECKSUM );
+        return checksum == null || checksum.trim().length() == 0 ? null : entry;
+    }
+
+    /**
+     * Writes the entry of an url.
+     *
+     * @param url        url of the file
+     * @param checksum   content checksum
+     * @param validators content validators; can be null
+     *
+     * @throws IOException if the entry cannot be written
+     */
+    private void writeEntry( final URL url, final String checksum, final DownloadValidators validators )
+        throws IOException
+    {
+        final Properties properties = new Properties();
+        properties.setProperty( CHECKSUM, checksum );
+        if( validators != null )
+        {
+            setIfNotNull( properties, ETAG, validators.getETag() );
+            setIfNotNull( properties, LAST_MODIFIED, validators.getLastModified() );
+            setIfNotNull( properties, REMOTE_CHECKSUM, validators.getChecksum() );
+        }
+        final File entry = getEntryFile( url );
+        entry.getParentFile().mkdirs();
+        final File temp = File.createTempFile( entry.getName(), TEMP_EXTENSION, entry.getParentFile() );
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( temp );
+            properties.store( out, null );
+        }
+        finally
+        {
+            close( out );
+        }
+        if( !temp.renameTo( entry ) )
+        {
+            // on some platforms rename will not replace an existing file
+            entry.delete();
+            if( !temp.renameTo( entry ) )
+            {
+                temp.delete();
+                throw new IOException( "Cannot rename " + temp + " to " + entry );
+            }
+        }
+    }
+
+    private static void setIfNotNull( final Properties properties, final String key, final String value )
+    {
+        if( value != null )
+        {
+            properties.setProperty( key, value );
+        }
+    }
+
+    /**
+     * Returns the file of the entry for an url.
+     *
+     * @param url url of the file
+     *
+     * @return entry file
+     */
+    private File getEntryFile( final URL url )
+    {
+        try
+        {
+            return new File( new File( m_directory, URLS_DIRECTORY ), checksum( url.toExternalForm() ) );
+        }
+        catch( IOException e )
+        {
+            // should not happen as the url is only hashed
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Populates a target file with the content of the source file, via a hard link if possible, otherwise by copying
+     * the content.
+     *
+     * @param source source file
+     * @param target target file, should not exist
+     *
+     * @throws IOException if neither linking or copying succeeded
+     */
+    public static void linkOrCopy( final File source, final File target )
+        throws IOException
+    {
+        if( link( source, target ) )
+        {
+            return;
+        }
+        copy( source, target );
+    }
+
+    /**
+     * Creates a hard link.
+     *
+     * @param source existing file
+     * @param target link to be created
+     *
+     * @return true if the link was created
+     */
+    static boolean link( final File source, final File target )
+    {
+        if( CREATE_LINK == null )
+        {
+            return false;
+        }
+        try
+        {
+            CREATE_LINK.invoke( null, TO_PATH.invoke( target ), TO_PATH.invoke( source ) );
+            return true;
+        }
+        catch( InvocationTargetException e )
+        {
+            // not supported by the file system or files are on different file systems
+            LOGGER.trace( "Cannot link " + target + " to " + source + " due to: " + e.getCause() );
+            return false;
+        }
+        catch( IllegalAccessException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Copies a file.
+     *
+     * @param source file to be copied
+     * @param target copy
+     *
+     * @throws IOException if file cannot be copied
+     */
+    static void copy( final File source, final File target )
+        throws IOException
+    {
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        try
+        {
+            in = new FileInputStream( source );
+            out = new FileOutputStream( target );
+            final FileChannel inChannel = in.getChannel();
+            final FileChannel outChannel = out.getChannel();
+            final long size = inChannel.size();
+            long position = 0;
+            while( position < size )
+            {
+                position += inChannel.transferTo( position, size - position, outChannel );
+            }
+        }
+        finally
+        {
+            close( in );
+            close( out );
+        }
+    }
+
+    /**
+     * Calculates the SHA-256 checksum of a file.
+     *
+     * @param file file to be checked
+     *
+     * @return hex encoded checksum
+     *
+     * @throws IOException if file cannot be read
+     */
+    public static String checksum( final File file )
+        throws IOException
+    {
+        final MessageDigest digest = createDigest();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+            final byte[] buffer = new byte[8192];
+            int read;
+            while( ( read = in.read( buffer ) ) > 0 )
+            {
+                digest.update( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            close( in );
+        }
+        return toHex( digest.digest() );
+    }
+
+    /**
+     * Calculates the SHA-256 checksum of a string.
+     *
+     * @param value to be checked
+     *
+     * @return hex encoded checksum
+     *
+     * @throws IOException if string cannot be encoded
+     */
+    static String checksum( final String value )
+        throws IOException
+    {
+        final MessageDigest digest = createDigest();
+        digest.update( value.getBytes( "UTF-8" ) );
+        return toHex( digest.digest() );
+    }
+
+    private static MessageDigest createDigest()
+        throws IOException
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-256" );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            // every JVM must support SHA-256
+            throw new IOException( "SHA-256 is not supported" );
+        }
+    }
+
+    private static String toHex( final byte[] bytes )
+    {
+        final StringBuilder hex = new StringBuilder();
+        for( byte b : bytes )
+        {
+            hex.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) );
+            hex.append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return hex.toString();
+    }
+
+    private static void close( final Closeable closeable )
+    {
+        if( closeable != null )
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch( IOException ignore )
+            {
+                // ignore
+            }
+        }
+    }
+
+}
@@ -67,6 +67,34 @@ public class ConfigurationImpl
      * Default installed bundles start level.
      */
     private static final int DEFAULT_BUNDLE_START_LEVEL = 5;
+    /**
+     * Default number of concurrent downloads.
+     */
+    private static final int DEFAULT_DOWNLOAD_THREADS = 1;
+    /**
+     * Default bundle store directory, relative to user home.
+     */
+    private static final String DEFAULT_BUNDLE_STORE = ".pax/runner/store";
+    /**
+     * Default maximum size of bundle store, in megabytes.
+     */
+    private static final int DEFAULT_BUNDLE_STORE_MAX_SIZE = 1024;
+    /**
+     * Default number of days a file is kept in bundle store since last used.
+     */
+    private static final int DEFAULT_BUNDLE_STORE_MAX_AGE = 30;
+    /**
+     * Default number of concurrent downloads from the same host.
+     */
+    private static final int DEFAULT_DOWNLOADS_PER_HOST = 4;
+    /**
+     * Default download connect timeout, in milliseconds.
+     */
+    private static final int DEFAULT_CONNECT_TIMEOUT = 30000;
+    /**
+     * Default download read timeout, in milliseconds.
+     */
+    private static final int DEFAULT_READ_TIMEOUT = 60000;
 
     /**
      * Property resolver. Cannot be null.
@@ -575,6 +603,135 @@ public class ConfigurationImpl
         return get( ServiceConstants.CONFIG_USE_ABSOLUTE_FILE_PATHS );
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Integer getDownloadThreads()
+    {
+        if( !contains( ServiceConstants.CONFIG_DOWNLOAD_THREADS ) )
+        {
+            final String downloadThreads = m_propertyResolver.get( ServiceConstants.CONFIG_DOWNLOAD_THREADS );
+            Integer downloadThreadsAsInt = DEFAULT_DOWNLOAD_THREADS;
+            if( downloadThreads != null )
+            {
+                try
+                {
+                    downloadThreadsAsInt = Math.max( Integer.valueOf( downloadThreads ), 1 );
+                }
+                catch( NumberFormatException ignore )
+                {
+                    // ignore and use default value
+                }
+            }
+            return set( ServiceConstants.CONFIG_DOWNLOAD_THREADS, downloadThreadsAsInt );
+        }
+        return get( ServiceConstants.CONFIG_DOWNLOAD_THREADS );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Boolean useBundleStore()
+    {
+        if( !contains( ServiceConstants.CONFIG_USE_BUNDLE_STORE ) )
+        {
+            final String useBundleStore = m_propertyResolver.get( ServiceConstants.CONFIG_USE_BUNDLE_STORE );
+            if( useBundleStore == null )
+            {
+                return set( ServiceConstants.CONFIG_USE_BUNDLE_STORE, Boolean.FALSE );
+            }
+            return set( ServiceConstants.CONFIG_USE_BUNDLE_STORE, Boolean.valueOf( useBundleStore ) );
+        }
+        return get( ServiceConstants.CONFIG_USE_BUNDLE_STORE );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getBundleStore()
+    {
+        if( !contains( ServiceConstants.CONFIG_BUNDLE_STORE ) )
+        {
+            String bundleStore = m_propertyResolver.get( ServiceConstants.CONFIG_BUNDLE_STORE );
+            if( bundleStore == null || bundleStore.trim().length() == 0 )
+            {
+                bundleStore = new File( System.getProperty( "user.home" ), DEFAULT_BUNDLE_STORE ).getAbsolutePath();
+            }
+            return set( ServiceConstants.CONFIG_BUNDLE_STORE, bundleStore );
+        }
+        return get( ServiceConstants.CONFIG_BUNDLE_STORE );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Integer getBundleStoreMaxSize()
+    {
+        return resolveNotNegative( ServiceConstants.CONFIG_BUNDLE_STORE_MAX_SIZE, DEFAULT_BUNDLE_STORE_MAX_SIZE );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Integer getBundleStoreMaxAge()
+    {
+        return resolveNotNegative( ServiceConstants.CONFIG_BUNDLE_STORE_MAX_AGE, DEFAULT_BUNDLE_STORE_MAX_AGE );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Integer getDownloadsPerHost()
+    {
+        return resolveNotNegative( ServiceConstants.CONFIG_DOWNLOADS_PER_HOST, DEFAULT_DOWNLOADS_PER_HOST );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Integer getConnectTimeout()
+    {
+        return resolveNotNegative( ServiceConstants.CONFIG_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Integer getReadTimeout()
+    {
+        return resolveNotNegative( ServiceConstants.CONFIG_READ_TIMEOUT, DEFAULT_READ_TIMEOUT );
+    }
+
+    /**
+     * Resolves an integer option that cannot be negative.
+     *
+     * @param optionName   name of the option
+     * @param defaultValue value used if the option is not set or is not a valid number
+     *
+     * @return option value
+     */
+    private Integer resolveNotNegative( final String optionName, final Integer defaultValue )
+    {
+        if( !contains( optionName ) )
+        {
+            final String value = m_propertyResolver.get( optionName );
+            Integer valueAsInt = defaultValue;
+            if( value != null )
+            {
+                try
+                {
+                    valueAsInt = Math.max( Integer.valueOf( value.trim() ), 0 );
+                }
+                catch( NumberFormatException ignore )
+                {
+                    // ignore and use default value
+                }
+            }
+            return set( optionName, valueAsInt );
+        }
+        return get( optionName );
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.runner.platform.PlatformException;
+
+/**
+ * Holds what is shared by all downloads of one platform start: working directory, download index, bundle store,
+ * metadata index, download transport and progress view.
+ *
+ * @since 1.8.6
+ */
+public class DownloadContext
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( DownloadContext.class );
+
+    /**
+     * The directory where to download bundles. Cannot be null.
+     */
+    private final File m_workingDirectory;
+    /**
+     * Index of names under which urls were downloaded. Cannot be null.
+     */
+    private final DownloadIndex m_downloadIndex;
+    /**
+     * Shared bundle store. Null if not used.
+     */
+    private final BundleStore m_bundleStore;
+    /**
+     * Index of downloaded files metadata. Cannot be null.
+     */
+    private final BundleMetadataIndex m_metadataIndex;
+    /**
+     * Transport used by downloads. Cannot be null.
+     */
+    private final DownloadTransport m_transport;
+    /**
+     * Local maven repository, where released "mvn:" artifacts are looked up. Null if not used.
+     */
+    private final File m_localRepository;
+    /**
+     * Console view of concurrent downloads. Null if downloads progress is not displayed as a whole.
+     */
+    private volatile StreamUtils.AggregateProgressView m_progressView;
+
+    /**
+     * Creates a new download context.
+     *
+     * @param workingDirectory the directory where to download bundles; mandatory
+     * @param downloadIndex    index of names under which urls were downloaded; mandatory
+     * @param bundleStore      shared bundle store; null if not used
+     * @param metadataIndex    index of downloaded files metadata; mandatory
+     * @param transport        transport used by downloads; mandatory
+     * @param localRepository  local maven repository; null if "mvn:" artifacts should not be looked up locally
+     */
+    public DownloadContext( final File workingDirectory,
+                            final DownloadIndex downloadIndex,
+                            final BundleStore bundleStore,
+                            final BundleMetadataIndex metadataIndex,
+                            final DownloadTransport transport,
+                            final File localRepository )
+    {
+        NullArgumentException.validateNotNull( workingDirectory, "Working directory" );
+        NullArgumentException.validateNotNull( downloadIndex, "Download index" );
+        NullArgumentException.validateNotNull( metadataIndex, "Metadata index" );
+        NullArgumentException.validateNotNull( transport, "Transport" );
+        m_workingDirectory = workingDirectory;
+        m_downloadIndex = downloadIndex;
+        m_bundleStore = bundleStore;
+        m_metadataIndex = metadataIndex;
+        m_transport = transport;
+        m_localRepository = localRepository;
+    }
+
+    public File getWorkingDirectory()
+    {
+        return m_workingDirectory;
+    }
+
+    public DownloadIndex getDownloadIndex()
+    {
+        return m_downloadIndex;
+    }
+
+    public BundleStore getBundleStore()
+    {
+        return m_bundleStore;
+    }
+
+    public BundleMetadataIndex getMetadataIndex()
+    {
+        return m_metadataIndex;
+    }
+
+    public DownloadTransport getTransport()
+    {
+        return m_transport;
+    }
+
+    public File getLocalRepository()
+    {
+        return m_localRepository;
+    }
+
+    public StreamUtils.AggregateProgressView getProgressView()
+    {
+        return m_progressView;
+    }
+
+    public void setProgressView( final StreamUtils.AggregateProgressView progressView )
+    {
+        m_progressView = progressView;
+    }
+
+    /**
+     * Saves the metadata and download indexes, each one on its own. Indexes are a cache, so a failure to save them is
+     * logged and does not fail the platform start.
+     */
+    public void saveIndexes()
+    {
+        m_metadataIndex.save();
+        try
+        {
+            m_downloadIndex.save();
+        }
+        catch( PlatformException e )
+        {
+            LOGGER.warn( "Could not save download index due to: " + e.getMessage() );
+        }
+    }
+
+}
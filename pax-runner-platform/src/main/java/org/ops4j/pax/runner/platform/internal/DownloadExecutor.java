@@ -0,0 +1,251 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.pax.runner.platform.PlatformException;
+
+/**
+ * Executes downloads on a bounded pool of threads. Results are collected in the order the downloads were submitted
+ * and failures are aggregated, so all problems are reported at once instead of failing on the first one.
+ * When created with only one thread, downloads are executed in the calling thread as soon as they are submitted,
+ * unless created for background downloads.
+ *
+ * @since 1.8.6
+ */
+public class DownloadExecutor
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( DownloadExecutor.class );
+
+    /**
+     * Executor service used for downloading. Null if downloads are executed in the calling thread.
+     */
+    private final ExecutorService m_executor;
+    /**
+     * Failures encountered while awaiting for downloads.
+     */
+    private final List<PlatformException> m_failures;
+
+    /**
+     * Creates a new download executor.
+     *
+     * @param threads maximum number of concurrent downloads. If less then 2, downloads are executed in the calling
+     *                thread.
+     */
+    public DownloadExecutor( final Integer threads )
+    {
+        this( threads, false );
+    }
+
+    /**
+     * Creates a new download executor.
+     *
+     * @param threads    maximum number of concurrent downloads. If less then 2, downloads are executed in the calling
+     *                   thread, unless background is set.
+     * @param background if downloads must not be executed in the calling thread. In this case at least one download
+     *                   thread is used.
+     */
+    public DownloadExecutor( final Integer threads, final boolean background )
+    {
+        m_failures = new ArrayList<PlatformException>();
+        if( ( threads != null && threads > 1 ) || background )
+        {
+            final int poolSize = threads != null && threads > 1 ? threads : 1;
+            LOGGER.debug( "Using [" + poolSize + "] download threads" );
+            m_executor = Executors.newFixedThreadPool( poolSize, new DownloadThreadFactory() );
+        }
+        else
+        {
+            m_executor = null;
+        }
+    }
+
+    /**
+     * Returns true if downloads are executed concurrently.
+     *
+     * @return true if downloads are executed concurrently
+     */
+    public boolean isConcurrent()
+    {
+        return m_executor != null;
+    }
+
+    /**
+     * Submits a download.
+     *
+     * @param download download to be executed
+     *
+     * @return download result
+     */
+    public <T> Future<T> submit( final Callable<T> download )
+    {
+        if( m_executor != null )
+        {
+            return m_executor.submit( download );
+        }
+        final FutureTask<T> task = new FutureTask<T>( download );
+        task.run();
+        return task;
+    }
+
+    /**
+     * Returns an already finished download, to be used when there is nothing to download.
+     *
+     * @param result result of download
+     *
+     * @return finished download
+     */
+    public <T> Future<T> done( final T result )
+    {
+        final FutureTask<T> task = new FutureTask<T>( new Runnable()
+        {
+            public void run()
+            {
+                // nothing to do
+            }
+        }, result
+        );
+        task.run();
+        return task;
+    }
+
+    /**
+     * Waits for a download to finish. If the download fails the failure is recorded and null is returned.
+     *
+     * @param download download to wait for
+     *
+     * @return downloaded result or null if download failed
+     */
+    public <T> T await( final Future<T> download )
+    {
+        try
+        {
+            return download.get();
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            m_failures.add( new PlatformException( "Interrupted while downloading", e ) );
+        }
+        catch( ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if( cause instanceof PlatformException )
+            {
+                m_failures.add( (PlatformException) cause );
+            }
+            else
+            {
+                m_failures.add( new PlatformException( cause.getMessage(), cause ) );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waits for all downloads to finish. Null results (as skipped downloads) and failed downloads are not included.
+     *
+     * @param downloads downloads to wait for
+     *
+     * @return list of downloaded results, in the same order as downloads
+     */
+    public <T> List<T> awaitAll( final List<Future<T>> downloads )
+    {
+        final List<T> results = new ArrayList<T>();
+        for( Future<T> download : downloads )
+        {
+            final T result = await( download );
+            if( result != null )
+            {
+                results.add( result );
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Checks if any of awaited downloads failed.
+     *
+     * @throws PlatformException if there are failed downloads. The first failure is used as cause and the message
+     *                           contains all failures
+     */
+    public void checkFailures()
+        throws PlatformException
+    {
+        if( m_failures.isEmpty() )
+        {
+            return;
+        }
+        if( m_failures.size() == 1 )
+        {
+            throw m_failures.get( 0 );
+        }
+        final StringBuilder message = new StringBuilder();
+        message.append( m_failures.size() ).append( " downloads failed:" );
+        for( PlatformException failure : m_failures )
+        {
+            message.append( "\n\t" ).append( failure.getMessage() );
+        }
+        throw new PlatformException( message.toString(), m_failures.get( 0 ) );
+    }
+
+    /**
+     * Stops the download threads. Downloads not yet started will be cancelled.
+     */
+    public void shutdown()
+    {
+        if( m_executor != null )
+        {
+            m_executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates daemon threads so a failed download will not keep the runner alive.
+     */
+    private static class DownloadThreadFactory
+        implements ThreadFactory
+    {
+
+        private final AtomicInteger m_counter = new AtomicInteger();
+
+        public Thread newThread( final Runnable runnable )
+        {
+            final Thread thread = new Thread( runnable, "Pax Runner Download " + m_counter.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+
+    }
+
+}
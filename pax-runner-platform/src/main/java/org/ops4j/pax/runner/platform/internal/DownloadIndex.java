@@ -0,0 +1,315 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.runner.platform.PlatformException;
+
+/**
+ * Index of the names under which urls were downloaded in the working directory, together with the validators of the
+ * downloaded content. The index is loaded once on creation, kept in memory while downloading and written back once on
+ * {@link #save()}.
+ * Saving is done while holding a file lock, merging the changes into the entries saved meanwhile by other runners
+ * sharing the same working directory, and the file is replaced by renaming a temporary file.
+ *
+ * @since 1.8.6
+ */
+public class DownloadIndex
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( DownloadIndex.class );
+    /**
+     * Key prefixes of validators. As "@" is not allowed in an url scheme they cannot clash with urls.
+     */
+    private static final String ETAG = "@etag:";
+    private static final String LAST_MODIFIED = "@lastModified:";
+    private static final String CHECKSUM = "@checksum:";
+
+    /**
+     * File where the index is persisted. Cannot be null.
+     */
+    private final File m_file;
+    /**
+     * Downloaded file names keyed by url, and validators keyed by prefixed url.
+     */
+    private final Map<String, String> m_entries;
+    /**
+     * Entries changed since loaded. An empty value marks a removed entry.
+     */
+    private final Map<String, String> m_changes;
+
+    /**
+     * Creates a new index, loading the entries from the file, if the file exists.
+     *
+     * @param file file where the index is persisted; mandatory
+     */
+    public DownloadIndex( final File file )
+    {
+        NullArgumentException.validateNotNull( file, "Index file" );
+        m_file = file;
+        m_entries = new ConcurrentHashMap<String, String>();
+        m_changes = new ConcurrentHashMap<String, String>();
+        final Properties properties = load( m_file );
+        for( Object key : properties.keySet() )
+        {
+            m_entries.put( (String) key, properties.getProperty( (String) key ) );
+        }
+    }
+
+    /**
+     * Returns the name of the file the url was downloaded to.
+     *
+     * @param url downloaded url
+     *
+     * @return file name or null if the url was not downloaded
+     */
+    public String get( final String url )
+    {
+        NullArgumentException.validateNotNull( url, "URL" );
+        return m_entries.get( url );
+    }
+
+    /**
+     * Remembers the name of the file an url was downloaded to.
+     *
+     * @param url      downloaded url
+     * @param fileName name of downloaded file
+     */
+    public void put( final String url, final String fileName )
+    {
+        NullArgumentException.validateNotNull( url, "URL" );
+        NullArgumentException.validateNotNull( fileName, "File name" );
+        m_entries.put( url, fileName );
+        m_changes.put( url, fileName );
+    }
+
+    /**
+     * Returns the validators of the content downloaded from an url.
+     *
+     * @param url downloaded url
+     *
+     * @return validators or null if there are no validators for url
+     */
+    public DownloadValidators getValidators( final String url )
+    {
+        NullArgumentException.validateNotNull( url, "URL" );
+        final DownloadValidators validators = new DownloadValidators(
+            getValue( ETAG + url ), getValue( LAST_MODIFIED + url ), getValue( CHECKSUM + url )
+        );
+        if( validators.isEmpty() )
+        {
+            return null;
+        }
+        return validators;
+    }
+
+    /**
+     * Remembers the validators of the content downloaded from an url.
+     *
+     * @param url        downloaded url
+     * @param validators validators of the content; null if the content has no validators
+     */
+    public void putValidators( final String url, final DownloadValidators validators )
+    {
+        NullArgumentException.validateNotNull( url, "URL" );
+        putValue( ETAG + url, validators == null ? null : validators.getETag() );
+        putValue( LAST_MODIFIED + url, validators == null ? null : validators.getLastModified() );
+        putValue( CHECKSUM + url, validators == null ? null : validators.getChecksum() );
+    }
+
+    /**
+     * Saves the index, if changed since loaded.
+     *
+     * @throws PlatformException if the index cannot be saved
+     */
+    public synchronized void save()
+        throws PlatformException
+    {
+        if( m_changes.isEmpty() )
+        {
+            return;
+        }
+        m_file.getParentFile().mkdirs();
+        final File lockFile = new File( m_file.getParentFile(), m_file.getName() + ".lock" );
+        RandomAccessFile lockAccess = null;
+        FileLock lock = null;
+        try
+        {
+            lockAccess = new RandomAccessFile( lockFile, "rw" );
+            lock = lockAccess.getChannel().lock();
+            // other runners may have saved the index in the meantime so merge the changes into the saved entries
+            final Properties properties = load( m_file );
+            for( Map.Entry<String, String> change : m_changes.entrySet() )
+            {
+                if( change.getValue().length() == 0 )
+                {
+                    properties.remove( change.getKey() );
+                }
+                else
+                {
+                    properties.setProperty( change.getKey(), change.getValue() );
+                }
+            }
+            write( properties );
+            m_changes.clear();
+        }
+        catch( IOException e )
+        {
+            throw new PlatformException( "Cannot store download index " + m_file, e );
+        }
+        finally
+        {
+            if( lock != null )
+            {
+                try
+                {
+                    lock.release();
+                }
+                catch( IOException ignore )
+                {
+                    // will be released on close
+                }
+            }
+            close( lockAccess );
+        }
+    }
+
+    private String getValue( final String key )
+    {
+        final String value = m_entries.get( key );
+        if( value == null || value.length() == 0 )
+        {
+            return null;
+        }
+        return value;
+    }
+
+    private void putValue( final String key, final String value )
+    {
+        if( value == null )
+        {
+            if( m_entries.remove( key ) != null )
+            {
+                m_changes.put( key, "" );
+            }
+        }
+        else
+        {
+            m_entries.put( key, value );
+            m_changes.put( key, value );
+        }
+    }
+
+    /**
+     * Writes the entries to a temporary file and renames it to the index file.
+     *
+     * @param properties entries to be written
+     *
+     * @throws IOException if the entries cannot be written
+     */
+    private void write( final Properties properties )
+        throws IOException
+    {
+        final File temp = File.createTempFile( m_file.getName(), ".tmp", m_file.getParentFile() );
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( temp );
+            properties.store( out, "" );
+        }
+        finally
+        {
+            close( out );
+        }
+        if( !temp.renameTo( m_file ) )
+        {
+            // on some platforms rename will not replace an existing file
+            m_file.delete();
+            if( !temp.renameTo( m_file ) )
+            {
+                temp.delete();
+                throw new IOException( "Cannot rename " + temp + " to " + m_file );
+            }
+        }
+        LOGGER.debug( "Saved download index [" + m_file + "]" );
+    }
+
+    /**
+     * Loads entries from file. If the file does not exist or cannot be read, there are no entries.
+     *
+     * @param file file to load from
+     *
+     * @return loaded entries
+     */
+    private static Properties load( final File file )
+    {
+        final Properties properties = new Properties();
+        if( !file.isFile() )
+        {
+            return properties;
+        }
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+            properties.load( in );
+        }
+        catch( IOException e )
+        {
+            LOGGER.debug( "Cannot read download index " + file + " due to: " + e.getMessage() );
+        }
+        finally
+        {
+            close( in );
+        }
+        return properties;
+    }
+
+    private static void close( final Closeable closeable )
+    {
+        if( closeable != null )
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch( IOException ignore )
+            {
+                // ignore
+            }
+        }
+    }
+
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Opens the connections used by downloads. Connections get the configured connect and read timeouts and the number of
+ * requests done in the same time to one remote host (as a repository) is limited. Connections are left in a state in
+ * which the jvm keeps them alive and reuses them for the next request to the same host: content is read until the end
+ * and no connection is disconnected unless its content is not wanted anymore.
+ * Bytes and time spent are collected per host. Only http, https and ftp urls are limited and timed: mvn: urls are
+ * resolved by the mvn handler, with its own connections and timeout.
+ *
+ * @since 1.8.6
+ */
+public class DownloadTransport
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( DownloadTransport.class );
+    /**
+     * Maximum number of bytes read from a not wanted response to keep its connection alive.
+     */
+    private static final int MAX_DRAIN = 64 * 1024;
+    /**
+     * Permit of a request that is not limited (not to a remote host).
+     */
+    private static final Permit UNLIMITED = new Permit( null );
+
+    /**
+     * Maximum number of requests in the same time to the same host. 0 if not limited.
+     */
+    private final int m_maxPerHost;
+    /**
+     * Connect timeout in milliseconds. 0 if none.
+     */
+    private final int m_connectTimeout;
+    /**
+     * Read timeout in milliseconds. 0 if none.
+     */
+    private final int m_readTimeout;
+    /**
+     * Remote hosts by "host:port".
+     */
+    private final ConcurrentMap<String, Host> m_hosts;
+
+    /**
+     * Creates a new download transport.
+     *
+     * @param maxPerHost     maximum number of requests in the same time to the same host; 0 if not limited
+     * @param connectTimeout connect timeout in milliseconds; 0 if none
+     * @param readTimeout    read timeout in milliseconds; 0 if none
+     */
+    public DownloadTransport( final int maxPerHost, final int connectTimeout, final int readTimeout )
+    {
+        m_maxPerHost = Math.max( maxPerHost, 0 );
+        m_connectTimeout = Math.max( connectTimeout, 0 );
+        m_readTimeout = Math.max( readTimeout, 0 );
+        m_hosts = new ConcurrentHashMap<String, Host>();
+    }
+
+    /**
+     * Creates a download transport without limits and timeouts.
+     */
+    public DownloadTransport()
+    {
+        this( 0, 0, 0 );
+    }
+
+    /**
+     * Opens a connection to an url, with the configured timeouts.
+     *
+     * @param url url to connect to
+     *
+     * @return not yet connected connection
+     *
+     * @throws IOException if the connection cannot be opened
+     */
+    public URLConnection openConnection( final URL url )
+        throws IOException
+    {
+        final URLConnection connection = url.openConnection();
+        connection.setConnectTimeout( m_connectTimeout );
+        connection.setReadTimeout( m_readTimeout );
+        return connection;
+    }
+
+    /**
+     * Waits until a request can be done to the host of an url. The returned permit must be released once the content
+     * was received.
+     *
+     * @param url url to be requested
+     *
+     * @return permit of the request
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public Permit acquire( final URL url )
+        throws InterruptedIOException
+    {
+        if( !isRemote( url ) )
+        {
+            return UNLIMITED;
+        }
+        final Host host = getHost( url );
+        try
+        {
+            host.acquire();
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for a connection to " + host.name );
+        }
+        return new Permit( host );
+    }
+
+    /**
+     * Returns the statistics of each remote host requested so far.
+     *
+     * @return statistics by "host:port"
+     */
+    public Map<String, HostStatistics> getStatistics()
+    {
+        final Map<String, HostStatistics> statistics = new TreeMap<String, HostStatistics>();
+        for( Host host : m_hosts.values() )
+        {
+            statistics.put( host.name, host.getStatistics() );
+        }
+        return Collections.unmodifiableMap( statistics );
+    }
+
+    /**
+     * Logs the statistics of each remote host.
+     */
+    public void logStatistics()
+    {
+        if( LOGGER.isDebugEnabled() )
+        {
+            for( HostStatistics statistics : getStatistics().values() )
+            {
+                LOGGER.debug( "Downloaded " + statistics );
+            }
+        }
+    }
+
+    /**
+     * Releases a connection whose content is not wanted (e.g. not modified or a range that cannot be satisfied). The
+     * rest of a short response is read so the connection can be kept alive, otherwise the connection is closed.
+     *
+     * @param connection connection to be released
+     */
+    public static void release( final URLConnection connection )
+    {
+        if( !( connection instanceof HttpURLConnection ) )
+        {
+            return;
+        }
+        final HttpURLConnection httpConnection = (HttpURLConnection) connection;
+        InputStream in;
+        try
+        {
+            in = httpConnection.getInputStream();
+        }
+        catch( IOException e )
+        {
+            in = httpConnection.getErrorStream();
+        }
+        if( in == null )
+        {
+            return;
+        }
+        try
+        {
+            final byte[] buffer = new byte[4096];
+            int drained = 0;
+            int read;
+            while( drained <= MAX_DRAIN && ( read = in.read( buffer ) ) >= 0 )
+            {
+                drained += read;
+            }
+            if( drained > MAX_DRAIN )
+            {
+                httpConnection.disconnect();
+            }
+        }
+        catch( IOException ignore )
+        {
+            // connection is not reusable anyhow
+        }
+        finally
+        {
+            try
+            {
+                in.close();
+            }
+            catch( IOException ignore )
+            {
+                // ignore
+            }
+        }
+    }
+
+    private Host getHost( final URL url )
+    {
+        final String name = url.getHost() + ":" + ( url.getPort() == -1 ? url.getDefaultPort() : url.getPort() );
+        Host host = m_hosts.get( name );
+        if( host == null )
+        {
+            host = new Host( name, m_maxPerHost );
+            final Host existing = m_hosts.putIfAbsent( name, host );
+            if( existing != null )
+            {
+                host = existing;
+            }
+        }
+        return host;
+    }
+
+    private static boolean isRemote( final URL url )
+    {
+        final String protocol = url.getProtocol();
+        return ( "http".equals( protocol ) || "https".equals( protocol ) || "ftp".equals( protocol ) )
+               && url.getHost() != null && url.getHost().length() > 0;
+    }
+
+    /**
+     * Permit to do a request. Records the bytes received when released.
+     */
+    public static class Permit
+    {
+
+        private final Host m_host;
+        private boolean m_released;
+
+        Permit( final Host host )
+        {
+            m_host = host;
+        }
+
+        /**
+         * Releases the permit, so another request can be done to the same host. Releasing more then once has no
+         * effect.
+         *
+         * @param bytes number of bytes received on the request
+         */
+        public synchronized void release( final long bytes )
+        {
+            if( m_host != null && !m_released )
+            {
+                m_released = true;
+                m_host.release( bytes );
+            }
+        }
+
+    }
+
+    /**
+     * Statistics of one remote host.
+     */
+    public static class HostStatistics
+    {
+
+        private final String m_host;
+        private final int m_requests;
+        private final long m_bytes;
+        private final long m_busyMillis;
+
+        HostStatistics( final String host, final int requests, final long bytes, final long busyMillis )
+        {
+            m_host = host;
+            m_requests = requests;
+            m_bytes = bytes;
+            m_busyMillis = busyMillis;
+        }
+
+        public String getHost()
+        {
+            return m_host;
+        }
+
+        /**
+         * Returns the number of completed requests.
+         *
+         * @return number of requests
+         */
+        public int getRequests()
+        {
+            return m_requests;
+        }
+
+        /**
+         * Returns the number of bytes received.
+         *
+         * @return number of bytes
+         */
+        public long getBytes()
+        {
+            return m_bytes;
+        }
+
+        /**
+         * Returns the time during which at least one request to the host was in progress.
+         *
+         * @return time in milliseconds
+         */
+        public long getBusyMillis()
+        {
+            return m_busyMillis;
+        }
+
+        /**
+         * Returns the throughput while the host was busy.
+         *
+         * @return throughput in kBps
+         */
+        public long getKbps()
+        {
+            return m_bytes / Math.max( m_busyMillis, 1 );
+        }
+
+        @Override
+        public String toString()
+        {
+            return m_bytes + " bytes in " + m_requests + " requests from [" + m_host + "] @ [ " + getKbps() + "kBps ]";
+        }
+
+    }
+
+    /**
+     * A remote host with the requests limit and statistics.
+     */
+    private static class Host
+    {
+
+        final String name;
+        /**
+         * Limits requests in the same time. Null if not limited.
+         */
+        private final Semaphore m_permits;
+        private int m_active;
+        private int m_requests;
+        private long m_bytes;
+        private long m_busySince;
+        private long m_busyMillis;
+
+        Host( final String name, final int maxRequests )
+        {
+            this.name = name;
+            m_permits = maxRequests > 0 ? new Semaphore( maxRequests, true ) : null;
+        }
+
+        void acquire()
+            throws InterruptedException
+        {
+            if( m_permits != null )
+            {
+                m_permits.acquire();
+            }
+            synchronized( this )
+            {
+                if( m_active++ == 0 )
+                {
+                    m_busySince = System.currentTimeMillis();
+                }
+            }
+        }
+
+        void release( final long bytes )
+        {
+            synchronized( this )
+            {
+                m_requests++;
+                m_bytes += bytes;
+                if( --m_active == 0 )
+                {
+                    m_busyMillis += System.currentTimeMillis() - m_busySince;
+                }
+            }
+            if( m_permits != null )
+            {
+                m_permits.release();
+            }
+        }
+
+        synchronized HostStatistics getStatistics()
+        {
+            long busyMillis = m_busyMillis;
+            if( m_active > 0 )
+            {
+                busyMillis += System.currentTimeMillis() - m_busySince;
+            }
+            return new HostStatistics( name, m_requests, m_bytes, busyMillis );
+        }
+
+    }
+
+}
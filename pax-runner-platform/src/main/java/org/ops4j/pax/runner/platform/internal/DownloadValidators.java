@@ -0,0 +1,211 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+
+/**
+ * Validators of the content downloaded from an http url (ETag, Last-Modified and the SHA-256 checksum announced by
+ * the repository), used to check by a conditional request if the content changed since downloaded.
+ *
+ * @since 1.8.6
+ */
+public class DownloadValidators
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( DownloadValidators.class );
+    /**
+     * Header used by repository managers (as Artifactory) to announce the SHA-256 checksum of the content.
+     */
+    static final String CHECKSUM_HEADER = "X-Checksum-Sha256";
+
+    /**
+     * ETag header. Null if not present.
+     */
+    private final String m_etag;
+    /**
+     * Last-Modified header. Null if not present.
+     */
+    private final String m_lastModified;
+    /**
+     * Remote SHA-256 checksum header. Null if not present.
+     */
+    private final String m_checksum;
+
+    /**
+     * Creates new validators.
+     *
+     * @param etag         ETag header
+     * @param lastModified Last-Modified header
+     * @param checksum     remote SHA-256 checksum header
+     */
+    public DownloadValidators( final String etag, final String lastModified, final String checksum )
+    {
+        m_etag = etag;
+        m_lastModified = lastModified;
+        m_checksum = checksum;
+    }
+
+    /**
+     * Returns the validators of the content received by an http connection.
+     *
+     * @param connection connection to take the validators from
+     *
+     * @return validators or null if the connection is not an http connection or there are no validators
+     */
+    public static DownloadValidators from( final URLConnection connection )
+    {
+        if( !( connection instanceof HttpURLConnection ) )
+        {
+            return null;
+        }
+        final DownloadValidators validators = new DownloadValidators(
+            connection.getHeaderField( "ETag" ),
+            connection.getHeaderField( "Last-Modified" ),
+            connection.getHeaderField( CHECKSUM_HEADER )
+        );
+        if( validators.isEmpty() )
+        {
+            return null;
+        }
+        return validators;
+    }
+
+    /**
+     * Opens a connection to an url. If there are validators of previously downloaded content, the request is made
+     * conditional. Null is returned if the content did not change: the server answered 304 Not Modified or the
+     * announced checksum is the checksum of the previously downloaded content.
+     *
+     * @param url           url to connect to
+     * @param validators    validators of previously downloaded content; can be null
+     * @param localChecksum SHA-256 checksum of previously downloaded content; can be null
+     *
+     * @return an open connection or null if content did not change
+     *
+     * @throws IOException if the connection cannot be opened
+     */
+    public static URLConnection openConnection( final URL url,
+                                                final DownloadValidators validators,
+                                                final String localChecksum )
+        throws IOException
+    {
+        return openConnection( new DownloadTransport(), url, validators, localChecksum );
+    }
+
+    /**
+     * Opens a connection to an url via a download transport. If there are validators of previously downloaded content,
+     * the request is made conditional. Null is returned if the content did not change: the server answered 304 Not
+     * Modified or the announced checksum is the checksum of the previously downloaded content.
+     *
+     * @param transport     transport used to open the connection
+     * @param url           url to connect to
+     * @param validators    validators of previously downloaded content; can be null
+     * @param localChecksum SHA-256 checksum of previously downloaded content; can be null
+     *
+     * @return an open connection or null if content did not change
+     *
+     * @throws IOException if the connection cannot be opened
+     */
+    public static URLConnection openConnection( final DownloadTransport transport,
+                                                final URL url,
+                                                final DownloadValidators validators,
+                                                final String localChecksum )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( transport, "Transport" );
+        NullArgumentException.validateNotNull( url, "URL" );
+        final URLConnection connection = transport.openConnection( url );
+        if( ( validators == null && localChecksum == null ) || !( connection instanceof HttpURLConnection ) )
+        {
+            return connection;
+        }
+        final HttpURLConnection httpConnection = (HttpURLConnection) connection;
+        if( validators != null && validators.getETag() != null )
+        {
+            httpConnection.setRequestProperty( "If-None-Match", validators.getETag() );
+        }
+        if( validators != null && validators.getLastModified() != null )
+        {
+            httpConnection.setRequestProperty( "If-Modified-Since", validators.getLastModified() );
+        }
+        if( httpConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED )
+        {
+            LOGGER.debug( "[" + url + "] not modified" );
+            DownloadTransport.release( httpConnection );
+            return null;
+        }
+        final String remoteChecksum = httpConnection.getHeaderField( CHECKSUM_HEADER );
+        if( localChecksum != null && localChecksum.equalsIgnoreCase( remoteChecksum ) )
+        {
+            LOGGER.debug( "[" + url + "] has the same checksum as downloaded content" );
+            DownloadTransport.release( httpConnection );
+            return null;
+        }
+        return httpConnection;
+    }
+
+    public String getETag()
+    {
+        return m_etag;
+    }
+
+    public String getLastModified()
+    {
+        return m_lastModified;
+    }
+
+    public String getChecksum()
+    {
+        return m_checksum;
+    }
+
+    /**
+     * Returns true if there are no validators.
+     *
+     * @return true if there are no validators
+     */
+    public boolean isEmpty()
+    {
+        return m_etag == null && m_lastModified == null && m_checksum == null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return new StringBuilder()
+            .append( "{" )
+            .append( "etag=" ).append( m_etag )
+            .append( ",lastModified=" ).append( m_lastModified )
+            .append( ",checksum=" ).append( m_checksum )
+            .append( "}" )
+            .toString();
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.runner.platform.BundleReference;
+
+/**
+ * Pending download of a bundle that results in a {@link LocalBundleReference} to the downloaded file. This allows a
+ * file download to be started before the final bundle reference is known (as start level or start flag).
+ *
+ * @since 1.8.6
+ */
+public class LocalBundleDownload
+    implements Future<BundleReference>
+{
+
+    /**
+     * Bundle reference being downloaded. Cannot be null.
+     */
+    private final BundleReference m_bundleReference;
+    /**
+     * Pending download of bundle file. Cannot be null.
+     */
+    private final Future<File> m_download;
+
+    /**
+     * Creates a new local bundle download.
+     *
+     * @param bundleReference a bundle reference; mandatory
+     * @param download        pending download of bundle file; mandatory
+     */
+    public LocalBundleDownload( final BundleReference bundleReference, final Future<File> download )
+    {
+        NullArgumentException.validateNotNull( bundleReference, "Bundle reference" );
+        NullArgumentException.validateNotNull( download, "Download" );
+        m_bundleReference = bundleReference;
+        m_download = download;
+    }
+
+    public boolean cancel( final boolean mayInterruptIfRunning )
+    {
+        return m_download.cancel( mayInterruptIfRunning );
+    }
+
+    public boolean isCancelled()
+    {
+        return m_download.isCancelled();
+    }
+
+    public boolean isDone()
+    {
+        return m_download.isDone();
+    }
+
+    /**
+     * Waits for the file download and returns a local bundle reference to downloaded file.
+     *
+     * @return local bundle reference or null if bundle was skipped from downloading
+     */
+    public BundleReference get()
+        throws InterruptedException, ExecutionException
+    {
+        return toLocalBundleReference( m_download.get() );
+    }
+
+    /**
+     * Waits for the file download and returns a local bundle reference to downloaded file.
+     *
+     * @return local bundle reference or null if bundle was skipped from downloading
+     */
+    public BundleReference get( final long timeout, final TimeUnit unit )
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+        return toLocalBundleReference( m_download.get( timeout, unit ) );
+    }
+
+    private BundleReference toLocalBundleReference( final File file )
+    {
+        if( file == null )
+        {
+            return null;
+        }
+        return new LocalBundleReference( m_bundleReference, file );
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import org.ops4j.lang.NullArgumentException;
+
+/**
+ * Finds the local file behind an url, if any, so the file can be referenced in place (or copied into the working
+ * directory) instead of being downloaded. Supported are "file:" urls and "mvn:" urls of released versions, which are looked up in the local maven
+ * repository.
+ *
+ * @since 1.8.6
+ */
+public class LocalSource
+{
+
+    /**
+     * Utility class.
+     */
+    private LocalSource()
+    {
+        // utility class
+    }
+
+    /**
+     * Returns the local file with the content of an url.
+     *
+     * @param url             url to be provisioned
+     * @param localRepository local maven repository; null if "mvn:" urls should not be looked up
+     *
+     * @return local file or null if the url content is not a local file
+     */
+    public static File find( final URL url, final File localRepository )
+    {
+        NullArgumentException.validateNotNull( url, "URL" );
+        if( "file".equals( url.getProtocol() ) )
+        {
+            return existing( toFile( url ) );
+        }
+        if( "mvn".equals( url.getProtocol() ) && localRepository != null )
+        {
+            return existing( toFile( url.toExternalForm().substring( "mvn:".length() ), localRepository ) );
+        }
+        return null;
+    }
+
+    /**
+     * Converts a "file:" url to a file.
+     *
+     * @param url "file:" url
+     *
+     * @return file
+     */
+    static File toFile( final URL url )
+    {
+        try
+        {
+            return new File( url.toURI() );
+        }
+        catch( URISyntaxException e )
+        {
+            // not escaped urls as "file:/some dir/some.jar"
+            return new File( url.getPath() );
+        }
+        catch( IllegalArgumentException e )
+        {
+            // urls with an authority or a query
+            return new File( url.getPath() );
+        }
+    }
+
+    /**
+     * Converts a "mvn:" url path ([repository!]groupId/artifactId/version[/type[/classifier]]) to the artifact file in
+     * the local repository. Only released versions are converted, as snapshots, ranges and latest versions are resolved
+     * by the maven handler against remote repositories.
+     *
+     * @param path            "mvn:" url path
+     * @param localRepository local maven repository
+     *
+     * @return file or null if the path does not denote a released version
+     */
+    static File toFile( final String path, final File localRepository )
+    {
+        final String[] segments = path.substring( path.lastIndexOf( '!' ) + 1 ).split( "/" );
+        if( segments.length < 3 || segments.length > 5 )
+        {
+            return null;
+        }
+        final String groupId = segments[ 0 ];
+        final String artifactId = segments[ 1 ];
+        final String version = segments[ 2 ];
+        if( groupId.length() == 0 || artifactId.length() == 0 || version.length() == 0
+            || version.endsWith( "SNAPSHOT" ) || "LATEST".equals( version ) || "RELEASE".equals( version )
+            || version.matches( ".*[\\[\\](),].*" ) )
+        {
+            return null;
+        }
+        final String type = segments.length > 3 && segments[ 3 ].length() > 0 ? segments[ 3 ] : "jar";
+        final String classifier = segments.length > 4 && segments[ 4 ].length() > 0 ? "-" + segments[ 4 ] : "";
+        return new File(
+            localRepository,
+            groupId.replace( '.', '/' ) + "/" + artifactId + "/" + version + "/"
+            + artifactId + "-" + version + classifier + "." + type
+        );
+    }
+
+    /**
+     * Returns the local maven repository directory, as configured by the maven handler option, defaulting to
+     * ".m2/repository" in user home directory.
+     *
+     * @param option value of local repository option; can be null
+     *
+     * @return local repository directory
+     */
+    public static File localRepository( final String option )
+    {
+        if( option == null || option.trim().length() == 0 )
+        {
+            return new File( new File( System.getProperty( "user.home" ), ".m2" ), "repository" );
+        }
+        final String value = option.trim();
+        if( value.startsWith( "file:" ) )
+        {
+            try
+            {
+                return toFile( new URL( value ) );
+            }
+            catch( MalformedURLException e )
+            {
+                return new File( value.substring( "file:".length() ) );
+            }
+        }
+        return new File( value );
+    }
+
+    private static File existing( final File file )
+    {
+        return file != null && file.isFile() ? file : null;
+    }
+
+}
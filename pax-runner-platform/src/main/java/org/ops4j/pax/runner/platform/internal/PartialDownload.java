@@ -0,0 +1,360 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Properties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+
+/**
+ * Download into a ".part" file that is promoted to the destination only after its size and checksum were verified.
+ * If a previous download of the same url was interrupted, the download is resumed via an http range request, as long
+ * as the server supports ranges and the content did not change meanwhile. The validators of the content being
+ * downloaded are kept next to the part file, so an interrupted download can be resumed also after the runner was
+ * killed.
+ *
+ * @since 1.8.6
+ */
+public class PartialDownload
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( PartialDownload.class );
+    /**
+     * Property keys of validators file.
+     */
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String CHECKSUM = "checksum";
+    /**
+     * Http status code of a range that cannot be satisfied.
+     */
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    /**
+     * Url being downloaded. Cannot be null.
+     */
+    private final URL m_url;
+    /**
+     * Part file. Cannot be null.
+     */
+    private final File m_part;
+    /**
+     * Validators of the part file content. Cannot be null.
+     */
+    private final File m_validators;
+    /**
+     * Transport used to open connections. Cannot be null.
+     */
+    private final DownloadTransport m_transport;
+
+    /**
+     * Creates a new partial download.
+     *
+     * @param url  url to be downloaded; mandatory
+     * @param part file where the content is downloaded, until verified; mandatory
+     */
+    public PartialDownload( final URL url, final File part )
+    {
+        this( url, part, new DownloadTransport() );
+    }
+
+    /**
+     * Creates a new partial download, opening connections via a download transport.
+     *
+     * @param url       url to be downloaded; mandatory
+     * @param part      file where the content is downloaded, until verified; mandatory
+     * @param transport transport used to open connections; mandatory
+     */
+    public PartialDownload( final URL url, final File part, final DownloadTransport transport )
+    {
+        NullArgumentException.validateNotNull( url, "URL" );
+        NullArgumentException.validateNotNull( part, "Part file" );
+        NullArgumentException.validateNotNull( transport, "Transport" );
+        m_url = url;
+        m_part = part;
+        m_transport = transport;
+        m_validators = new File( part.getParentFile(), part.getName() + ".validators" );
+    }
+
+    /**
+     * Opens a connection to the url, asking only for the missing content if there is a part file from a previous
+     * download that can be resumed.
+     *
+     * @return open connection
+     *
+     * @throws IOException if the connection cannot be opened
+     */
+    public URLConnection openConnection()
+        throws IOException
+    {
+        final URLConnection connection = m_transport.openConnection( m_url );
+        final DownloadValidators validators = readValidators();
+        final String ifRange = validators == null
+                               ? null
+                               : validators.getETag() != null ? validators.getETag() : validators.getLastModified();
+        if( connection instanceof HttpURLConnection && m_part.length() > 0 && ifRange != null )
+        {
+            // if the content changed since the part was downloaded, the server will send the whole content
+            connection.setRequestProperty( "Range", "bytes=" + m_part.length() + "-" );
+            connection.setRequestProperty( "If-Range", ifRange );
+            if( ( (HttpURLConnection) connection ).getResponseCode() == HTTP_RANGE_NOT_SATISFIABLE )
+            {
+                // part file is not a prefix of the content (e.g. already complete) so start over
+                DownloadTransport.release( connection );
+                discard();
+                return m_transport.openConnection( m_url );
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Opens the part file for writing the content received on a connection. If the connection resumes the download,
+     * content is appended to the part file, otherwise the part file is started over.
+     *
+     * @param connection connection to the url
+     *
+     * @return stream to the part file
+     *
+     * @throws IOException if the part file cannot be opened
+     */
+    public FileOutputStream openPart( final URLConnection connection )
+        throws IOException
+    {
+        final boolean resumed = isResumed( connection );
+        if( resumed )
+        {
+            LOGGER.debug( "Resuming download of [" + m_url + "] from byte " + m_part.length() );
+        }
+        else
+        {
+            m_part.delete();
+        }
+        writeValidators( DownloadValidators.from( connection ) );
+        return new FileOutputStream( m_part, resumed );
+    }
+
+    /**
+     * Verifies the downloaded content against the size and checksum announced by the server and, if verified, moves
+     * the part file to destination. If the content is incomplete the part file is kept to be resumed, otherwise if
+     * not verified the part file is deleted, so next download starts over.
+     *
+     * @param connection  connection the content was received on
+     * @param destination file to move the part file to
+     *
+     * @throws IOException if content cannot be verified or the part file cannot be moved
+     */
+    public void promote( final URLConnection connection, final File destination )
+        throws IOException
+    {
+        final long expected = getExpectedLength( connection );
+        if( expected >= 0 && m_part.length() < expected )
+        {
+            // keep the part file, so the download can be resumed
+            throw new IOException(
+                "Download interrupted after " + m_part.length() + " bytes of " + expected + " bytes"
+            );
+        }
+        if( expected >= 0 && m_part.length() > expected )
+        {
+            discard();
+            throw new IOException( "Downloaded " + m_part.length() + " bytes instead of " + expected + " bytes" );
+        }
+        final String checksum = connection.getHeaderField( DownloadValidators.CHECKSUM_HEADER );
+        if( checksum != null && !checksum.equalsIgnoreCase( BundleStore.checksum( m_part ) ) )
+        {
+            discard();
+            throw new IOException( "Checksum of downloaded content is not " + checksum );
+        }
+        destination.delete();
+        if( !m_part.renameTo( destination ) )
+        {
+            throw new IOException( "Cannot rename " + m_part + " to " + destination );
+        }
+        m_validators.delete();
+    }
+
+    /**
+     * Deletes the part file and its validators.
+     */
+    public void discard()
+    {
+        m_part.delete();
+        m_validators.delete();
+    }
+
+    /**
+     * Returns true if the connection resumes a previous download (server answered with partial content).
+     *
+     * @param connection connection to the url
+     *
+     * @return true if download is resumed
+     *
+     * @throws IOException if the response cannot be read
+     */
+    private boolean isResumed( final URLConnection connection )
+        throws IOException
+    {
+        return connection instanceof HttpURLConnection
+               && ( (HttpURLConnection) connection ).getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+    }
+
+    /**
+     * Returns the expected length of the whole content, as announced by the server.
+     *
+     * @param connection connection the content was received on
+     *
+     * @return expected length or -1 if not known
+     *
+     * @throws IOException if the response cannot be read
+     */
+    private long getExpectedLength( final URLConnection connection )
+        throws IOException
+    {
+        if( isResumed( connection ) )
+        {
+            // Content-Range: bytes 100-199/200
+            final String range = connection.getHeaderField( "Content-Range" );
+            if( range != null && range.indexOf( '/' ) > 0 )
+            {
+                return parseLength( range.substring( range.indexOf( '/' ) + 1 ) );
+            }
+            return -1;
+        }
+        // content length of the connection is an int so it cannot be used for files bigger then 2GB
+        return parseLength( connection.getHeaderField( "Content-Length" ) );
+    }
+
+    private static long parseLength( final String length )
+    {
+        if( length == null )
+        {
+            return -1;
+        }
+        try
+        {
+            return Long.parseLong( length.trim() );
+        }
+        catch( NumberFormatException ignore )
+        {
+            // as for example "*" when the length is unknown
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the validators of the content of the part file.
+     *
+     * @return validators or null if not available
+     */
+    private DownloadValidators readValidators()
+    {
+        if( !m_validators.isFile() )
+        {
+            return null;
+        }
+        final Properties properties = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( m_validators );
+            properties.load( in );
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+        finally
+        {
+            close( in );
+        }
+        final DownloadValidators validators = new DownloadValidators(
+            properties.getProperty( ETAG ), properties.getProperty( LAST_MODIFIED ), properties.getProperty( CHECKSUM )
+        );
+        return validators.isEmpty() ? null : validators;
+    }
+
+    /**
+     * Writes the validators of the content of the part file.
+     *
+     * @param validators validators to write. If null the validators file is deleted.
+     *
+     * @throws IOException if validators cannot be written
+     */
+    private void writeValidators( final DownloadValidators validators )
+        throws IOException
+    {
+        m_validators.delete();
+        if( validators == null )
+        {
+            return;
+        }
+        final Properties properties = new Properties();
+        setIfNotNull( properties, ETAG, validators.getETag() );
+        setIfNotNull( properties, LAST_MODIFIED, validators.getLastModified() );
+        setIfNotNull( properties, CHECKSUM, validators.getChecksum() );
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( m_validators );
+            properties.store( out, "" );
+        }
+        finally
+        {
+            close( out );
+        }
+    }
+
+    private static void setIfNotNull( final Properties properties, final String key, final String value )
+    {
+        if( value != null )
+        {
+            properties.setProperty( key, value );
+        }
+    }
+
+    private static void close( final Closeable closeable )
+    {
+        if( closeable != null )
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch( IOException ignore )
+            {
+                // ignore
+            }
+        }
+    }
+
+}
@@ -20,6 +20,7 @@ package org.ops4j.pax.runner.platform.internal;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.runner.commons.Trace;
 import org.ops4j.pax.runner.platform.*;
 import org.ops4j.util.property.DictionaryPropertyResolver;
 import org.ops4j.util.property.PropertyResolver;
@@ -30,10 +31,13 @@ import javax.xml.parsers.ParserConfigurationException;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.channels.FileChannel;
 import java.util.*;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
 
 /**
  * Handles the workflow of creating the platform. Concrete platforms should implement only the PlatformBuilder
@@ -44,13 +48,17 @@ import java.util.jar.Manifest;
  * @since August 19, 2007
  */
 public class PlatformImpl
-    implements Platform
+    implements QueueingPlatform
 {
 
     /**
      * Logger.
      */
     private static final Log LOGGER = LogFactory.getLog( PlatformImpl.class );
+    /**
+     * Maven handler option of local repository, where released "mvn:" artifacts are looked up.
+     */
+    private static final String MVN_LOCAL_REPOSITORY = "org.ops4j.pax.url.mvn.localRepository";
     /**
      * Concrete platform builder as equinox, felix, kf.
      */
@@ -59,6 +67,14 @@ public class PlatformImpl
      * PropertyResolver to be used.Injected to allow a Managed Service implementation.
      */
     private PropertyResolver m_propertyResolver;
+    /**
+     * Locks per url being downloaded, so the same url is never downloaded by two threads in the same time.
+     */
+    private final ConcurrentMap<String, Object> m_downloadLocks;
+    /**
+     * Download queue created before start, to be taken over on start. Null if there is no such queue.
+     */
+    private BundleDownloadQueue m_downloadQueue;
 
     /**
      * Creates a new platform.
@@ -69,6 +85,7 @@ public class PlatformImpl
     {
         NullArgumentException.validateNotNull( platformBuilder, "Platform builder" );
         m_platformBuilder = platformBuilder;
+        m_downloadLocks = new ConcurrentHashMap<String, Object>();
     }
 
     /**
@@ -130,47 +147,102 @@ public class PlatformImpl
         final Boolean overwriteBundles = configuration.isOverwrite();
         final Boolean overwriteUserBundles = configuration.isOverwriteUserBundles();
         final Boolean overwriteSystemBundles = configuration.isOverwriteSystemBundles();
-        final Boolean downloadFeeback = configuration.isDownloadFeedback();
+        final boolean autoWrap = configuration.isAutoWrap();
+        final boolean keepOriginalUrls = configuration.keepOriginalUrls();
+        final boolean validateBundles = configuration.validateBundles();
+        final boolean skipInvalidBundles = configuration.skipInvalidBundles();
+        // take over the downloads already started by a download queue, if any
+        final BundleDownloadQueue downloadQueue = takeOverDownloadQueue(
+            workDir, overwriteBundles || overwriteUserBundles, autoWrap, keepOriginalUrls, validateBundles,
+            skipInvalidBundles
+        );
+        final DownloadExecutor downloader;
+        final DownloadContext downloadContext;
+        if ( downloadQueue != null )
+        {
+            downloader = downloadQueue.getDownloader();
+            downloadContext = downloadQueue.getDownloadContext();
+        }
+        else
+        {
+            downloader = new DownloadExecutor( configuration.getDownloadThreads() );
+            downloadContext = createDownloadContext( configuration, workDir );
+        }
+        // fine grained feedback cannot be displayed on console for more then one download in the same time, so
+        // concurrent downloads are displayed as a whole
+        final boolean feedback = configuration.isDownloadFeedback();
+        final Boolean downloadFeeback = feedback && !downloader.isConcurrent();
+        if ( feedback && downloader.isConcurrent() && LOGGER.isInfoEnabled() )
+        {
+            downloadContext.setProgressView( new StreamUtils.AggregateProgressView() );
+        }
 
         LOGGER.info( "Downloading bundles..." );
 
-        // download system package
-        LOGGER.debug( "Download system package" );
-        final File systemFile = downloadSystemFile(
-            workDir, definition, overwriteBundles || overwriteSystemBundles, downloadFeeback
-        );
-
-        LOGGER.debug( "Download additional system libraries" );
-        final List<LocalSystemFile> localSystemFiles = downloadSystemFiles(
-            workDir, systemFiles, overwriteBundles || overwriteSystemBundles, downloadFeeback
-        );
-        // download the rest of the bundles
+        final File systemFile;
+        final List<LocalSystemFile> localSystemFiles;
         final List<BundleReference> bundlesToInstall = new ArrayList<BundleReference>();
-        LOGGER.debug( "Download platform bundles" );
-        bundlesToInstall.addAll(
-            downloadPlatformBundles(
-                workDir,
+        try
+        {
+            // download system package
+            LOGGER.debug( "Download system package" );
+            final Future<File> systemFileDownload = downloadSystemFile(
+                downloader, downloadContext, definition, overwriteBundles || overwriteSystemBundles, downloadFeeback
+            );
+
+            LOGGER.debug( "Download additional system libraries" );
+            final List<Future<LocalSystemFile>> systemFilesDownloads = downloadSystemFiles(
+                downloader, downloadContext, systemFiles, overwriteBundles || overwriteSystemBundles, downloadFeeback
+            );
+            // download the rest of the bundles
+            LOGGER.debug( "Download platform bundles" );
+            final List<Future<BundleReference>> platformBundlesDownloads = downloadPlatformBundles(
+                downloader,
+                downloadContext,
                 definition,
                 context,
                 overwriteBundles || overwriteSystemBundles,
                 downloadFeeback,
-                configuration.validateBundles(),
-                configuration.skipInvalidBundles()
-            )
-        );
-        LOGGER.debug( "Download bundles" );
-        bundlesToInstall.addAll(
-            downloadBundles(
-                workDir,
+                validateBundles,
+                skipInvalidBundles
+            );
+            LOGGER.debug( "Download bundles" );
+            final List<Future<BundleReference>> bundlesDownloads = downloadBundles(
+                downloader,
+                downloadContext,
+                downloadQueue,
                 bundles,
                 overwriteBundles || overwriteUserBundles,
                 downloadFeeback,
-                configuration.isAutoWrap(),
-                configuration.keepOriginalUrls(),
-                configuration.validateBundles(),
-                configuration.skipInvalidBundles()
-            )
-        );
+                autoWrap,
+                keepOriginalUrls,
+                validateBundles,
+                skipInvalidBundles
+            );
+
+            // wait for all downloads to finish, keeping the order in which they were requested
+            systemFile = downloader.await( systemFileDownload );
+            localSystemFiles = downloader.awaitAll( systemFilesDownloads );
+            bundlesToInstall.addAll( downloader.awaitAll( platformBundlesDownloads ) );
+            bundlesToInstall.addAll( downloader.awaitAll( bundlesDownloads ) );
+            downloader.checkFailures();
+        }
+        finally
+        {
+            downloader.shutdown();
+            if ( downloadContext.getProgressView() != null )
+            {
+                downloadContext.getProgressView().stop();
+                downloadContext.setProgressView( null );
+            }
+            // indexes are saved once, also when some downloads failed, so successful downloads are not repeated
+            downloadContext.saveIndexes();
+            if ( downloadContext.getBundleStore() != null )
+            {
+                downloadContext.getBundleStore().evict();
+            }
+            downloadContext.getTransport().logStatistics();
+        }
         context.setBundles( bundlesToInstall );
         final ExecutionEnvironment ee = new ExecutionEnvironment( configuration.getExecutionEnvironment() );
         context.setSystemPackages(
@@ -178,13 +250,33 @@ public class PlatformImpl
         );
         context.setExecutionEnvironment( ee.getExecutionEnvironment() );
 
+        JavaRunner runner = javaRunner;
+        if ( runner == null )
+        {
+            runner = new DefaultJavaRunner();
+        }
+        // an embedded launch needs no configuration files and no main class
+        if ( runner instanceof EmbeddedJavaRunner )
+        {
+            launchEmbedded( (EmbeddedJavaRunner) runner, context, configuration, systemFile, localSystemFiles );
+            return;
+        }
+
         // and then ask the platform builder to prepare platform for start up (e.g. create configuration file)
-        m_platformBuilder.prepare( context );
+        final Trace.Span prepareSpan = Trace.begin( "prepare", String.valueOf( m_platformBuilder ) );
+        try
+        {
+            m_platformBuilder.prepare( context );
+        }
+        finally
+        {
+            prepareSpan.end();
+        }
 
         final CommandLineBuilder vmOptions = new CommandLineBuilder();
         vmOptions.append( configuration.getVMOptions() );
         vmOptions.append( m_platformBuilder.getVMOptions( context ) );
-        if ( configuration.keepOriginalUrls() )
+        if ( keepOriginalUrls )
         {
             vmOptions.append( "-Djava.protocol.handler.pkgs=org.ops4j.pax.url" );
         }
@@ -195,11 +287,6 @@ public class PlatformImpl
         programOptions.append( m_platformBuilder.getArguments( context ) );
         programOptions.append( getFrameworkOptions() );
 
-        JavaRunner runner = javaRunner;
-        if ( runner == null )
-        {
-            runner = new DefaultJavaRunner();
-        }
         final String javaHome = configuration.getJavaHome();
 
         LOGGER.debug( "Using " + runner.getClass() + " [" + mainClassName + "]" );
@@ -220,6 +307,202 @@ public class PlatformImpl
         );
     }
 
+    /**
+     * Launches the platform embedded, with the framework properties of the platform builder.
+     *
+     * @param runner           embedded java runner
+     * @param context          platform context
+     * @param configuration    configuration
+     * @param systemFile       framework system file
+     * @param localSystemFiles local system files
+     *
+     * @throws PlatformException if the platform does not support an embedded launch or the launch fails
+     */
+    private void launchEmbedded( final EmbeddedJavaRunner runner,
+                                 final PlatformContext context,
+                                 final Configuration configuration,
+                                 final File systemFile,
+                                 final List<LocalSystemFile> localSystemFiles )
+        throws PlatformException
+    {
+        if ( !( m_platformBuilder instanceof EmbeddedPlatformBuilder ) )
+        {
+            throw new PlatformException( "Platform [" + this + "] does not support an embedded launch" );
+        }
+        final Map<String, String> frameworkProperties = applyVMOptions(
+            ( (EmbeddedPlatformBuilder) m_platformBuilder ).getFrameworkProperties( context ),
+            configuration.getVMOptions(),
+            configuration.getEnvOptions()
+        );
+        final String[] classpath = buildClassPath( systemFile, localSystemFiles, configuration, context );
+
+        LOGGER.debug( "Using " + runner.getClass() + " [" + this + "]" );
+        LOGGER.debug( "Classpath:            [" + Arrays.toString( classpath ) + "]" );
+        LOGGER.debug( "Framework properties: [" + frameworkProperties + "]" );
+        LOGGER.debug( "Working dir:          [" + context.getWorkingDirectory() + "]" );
+        runner.launch(
+            classpath,
+            frameworkProperties,
+            context.getBundles(),
+            configuration.getBundleStartLevel(),
+            context.getWorkingDirectory()
+        );
+    }
+
+    /**
+     * Applies the virtual machine options of an embedded launch, which has no virtual machine of its own: system
+     * properties (-Dkey=value) become framework properties, overriding the ones of the platform builder; other virtual
+     * machine options (as heap size or agents) and environment options cannot apply and are only reported.
+     *
+     * @param frameworkProperties framework properties of the platform builder
+     * @param vmOptions           virtual machine options; can be null
+     * @param envOptions          environment options; can be null
+     *
+     * @return framework properties including the system properties of the virtual machine options
+     */
+    static Map<String, String> applyVMOptions( final Map<String, String> frameworkProperties,
+                                               final String[] vmOptions,
+                                               final String[] envOptions )
+    {
+        final Map<String, String> properties = new HashMap<String, String>( frameworkProperties );
+        if ( vmOptions != null )
+        {
+            for ( String vmOption : vmOptions )
+            {
+                if ( vmOption == null || vmOption.trim().length() == 0 )
+                {
+                    continue;
+                }
+                final String option = vmOption.trim();
+                final int separator = option.indexOf( '=' );
+                if ( option.startsWith( "-D" ) && option.length() > 2 && separator < 0 )
+                {
+                    properties.put( option.substring( 2 ), "" );
+                }
+                else if ( option.startsWith( "-D" ) && separator > 2 )
+                {
+                    properties.put( option.substring( 2, separator ), option.substring( separator + 1 ) );
+                }
+                else
+                {
+                    LOGGER.warn( "VM option [" + option + "] cannot apply to a platform launched in process" );
+                }
+            }
+        }
+        if ( envOptions != null && envOptions.length > 0 )
+        {
+            LOGGER.warn(
+                "Environment options " + Arrays.toString( envOptions )
+                + " cannot apply to a platform launched in process"
+            );
+        }
+        return properties;
+    }
+
+    /**
+     * @see QueueingPlatform#createDownloadQueue(Dictionary)
+     */
+    public DownloadQueue createDownloadQueue( @SuppressWarnings("rawtypes") final Dictionary config )
+        throws PlatformException
+    {
+        final Configuration configuration = mandatory( "Configuration", createConfiguration( config ) );
+        final File workDir = mandatory( "Working dir", createWorkingDir( configuration.getWorkingDirectory() ) );
+        final BundleDownloadQueue downloadQueue = new BundleDownloadQueue(
+            this,
+            // scanning goes on in the calling thread so downloads must be done in background
+            new DownloadExecutor( configuration.getDownloadThreads(), true ),
+            createDownloadContext( configuration, workDir ),
+            configuration.isOverwrite() || configuration.isOverwriteUserBundles(),
+            configuration.isAutoWrap(),
+            configuration.keepOriginalUrls(),
+            configuration.validateBundles(),
+            configuration.skipInvalidBundles()
+        );
+        final BundleDownloadQueue previous;
+        synchronized ( this )
+        {
+            previous = m_downloadQueue;
+            m_downloadQueue = downloadQueue;
+        }
+        if ( previous != null )
+        {
+            previous.close();
+        }
+        return downloadQueue;
+    }
+
+    /**
+     * Takes over the download queue created before start, if any. If the queue was created with other settings then
+     * the ones in use for start, the queue is closed and not used.
+     *
+     * @param workDir            working directory
+     * @param overwrite          if the bundles should be overwritten
+     * @param autoWrap           wheather or not auto wrapping should take place
+     * @param keepOriginalUrls   if the provisioned bundles should be cached or not
+     * @param validateBundles    if downloaded bundles osgi headers should be checked
+     * @param skipInvalidBundles if invalid bundles (failing validation) should be skipped
+     *
+     * @return taken over download queue or null if there is no queue that can be used
+     */
+    private BundleDownloadQueue takeOverDownloadQueue( final File workDir,
+                                                       final boolean overwrite,
+                                                       final boolean autoWrap,
+                                                       final boolean keepOriginalUrls,
+                                                       final boolean validateBundles,
+                                                       final boolean skipInvalidBundles )
+    {
+        final BundleDownloadQueue downloadQueue;
+        synchronized ( this )
+        {
+            downloadQueue = m_downloadQueue;
+            m_downloadQueue = null;
+        }
+        if ( downloadQueue == null )
+        {
+            return null;
+        }
+        if ( downloadQueue.takeOver( workDir, overwrite, autoWrap, keepOriginalUrls, validateBundles,
+                                     skipInvalidBundles ) )
+        {
+            LOGGER.debug( "Taking over downloads started before start" );
+            return downloadQueue;
+        }
+        LOGGER.debug( "Download queue was created with other settings and will not be used" );
+        downloadQueue.close();
+        return null;
+    }
+
+    /**
+     * Creates the context of downloads to the working directory.
+     *
+     * @param configuration configuration to get the bundle store and the download transport settings from
+     * @param workDir       working directory
+     *
+     * @return download context
+     */
+    private DownloadContext createDownloadContext( final Configuration configuration, final File workDir )
+    {
+        BundleStore bundleStore = null;
+        if ( configuration.useBundleStore() )
+        {
+            bundleStore = new BundleStore(
+                new File( configuration.getBundleStore() ),
+                configuration.getBundleStoreMaxSize() * 1024L * 1024L,
+                configuration.getBundleStoreMaxAge() * 24L * 60L * 60L * 1000L
+            );
+            LOGGER.debug( "Using bundle store [" + bundleStore.getDirectory() + "]" );
+        }
+        return new DownloadContext(
+            workDir,
+            new DownloadIndex( new File( workDir, "bundles/downloaded_bundles.properties" ) ),
+            bundleStore,
+            BundleMetadataIndex.open( new File( workDir, "bundles/bundles_metadata.properties" ) ),
+            new DownloadTransport(
+                configuration.getDownloadsPerHost(), configuration.getConnectTimeout(), configuration.getReadTimeout()
+            ),
+            LocalSource.localRepository( configuration.getProperty( MVN_LOCAL_REPOSITORY ) )
+        );
+    }
 
     /**
      * Builds the classpath java startup option out of specified system files (prepended/appended), framework jar and
@@ -297,8 +580,10 @@ public class PlatformImpl
     /**
      * Downloads the bundles that will be installed to the working directory.
      *
+     * @param downloader         executor of downloads
+     * @param downloadContext    working directory, bundle store and metadata index
+     * @param downloadQueue      download queue with downloads started before start; can be null
      * @param bundles            url of bundles to be installed
-     * @param workDir            the directory where to download bundles
      * @param overwrite          if the bundles should be overwritten
      * @param downloadFeeback    whether or not downloading process should display fne grained progres info
      * @param autoWrap           wheather or not auto wrapping should take place
@@ -306,81 +591,160 @@ public class PlatformImpl
      * @param validateBundles    if downloaded bundles osgi headers should be checked
      * @param skipInvalidBundles if invalid bundles (failing validation) should be skipped
      *
-     * @return a list of downloaded files
+     * @return a list of pending downloads, in the same order as the bundles
      *
      * @throws PlatformException re-thrown
      */
-    private List<BundleReference> downloadBundles( final File workDir,
-                                                   final List<BundleReference> bundles,
-                                                   final Boolean overwrite,
-                                                   final boolean downloadFeeback,
-                                                   final boolean autoWrap,
-                                                   final boolean keepOriginalUrls,
-                                                   final boolean validateBundles,
-                                                   final boolean skipInvalidBundles )
+    private List<Future<BundleReference>> downloadBundles( final DownloadExecutor downloader,
+                                                           final DownloadContext downloadContext,
+                                                           final BundleDownloadQueue downloadQueue,
+                                                           final List<BundleReference> bundles,
+                                                           final Boolean overwrite,
+                                                           final boolean downloadFeeback,
+                                                           final boolean autoWrap,
+                                                           final boolean keepOriginalUrls,
+                                                           final boolean validateBundles,
+                                                           final boolean skipInvalidBundles )
         throws PlatformException
     {
-        // TODO Is there an intelligent but easy way to avoid hardcoding "wrap:"
-        // and "reference:" for special case handling?
-        final List<BundleReference> localBundles = new ArrayList<BundleReference>();
+        final List<Future<BundleReference>> localBundles = new ArrayList<Future<BundleReference>>();
         if ( bundles != null )
         {
-            for ( BundleReference reference : bundles )
+            for ( final BundleReference reference : bundles )
             {
-                URL url = reference.getURL();
-                if ( url == null )
+                if ( reference.getURL() == null )
                 {
                     throw new PlatformException( "Invalid url in bundle reference [" + reference + "]" );
                 }
-                if ( autoWrap )
+                final URL url = determineDownloadURL( reference.getURL(), autoWrap );
+                if ( !shouldDownload( url, keepOriginalUrls ) )
                 {
-                    try
-                    {
-                        final String urlToWrap = url.toExternalForm();
-                        if ( !urlToWrap.startsWith( "wrap:" ) )
-                        {
-                            url = new URL( "wrap:" + urlToWrap );
-                        }
-                    }
-                    catch ( MalformedURLException e )
-                    {
-                        LOGGER.warn( "Could not auto wrap url [" + url + "] due to: " + e.getMessage() );
-                    }
-                }
-                // "reference:" bundles shall not be downloaded, they are provisioned in place.
-                if ( keepOriginalUrls || url.getProtocol().equals( "reference" ) )
-                {
-                    localBundles.add( reference );
+                    localBundles.add( downloader.done( reference ) );
                 }
                 else
                 {
-                    final File bundleFile = download(
-                        workDir,
-                        url,
-                        reference.getName(),
-                        overwrite || reference.shouldUpdate(),
-                        validateBundles,
-                        !skipInvalidBundles,
-                        downloadFeeback
-                    );
-                    if ( bundleFile != null )
+                    final boolean overwriteBundle = overwrite || reference.shouldUpdate();
+                    Future<File> download = null;
+                    if ( downloadQueue != null )
                     {
-                        localBundles.add( new LocalBundleReference( reference, bundleFile ) );
+                        download = downloadQueue.getDownload( url, overwriteBundle );
                     }
-                    else
+                    if ( download == null )
                     {
-                        LOGGER.info( "Bundle [" + url + "] skipped from provisioning as it is invalid" );
+                        download = downloadBundle(
+                            downloader,
+                            downloadContext,
+                            url,
+                            reference.getName(),
+                            overwriteBundle,
+                            downloadFeeback,
+                            validateBundles,
+                            skipInvalidBundles
+                        );
                     }
+                    localBundles.add( new LocalBundleDownload( reference, download ) );
                 }
             }
         }
         return localBundles;
     }
 
+    /**
+     * Determines the url to be downloaded for a bundle url, by wrapping the url if auto wrapping is on.
+     *
+     * @param url      bundle url
+     * @param autoWrap wheather or not auto wrapping should take place
+     *
+     * @return url to be downloaded
+     */
+    URL determineDownloadURL( final URL url, final boolean autoWrap )
+    {
+        // TODO Is there an intelligent but easy way to avoid hardcoding "wrap:"
+        // and "reference:" for special case handling?
+        if ( autoWrap )
+        {
+            try
+            {
+                final String urlToWrap = url.toExternalForm();
+                if ( !urlToWrap.startsWith( "wrap:" ) )
+                {
+                    return new URL( "wrap:" + urlToWrap );
+                }
+            }
+            catch ( MalformedURLException e )
+            {
+                LOGGER.warn( "Could not auto wrap url [" + url + "] due to: " + e.getMessage() );
+            }
+        }
+        return url;
+    }
+
+    /**
+     * Returns true if the bundle url should be downloaded to the working directory.
+     *
+     * @param url              url to be downloaded
+     * @param keepOriginalUrls if the provisioned bundles should be cached or not
+     *
+     * @return true if url should be downloaded
+     */
+    boolean shouldDownload( final URL url, final boolean keepOriginalUrls )
+    {
+        // "reference:" bundles shall not be downloaded, they are provisioned in place.
+        return !keepOriginalUrls && !url.getProtocol().equals( "reference" );
+    }
+
+    /**
+     * Submits the download of a bundle to the working directory.
+     *
+     * @param downloader         executor of downloads
+     * @param downloadContext    working directory, bundle store and metadata index
+     * @param url                url to be downloaded
+     * @param name               bundle name, used for displaying
+     * @param overwrite          if the bundle should be overwritten
+     * @param downloadFeeback    whether or not downloading process should display fne grained progres info
+     * @param validateBundles    if downloaded bundle osgi headers should be checked
+     * @param skipInvalidBundles if an invalid bundle (failing validation) should be skipped
+     *
+     * @return pending download of the bundle file. The file is null if the bundle is skipped as invalid
+     */
+    Future<File> downloadBundle( final DownloadExecutor downloader,
+                                 final DownloadContext downloadContext,
+                                 final URL url,
+                                 final String name,
+                                 final boolean overwrite,
+                                 final boolean downloadFeeback,
+                                 final boolean validateBundles,
+                                 final boolean skipInvalidBundles )
+    {
+        return downloader.submit( new Callable<File>()
+        {
+            public File call()
+                throws PlatformException
+            {
+                final File bundleFile = download(
+                    downloadContext,
+                    url,
+                    name,
+                    overwrite,
+                    validateBundles,
+                    !skipInvalidBundles,
+                    downloadFeeback
+                );
+                if ( bundleFile == null )
+                {
+                    LOGGER.info( "Bundle [" + url + "] skipped from provisioning as it is invalid" );
+                }
+                return bundleFile;
+            }
+        }
+        );
+    }
+
     /**
      * Downsloads platform bundles to working dir.
      *
-     * @param workDir            the directory where to download bundles
+     * @param downloader         executor of downloads
+     * @param downloadContext    working directory, bundle store and metadata index
      * @param definition         to take the system package
      * @param platformContext    current platform context
      * @param overwrite          if the bundles should be overwritten
@@ -388,17 +752,18 @@ public class PlatformImpl
      * @param validateBundles    if downloaded bundles osgi headers should be checked
      * @param skipInvalidBundles if invalid bundles (failing validation) should be skipped
      *
-     * @return a list of downloaded files
+     * @return a list of pending downloads
      *
      * @throws PlatformException re-thrown
      */
-    private List<BundleReference> downloadPlatformBundles( final File workDir,
-                                                           final PlatformDefinition definition,
-                                                           final PlatformContext platformContext,
-                                                           final Boolean overwrite,
-                                                           final boolean downloadFeeback,
-                                                           final boolean validateBundles,
-                                                           final boolean skipInvalidBundles )
+    private List<Future<BundleReference>> downloadPlatformBundles( final DownloadExecutor downloader,
+                                                                   final DownloadContext downloadContext,
+                                                                   final PlatformDefinition definition,
+                                                                   final PlatformContext platformContext,
+                                                                   final Boolean overwrite,
+                                                                   final boolean downloadFeeback,
+                                                                   final boolean validateBundles,
+                                                                   final boolean skipInvalidBundles )
         throws PlatformException
     {
         final StringBuilder profiles = new StringBuilder();
@@ -417,7 +782,9 @@ public class PlatformImpl
             profiles.append( builderProfile );
         }
         return downloadBundles(
-            workDir,
+            downloader,
+            downloadContext,
+            null, // platform bundles are not offered to download queue
             definition.getPlatformBundles( profiles.toString() ),
             overwrite,
             downloadFeeback,
@@ -431,78 +798,94 @@ public class PlatformImpl
     /**
      * Downloads the system file.
      *
-     * @param workDir         the directory where to download bundles
+     * @param downloader      executor of downloads
+     * @param downloadContext working directory, bundle store and metadata index
      * @param definition      to take the system package
      * @param overwrite       if the bundles should be overwritten
      * @param downloadFeeback whether or not downloading process should display fne grained progres info
      *
-     * @return the system file
-     *
-     * @throws PlatformException re-thrown
+     * @return pending download of the system file
      */
-    private File downloadSystemFile( final File workDir,
-                                     final PlatformDefinition definition,
-                                     final Boolean overwrite,
-                                     final boolean downloadFeeback )
-        throws PlatformException
+    private Future<File> downloadSystemFile( final DownloadExecutor downloader,
+                                             final DownloadContext downloadContext,
+                                             final PlatformDefinition definition,
+                                             final Boolean overwrite,
+                                             final boolean downloadFeeback )
     {
-        return download(
-            workDir,
-            definition.getSystemPackage(),
-            definition.getSystemPackageName(),
-            overwrite,
-            false, // do not validate as osgi bundle
-            true,  // fail on validation
-            downloadFeeback
+        final URL url = definition.getSystemPackage();
+        final String name = definition.getSystemPackageName();
+        return downloader.submit( new Callable<File>()
+        {
+            public File call()
+                throws PlatformException
+            {
+                return download(
+                    downloadContext,
+                    url,
+                    name,
+                    overwrite,
+                    false, // do not validate as osgi bundle
+                    true,  // fail on validation
+                    downloadFeeback
+                );
+            }
+        }
         );
     }
 
     /**
      * Downloads additional system files that will be added to the classpath.
      *
-     * @param workDir         the directory where to download bundles
+     * @param downloader      executor of downloads
+     * @param downloadContext working directory, bundle store and metadata index
      * @param systemFiles     list of system files references
      * @param overwrite       if the systemFiles should be overwritten
      * @param downloadFeeback whether or not downloading process should display fne grained progres info
      *
-     * @return the system file
-     *
-     * @throws PlatformException re-thrown
+     * @return a list of pending downloads, in the same order as the system files
      */
-    private List<LocalSystemFile> downloadSystemFiles( final File workDir,
-                                                       final List<SystemFileReference> systemFiles,
-                                                       final Boolean overwrite,
-                                                       final boolean downloadFeeback )
-        throws PlatformException
+    private List<Future<LocalSystemFile>> downloadSystemFiles( final DownloadExecutor downloader,
+                                                               final DownloadContext downloadContext,
+                                                               final List<SystemFileReference> systemFiles,
+                                                               final Boolean overwrite,
+                                                               final boolean downloadFeeback )
     {
-        final List<LocalSystemFile> downloaded = new ArrayList<LocalSystemFile>();
+        final List<Future<LocalSystemFile>> downloaded = new ArrayList<Future<LocalSystemFile>>();
         if ( systemFiles != null )
         {
-            for ( SystemFileReference reference : systemFiles )
+            for ( final SystemFileReference reference : systemFiles )
             {
-                downloaded.add(
-                    new LocalSystemFileImpl(
-                        reference,
-                        download(
-                            workDir,
-                            reference.getURL(),
-                            reference.getName(),
-                            overwrite,
-                            false, // do not validate as osgi bundle
-                            true,  // fail on validation
-                            downloadFeeback
-                        )
-                    )
-                );
+                downloaded.add( downloader.submit( new Callable<LocalSystemFile>()
+                {
+                    public LocalSystemFile call()
+                        throws PlatformException
+                    {
+                        return new LocalSystemFileImpl(
+                            reference,
+                            download(
+                                downloadContext,
+                                reference.getURL(),
+                                reference.getName(),
+                                overwrite,
+                                false, // do not validate as osgi bundle
+                                true,  // fail on validation
+                                downloadFeeback
+                            )
+                        );
+                    }
+                }
+                ) );
             }
         }
         return downloaded;
     }
 
     /**
-     * Downloads files from urls.
+     * Downloads files from urls. Local files ("file:" urls and released "mvn:" artifacts of the local maven repository)
+     * are referenced in place, unless they are in the working directory. If a bundle store is used, files already in
+     * the store are linked from the store instead of being downloaded, unless an overwrite is requested.
      *
-     * @param workDir          the directory where to download bundles
+     * @param downloadContext  working directory, bundle store and metadata index
      * @param url              of the file to be downloaded
      * @param displayName      to be shown during download
      * @param overwrite        if the bundles should be overwritten
@@ -514,7 +897,7 @@ public class PlatformImpl
      *
      * @throws PlatformException if the url could not be downloaded
      */
-    private File download( final File workDir,
+    private File download( final DownloadContext downloadContext,
                            final URL url,
                            final String displayName,
                            final Boolean overwrite,
@@ -523,84 +906,336 @@ public class PlatformImpl
                            final boolean downloadFeeback )
         throws PlatformException
     {
-        LOGGER.debug( "Downloading [" + url + "]" );
-        File downloadedBundlesFile = new File( workDir, "bundles/downloaded_bundles.properties" );
-        Properties fileNamesForUrls = loadProperties( downloadedBundlesFile );
-
-        String downloadedFileName = fileNamesForUrls.getProperty( url.toExternalForm() );
-        String hashFileName = "" + url.toExternalForm().hashCode();
-        if ( downloadedFileName == null )
+        final Trace.Span span = Trace.begin( "download", url.toExternalForm() );
+        try
         {
-            // destination will be made based on the hashcode of the url to be downloaded
-            downloadedFileName = hashFileName + ".jar";
-
+            return download(
+                downloadContext, url, displayName, overwrite, checkAttributes, failOnValidation, downloadFeeback, span
+            );
+        }
+        finally
+        {
+            span.end();
         }
-        File destination = new File( workDir, "bundles/" + downloadedFileName );
+    }
 
-        // download the bundle only if is a forced overwrite or the file does not exist or the file is there but is
-        // invalid
-        boolean forceOverwrite = overwrite || !destination.exists();
-        if ( !forceOverwrite )
+    /**
+     * Downloads files from urls, recording how the file was provisioned into the trace span.
+     *
+     * @param downloadContext  working directory, bundle store and metadata index
+     * @param url              of the file to be downloaded
+     * @param displayName      to be shown during download
+     * @param overwrite        if the bundles should be overwritten
+     * @param checkAttributes  whether or not to check attributes in the manifest
+     * @param failOnValidation if validation fails should or not fail with an exception (or just return null)
+     * @param downloadFeeback  whether or not downloading process should display fine grained progres info
+     * @param span             trace span of the download
+     *
+     * @return the File corresponding to the downloaded file, or null if the bundle is invalid (not an osgi bundle)
+     *
+     * @throws PlatformException if the url could not be downloaded
+     */
+    private File download( final DownloadContext downloadContext,
+                           final URL url,
+                           final String displayName,
+                           final Boolean overwrite,
+                           final boolean checkAttributes,
+                           final boolean failOnValidation,
+                           final boolean downloadFeeback,
+                           final Trace.Span span )
+        throws PlatformException
+    {
+        // the same url can be requested by more then one concurrent download (e.g. as platform and as user bundle)
+        synchronized( getDownloadLock( url ) )
         {
-            try
+            LOGGER.debug( "Downloading [" + url + "]" );
+            final File workDir = downloadContext.getWorkingDirectory();
+            final BundleStore bundleStore = downloadContext.getBundleStore();
+            final BundleMetadataIndex metadataIndex = downloadContext.getMetadataIndex();
+            final DownloadIndex downloadIndex = downloadContext.getDownloadIndex();
+            // local files are referenced in place, unless in the working directory, which the platform writes into
+            final File localSource = LocalSource.find( url, downloadContext.getLocalRepository() );
+            if ( localSource != null && !isWithin( localSource, workDir ) )
+            {
+                LOGGER.debug( "Referencing [" + url + "] in place from local file [" + localSource + "]" );
+                span.arg( "cache", "local" );
+                return validate( url, localSource, metadataIndex, checkAttributes, failOnValidation );
+            }
+            String downloadedFileName = downloadIndex.get( url.toExternalForm() );
+            String hashFileName = "" + url.toExternalForm().hashCode();
+            if ( downloadedFileName == null )
+            {
+                // destination will be made based on the hashcode of the url to be downloaded
+                downloadedFileName = hashFileName + ".jar";
+
+            }
+            File destination = new File( workDir, "bundles/" + downloadedFileName );
+
+            // download the bundle only if is a forced overwrite or the file does not exist or the file is there but is
+            // invalid
+            boolean downloaded = destination.exists();
+            if ( downloaded )
             {
-                String cachingName = determineCachingName( destination, hashFileName );
-                if ( !destination.getName().equals( cachingName ) )
+                try
                 {
-                    throw new PlatformException( "File " + destination + " should have name " + cachingName );
+                    String cachingName = determineCachingName( getMetadata( metadataIndex, destination ), hashFileName );
+                    if ( !destination.getName().equals( cachingName ) )
+                    {
+                        throw new PlatformException( "File " + destination + " should have name " + cachingName );
+                    }
+                }
+                catch ( PlatformException ignore )
+                {
+                    downloaded = false;
                 }
             }
-            catch ( PlatformException ignore )
+            boolean forceOverwrite = overwrite || !downloaded;
+            if ( !forceOverwrite )
             {
-                forceOverwrite = true;
+                span.arg( "cache", "hit" );
             }
-        }
-        if ( forceOverwrite )
-        {
-            try
+            // the number of requests in the same time to a remote host is limited
+            DownloadTransport.Permit permit = null;
+            if ( forceOverwrite )
             {
-                LOGGER.debug( "Creating new file at destination: " + destination.getAbsolutePath() );
-                destination.getParentFile().mkdirs();
-                destination.createNewFile();
-                FileOutputStream os = null;
                 try
                 {
-                    os = new FileOutputStream(destination);
-                    FileChannel fileChannel = os.getChannel();
-                    StreamUtils.ProgressBar progressBar = null;
-                    if ( LOGGER.isInfoEnabled() )
+                    permit = downloadContext.getTransport().acquire( url );
+                }
+                catch ( InterruptedIOException e )
+                {
+                    throw new PlatformException( "[" + url + "] could not be downloaded", e );
+                }
+            }
+            long received = 0;
+            // local files in the working directory are copied, so neither a connection nor the bundle store is needed
+            final File copySource = forceOverwrite ? localSource : null;
+            File stored = null;
+            DownloadValidators validators = null;
+            try
+            {
+                URLConnection connection = null;
+                if ( forceOverwrite && downloaded && copySource == null )
+                {
+                    // an update was requested, so ask (if possible) only for content changed since downloaded
+                    try
+                    {
+                        connection = DownloadValidators.openConnection(
+                            downloadContext.getTransport(),
+                            url,
+                            downloadIndex.getValidators( url.toExternalForm() ),
+                            getMetadata( metadataIndex, destination ).getChecksum()
+                        );
+                    }
+                    catch ( IOException e )
                     {
-                        if ( downloadFeeback )
+                        throw new PlatformException( "[" + url + "] could not be downloaded", e );
+                    }
+                    if ( connection == null )
+                    {
+                        LOGGER.debug( "[" + url + "] did not change since downloaded to [" + destination + "]" );
+                        forceOverwrite = false;
+                        span.arg( "cache", "not modified" );
+                    }
+                }
+                // stored content is used only for urls whose content does not change, or, for http urls, if the server
+                // confirms that the content did not change since stored
+                if ( forceOverwrite && connection == null && copySource == null && bundleStore != null && !overwrite
+                     && BundleStore.isStorable( url ) )
+                {
+                    stored = bundleStore.find( url );
+                    if ( stored != null && BundleStore.needsRevalidation( url ) )
+                    {
+                        try
                         {
-                            progressBar = new StreamUtils.FineGrainedProgressBar( displayName );
+                            connection = DownloadValidators.openConnection(
+                                downloadContext.getTransport(), url, bundleStore.getValidators( url ), stored.getName()
+                            );
                         }
-                        else
+                        catch ( IOException e )
                         {
-                            progressBar = new StreamUtils.CoarseGrainedProgressBar( displayName );
+                            throw new PlatformException( "[" + url + "] could not be downloaded", e );
                         }
+                        if ( connection != null )
+                        {
+                            LOGGER.debug( "[" + url + "] changed since stored in bundle store" );
+                            stored = null;
+                        }
+                    }
+                }
+                if ( copySource != null )
+                {
+                    try
+                    {
+                        // local files are owned by the user, so they are copied: a link would let changes done by the
+                        // platform to the working directory leak into the local file and the other way around
+                        LOGGER.debug( "Copying [" + url + "] from local file [" + copySource + "]" );
+                        span.arg( "cache", "local" );
+                        destination.getParentFile().mkdirs();
+                        destination.delete();
+                        BundleStore.copy( copySource, destination );
+                    }
+                    catch ( IOException e )
+                    {
+                        throw new PlatformException( "[" + url + "] could not be copied from [" + copySource + "]", e );
+                    }
+                }
+                else if ( stored != null )
+                {
+                    try
+                    {
+                        LOGGER.debug( "Linking [" + url + "] from bundle store [" + stored + "]" );
+                        span.arg( "cache", "bundle store" );
+                        destination.getParentFile().mkdirs();
+                        destination.delete();
+                        BundleStore.linkOrCopy( stored, destination );
+                    }
+                    catch ( IOException e )
+                    {
+                        // most probably evicted in the meantime by another runner, so download it again
+                        LOGGER.debug(
+                            "[" + url + "] could not be linked from bundle store due to: " + e.getMessage()
+                        );
+                        stored = null;
                     }
-                    StreamUtils.streamCopy( url, fileChannel, progressBar );
-                    fileChannel.close();
-                    LOGGER.debug( "Succesfully downloaded to [" + destination + "]" );
                 }
-                finally
+                if ( forceOverwrite && copySource == null && stored == null )
                 {
-                    if ( os != null )
+                    // download to a part file and replace the destination only once completely downloaded. This way an
+                    // existing file, that may be linked from the bundle store, is never written into
+                    final PartialDownload partialDownload = new PartialDownload(
+                        url,
+                        new File( destination.getParentFile(), hashFileName + ".part" ),
+                        downloadContext.getTransport()
+                    );
+                    try
+                    {
+                        destination.getParentFile().mkdirs();
+                        if ( connection == null )
+                        {
+                            connection = partialDownload.openConnection();
+                        }
+                        LOGGER.debug( "Creating new file at destination: " + destination.getAbsolutePath() );
+                        FileOutputStream os = null;
+                        try
+                        {
+                            os = partialDownload.openPart( connection );
+                            FileChannel fileChannel = os.getChannel();
+                            StreamUtils.ProgressBar progressBar = null;
+                            if ( LOGGER.isInfoEnabled() )
+                            {
+                                final StreamUtils.AggregateProgressView progressView = downloadContext.getProgressView();
+                                if ( progressView != null )
+                                {
+                                    progressBar = progressView.createProgressBar( displayName );
+                                }
+                                else if ( downloadFeeback )
+                                {
+                                    progressBar = new StreamUtils.FineGrainedProgressBar( displayName );
+                                }
+                                else
+                                {
+                                    progressBar = new StreamUtils.CoarseGrainedProgressBar( displayName );
+                                }
+                            }
+                            received = StreamUtils.streamCopy( connection, fileChannel, progressBar );
+                            fileChannel.close();
+                        }
+                        finally
+                        {
+                            if ( os != null )
+                            {
+                                os.close();
+                            }
+                        }
+                        partialDownload.promote( connection, destination );
+                        LOGGER.debug( "Succesfully downloaded to [" + destination + "]" );
+                        span.arg( "cache", "miss" ).arg( "bytes", destination.length() );
+                        validators = DownloadValidators.from( connection );
+                        downloadIndex.putValidators( url.toExternalForm(), validators );
+                    }
+                    catch ( IOException e )
                     {
-                        os.close();
+                        throw new PlatformException( "[" + url + "] could not be downloaded", e );
                     }
                 }
             }
-            catch ( IOException e )
+            finally
             {
-                throw new PlatformException( "[" + url + "] could not be downloaded", e );
+                if ( permit != null )
+                {
+                    permit.release( received );
+                }
             }
+            final BundleMetadata metadata = getMetadata( metadataIndex, destination );
+            if ( forceOverwrite && stored == null && copySource == null && bundleStore != null
+                 && BundleStore.isStorable( url ) )
+            {
+                try
+                {
+                    bundleStore.store( url, destination, metadata.getChecksum(), validators );
+                }
+                catch ( IOException e )
+                {
+                    LOGGER.warn( "[" + url + "] could not be added to bundle store due to: " + e.getMessage() );
+                }
+            }
+            if ( checkAttributes && validate( url, destination, metadataIndex, true, failOnValidation ) == null )
+            {
+                return null;
+            }
+            String cachingName = determineCachingName( metadata, hashFileName );
+            File newDestination = new File( destination.getParentFile(), cachingName );
+            if ( !cachingName.equals( destination.getName() ) )
+            {
+                // different urls can end up with the same caching name, so rename and update the index exclusively
+                synchronized( downloadIndex )
+                {
+                    if ( newDestination.exists() )
+                    {
+                        if ( !newDestination.delete() )
+                        {
+                            throw new PlatformException( "Cannot delete " + newDestination );
+                        }
+                    }
+                    if ( !destination.renameTo( newDestination ) )
+                    {
+                        throw new PlatformException( "Cannot rename " + destination + " to " + newDestination );
+                    }
+                    metadataIndex.moved( destination, newDestination );
+                    downloadIndex.put( url.toExternalForm(), cachingName );
+                }
+            }
+
+            return newDestination;
         }
+    }
+
+    /**
+     * Validates the osgi headers of a provisioned file, if requested.
+     *
+     * @param url              url of the file
+     * @param file             provisioned file
+     * @param metadataIndex    index of files metadata
+     * @param checkAttributes  whether or not to check attributes in the manifest
+     * @param failOnValidation if validation fails should or not fail with an exception (or just return null)
+     *
+     * @return the file, or null if the bundle is invalid (not an osgi bundle)
+     *
+     * @throws PlatformException if the file cannot be read or is invalid and validation should fail
+     */
+    private File validate( final URL url,
+                           final File file,
+                           final BundleMetadataIndex metadataIndex,
+                           final boolean checkAttributes,
+                           final boolean failOnValidation )
+        throws PlatformException
+    {
         if ( checkAttributes )
         {
             try
             {
-                validateBundle( url, destination );
+                validateBundle( url, getMetadata( metadataIndex, file ) );
             }
             catch ( PlatformException e )
             {
@@ -611,86 +1246,64 @@ public class PlatformImpl
                 return null;
             }
         }
-        String cachingName = determineCachingName( destination, hashFileName );
-        File newDestination = new File( destination.getParentFile(), cachingName );
-        if ( !cachingName.equals( destination.getName() ) )
-        {
-            if ( newDestination.exists() )
-            {
-                if ( !newDestination.delete() )
-                {
-                    throw new PlatformException( "Cannot delete " + newDestination );
-                }
-            }
-            if ( !destination.renameTo( newDestination ) )
-            {
-                throw new PlatformException( "Cannot rename " + destination + " to " + newDestination );
-            }
-            fileNamesForUrls.setProperty( url.toExternalForm(), cachingName );
-            saveProperties( fileNamesForUrls, downloadedBundlesFile );
-        }
-
-        return newDestination;
+        return file;
     }
 
-    private Properties loadProperties( File file )
+    /**
+     * Checks if a file is inside a directory.
+     *
+     * @param file      file to check
+     * @param directory directory
+     *
+     * @return true if the file is in the directory or one of its sub directories
+     */
+    static boolean isWithin( final File file, final File directory )
     {
-        Properties properties = new Properties();
-        FileInputStream in = null;
         try
         {
-            in = new FileInputStream( file );
-            properties.load( in );
-            return properties;
+            return file.getCanonicalPath().startsWith( directory.getCanonicalPath() + File.separator );
         }
         catch ( IOException e )
         {
-            return properties;
-        }
-        finally
-        {
-            if ( in != null )
-            {
-                try
-                {
-                    in.close();
-                }
-                catch ( IOException e )
-                {
-                    // ignore
-                }
-            }
+            return file.getAbsolutePath().startsWith( directory.getAbsolutePath() + File.separator );
         }
     }
 
-    private void saveProperties( Properties properties, File file )
+    /**
+     * Returns the metadata of a downloaded file from the metadata index.
+     *
+     * @param metadataIndex index of downloaded files metadata
+     * @param file          downloaded file
+     *
+     * @return file metadata
+     *
+     * @throws PlatformException if the file cannot be read
+     */
+    private BundleMetadata getMetadata( final BundleMetadataIndex metadataIndex, final File file )
         throws PlatformException
     {
-        FileOutputStream os = null;
         try
         {
-            os = new FileOutputStream( file );
-            properties.store( os, "" );
+            return metadataIndex.get( file );
         }
         catch ( IOException e )
         {
-            throw new PlatformException( "Cannot store properties " + file, e );
+            throw new PlatformException( "Cannot read " + file, e );
         }
-        finally
-        {
-            if ( os != null )
-            {
-                try
-                {
-                    os.close();
-                }
-                catch ( IOException e )
-                {
-                    // ignore
-                }
-            }
+    }
 
-        }
+    /**
+     * Returns the lock to be used while downloading an url.
+     *
+     * @param url url to be downloaded
+     *
+     * @return lock for the url
+     */
+    private Object getDownloadLock( final URL url )
+    {
+        final Object lock = new Object();
+        final Object existing = m_downloadLocks.putIfAbsent( url.toExternalForm(), lock );
+        return existing != null ? existing : lock;
     }
 
     /**
@@ -707,40 +1320,22 @@ public class PlatformImpl
                          final File file )
         throws PlatformException
     {
-        String bundleSymbolicName = null;
-        String bundleName = null;
-        JarFile jar = null;
-        try
-        {
-            // verify that is a valid jar. Do not verify that is signed (the false param).
-            jar = new JarFile( file, false );
-            final Manifest manifest = jar.getManifest();
-            if ( manifest == null )
-            {
-                throw new PlatformException( "[" + url + "] is not a valid bundle" );
-            }
-            bundleSymbolicName = manifest.getMainAttributes().getValue( Constants.BUNDLE_SYMBOLICNAME );
-            bundleName = manifest.getMainAttributes().getValue( Constants.BUNDLE_NAME );
-        }
-        catch ( IOException e )
-        {
-            throw new PlatformException( "[" + url + "] is not a valid bundle", e );
-        }
-        finally
-        {
-            if ( jar != null )
-            {
-                try
-                {
-                    jar.close();
-                }
-                catch ( IOException ignore )
-                {
-                    // just ignore as this is less probably to happen.
-                }
-            }
-        }
-        if ( bundleSymbolicName == null && bundleName == null )
+        validateBundle( url, BundleMetadata.read( file ) );
+    }
+
+    /**
+     * Validate that the metadata is of a valid bundle.
+     *
+     * @param url      original url from where the bundle was created.
+     * @param metadata metadata of file to be validated
+     *
+     * @throws PlatformException if the jar is not a valid bundle
+     */
+    private void validateBundle( final URL url,
+                                 final BundleMetadata metadata )
+        throws PlatformException
+    {
+        if ( !metadata.isValidBundle() )
         {
             throw new PlatformException( "[" + url + "] is not a valid bundle" );
         }
@@ -758,38 +1353,23 @@ public class PlatformImpl
     String determineCachingName( final File file,
                                  final String defaultBundleSymbolicName )
     {
-        String bundleSymbolicName = null;
-        String bundleVersion = null;
-        JarFile jar = null;
-        try
-        {
-            // verify that is a valid jar. Do not verify that is signed (the false param).
-            jar = new JarFile( file, false );
-            final Manifest manifest = jar.getManifest();
-            if ( manifest != null )
-            {
-                bundleSymbolicName = manifest.getMainAttributes().getValue( Constants.BUNDLE_SYMBOLICNAME );
-                bundleVersion = manifest.getMainAttributes().getValue( Constants.BUNDLE_VERSION );
-            }
-        }
-        catch ( IOException ignore )
-        {
-            // just ignore
-        }
-        finally
-        {
-            if ( jar != null )
-            {
-                try
-                {
-                    jar.close();
-                }
-                catch ( IOException ignore )
-                {
-                    // just ignore as this is less probably to happen.
-                }
-            }
-        }
+        return determineCachingName( BundleMetadata.read( file ), defaultBundleSymbolicName );
+    }
+
+    /**
+     * Determine name to be used for caching on local file system.
+     *
+     * @param metadata                  metadata of file
+     * @param defaultBundleSymbolicName default bundle symbolic name to be used if manifest does not have a bundle
+     *                                  symbolic name
+     *
+     * @return file name based on bundle symbolic name and version
+     */
+    private String determineCachingName( final BundleMetadata metadata,
+                                         final String defaultBundleSymbolicName )
+    {
+        String bundleSymbolicName = metadata.getSymbolicName();
+        String bundleVersion = metadata.getVersion();
         if ( bundleSymbolicName == null )
         {
             bundleSymbolicName = defaultBundleSymbolicName;
@@ -896,6 +1476,7 @@ public class PlatformImpl
         throws PlatformException
     {
         NullArgumentException.validateNotNull( configuration, "Configuration" );
+        final Trace.Span span = Trace.begin( "definition", String.valueOf( m_platformBuilder ) );
         try
         {
             final URL definitionURL = configuration.getDefinitionURL();
@@ -924,6 +1505,10 @@ public class PlatformImpl
         {
             throw new PlatformException( "Invalid platform definition", e );
         }
+        finally
+        {
+            span.end();
+        }
     }
 
     /**
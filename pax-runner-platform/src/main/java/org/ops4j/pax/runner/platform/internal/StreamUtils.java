@@ -22,16 +22,20 @@ import org.apache.commons.logging.LogFactory;
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.runner.commons.Info;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Stream related utilities.
- * TODO add units tests
  *
  * @author Alin Dreghiciu
  * @since August 19, 2007
@@ -43,6 +47,25 @@ public class StreamUtils
      * Logger.
      */
     private static final Log LOGGER = LogFactory.getLog( StreamUtils.class );
+    /**
+     * Size of the chunks content is transferred in.
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+    /**
+     * Minimum time between two progress callbacks, in milliseconds.
+     */
+    static final long PROGRESS_INTERVAL = 200;
+    /**
+     * Transfer buffer of each downloading thread, reused by all downloads done on that thread.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>()
+    {
+        @Override
+        protected ByteBuffer initialValue()
+        {
+            return ByteBuffer.allocateDirect( CHUNK_SIZE );
+        }
+    };
 
     /**
      * Utility class. Ment to be used via static methods.
@@ -53,37 +76,77 @@ public class StreamUtils
     }
 
     /**
-     * Copy a stream to a destination. It does not close the streams.
+     * Copy a stream to a destination, in chunks, starting at the current position of the destination. It does not
+     * close the streams. File streams are transferred by the file system, other streams through a buffer reused by
+     * all copies done on the current thread. The progress bar is updated periodically with the current throughput.
      *
      * @param in          the stream to copy from
      * @param out         the stream to copy to
      * @param progressBar download progress feedback. Can be null.
      *
+     * @return number of copied bytes
+     *
      * @throws IOException re-thrown
      */
-    public static void streamCopy( final InputStream in, final FileChannel out, final ProgressBar progressBar )
+    public static long streamCopy( final InputStream in, final FileChannel out, final ProgressBar progressBar )
         throws IOException
     {
         NullArgumentException.validateNotNull( in, "Input stream" );
         NullArgumentException.validateNotNull( out, "Output stream" );
-        final long start = System.currentTimeMillis();
-        long bytes = 0;
         ProgressBar feedbackBar = progressBar;
         if( feedbackBar == null )
         {
             feedbackBar = new NullProgressBar();
         }
+        final Throughput throughput = new Throughput( feedbackBar );
         try
         {
-            ReadableByteChannel inChannel = Channels.newChannel(in);
-            bytes = out.transferFrom(inChannel, 0, Integer.MAX_VALUE);
-            inChannel.close();
+            final FileChannel fileChannel = in instanceof FileInputStream
+                                            ? ( (FileInputStream) in ).getChannel()
+                                            : null;
+            // size is 0 also for files without a known size, as pipes, so those are read as any other stream
+            if( fileChannel != null && fileChannel.size() > 0 )
+            {
+                long position = fileChannel.position();
+                final long size = fileChannel.size();
+                while( position < size )
+                {
+                    // written at and advances the current position of out, so a resumed download is appended
+                    final long transferred = fileChannel.transferTo(
+                        position, Math.min( CHUNK_SIZE, size - position ), out
+                    );
+                    if( transferred <= 0 )
+                    {
+                        break;
+                    }
+                    position += transferred;
+                    throughput.transferred( transferred );
+                }
+            }
+            else
+            {
+                final ReadableByteChannel inChannel = Channels.newChannel( in );
+                final ByteBuffer buffer = BUFFER.get();
+                buffer.clear();
+                while( inChannel.read( buffer ) >= 0 )
+                {
+                    buffer.flip();
+                    final int chunk = buffer.remaining();
+                    while( buffer.hasRemaining() )
+                    {
+                        out.write( buffer );
+                    }
+                    buffer.clear();
+                    throughput.transferred( chunk );
+                }
+            }
         }
         finally
         {
-            feedbackBar.increment( bytes, bytes / Math.max( System.currentTimeMillis() - start, 1 ) );
+            throughput.finished();
             feedbackBar.stop();
         }
+        return throughput.getBytes();
     }
 
     /**
@@ -99,11 +162,29 @@ public class StreamUtils
         throws IOException
     {
         NullArgumentException.validateNotNull( url, "URL" );
+        streamCopy( url.openConnection(), out, progressBar );
+    }
+
+    /**
+     * Copy the content of an url connection to a destination.
+     *
+     * @param connection  the connection to copy from
+     * @param out         the stream to copy to
+     * @param progressBar download progress feedback. Can be null.
+     *
+     * @return number of copied bytes
+     *
+     * @throws IOException re-thrown
+     */
+    public static long streamCopy( final URLConnection connection, final FileChannel out, final ProgressBar progressBar )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( connection, "Connection" );
         InputStream is = null;
         try
         {
-            is = url.openStream();
-            streamCopy( is, out, progressBar );
+            is = connection.getInputStream();
+            return streamCopy( is, out, progressBar );
         }
         finally
         {
@@ -219,4 +300,196 @@ public class StreamUtils
 
     }
 
+    /**
+     * Measures the throughput of one transfer and reports it to a progress bar, at most once every
+     * {@link #PROGRESS_INTERVAL} milliseconds.
+     */
+    static class Throughput
+    {
+
+        private final ProgressBar m_progressBar;
+        private final long m_start;
+        private long m_bytes;
+        private long m_reportTime;
+        private long m_reportBytes;
+
+        Throughput( final ProgressBar progressBar )
+        {
+            m_progressBar = progressBar;
+            m_start = System.currentTimeMillis();
+            m_reportTime = m_start;
+        }
+
+        /**
+         * Records a transferred chunk and reports the throughput since the previous report, if due.
+         *
+         * @param bytes size of the chunk
+         */
+        void transferred( final long bytes )
+        {
+            m_bytes += bytes;
+            final long now = System.currentTimeMillis();
+            if( now - m_reportTime >= PROGRESS_INTERVAL )
+            {
+                m_progressBar.increment( m_bytes, ( m_bytes - m_reportBytes ) / ( now - m_reportTime ) );
+                m_reportTime = now;
+                m_reportBytes = m_bytes;
+            }
+        }
+
+        long getBytes()
+        {
+            return m_bytes;
+        }
+
+        /**
+         * Reports the total transferred bytes and the average throughput of the transfer.
+         */
+        void finished()
+        {
+            m_progressBar.increment( m_bytes, m_bytes / Math.max( System.currentTimeMillis() - m_start, 1 ) );
+        }
+
+    }
+
+    /**
+     * Console view of concurrent downloads. Each download reports to its own progress bar, created by this view, and
+     * the view displays a single line with the number of active and finished downloads, the total downloaded bytes and
+     * the current throughput of all active downloads.
+     */
+    public static class AggregateProgressView
+    {
+
+        /**
+         * Latest bytes and throughput of each active download.
+         */
+        private final Map<ProgressBar, long[]> m_active;
+        private int m_finished;
+        private long m_finishedBytes;
+        private long m_displayTime;
+        private int m_displayLength;
+
+        public AggregateProgressView()
+        {
+            m_active = new LinkedHashMap<ProgressBar, long[]>();
+        }
+
+        /**
+         * Creates the progress bar of a download.
+         *
+         * @param downloadTargetName name of the downloaded artifact
+         *
+         * @return progress bar of the download
+         */
+        public synchronized ProgressBar createProgressBar( final String downloadTargetName )
+        {
+            final ProgressBar progressBar = new ProgressBar()
+            {
+                public void increment( final long bytes, final long kbps )
+                {
+                    progress( this, bytes, kbps );
+                }
+
+                public void stop()
+                {
+                    finished( this );
+                }
+            };
+            m_active.put( progressBar, new long[]{ 0, 0 } );
+            return progressBar;
+        }
+
+        /**
+         * Displays the final state of the downloads.
+         */
+        public synchronized void stop()
+        {
+            if( m_displayLength > 0 )
+            {
+                display();
+                Info.println();
+                m_displayLength = 0;
+            }
+        }
+
+        /**
+         * Returns the number of finished downloads.
+         *
+         * @return number of finished downloads
+         */
+        synchronized int getFinished()
+        {
+            return m_finished;
+        }
+
+        /**
+         * Returns the number of bytes downloaded by all downloads.
+         *
+         * @return number of bytes
+         */
+        synchronized long getBytes()
+        {
+            long bytes = m_finishedBytes;
+            for( long[] progress : m_active.values() )
+            {
+                bytes += progress[ 0 ];
+            }
+            return bytes;
+        }
+
+        private synchronized void progress( final ProgressBar progressBar, final long bytes, final long kbps )
+        {
+            final long[] progress = m_active.get( progressBar );
+            if( progress != null )
+            {
+                progress[ 0 ] = bytes;
+                progress[ 1 ] = kbps;
+                displayIfDue();
+            }
+        }
+
+        private synchronized void finished( final ProgressBar progressBar )
+        {
+            final long[] progress = m_active.remove( progressBar );
+            if( progress != null )
+            {
+                m_finished++;
+                m_finishedBytes += progress[ 0 ];
+                displayIfDue();
+            }
+        }
+
+        private void displayIfDue()
+        {
+            final long now = System.currentTimeMillis();
+            if( now - m_displayTime >= PROGRESS_INTERVAL )
+            {
+                m_displayTime = now;
+                display();
+            }
+        }
+
+        private void display()
+        {
+            long kbps = 0;
+            for( long[] progress : m_active.values() )
+            {
+                kbps += progress[ 1 ];
+            }
+            final StringBuilder line = new StringBuilder()
+                .append( m_active.size() ).append( " active, " )
+                .append( m_finished ).append( " done : " )
+                .append( getBytes() ).append( " bytes @ [ " ).append( kbps ).append( "kBps ]" );
+            final int length = line.length();
+            // clear what is left from a previous longer line
+            while( line.length() < m_displayLength )
+            {
+                line.append( ' ' );
+            }
+            m_displayLength = length;
+            Info.print( line.append( '\r' ).toString() );
+        }
+
+    }
+
 }
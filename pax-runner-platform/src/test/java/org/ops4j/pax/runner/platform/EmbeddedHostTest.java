@@ -0,0 +1,146 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+
+public class EmbeddedHostTest
+{
+
+    private static final int FRAMEWORKS = 24;
+
+    private String[] m_classpath;
+    private EmbeddedHost m_host;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        final File embedded = FileUtils.getFileFromClasspath( "embedded" );
+        m_classpath = new String[]{ embedded.getAbsolutePath(), embedded.getParentFile().getAbsolutePath() };
+        m_host = new EmbeddedHost();
+    }
+
+    @After
+    public void tearDown()
+    {
+        m_host.shutdown();
+    }
+
+    // normal flow: frameworks launched concurrently run side by side, each with its own properties, and share the
+    // platform class loader
+    @Test
+    public void launchConcurrently()
+        throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            final List<Future<Object>> launches = new ArrayList<Future<Object>>();
+            for( int i = 0; i < FRAMEWORKS; i++ )
+            {
+                final String instance = String.valueOf( i );
+                launches.add( executor.submit( new Callable<Object>()
+                {
+                    public Object call()
+                        throws Exception
+                    {
+                        final Map<String, String> properties = new HashMap<String, String>();
+                        properties.put( "instance", instance );
+                        final EmbeddedJavaRunner runner = m_host.createRunner();
+                        runner.launch( m_classpath, properties, null, null, null );
+                        return runner.getFramework();
+                    }
+                }
+                )
+                );
+            }
+            final Set<String> instances = new HashSet<String>();
+            final Set<ClassLoader> classLoaders = new HashSet<ClassLoader>();
+            for( Future<Object> launch : launches )
+            {
+                final Object framework = launch.get();
+                assertEquals( "State", "active", get( framework, "getState" ) );
+                instances.add( ( (Map<?, ?>) get( framework, "getProperties" ) ).get( "instance" ).toString() );
+                classLoaders.add( framework.getClass().getClassLoader() );
+            }
+            assertEquals( "Instances", FRAMEWORKS, instances.size() );
+            assertEquals( "Shared class loaders", 1, classLoaders.size() );
+            assertNotSame( "Platform class loader", getClass().getClassLoader(), classLoaders.iterator().next() );
+            assertEquals( "Framework count", FRAMEWORKS, m_host.getFrameworkCount() );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    // test that shutdown of the host stops all frameworks
+    @Test
+    public void shutdown()
+        throws Exception
+    {
+        final EmbeddedJavaRunner first = m_host.createRunner();
+        first.launch( m_classpath, new HashMap<String, String>(), null, null, null );
+        final EmbeddedJavaRunner second = m_host.createRunner();
+        second.launch( m_classpath, new HashMap<String, String>(), null, null, null );
+        final List<Object> frameworks = m_host.getFrameworks();
+        assertEquals( "Frameworks", 2, frameworks.size() );
+
+        m_host.shutdown();
+        assertEquals( "Framework count", 0, m_host.getFrameworkCount() );
+        for( Object framework : frameworks )
+        {
+            assertEquals( "State", "resolved", get( framework, "getState" ) );
+        }
+    }
+
+    // test that a framework stopped by its runner is not hosted anymore
+    @Test
+    public void shutdownRunner()
+        throws Exception
+    {
+        final EmbeddedJavaRunner runner = m_host.createRunner();
+        runner.launch( m_classpath, new HashMap<String, String>(), null, null, null );
+        assertEquals( "Framework count", 1, m_host.getFrameworkCount() );
+        runner.shutdown();
+        assertEquals( "Framework count", 0, m_host.getFrameworkCount() );
+    }
+
+    private static Object get( final Object target, final String name )
+        throws Exception
+    {
+        return target.getClass().getMethod( name ).invoke( target );
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+
+public class EmbeddedJavaRunnerTest
+{
+
+    private String[] m_classpath;
+    private URL m_bundle;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        // the stub framework classes are loaded from test classes, the framework factory is named by "embedded"
+        final File embedded = FileUtils.getFileFromClasspath( "embedded" );
+        m_classpath = new String[]{ embedded.getAbsolutePath(), embedded.getParentFile().getAbsolutePath() };
+        m_bundle = FileUtils.getFileFromClasspath( "platform/bundle1.jar" ).toURL();
+    }
+
+    // normal flow: framework is created with the properties, bundles are installed and marked to start
+    @Test
+    public void launch()
+        throws Exception
+    {
+        final EmbeddedJavaRunner runner = new EmbeddedJavaRunner( false );
+        final Map<String, String> properties = new HashMap<String, String>();
+        properties.put( "org.osgi.framework.storage", "storage" );
+        final List<BundleReference> bundles = new ArrayList<BundleReference>();
+        bundles.add( new BundleReferenceBean( "bundle1", m_bundle, 3, true, false ) );
+        bundles.add( new BundleReferenceBean( "bundle2", m_bundle, null, false, false ) );
+        runner.launch( m_classpath, properties, bundles, 5, null );
+
+        final Object framework = runner.getFramework();
+        assertNotNull( "Framework", framework );
+        assertNotSame( "Framework class loader", StubFramework.class, framework.getClass() );
+        assertEquals( "State", "active", get( framework, "getState" ) );
+        assertEquals( "Properties", properties, get( framework, "getProperties" ) );
+        assertEquals(
+            "Installed bundles",
+            Arrays.asList( m_bundle.toExternalForm() + "@3:true", m_bundle.toExternalForm() + "@5:false" ),
+            get( framework, "getInstalled" )
+        );
+
+        runner.shutdown();
+        assertNull( "Framework after shutdown", runner.getFramework() );
+        assertEquals( "State after shutdown", "resolved", get( framework, "getState" ) );
+    }
+
+    // test that the same runner cannot launch twice
+    @Test( expected = PlatformException.class )
+    public void launchTwice()
+        throws Exception
+    {
+        final EmbeddedJavaRunner runner = new EmbeddedJavaRunner( false );
+        runner.launch( m_classpath, new HashMap<String, String>(), null, null, null );
+        try
+        {
+            runner.launch( m_classpath, new HashMap<String, String>(), null, null, null );
+        }
+        finally
+        {
+            runner.shutdown();
+        }
+    }
+
+    // test that a platform without framework factory cannot be launched
+    @Test( expected = PlatformException.class )
+    public void launchWithoutFrameworkFactory()
+        throws Exception
+    {
+        new EmbeddedJavaRunner( false ).launch(
+            new String[]{ m_classpath[ 1 ] }, new HashMap<String, String>(), null, null, null
+        );
+    }
+
+    // test that relative classpath entries are relative to working directory
+    @Test
+    public void launchWithRelativeClasspath()
+        throws Exception
+    {
+        final File embedded = new File( m_classpath[ 0 ] );
+        final EmbeddedJavaRunner runner = new EmbeddedJavaRunner( false );
+        runner.launch(
+            new String[]{ embedded.getName(), "." }, new HashMap<String, String>(), null, null,
+            embedded.getParentFile()
+        );
+        assertNotNull( "Framework", runner.getFramework() );
+        runner.shutdown();
+    }
+
+    // test that platforms without an embedded platform builder end up with an exception
+    @Test( expected = PlatformException.class )
+    public void exec()
+        throws Exception
+    {
+        new EmbeddedJavaRunner().exec( null, m_classpath, "Main", null, null, null );
+    }
+
+    private static Object get( final Object target, final String name )
+        throws Exception
+    {
+        return target.getClass().getMethod( name ).invoke( target );
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform;
+
+import java.io.File;
+import java.util.Properties;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+import org.ops4j.pax.runner.commons.ScopedSystemProperties;
+
+public class InProcessJavaRunnerTest
+{
+
+    @After
+    public void tearDown()
+    {
+        System.getProperties().remove( "inprocess.test.seen" );
+    }
+
+    // test that the system properties set via vm options are seen by the platform only, and the system properties of
+    // the jvm, as scoped by concurrent runs, are kept
+    @Test
+    public void execBindsSystemProperties()
+        throws Exception
+    {
+        final Properties systemProperties = ScopedSystemProperties.install();
+        final File testClasses = FileUtils.getFileFromClasspath( "embedded" ).getParentFile();
+        new InProcessJavaRunner().exec(
+            new String[]{ "-Dinprocess.test=value" }, new String[]{ testClasses.getAbsolutePath() },
+            StubMain.class.getName(), new String[0], null, null
+        );
+        assertEquals( "Seen by platform", "value", System.getProperties().get( "inprocess.test.seen" ) );
+        assertNull( "Seen by jvm", System.getProperty( "inprocess.test" ) );
+        assertSame( "System properties", systemProperties, System.getProperties() );
+    }
+
+}
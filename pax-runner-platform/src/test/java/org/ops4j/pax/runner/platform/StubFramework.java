@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stands in for an OSGi framework launched by {@link EmbeddedJavaRunner}. It has the methods of the launch api the
+ * runner uses (FrameworkFactory, Framework, BundleContext, StartLevel) and records what was done.
+ * It is loaded by the isolated class loader of the runner, named by the service loader file in "embedded" resources.
+ */
+public class StubFramework
+{
+
+    private final Map<String, String> m_properties;
+    private final List<Bundle> m_bundles;
+    private String m_state;
+    private Integer m_initialBundleStartLevel;
+
+    public StubFramework( final Map<String, String> properties )
+    {
+        m_properties = new HashMap<String, String>( properties );
+        m_bundles = new ArrayList<Bundle>();
+        m_state = "installed";
+    }
+
+    public void init()
+    {
+        m_state = "starting";
+    }
+
+    public void start()
+    {
+        m_state = "active";
+    }
+
+    public void stop()
+    {
+        m_state = "resolved";
+        synchronized( this )
+        {
+            notifyAll();
+        }
+    }
+
+    public synchronized Object waitForStop( final long timeout )
+        throws InterruptedException
+    {
+        if( "active".equals( m_state ) )
+        {
+            wait( timeout );
+        }
+        return null;
+    }
+
+    public Object getBundleContext()
+    {
+        return this;
+    }
+
+    public Bundle installBundle( final String location, final InputStream in )
+    {
+        final Bundle bundle = new Bundle( location, m_initialBundleStartLevel );
+        m_bundles.add( bundle );
+        return bundle;
+    }
+
+    public Object getServiceReference( final String clazz )
+    {
+        return "org.osgi.service.startlevel.StartLevel".equals( clazz ) ? clazz : null;
+    }
+
+    public Object getService( final Object reference )
+    {
+        return this;
+    }
+
+    public void setInitialBundleStartLevel( final int startLevel )
+    {
+        m_initialBundleStartLevel = startLevel;
+    }
+
+    public void setBundleStartLevel( final Bundle bundle, final int startLevel )
+    {
+        bundle.startLevel = startLevel;
+    }
+
+    public String getState()
+    {
+        return m_state;
+    }
+
+    public Map<String, String> getProperties()
+    {
+        return m_properties;
+    }
+
+    /**
+     * Returns the installed bundles as "location@startLevel:started".
+     */
+    public List<String> getInstalled()
+    {
+        final List<String> installed = new ArrayList<String>();
+        for( Bundle bundle : m_bundles )
+        {
+            installed.add( bundle.location + "@" + bundle.startLevel + ":" + bundle.started );
+        }
+        return installed;
+    }
+
+    public static class Factory
+    {
+
+        public StubFramework newFramework( final Map<String, String> properties )
+        {
+            return new StubFramework( properties );
+        }
+
+    }
+
+    public static class Bundle
+    {
+
+        final String location;
+        Integer startLevel;
+        boolean started;
+
+        Bundle( final String location, final Integer startLevel )
+        {
+            this.location = location;
+            this.startLevel = startLevel;
+        }
+
+        public void start()
+        {
+            started = true;
+        }
+
+    }
+
+}
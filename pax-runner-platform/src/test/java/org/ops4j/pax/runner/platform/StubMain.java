@@ -0,0 +1,32 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform;
+
+/**
+ * Stands in for a framework main class launched by {@link InProcessJavaRunner}. It publishes the value of the test
+ * system property it sees into the system properties of the jvm (via the map view, which is not scoped).
+ */
+public class StubMain
+{
+
+    public static void main( final String[] args )
+    {
+        System.getProperties().put( "inprocess.test.seen", String.valueOf( System.getProperty( "inprocess.test" ) ) );
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+
+public class BundleMetadataIndexTest
+{
+
+    private File m_workDir;
+    private File m_indexFile;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        m_workDir = File.createTempFile( "runner", "" );
+        m_workDir.delete();
+        m_workDir.mkdirs();
+        m_indexFile = new File( m_workDir, "bundles_metadata.properties" );
+    }
+
+    @After
+    public void tearDown()
+    {
+        FileUtils.delete( m_workDir );
+    }
+
+    // normal flow: metadata is read from the jar manifest
+    @Test
+    public void getReadsManifest()
+        throws Exception
+    {
+        final File bundle = copy( "platform/bundleWithVersion.jar", "bundle.jar" );
+        final BundleMetadata metadata = new BundleMetadataIndex( m_indexFile ).get( bundle );
+        assertEquals( "Symbolic name", "bundle2", metadata.getSymbolicName() );
+        assertEquals( "Version", "1.2.3", metadata.getVersion() );
+        assertEquals( "Checksum", BundleStore.checksum( bundle ), metadata.getChecksum() );
+        assertTrue( "Valid bundle", metadata.isValidBundle() );
+    }
+
+    // test that a file that is not a jar is reported as not valid
+    @Test
+    public void getInvalidJar()
+        throws Exception
+    {
+        final File bundle = copy( "platform/invalid.jar", "invalid.jar" );
+        final BundleMetadata metadata = new BundleMetadataIndex( m_indexFile ).get( bundle );
+        assertFalse( "Jar", metadata.isJar() );
+        assertFalse( "Valid bundle", metadata.isValidBundle() );
+    }
+
+    // test that saved metadata is used after reload, without reading the file again
+    @Test
+    public void saveAndReload()
+        throws Exception
+    {
+        final File bundle = copy( "platform/bundle1.jar", "bundle.jar" );
+        final BundleMetadataIndex index = new BundleMetadataIndex( m_indexFile );
+        final BundleMetadata metadata = index.get( bundle );
+        index.save();
+        assertTrue( "Index file saved", m_indexFile.isFile() );
+
+        // replace the content keeping size and last modified, so only an index hit returns the original metadata
+        final long lastModified = bundle.lastModified();
+        final byte[] garbage = new byte[(int) bundle.length()];
+        final FileOutputStream out = new FileOutputStream( bundle );
+        out.write( garbage );
+        out.close();
+        bundle.setLastModified( lastModified );
+
+        final BundleMetadata reloaded = new BundleMetadataIndex( m_indexFile ).get( bundle );
+        assertEquals( "Symbolic name", metadata.getSymbolicName(), reloaded.getSymbolicName() );
+        assertEquals( "Checksum", metadata.getChecksum(), reloaded.getChecksum() );
+        assertTrue( "Valid bundle", reloaded.isValidBundle() );
+    }
+
+    // test that metadata is read again if the file changed
+    @Test
+    public void getChangedFile()
+        throws Exception
+    {
+        final File bundle = copy( "platform/bundle1.jar", "bundle.jar" );
+        final BundleMetadataIndex index = new BundleMetadataIndex( m_indexFile );
+        assertEquals( "Symbolic name", "bundle2", index.get( bundle ).getSymbolicName() );
+
+        final File changed = FileUtils.getFileFromClasspath( "platform/bundleWithSemicolon.jar" );
+        bundle.delete();
+        BundleStore.copy( changed, bundle );
+        bundle.setLastModified( bundle.lastModified() + 2000 );
+        assertEquals(
+            "Symbolic name", "bundleWithSemicolon; singleton:=true", index.get( bundle ).getSymbolicName()
+        );
+    }
+
+    // test that the entry of a renamed file is kept under the new name and entries of missing files are dropped
+    @Test
+    public void movedAndSave()
+        throws Exception
+    {
+        final File bundle = copy( "platform/bundle1.jar", "bundle.jar" );
+        final File renamed = new File( m_workDir, "bundle2_0.0.0.jar" );
+        final BundleMetadataIndex index = new BundleMetadataIndex( m_indexFile );
+        index.get( bundle );
+        assertTrue( "Renamed", bundle.renameTo( renamed ) );
+        index.moved( bundle, renamed );
+        index.save();
+
+        final Properties saved = new Properties();
+        final FileInputStream in = new FileInputStream( m_indexFile );
+        saved.load( in );
+        in.close();
+        assertNotNull( "Renamed file indexed", saved.getProperty( renamed.getAbsolutePath() + ".size" ) );
+        assertNull( "Original file indexed", saved.getProperty( bundle.getAbsolutePath() + ".size" ) );
+    }
+
+    // test that an opened index is reused until its file is changed by someone else
+    @Test
+    public void openReusesIndexUntilFileChanged()
+        throws Exception
+    {
+        final BundleMetadataIndex index = BundleMetadataIndex.open( m_indexFile );
+        index.get( copy( "platform/bundle1.jar", "bundle.jar" ) );
+        index.save();
+        assertSame( "Reused index", index, BundleMetadataIndex.open( m_indexFile ) );
+
+        final FileOutputStream out = new FileOutputStream( m_indexFile, true );
+        out.write( "# changed\n".getBytes() );
+        out.close();
+        assertNotSame( "Index loaded again", index, BundleMetadataIndex.open( m_indexFile ) );
+    }
+
+    // test that closing the directory of an opened index forgets the index
+    @Test
+    public void closeForgetsIndexesOfDirectory()
+        throws Exception
+    {
+        final BundleMetadataIndex index = BundleMetadataIndex.open( m_indexFile );
+        BundleMetadataIndex.close( new File( m_indexFile.getParentFile(), "other" ) );
+        assertSame( "Index of other directory kept", index, BundleMetadataIndex.open( m_indexFile ) );
+        BundleMetadataIndex.close( m_indexFile.getParentFile() );
+        assertNotSame( "Index loaded again", index, BundleMetadataIndex.open( m_indexFile ) );
+    }
+
+    private File copy( final String resource, final String name )
+        throws IOException
+    {
+        final File file = new File( m_workDir, name );
+        BundleStore.copy( FileUtils.getFileFromClasspath( resource ), file );
+        return file;
+    }
+
+}
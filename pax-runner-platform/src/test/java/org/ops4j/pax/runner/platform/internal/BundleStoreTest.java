@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+
+public class BundleStoreTest
+{
+
+    private File m_workDir;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        m_workDir = File.createTempFile( "runner", "" );
+        m_workDir.delete();
+        m_workDir.mkdirs();
+    }
+
+    @After
+    public void tearDown()
+    {
+        FileUtils.delete( m_workDir );
+    }
+
+    // test that an url not stored yet is not found
+    @Test
+    public void findNotStored()
+        throws Exception
+    {
+        final BundleStore store = new BundleStore( new File( m_workDir, "store" ) );
+        assertNull( "Stored file", store.find( new URL( "file:bundle1.jar" ) ) );
+    }
+
+    // normal flow: stored content is found by url and is named by its checksum
+    @Test
+    public void storeAndFind()
+        throws Exception
+    {
+        final File bundle = FileUtils.getFileFromClasspath( "platform/bundle1.jar" );
+        final URL url = bundle.toURL();
+        final BundleStore store = new BundleStore( new File( m_workDir, "store" ) );
+        final File stored = store.store( url, bundle );
+        assertEquals( "Stored file", stored, store.find( url ) );
+        assertEquals( "Stored file name", BundleStore.checksum( bundle ), stored.getName() );
+        assertEquals( "Stored file size", bundle.length(), stored.length() );
+    }
+
+    // test that the same content downloaded from two urls is stored only once
+    @Test
+    public void storeSameContentTwice()
+        throws Exception
+    {
+        final File bundle = FileUtils.getFileFromClasspath( "platform/bundle1.jar" );
+        final File store = new File( m_workDir, "store" );
+        final BundleStore bundleStore = new BundleStore( store );
+        final File first = bundleStore.store( new URL( "file:first.jar" ), bundle );
+        final File second = bundleStore.store( new URL( "file:second.jar" ), bundle );
+        assertEquals( "Stored file", first, second );
+        assertEquals( "Number of stored files", 1, store.listFiles().length - 1 );
+    }
+
+    // test that http validators are stored together with the content
+    @Test
+    public void storeWithValidators()
+        throws Exception
+    {
+        final File bundle = FileUtils.getFileFromClasspath( "platform/bundle1.jar" );
+        final URL url = new URL( "http://localhost/bundle1.jar" );
+        final BundleStore store = new BundleStore( new File( m_workDir, "store" ) );
+        store.store( url, bundle, BundleStore.checksum( bundle ), new DownloadValidators( "\"1\"", null, null ) );
+        assertEquals( "ETag", "\"1\"", store.getValidators( url ).getETag() );
+        assertNull( "Last modified", store.getValidators( url ).getLastModified() );
+    }
+
+    // test that only urls whose content does not change, or can be revalidated, are stored
+    @Test
+    public void isStorable()
+        throws Exception
+    {
+        assertTrue( "File", BundleStore.isStorable( new URL( "file:bundle1.jar" ) ) );
+        assertTrue( "Http", BundleStore.isStorable( new URL( "http://localhost/bundle1.jar" ) ) );
+        assertTrue( "Http needs revalidation", BundleStore.needsRevalidation( new URL( "http://localhost/b.jar" ) ) );
+        assertFalse(
+            "Http snapshot", BundleStore.isStorable( new URL( "http://localhost/bundle1-1.0-SNAPSHOT.jar" ) )
+        );
+    }
+
+    // test that entries not used for longer then max age are evicted together with their content
+    @Test
+    public void evictExpired()
+        throws Exception
+    {
+        final File bundle = FileUtils.getFileFromClasspath( "platform/bundle1.jar" );
+        final BundleStore store = new BundleStore( new File( m_workDir, "store" ), 0, 60000 );
+        final URL expired = new URL( "file:expired.jar" );
+        final URL used = new URL( "file:used.jar" );
+        final File stored = store.store( expired, bundle );
+        store.store( used, bundle );
+        final File entries = new File( m_workDir, "store/urls" );
+        for( File entry : entries.listFiles() )
+        {
+            entry.setLastModified( System.currentTimeMillis() - 120000 );
+        }
+        store.evict();
+        assertNull( "Expired entry", store.find( expired ) );
+        assertNull( "Expired entry with same content", store.find( used ) );
+        assertFalse( "Stored file", stored.exists() );
+    }
+
+    // test that least recently used entries are evicted once the store is too big
+    @Test
+    public void evictLeastRecentlyUsed()
+        throws Exception
+    {
+        final File bundle1 = FileUtils.getFileFromClasspath( "platform/bundle1.jar" );
+        final File bundle2 = FileUtils.getFileFromClasspath( "platform/bundleWithVersion.jar" );
+        final BundleStore store = new BundleStore(
+            new File( m_workDir, "store" ), Math.max( bundle1.length(), bundle2.length() ), 0
+        );
+        final URL first = new URL( "file:first.jar" );
+        final URL second = new URL( "file:second.jar" );
+        store.store( first, bundle1 );
+        store.store( second, bundle2 );
+        for( File entry : new File( m_workDir, "store/urls" ).listFiles() )
+        {
+            entry.setLastModified( System.currentTimeMillis() - 120000 );
+        }
+        assertNotNull( "Used entry", store.find( second ) );
+        store.evict();
+        assertNull( "Least recently used entry", store.find( first ) );
+        assertNotNull( "Used entry", store.find( second ) );
+    }
+
+    // test that a stored file can be used to populate another working directory
+    @Test
+    public void linkOrCopy()
+        throws Exception
+    {
+        final File bundle = FileUtils.getFileFromClasspath( "platform/bundle1.jar" );
+        final File target = new File( m_workDir, "bundle1.jar" );
+        BundleStore.linkOrCopy( bundle, target );
+        assertEquals( "Checksum", BundleStore.checksum( bundle ), BundleStore.checksum( target ) );
+    }
+
+}
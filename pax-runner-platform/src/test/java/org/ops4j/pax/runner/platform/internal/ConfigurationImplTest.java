@@ -786,4 +786,160 @@ public class ConfigurationImplTest
         verify( propertyResolver );
     }
 
+    // normal flow
+    @Test
+    public void getDownloadThreads()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "org.ops4j.pax.runner.platform.downloadThreads" ) ).andReturn( "8" );
+
+        replay( propertyResolver );
+        Configuration config = new ConfigurationImpl( propertyResolver );
+        assertEquals( "Download threads", Integer.valueOf( 8 ), config.getDownloadThreads() );
+        verify( propertyResolver );
+    }
+
+    // default value should be 1
+    @Test
+    public void getDownloadThreadsDefault()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "org.ops4j.pax.runner.platform.downloadThreads" ) ).andReturn( null );
+
+        replay( propertyResolver );
+        Configuration config = new ConfigurationImpl( propertyResolver );
+        assertEquals( "Download threads", Integer.valueOf( 1 ), config.getDownloadThreads() );
+        verify( propertyResolver );
+    }
+
+    // test that an invalid value will not cause problems and will return the default value
+    @Test
+    public void getDownloadThreadsWithInvalidValue()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "org.ops4j.pax.runner.platform.downloadThreads" ) ).andReturn( "many" );
+
+        replay( propertyResolver );
+        Configuration config = new ConfigurationImpl( propertyResolver );
+        assertEquals( "Download threads", Integer.valueOf( 1 ), config.getDownloadThreads() );
+        verify( propertyResolver );
+    }
+
+    // default value should be false, so the bundle store is opt-in
+    @Test
+    public void useBundleStoreDefault()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "org.ops4j.pax.runner.platform.useBundleStore" ) ).andReturn( null );
+
+        replay( propertyResolver );
+        Configuration config = new ConfigurationImpl( propertyResolver );
+        assertEquals( "Use bundle store", Boolean.FALSE, config.useBundleStore() );
+        verify( propertyResolver );
+    }
+
+    // default value should be 1024
+    @Test
+    public void getBundleStoreMaxSizeDefault()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "org.ops4j.pax.runner.platform.bundleStoreMaxSize" ) ).andReturn( null );
+
+        replay( propertyResolver );
+        Configuration config = new ConfigurationImpl( propertyResolver );
+        assertEquals( "Bundle store max size", Integer.valueOf( 1024 ), config.getBundleStoreMaxSize() );
+        verify( propertyResolver );
+    }
+
+    // normal flow
+    @Test
+    public void getBundleStoreMaxAge()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "org.ops4j.pax.runner.platform.bundleStoreMaxAge" ) ).andReturn( "7" );
+
+        replay( propertyResolver );
+        Configuration config = new ConfigurationImpl( propertyResolver );
+        assertEquals( "Bundle store max age", Integer.valueOf( 7 ), config.getBundleStoreMaxAge() );
+        verify( propertyResolver );
+    }
+
+    // normal flow
+    @Test
+    public void getDownloadsPerHost()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "org.ops4j.pax.runner.platform.downloadsPerHost" ) ).andReturn( "2" );
+
+        replay( propertyResolver );
+        Configuration config = new ConfigurationImpl( propertyResolver );
+        assertEquals( "Downloads per host", Integer.valueOf( 2 ), config.getDownloadsPerHost() );
+        verify( propertyResolver );
+    }
+
+    // default value should be 4
+    @Test
+    public void getDownloadsPerHostDefault()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "org.ops4j.pax.runner.platform.downloadsPerHost" ) ).andReturn( null );
+
+        replay( propertyResolver );
+        Configuration config = new ConfigurationImpl( propertyResolver );
+        assertEquals( "Downloads per host", Integer.valueOf( 4 ), config.getDownloadsPerHost() );
+        verify( propertyResolver );
+    }
+
+    // normal flow
+    @Test
+    public void getConnectTimeout()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "org.ops4j.pax.runner.platform.connectTimeout" ) ).andReturn( "1000" );
+
+        replay( propertyResolver );
+        Configuration config = new ConfigurationImpl( propertyResolver );
+        assertEquals( "Connect timeout", Integer.valueOf( 1000 ), config.getConnectTimeout() );
+        verify( propertyResolver );
+    }
+
+    // test that an invalid value will not cause problems and will return the default value
+    @Test
+    public void getConnectTimeoutWithInvalidValue()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "org.ops4j.pax.runner.platform.connectTimeout" ) ).andReturn( "soon" );
+
+        replay( propertyResolver );
+        Configuration config = new ConfigurationImpl( propertyResolver );
+        assertEquals( "Connect timeout", Integer.valueOf( 30000 ), config.getConnectTimeout() );
+        verify( propertyResolver );
+    }
+
+    // test that a negative value means no timeout
+    @Test
+    public void getReadTimeoutNegative()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "org.ops4j.pax.runner.platform.readTimeout" ) ).andReturn( "-1" );
+
+        replay( propertyResolver );
+        Configuration config = new ConfigurationImpl( propertyResolver );
+        assertEquals( "Read timeout", Integer.valueOf( 0 ), config.getReadTimeout() );
+        verify( propertyResolver );
+    }
+
+    // default value should be 60000
+    @Test
+    public void getReadTimeoutDefault()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "org.ops4j.pax.runner.platform.readTimeout" ) ).andReturn( null );
+
+        replay( propertyResolver );
+        Configuration config = new ConfigurationImpl( propertyResolver );
+        assertEquals( "Read timeout", Integer.valueOf( 60000 ), config.getReadTimeout() );
+        verify( propertyResolver );
+    }
+
 }
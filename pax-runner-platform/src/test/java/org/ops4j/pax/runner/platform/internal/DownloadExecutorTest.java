@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.ops4j.pax.runner.platform.PlatformException;
+
+public class DownloadExecutorTest
+{
+
+    // test that results are returned in the order downloads were submitted, regardless of the finishing order
+    @Test
+    public void awaitAllKeepsOrder()
+        throws Exception
+    {
+        final DownloadExecutor downloader = new DownloadExecutor( 4 );
+        try
+        {
+            final List<Future<Integer>> downloads = new ArrayList<Future<Integer>>();
+            for( int i = 0; i < 10; i++ )
+            {
+                downloads.add( downloader.submit( new Delayed( i, 10 - i ) ) );
+            }
+            final List<Integer> results = downloader.awaitAll( downloads );
+            downloader.checkFailures();
+            assertEquals( "Number of results", 10, results.size() );
+            for( int i = 0; i < 10; i++ )
+            {
+                assertEquals( "Result " + i, Integer.valueOf( i ), results.get( i ) );
+            }
+        }
+        finally
+        {
+            downloader.shutdown();
+        }
+    }
+
+    // test that with one thread downloads are executed in the calling thread
+    @Test
+    public void submitWithOneThread()
+        throws Exception
+    {
+        final DownloadExecutor downloader = new DownloadExecutor( 1 );
+        assertFalse( "Concurrent", downloader.isConcurrent() );
+        final Future<Thread> download = downloader.submit( new Callable<Thread>()
+        {
+            public Thread call()
+            {
+                return Thread.currentThread();
+            }
+        }
+        );
+        assertTrue( "Done after submit", download.isDone() );
+        assertEquals( "Download thread", Thread.currentThread(), downloader.await( download ) );
+    }
+
+    // test that null results (skipped downloads) are not included
+    @Test
+    public void awaitAllSkipsNullResults()
+        throws Exception
+    {
+        final DownloadExecutor downloader = new DownloadExecutor( 1 );
+        final List<Future<String>> downloads = new ArrayList<Future<String>>();
+        downloads.add( downloader.done( "first" ) );
+        downloads.add( downloader.<String>done( null ) );
+        downloads.add( downloader.done( "third" ) );
+        final List<String> results = downloader.awaitAll( downloads );
+        downloader.checkFailures();
+        assertEquals( "Number of results", 2, results.size() );
+        assertEquals( "First result", "first", results.get( 0 ) );
+        assertEquals( "Second result", "third", results.get( 1 ) );
+    }
+
+    // test that all failures are reported, not only the first one
+    @Test
+    public void checkFailuresAggregatesFailures()
+        throws Exception
+    {
+        final DownloadExecutor downloader = new DownloadExecutor( 2 );
+        try
+        {
+            final List<Future<Integer>> downloads = new ArrayList<Future<Integer>>();
+            downloads.add( downloader.submit( new Failing( "[url1] could not be downloaded" ) ) );
+            downloads.add( downloader.submit( new Delayed( 1, 0 ) ) );
+            downloads.add( downloader.submit( new Failing( "[url2] could not be downloaded" ) ) );
+            final List<Integer> results = downloader.awaitAll( downloads );
+            assertEquals( "Number of results", 1, results.size() );
+            try
+            {
+                downloader.checkFailures();
+                fail( "Expected a PlatformException" );
+            }
+            catch( PlatformException e )
+            {
+                assertTrue( "Message contains url1", e.getMessage().contains( "url1" ) );
+                assertTrue( "Message contains url2", e.getMessage().contains( "url2" ) );
+            }
+        }
+        finally
+        {
+            downloader.shutdown();
+        }
+    }
+
+    private static class Delayed
+        implements Callable<Integer>
+    {
+
+        private final int m_result;
+        private final long m_delay;
+
+        Delayed( final int result, final long delay )
+        {
+            m_result = result;
+            m_delay = delay;
+        }
+
+        public Integer call()
+            throws Exception
+        {
+            Thread.sleep( m_delay );
+            return m_result;
+        }
+
+    }
+
+    private static class Failing
+        implements Callable<Integer>
+    {
+
+        private final String m_message;
+
+        Failing( final String message )
+        {
+            m_message = message;
+        }
+
+        public Integer call()
+            throws Exception
+        {
+            throw new PlatformException( m_message );
+        }
+
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.io.IOException;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+
+public class DownloadIndexTest
+{
+
+    private File m_workDir;
+    private File m_indexFile;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        m_workDir = File.createTempFile( "runner", "" );
+        m_workDir.delete();
+        m_workDir.mkdirs();
+        m_indexFile = new File( m_workDir, "bundles/downloaded_bundles.properties" );
+    }
+
+    @After
+    public void tearDown()
+    {
+        FileUtils.delete( m_workDir );
+    }
+
+    // test that an url not downloaded yet is not found
+    @Test
+    public void getNotDownloaded()
+    {
+        assertNull( "File name", new DownloadIndex( m_indexFile ).get( "file:bundle1.jar" ) );
+    }
+
+    // test that nothing is written if there are no changes
+    @Test
+    public void saveWithoutChanges()
+        throws Exception
+    {
+        new DownloadIndex( m_indexFile ).save();
+        assertFalse( "Index file saved", m_indexFile.exists() );
+    }
+
+    // normal flow: entries are available right away and after reload once saved
+    @Test
+    public void putSaveAndReload()
+        throws Exception
+    {
+        final DownloadIndex index = new DownloadIndex( m_indexFile );
+        index.put( "file:bundle1.jar", "bundle1_1.0.0.jar" );
+        assertEquals( "File name before save", "bundle1_1.0.0.jar", index.get( "file:bundle1.jar" ) );
+        index.save();
+        assertEquals(
+            "File name after reload", "bundle1_1.0.0.jar", new DownloadIndex( m_indexFile ).get( "file:bundle1.jar" )
+        );
+    }
+
+    // test that entries saved by another runner since the index was loaded are kept
+    @Test
+    public void saveMergesConcurrentChanges()
+        throws Exception
+    {
+        final DownloadIndex first = new DownloadIndex( m_indexFile );
+        final DownloadIndex second = new DownloadIndex( m_indexFile );
+        first.put( "file:bundle1.jar", "bundle1_1.0.0.jar" );
+        second.put( "file:bundle2.jar", "bundle2_1.0.0.jar" );
+        second.put( "file:bundle1.jar", "bundle1_2.0.0.jar" );
+        second.save();
+        first.save();
+        final DownloadIndex reloaded = new DownloadIndex( m_indexFile );
+        assertEquals( "File name of bundle1", "bundle1_1.0.0.jar", reloaded.get( "file:bundle1.jar" ) );
+        assertEquals( "File name of bundle2", "bundle2_1.0.0.jar", reloaded.get( "file:bundle2.jar" ) );
+    }
+
+    // test that a download index that cannot be saved does not fail saving the indexes
+    @Test
+    public void saveIndexesWhenDownloadIndexCannotBeSaved()
+        throws Exception
+    {
+        final File notADirectory = new File( m_workDir, "bundles" );
+        notADirectory.createNewFile();
+        final DownloadIndex index = new DownloadIndex( new File( notADirectory, "downloaded_bundles.properties" ) );
+        index.put( "file:bundle1.jar", "bundle1_1.0.0.jar" );
+        new DownloadContext(
+            m_workDir,
+            index,
+            null,
+            new BundleMetadataIndex( new File( m_workDir, "bundles_metadata.properties" ) ),
+            new DownloadTransport(),
+            null
+        ).saveIndexes();
+    }
+
+}
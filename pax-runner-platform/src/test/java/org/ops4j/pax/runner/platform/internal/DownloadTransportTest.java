@@ -0,0 +1,180 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+
+public class DownloadTransportTest
+{
+
+    private HttpStandIn m_server;
+    private File m_bundle;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        m_server = new HttpStandIn();
+        m_server.setKeepAlive( true );
+        m_bundle = FileUtils.getFileFromClasspath( "platform/bundle1.jar" );
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        m_server.stop();
+    }
+
+    // test that no more then the allowed number of requests are done to the same host in the same time
+    @Test
+    public void limitPerHost()
+        throws Exception
+    {
+        m_server.setDelay( 50 );
+        final DownloadTransport transport = new DownloadTransport( 2, 0, 0 );
+        final ExecutorService executor = Executors.newFixedThreadPool( 6 );
+        try
+        {
+            final List<Future<Long>> results = new ArrayList<Future<Long>>();
+            for( int i = 0; i < 6; i++ )
+            {
+                final URL url = m_server.serve( "/bundle" + i + ".jar", m_bundle, false );
+                results.add( executor.submit( new Callable<Long>()
+                {
+                    public Long call()
+                        throws Exception
+                    {
+                        return download( transport, url );
+                    }
+                }
+                )
+                );
+            }
+            for( Future<Long> result : results )
+            {
+                assertEquals( "Downloaded bytes", m_bundle.length(), result.get().longValue() );
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        assertEquals( "Transfers", 6, m_server.getTransfers() );
+        assertTrue( "Concurrent requests", m_server.getMaxConcurrentRequests() <= 2 );
+    }
+
+    // test that sequential requests to the same host reuse the connection
+    @Test
+    public void reuseConnection()
+        throws Exception
+    {
+        final DownloadTransport transport = new DownloadTransport( 1, 0, 0 );
+        for( int i = 0; i < 3; i++ )
+        {
+            download( transport, m_server.serve( "/bundle" + i + ".jar", m_bundle, false ) );
+        }
+        assertEquals( "Transfers", 3, m_server.getTransfers() );
+        assertEquals( "Connections", 1, m_server.getConnections() );
+    }
+
+    // test that a connection whose content is not wanted can be reused after being released
+    @Test
+    public void reuseReleasedConnection()
+        throws Exception
+    {
+        final DownloadTransport transport = new DownloadTransport( 1, 0, 0 );
+        final URL url = m_server.serve( "/bundle1.jar", m_bundle, false );
+        final URLConnection connection = transport.openConnection( url );
+        connection.connect();
+        connection.getHeaderField( "ETag" );
+        DownloadTransport.release( connection );
+        download( transport, url );
+        assertEquals( "Connections", 1, m_server.getConnections() );
+    }
+
+    // test that a response slower then the read timeout fails
+    @Test( expected = SocketTimeoutException.class )
+    public void readTimeout()
+        throws Exception
+    {
+        m_server.setDelay( 500 );
+        download( new DownloadTransport( 1, 0, 100 ), m_server.serve( "/bundle1.jar", m_bundle, false ) );
+    }
+
+    // test that bytes and requests are collected per host
+    @Test
+    public void statistics()
+        throws Exception
+    {
+        final DownloadTransport transport = new DownloadTransport();
+        download( transport, m_server.serve( "/bundle1.jar", m_bundle, false ) );
+        download( transport, m_server.serve( "/bundle2.jar", m_bundle, false ) );
+        download( transport, m_bundle.toURL() );
+        assertEquals( "Hosts", 1, transport.getStatistics().size() );
+        final DownloadTransport.HostStatistics statistics = transport.getStatistics().values().iterator().next();
+        assertEquals( "Host", "127.0.0.1:" + m_server.url( "/" ).getPort(), statistics.getHost() );
+        assertEquals( "Requests", 2, statistics.getRequests() );
+        assertEquals( "Bytes", 2 * m_bundle.length(), statistics.getBytes() );
+    }
+
+    private static long download( final DownloadTransport transport, final URL url )
+        throws Exception
+    {
+        final DownloadTransport.Permit permit = transport.acquire( url );
+        long received = 0;
+        try
+        {
+            final InputStream in = transport.openConnection( url ).getInputStream();
+            try
+            {
+                final byte[] buffer = new byte[4096];
+                int read;
+                while( ( read = in.read( buffer ) ) >= 0 )
+                {
+                    received += read;
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+            return received;
+        }
+        finally
+        {
+            permit.release( received );
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+
+public class DownloadValidatorsTest
+{
+
+    private HttpStandIn m_server;
+    private File m_bundle;
+
+    @Before
+    public void setUp()
+        throws Exception
+    {
+        m_server = new HttpStandIn();
+        m_bundle = FileUtils.getFileFromClasspath( "platform/bundle1.jar" );
+    }
+
+    @After
+    public void tearDown()
+        throws Exception
+    {
+        m_server.stop();
+    }
+
+    // normal flow: validators of the downloaded content are taken from the response
+    @Test
+    public void fromHttpConnection()
+        throws Exception
+    {
+        final URL url = m_server.serve( "/bundle1.jar", m_bundle, true );
+        final URLConnection connection = DownloadValidators.openConnection( url, null, null );
+        consume( connection );
+        final DownloadValidators validators = DownloadValidators.from( connection );
+        assertNotNull( "Validators", validators );
+        assertNotNull( "ETag", validators.getETag() );
+        assertNotNull( "Last-Modified", validators.getLastModified() );
+        assertEquals( "Checksum", BundleStore.checksum( m_bundle ), validators.getChecksum() );
+        assertEquals( "Transfers", 1, m_server.getTransfers() );
+    }
+
+    // test that there are no validators for not http urls
+    @Test
+    public void fromFileConnection()
+        throws Exception
+    {
+        final URLConnection connection = DownloadValidators.openConnection( m_bundle.toURL(), null, null );
+        consume( connection );
+        assertNull( "Validators", DownloadValidators.from( connection ) );
+    }
+
+    // test that content is not transferred again if not modified
+    @Test
+    public void openConnectionNotModified()
+        throws Exception
+    {
+        final URL url = m_server.serve( "/bundle1.jar", m_bundle, false );
+        final URLConnection connection = DownloadValidators.openConnection( url, null, null );
+        consume( connection );
+        assertNull(
+            "Connection", DownloadValidators.openConnection( url, DownloadValidators.from( connection ), null )
+        );
+        assertEquals( "Transfers", 1, m_server.getTransfers() );
+    }
+
+    // test that changed content is transferred again
+    @Test
+    public void openConnectionModified()
+        throws Exception
+    {
+        final URL url = m_server.serve( "/bundle1.jar", m_bundle, false );
+        final URLConnection connection = DownloadValidators.openConnection( url, null, null );
+        consume( connection );
+        m_server.serve( "/bundle1.jar", FileUtils.getFileFromClasspath( "platform/bundle2.jar" ), false );
+        final URLConnection modified =
+            DownloadValidators.openConnection( url, DownloadValidators.from( connection ), null );
+        assertNotNull( "Connection", modified );
+        consume( modified );
+        assertEquals( "Transfers", 2, m_server.getTransfers() );
+    }
+
+    // test that content having the same checksum as the downloaded content is not transferred again
+    @Test
+    public void openConnectionSameChecksum()
+        throws Exception
+    {
+        final URL url = m_server.serve( "/bundle1.jar", m_bundle, true );
+        assertNull( "Connection", DownloadValidators.openConnection( url, null, BundleStore.checksum( m_bundle ) ) );
+    }
+
+    private static void consume( final URLConnection connection )
+        throws Exception
+    {
+        final InputStream in = connection.getInputStream();
+        final byte[] buffer = new byte[1024];
+        while( in.read( buffer ) > 0 )
+        {
+            // just read
+        }
+        in.close();
+    }
+
+}
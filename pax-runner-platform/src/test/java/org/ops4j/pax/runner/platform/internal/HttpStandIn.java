@@ -0,0 +1,397 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal http server standing in for a remote repository in tests. It serves files registered by path, answers
+ * conditional requests (If-None-Match / If-Modified-Since) and range requests (Range / If-Range), can interrupt a
+ * transfer and counts the responses and bytes that transferred content. Each connection is served by its own thread
+ * and can be kept alive for more requests; accepted connections and requests in progress in the same time are counted.
+ */
+public class HttpStandIn
+{
+
+    private static final String LAST_MODIFIED = "Tue, 15 Nov 1994 12:45:26 GMT";
+
+    private final ServerSocket m_serverSocket;
+    private final Map<String, Resource> m_resources;
+    private final AtomicInteger m_transfers;
+    private final AtomicLong m_transferredBytes;
+    private volatile int m_interruptAfter;
+    private final Set<Socket> m_sockets;
+    private final AtomicInteger m_connections;
+    private final AtomicInteger m_activeRequests;
+    private final AtomicInteger m_maxConcurrentRequests;
+    private volatile boolean m_keepAlive;
+    private volatile long m_delay;
+
+    public HttpStandIn()
+        throws IOException
+    {
+        m_serverSocket = new ServerSocket( 0, 50, InetAddress.getByName( "127.0.0.1" ) );
+        m_resources = new ConcurrentHashMap<String, Resource>();
+        m_transfers = new AtomicInteger();
+        m_transferredBytes = new AtomicLong();
+        m_interruptAfter = -1;
+        m_sockets = new CopyOnWriteArraySet<Socket>();
+        m_connections = new AtomicInteger();
+        m_activeRequests = new AtomicInteger();
+        m_maxConcurrentRequests = new AtomicInteger();
+        final Thread thread = new Thread( "Http stand-in" )
+        {
+            @Override
+            public void run()
+            {
+                while( !m_serverSocket.isClosed() )
+                {
+                    try
+                    {
+                        final Socket socket = m_serverSocket.accept();
+                        m_connections.incrementAndGet();
+                        m_sockets.add( socket );
+                        final Thread connection = new Thread( "Http stand-in connection" )
+                        {
+                            @Override
+                            public void run()
+                            {
+                                try
+                                {
+                                    serve( socket );
+                                }
+                                catch( IOException ignore )
+                                {
+                                    // client went away
+                                }
+                                finally
+                                {
+                                    m_sockets.remove( socket );
+                                }
+                            }
+                        };
+                        connection.setDaemon( true );
+                        connection.start();
+                    }
+                    catch( IOException ignore )
+                    {
+                        // server socket closed
+                    }
+                }
+            }
+        };
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    /**
+     * Serves the content of a file under a path. The ETag changes with every call, so calling it again with the same
+     * path simulates a changed resource.
+     */
+    public URL serve( final String path, final File file, final boolean withChecksum )
+        throws IOException
+    {
+        final byte[] content = read( file );
+        m_resources.put(
+            path,
+            new Resource( content, "\"" + path.hashCode() + "-" + System.nanoTime() + "\"",
+                          withChecksum ? BundleStore.checksum( file ) : null
+            )
+        );
+        return url( path );
+    }
+
+    public URL url( final String path )
+        throws MalformedURLException
+    {
+        return new URL( "http://127.0.0.1:" + m_serverSocket.getLocalPort() + path );
+    }
+
+    public int getTransfers()
+    {
+        return m_transfers.get();
+    }
+
+    public long getTransferredBytes()
+    {
+        return m_transferredBytes.get();
+    }
+
+    /**
+     * Returns the number of accepted connections.
+     */
+    public int getConnections()
+    {
+        return m_connections.get();
+    }
+
+    /**
+     * Returns the maximum number of requests that were in progress in the same time.
+     */
+    public int getMaxConcurrentRequests()
+    {
+        return m_maxConcurrentRequests.get();
+    }
+
+    /**
+     * Keeps connections alive after a response, so clients can reuse them for more requests.
+     */
+    public void setKeepAlive( final boolean keepAlive )
+    {
+        m_keepAlive = keepAlive;
+    }
+
+    /**
+     * Delays every response with the specified number of milliseconds.
+     */
+    public void setDelay( final long delay )
+    {
+        m_delay = delay;
+    }
+
+    /**
+     * Next transfer will be interrupted (connection closed) after sending the specified number of bytes.
+     */
+    public void interruptAfter( final int bytes )
+    {
+        m_interruptAfter = bytes;
+    }
+
+    public void stop()
+        throws IOException
+    {
+        m_serverSocket.close();
+        for( Socket socket : m_sockets )
+        {
+            socket.close();
+        }
+    }
+
+    private void serve( final Socket socket )
+        throws IOException
+    {
+        try
+        {
+            final BufferedReader reader = new BufferedReader(
+                new InputStreamReader( socket.getInputStream(), "ISO-8859-1" )
+            );
+            final OutputStream out = socket.getOutputStream();
+            while( serve( reader, out ) && m_keepAlive )
+            {
+                // serve next request on the same connection
+            }
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    /**
+     * Serves one request.
+     *
+     * @return true if the connection can be used for another request
+     */
+    private boolean serve( final BufferedReader reader, final OutputStream out )
+        throws IOException
+    {
+        final String requestLine = reader.readLine();
+        if( requestLine == null )
+        {
+            return false;
+        }
+        final int active = m_activeRequests.incrementAndGet();
+        try
+        {
+            int max;
+            while( active > ( max = m_maxConcurrentRequests.get() )
+                   && !m_maxConcurrentRequests.compareAndSet( max, active ) )
+            {
+                // retry
+            }
+            if( m_delay > 0 )
+            {
+                try
+                {
+                    Thread.sleep( m_delay );
+                }
+                catch( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            final Map<String, String> headers = new HashMap<String, String>();
+            String line;
+            while( ( line = reader.readLine() ) != null && line.length() > 0 )
+            {
+                final int colon = line.indexOf( ':' );
+                if( colon > 0 )
+                {
+                    headers.put( line.substring( 0, colon ).trim().toLowerCase(), line.substring( colon + 1 ).trim() );
+                }
+            }
+            final String[] parts = requestLine.split( " " );
+            final boolean head = "HEAD".equals( parts[ 0 ] );
+            final Resource resource = m_resources.get( parts[ 1 ] );
+            if( resource == null )
+            {
+                write( out, "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n" + connection() + "\r\n" );
+                return true;
+            }
+            final StringBuilder response = new StringBuilder();
+            if( resource.etag.equals( headers.get( "if-none-match" ) )
+                || ( !headers.containsKey( "if-none-match" )
+                     && LAST_MODIFIED.equals( headers.get( "if-modified-since" ) ) ) )
+            {
+                response.append( "HTTP/1.1 304 Not Modified\r\n" );
+                appendValidators( response, resource );
+                response.append( connection() ).append( "\r\n" );
+                write( out, response.toString() );
+                return true;
+            }
+            int offset = 0;
+            final String range = headers.get( "range" );
+            if( range != null && range.startsWith( "bytes=" ) && range.endsWith( "-" )
+                && resource.etag.equals( headers.get( "if-range" ) ) )
+            {
+                offset = Integer.parseInt( range.substring( "bytes=".length(), range.length() - 1 ) );
+            }
+            if( offset >= resource.content.length )
+            {
+                write(
+                    out, "HTTP/1.1 416 Requested Range Not Satisfiable\r\nContent-Length: 0\r\n" + connection() + "\r\n"
+                );
+                return true;
+            }
+            if( offset > 0 )
+            {
+                response.append( "HTTP/1.1 206 Partial Content\r\n" );
+                response.append( "Content-Range: bytes " ).append( offset ).append( "-" )
+                    .append( resource.content.length - 1 ).append( "/" ).append( resource.content.length )
+                    .append( "\r\n" );
+            }
+            else
+            {
+                response.append( "HTTP/1.1 200 OK\r\n" );
+            }
+            appendValidators( response, resource );
+            response.append( "Content-Length: " ).append( resource.content.length - offset ).append( "\r\n" );
+            response.append( connection() ).append( "\r\n" );
+            write( out, response.toString() );
+            boolean reusable = true;
+            if( !head )
+            {
+                m_transfers.incrementAndGet();
+                int length = resource.content.length - offset;
+                final int interruptAfter = m_interruptAfter;
+                if( interruptAfter >= 0 )
+                {
+                    m_interruptAfter = -1;
+                    length = Math.min( length, interruptAfter );
+                    reusable = false;
+                }
+                m_transferredBytes.addAndGet( length );
+                out.write( resource.content, offset, length );
+            }
+            out.flush();
+            return reusable;
+        }
+        finally
+        {
+            m_activeRequests.decrementAndGet();
+        }
+    }
+
+    private String connection()
+    {
+        return m_keepAlive ? "Connection: keep-alive\r\n" : "Connection: close\r\n";
+    }
+
+    private static void appendValidators( final StringBuilder response, final Resource resource )
+    {
+        response.append( "ETag: " ).append( resource.etag ).append( "\r\n" );
+        response.append( "Last-Modified: " ).append( LAST_MODIFIED ).append( "\r\n" );
+        if( resource.checksum != null )
+        {
+            response.append( DownloadValidators.CHECKSUM_HEADER ).append( ": " ).append( resource.checksum )
+                .append( "\r\n" );
+        }
+    }
+
+    private static void write( final OutputStream out, final String text )
+        throws IOException
+    {
+        out.write( text.getBytes( "ISO-8859-1" ) );
+    }
+
+    private static byte[] read( final File file )
+        throws IOException
+    {
+        final byte[] content = new byte[(int) file.length()];
+        final InputStream in = new FileInputStream( file );
+        try
+        {
+            int offset = 0;
+            int read;
+            while( offset < content.length && ( read = in.read( content, offset, content.length - offset ) ) > 0 )
+            {
+                offset += read;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return content;
+    }
+
+    private static class Resource
+    {
+
+        final byte[] content;
+        final String etag;
+        final String checksum;
+
+        Resource( final byte[] content, final String etag, final String checksum )
+        {
+            this.content = content;
+            this.etag = etag;
+            this.checksum = checksum;
+        }
+
+    }
+
+}
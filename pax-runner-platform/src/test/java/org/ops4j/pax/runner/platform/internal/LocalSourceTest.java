@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.net.URL;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+
+public class LocalSourceTest
+{
+
+    // normal flow: a "file:" url of an existing file is its own local source
+    @Test
+    public void findFile()
+        throws Exception
+    {
+        final File bundle = FileUtils.getFileFromClasspath( "platform/bundle1.jar" );
+        assertEquals( "Local source", bundle.getCanonicalFile(),
+                      LocalSource.find( bundle.toURL(), null ).getCanonicalFile()
+        );
+    }
+
+    // test that a "file:" url of a not existing file has no local source
+    @Test
+    public void findNotExistingFile()
+        throws Exception
+    {
+        assertNull( "Local source", LocalSource.find( new URL( "file:/not/existing/bundle.jar" ), null ) );
+    }
+
+    // test that a remote url has no local source
+    @Test
+    public void findRemote()
+        throws Exception
+    {
+        assertNull( "Local source", LocalSource.find( new URL( "http://localhost/bundle.jar" ), null ) );
+    }
+
+    // test that released maven artifacts are looked up in the local repository
+    @Test
+    public void toFileFromMavenPath()
+    {
+        final File repository = new File( "repository" );
+        assertEquals(
+            "Artifact", new File( repository, "org/ops4j/bundle/1.0/bundle-1.0.jar" ),
+            LocalSource.toFile( "org.ops4j/bundle/1.0", repository )
+        );
+        assertEquals(
+            "Artifact with type and classifier", new File( repository, "org/ops4j/bundle/1.0/bundle-1.0-config.xml" ),
+            LocalSource.toFile( "http://repo!org.ops4j/bundle/1.0/xml/config", repository )
+        );
+        assertNull( "Snapshot", LocalSource.toFile( "org.ops4j/bundle/1.0-SNAPSHOT", repository ) );
+        assertNull( "Range", LocalSource.toFile( "org.ops4j/bundle/[1.0,2.0)", repository ) );
+        assertNull( "Without version", LocalSource.toFile( "org.ops4j/bundle", repository ) );
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+
+public class PartialDownloadTest
+{
+
+    private File m_workDir;
+    private File m_part;
+    private File m_destination;
+    private File m_bundle;
+    private HttpStandIn m_server;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        m_workDir = File.createTempFile( "runner", "" );
+        m_workDir.delete();
+        m_workDir.mkdirs();
+        m_part = new File( m_workDir, "bundle.part" );
+        m_destination = new File( m_workDir, "bundle.jar" );
+        m_bundle = FileUtils.getFileFromClasspath( "platform/bundle1.jar" );
+        m_server = new HttpStandIn();
+    }
+
+    @After
+    public void tearDown()
+        throws IOException
+    {
+        m_server.stop();
+        FileUtils.delete( m_workDir );
+    }
+
+    // normal flow: content is downloaded to the part file and then moved to destination
+    @Test
+    public void download()
+        throws Exception
+    {
+        final URL url = m_server.serve( "/bundle1.jar", m_bundle, true );
+        download( url );
+        assertFalse( "Part file exists", m_part.exists() );
+        assertEquals( "Checksum", BundleStore.checksum( m_bundle ), BundleStore.checksum( m_destination ) );
+    }
+
+    // test that an interrupted download is not promoted and is resumed with only the missing content
+    @Test
+    public void resumeInterruptedDownload()
+        throws Exception
+    {
+        final URL url = m_server.serve( "/bundle1.jar", m_bundle, false );
+        m_server.interruptAfter( 100 );
+        try
+        {
+            download( url );
+            fail( "Expected an IOException" );
+        }
+        catch( IOException expected )
+        {
+            // expected
+        }
+        assertFalse( "Destination exists", m_destination.exists() );
+        assertEquals( "Part file size", 100, m_part.length() );
+
+        download( url );
+        assertFalse( "Part file exists", m_part.exists() );
+        assertEquals( "Checksum", BundleStore.checksum( m_bundle ), BundleStore.checksum( m_destination ) );
+        assertEquals( "Transferred bytes", m_bundle.length(), m_server.getTransferredBytes() );
+    }
+
+    // test that the whole content is downloaded again if it changed since the download was interrupted
+    @Test
+    public void resumeChangedContent()
+        throws Exception
+    {
+        final URL url = m_server.serve( "/bundle1.jar", m_bundle, false );
+        m_server.interruptAfter( 100 );
+        try
+        {
+            download( url );
+            fail( "Expected an IOException" );
+        }
+        catch( IOException expected )
+        {
+            // expected
+        }
+        final File changed = FileUtils.getFileFromClasspath( "platform/bundleWithVersion.jar" );
+        m_server.serve( "/bundle1.jar", changed, false );
+
+        download( url );
+        assertEquals( "Checksum", BundleStore.checksum( changed ), BundleStore.checksum( m_destination ) );
+    }
+
+    // test that content not matching the announced checksum is not promoted
+    @Test
+    public void downloadWithWrongChecksum()
+        throws Exception
+    {
+        final URL url = m_server.serve( "/bundle1.jar", m_bundle, true );
+        // same size as the served content but different content
+        final FileOutputStream out = new FileOutputStream( m_part );
+        out.write( new byte[(int) m_bundle.length()] );
+        out.close();
+        final PartialDownload partialDownload = new PartialDownload( url, m_part );
+        final URLConnection connection = url.openConnection();
+        connection.getInputStream().close();
+        try
+        {
+            partialDownload.promote( connection, m_destination );
+            fail( "Expected an IOException" );
+        }
+        catch( IOException expected )
+        {
+            // expected
+        }
+        assertFalse( "Destination exists", m_destination.exists() );
+        assertFalse( "Part file exists", m_part.exists() );
+    }
+
+    private void download( final URL url )
+        throws IOException
+    {
+        final PartialDownload partialDownload = new PartialDownload( url, m_part );
+        final URLConnection connection = partialDownload.openConnection();
+        final FileOutputStream out = partialDownload.openPart( connection );
+        try
+        {
+            StreamUtils.streamCopy( connection, out.getChannel(), null );
+        }
+        finally
+        {
+            out.close();
+        }
+        partialDownload.promote( connection, m_destination );
+    }
+
+}
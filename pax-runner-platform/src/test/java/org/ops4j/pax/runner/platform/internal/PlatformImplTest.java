@@ -22,7 +22,9 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Dictionary;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import static org.easymock.EasyMock.*;
 import org.junit.After;
 import static org.junit.Assert.*;
@@ -34,6 +36,7 @@ import org.ops4j.io.FileUtils;
 import org.ops4j.pax.runner.platform.BundleReference;
 import org.ops4j.pax.runner.platform.BundleReferenceBean;
 import org.ops4j.pax.runner.platform.Configuration;
+import org.ops4j.pax.runner.platform.DownloadQueue;
 import org.ops4j.pax.runner.platform.FilePathStrategy;
 import org.ops4j.pax.runner.platform.JavaRunner;
 import org.ops4j.pax.runner.platform.PlatformBuilder;
@@ -50,6 +53,7 @@ public class PlatformImplTest
     private PlatformContext m_context;
     private BundleContext m_bundleContext;
     private Bundle m_bundle;
+    private int m_downloadsPerHost;
 
     @Before
     public void setUp()
@@ -92,6 +96,152 @@ public class PlatformImplTest
         start( bundles );
     }
 
+    // test that bundles downloaded concurrently are installed in the original order
+    @Test
+    public void startWithBundlesDownloadedConcurrently()
+        throws Exception
+    {
+        List<BundleReference> bundles = new ArrayList<BundleReference>();
+        bundles.add( new BundleReferenceBean( FileUtils.getFileFromClasspath( "platform/bundle1.jar" ).toURL() ) );
+        bundles.add( new BundleReferenceBean( FileUtils.getFileFromClasspath( "platform/bundle2.jar" ).toURL() ) );
+        bundles.add(
+            new BundleReferenceBean( FileUtils.getFileFromClasspath( "platform/bundleWithVersion.jar" ).toURL() )
+        );
+        start( bundles, FileUtils.getFileFromClasspath( "platform/system.jar" ).toURL(), 4 );
+    }
+
+    // test that downloaded bundles are added to the bundle store
+    @Test
+    public void startWithBundleStore()
+        throws Exception
+    {
+        final File bundleStore = new File( m_workDir, "store" );
+        final HttpStandIn server = new HttpStandIn();
+        try
+        {
+            final URL url = server.serve(
+                "/bundle1.jar", FileUtils.getFileFromClasspath( "platform/bundle1.jar" ), false
+            );
+            List<BundleReference> bundles = new ArrayList<BundleReference>();
+            bundles.add( new BundleReferenceBean( url ) );
+            start( bundles, FileUtils.getFileFromClasspath( "platform/system.jar" ).toURL(), 1, bundleStore );
+            assertNotNull( "Bundle in store", new BundleStore( bundleStore ).find( url ) );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    // test that local bundles are referenced in place and not added to the bundle store
+    @Test
+    public void startWithLocalBundle()
+        throws Exception
+    {
+        final File bundleStore = new File( m_workDir, "store" );
+        final URL url = FileUtils.getFileFromClasspath( "platform/bundle1.jar" ).toURL();
+        List<BundleReference> bundles = new ArrayList<BundleReference>();
+        bundles.add( new BundleReferenceBean( url ) );
+        start( bundles, FileUtils.getFileFromClasspath( "platform/system.jar" ).toURL(), 1, bundleStore );
+        assertNull( "Bundle in store", new BundleStore( bundleStore ).find( url ) );
+        assertEquals( "Copied files", 0, countJars( new File( m_workDir, "bundles" ) ) );
+    }
+
+    // test that local bundles in the working directory, which the platform writes into, are copied
+    @Test
+    public void startWithLocalBundleInWorkingDirectory()
+        throws Exception
+    {
+        final File bundle = new File( m_workDir, "provision/bundle1.jar" );
+        bundle.getParentFile().mkdirs();
+        BundleStore.copy( FileUtils.getFileFromClasspath( "platform/bundle1.jar" ), bundle );
+        List<BundleReference> bundles = new ArrayList<BundleReference>();
+        bundles.add( new BundleReferenceBean( bundle.toURL() ) );
+        start( bundles, FileUtils.getFileFromClasspath( "platform/system.jar" ).toURL(), 1 );
+        assertEquals( "Copied files", 1, countJars( new File( m_workDir, "bundles" ) ) );
+    }
+
+    // test that concurrent downloads from a repository are limited per host and reuse connections
+    @Test
+    public void startWithBundlesFromRepository()
+        throws Exception
+    {
+        final HttpStandIn server = new HttpStandIn();
+        try
+        {
+            server.setKeepAlive( true );
+            server.setDelay( 50 );
+            List<BundleReference> bundles = new ArrayList<BundleReference>();
+            for( int i = 0; i < 8; i++ )
+            {
+                bundles.add(
+                    new BundleReferenceBean(
+                        server.serve(
+                            "/repository/bundle" + i + ".jar",
+                            FileUtils.getFileFromClasspath( "platform/bundle" + ( i % 2 + 1 ) + ".jar" ),
+                            false
+                        )
+                    )
+                );
+            }
+            m_downloadsPerHost = 2;
+            start( bundles, FileUtils.getFileFromClasspath( "platform/system.jar" ).toURL(), 4 );
+            assertEquals( "Transfers", 8, server.getTransfers() );
+            assertTrue( "Concurrent requests", server.getMaxConcurrentRequests() <= 2 );
+            assertTrue( "Connections", server.getConnections() <= 2 );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    // test that an unchanged http bundle is not downloaded again on overwrite
+    @Test
+    public void startWithNotModifiedHttpBundle()
+        throws Exception
+    {
+        final HttpStandIn server = new HttpStandIn();
+        try
+        {
+            final URL url = server.serve(
+                "/bundle1.jar", FileUtils.getFileFromClasspath( "platform/bundle1.jar" ), false
+            );
+            List<BundleReference> bundles = new ArrayList<BundleReference>();
+            bundles.add( new BundleReferenceBean( url ) );
+            start( bundles );
+            reset( m_builder, m_definition, m_config, m_context, m_bundleContext, m_bundle );
+            start( bundles );
+            assertEquals( "Transfers", 1, server.getTransfers() );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
+    // test that bundles offered to the download queue before start are not downloaded again on start
+    @Test
+    public void startWithBundlesOfferedBeforeStart()
+        throws Exception
+    {
+        final HttpStandIn server = new HttpStandIn();
+        try
+        {
+            final URL url = server.serve(
+                "/bundle1.jar", FileUtils.getFileFromClasspath( "platform/bundle1.jar" ), false
+            );
+            List<BundleReference> bundles = new ArrayList<BundleReference>();
+            bundles.add( new BundleReferenceBean( url ) );
+            start( bundles, FileUtils.getFileFromClasspath( "platform/system.jar" ).toURL(), 1, null, bundles );
+            assertEquals( "Transfers", 1, server.getTransfers() );
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+
     // test that platform starts even without bundles to be installed
     @Test
     public void startWithoutBundles()
@@ -137,6 +287,26 @@ public class PlatformImplTest
 
     public void start( final List<BundleReference> bundles, URL systemBundleURL )
         throws Exception
+    {
+        start( bundles, systemBundleURL, 1 );
+    }
+
+    public void start( final List<BundleReference> bundles, URL systemBundleURL, final int downloadThreads )
+        throws Exception
+    {
+        start( bundles, systemBundleURL, downloadThreads, null );
+    }
+
+    public void start( final List<BundleReference> bundles, URL systemBundleURL, final int downloadThreads,
+                       final File bundleStore )
+        throws Exception
+    {
+        start( bundles, systemBundleURL, downloadThreads, bundleStore, null );
+    }
+
+    public void start( final List<BundleReference> bundles, URL systemBundleURL, final int downloadThreads,
+                       final File bundleStore, final List<BundleReference> offeredBeforeStart )
+        throws Exception
     {
         final JavaRunner javaRunner = createMock( JavaRunner.class );
         javaRunner.exec( (String[]) notNull(), (String[]) notNull(), (String) notNull(), (String[]) notNull(),
@@ -155,7 +325,26 @@ public class PlatformImplTest
         expect( m_config.isOverwriteUserBundles() ).andReturn( false );
         expect( m_config.isOverwriteSystemBundles() ).andReturn( false );
         expect( m_config.isDownloadFeedback() ).andReturn( false );
+        expect( m_config.getDownloadThreads() ).andReturn( downloadThreads );
+        expect( m_config.useBundleStore() ).andReturn( bundleStore != null );
+        if( bundleStore != null )
+        {
+            expect( m_config.getBundleStore() ).andReturn( bundleStore.getAbsolutePath() );
+            expect( m_config.getBundleStoreMaxSize() ).andReturn( 0 );
+            expect( m_config.getBundleStoreMaxAge() ).andReturn( 0 );
+        }
+        expect( m_config.getDownloadsPerHost() ).andReturn( m_downloadsPerHost );
+        expect( m_config.getConnectTimeout() ).andReturn( 0 );
+        expect( m_config.getReadTimeout() ).andReturn( 0 );
+        expect( m_config.getProperty( "org.ops4j.pax.url.mvn.localRepository" ) ).andReturn( null );
         expect( m_config.isAutoWrap() ).andReturn( false );
+        if( offeredBeforeStart != null )
+        {
+            // from createDownloadQueue()
+            expect( m_config.getWorkingDirectory() ).andReturn( m_workDir );
+            expect( m_config.isOverwrite() ).andReturn( true );
+            expect( m_config.isAutoWrap() ).andReturn( false );
+        }
         expect( m_config.keepOriginalUrls() ).andReturn( false ).anyTimes();
         expect( m_config.getJavaHome() ).andReturn( "javaHome" );
         expect( m_definition.getSystemPackage() ).andReturn( systemBundleURL );
@@ -188,10 +377,44 @@ public class PlatformImplTest
         expect( m_builder.getArguments( m_context ) ).andReturn( new String[]{ "arg1" } );
 
         replay( m_builder, m_definition, m_config, m_context, m_bundleContext, m_bundle, javaRunner, filePathStrategy );
-        new TestPlatform().start( null, bundles, null, null, javaRunner );
+        final TestPlatform platform = new TestPlatform();
+        if( offeredBeforeStart != null )
+        {
+            final DownloadQueue downloadQueue = platform.createDownloadQueue( null );
+            for( BundleReference bundle : offeredBeforeStart )
+            {
+                downloadQueue.offer( bundle );
+            }
+            platform.start( null, bundles, null, null, javaRunner );
+            downloadQueue.close();
+        }
+        else
+        {
+            platform.start( null, bundles, null, null, javaRunner );
+        }
         verify( m_builder, m_definition, m_config, m_context, m_bundleContext, m_bundle, javaRunner, filePathStrategy );
     }
 
+    // test that system properties of the vm options become framework properties of an embedded launch
+    @Test
+    public void applyVMOptions()
+    {
+        final Map<String, String> builderProperties = new HashMap<String, String>();
+        builderProperties.put( "org.osgi.framework.storage", "storage" );
+        builderProperties.put( "overridden", "builder" );
+        final Map<String, String> properties = PlatformImpl.applyVMOptions(
+            builderProperties,
+            new String[]{ "-Dproperty=value", "-Doverridden=user", "-Dflag", "-Xmx512m", "-D=ignored" },
+            new String[]{ "KEY=value" }
+        );
+        assertEquals( "Builder property", "storage", properties.get( "org.osgi.framework.storage" ) );
+        assertEquals( "System property", "value", properties.get( "property" ) );
+        assertEquals( "Overridden property", "user", properties.get( "overridden" ) );
+        assertEquals( "Property without value", "", properties.get( "flag" ) );
+        assertEquals( "Properties", 4, properties.size() );
+        assertEquals( "Builder properties unchanged", "builder", builderProperties.get( "overridden" ) );
+    }
+
     @Test( expected = PlatformException.class )
     public void validateBundleWithNoManifestAndCheckAttributes()
         throws Exception
@@ -270,6 +493,23 @@ public class PlatformImplTest
         verify( m_builder, m_bundleContext, m_config );
     }
 
+    private static int countJars( final File directory )
+    {
+        int count = 0;
+        final String[] names = directory.list();
+        if( names != null )
+        {
+            for( String name : names )
+            {
+                if( name.endsWith( ".jar" ) )
+                {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
     private class TestPlatform extends PlatformImpl
     {
 
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.platform.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+
+public class StreamUtilsTest
+{
+
+    private File m_workDir;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        m_workDir = File.createTempFile( "runner", "" );
+        m_workDir.delete();
+        m_workDir.mkdirs();
+    }
+
+    @After
+    public void tearDown()
+    {
+        FileUtils.delete( m_workDir );
+    }
+
+    // normal flow: content bigger than a chunk is copied completely and the total is reported at the end
+    @Test
+    public void streamCopy()
+        throws Exception
+    {
+        final byte[] content = content( 5 * StreamUtils.CHUNK_SIZE + 17 );
+        final Progress progress = new Progress();
+        final File target = new File( m_workDir, "target" );
+        copy( new ByteArrayInputStream( content ), target, false, progress );
+        assertArrayEquals( "Content", content, read( target ) );
+        assertEquals( "Total bytes", (long) content.length, (long) progress.bytes.get( progress.bytes.size() - 1 ) );
+        assertTrue( "Stopped", progress.stopped );
+    }
+
+    // test that a file is copied and appended to the current position of the target (resumed download)
+    @Test
+    public void streamCopyFileAppended()
+        throws Exception
+    {
+        final byte[] content = content( 3 * StreamUtils.CHUNK_SIZE + 5 );
+        final File source = new File( m_workDir, "source" );
+        final FileOutputStream out = new FileOutputStream( source );
+        try
+        {
+            out.write( content, 10, content.length - 10 );
+        }
+        finally
+        {
+            out.close();
+        }
+        final File target = new File( m_workDir, "target" );
+        final FileOutputStream part = new FileOutputStream( target );
+        try
+        {
+            part.write( content, 0, 10 );
+        }
+        finally
+        {
+            part.close();
+        }
+        final Progress progress = new Progress();
+        copy( new FileInputStream( source ), target, true, progress );
+        assertArrayEquals( "Content", content, read( target ) );
+        assertEquals(
+            "Total bytes", (long) content.length - 10, (long) progress.bytes.get( progress.bytes.size() - 1 )
+        );
+    }
+
+    // test that progress is reported while copying, not only at the end
+    @Test
+    public void streamCopyReportsProgress()
+        throws Exception
+    {
+        final Progress progress = new Progress();
+        final InputStream slow = new InputStream()
+        {
+            private int m_remaining = 4;
+
+            @Override
+            public int read()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read( final byte[] b, final int off, final int len )
+            {
+                if( m_remaining-- == 0 )
+                {
+                    return -1;
+                }
+                try
+                {
+                    Thread.sleep( StreamUtils.PROGRESS_INTERVAL );
+                }
+                catch( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                return Math.min( len, 100 );
+            }
+        };
+        copy( slow, new File( m_workDir, "target" ), false, progress );
+        assertTrue( "Progress reports " + progress.bytes, progress.bytes.size() > 2 );
+        assertEquals( "Total bytes", 400L, (long) progress.bytes.get( progress.bytes.size() - 1 ) );
+    }
+
+    // test that concurrent downloads are summed up
+    @Test
+    public void aggregateProgressView()
+    {
+        final StreamUtils.AggregateProgressView view = new StreamUtils.AggregateProgressView();
+        final StreamUtils.ProgressBar first = view.createProgressBar( "first" );
+        final StreamUtils.ProgressBar second = view.createProgressBar( "second" );
+        first.increment( 100, 1 );
+        second.increment( 50, 1 );
+        assertEquals( "Bytes", 150, view.getBytes() );
+        first.increment( 200, 1 );
+        first.stop();
+        assertEquals( "Finished", 1, view.getFinished() );
+        assertEquals( "Bytes", 250, view.getBytes() );
+        second.stop();
+        // a stopped progress bar is not counted twice
+        second.stop();
+        view.stop();
+        assertEquals( "Finished", 2, view.getFinished() );
+        assertEquals( "Bytes", 250, view.getBytes() );
+    }
+
+    private static void copy( final InputStream in,
+                              final File target,
+                              final boolean append,
+                              final StreamUtils.ProgressBar progressBar )
+        throws IOException
+    {
+        final FileOutputStream out = new FileOutputStream( target, append );
+        try
+        {
+            StreamUtils.streamCopy( in, out.getChannel(), progressBar );
+        }
+        finally
+        {
+            out.close();
+            in.close();
+        }
+    }
+
+    private static byte[] content( final int length )
+    {
+        final byte[] content = new byte[length];
+        for( int i = 0; i < length; i++ )
+        {
+            content[ i ] = (byte) i;
+        }
+        return content;
+    }
+
+    private static byte[] read( final File file )
+        throws IOException
+    {
+        final byte[] content = new byte[(int) file.length()];
+        final FileInputStream in = new FileInputStream( file );
+        try
+        {
+            int length = 0;
+            int read;
+            while( length < content.length && ( read = in.read( content, length, content.length - length ) ) > 0 )
+            {
+                length += read;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return content;
+    }
+
+    private static class Progress
+        implements StreamUtils.ProgressBar
+    {
+
+        final List<Long> bytes = new ArrayList<Long>();
+        boolean stopped;
+
+        public void increment( final long bytes, final long kbps )
+        {
+            this.bytes.add( bytes );
+        }
+
+        public void stop()
+        {
+            stopped = true;
+        }
+
+    }
+
+}
@@ -46,6 +46,10 @@ public class AuditedProperties
      * Default properties to be used.
      */
     final Properties m_defaults;
+    /**
+     * Properties set by current thread while recording. Null if current thread is not recording.
+     */
+    private final ThreadLocal<Properties> m_recorded = new ThreadLocal<Properties>();
 
     /**
      * Creates an empty property list with the specified defaults.
@@ -77,7 +81,16 @@ public class AuditedProperties
     @Override
     public String getProperty( String key, String defaultValue )
     {
-        String value = super.getProperty( key );
+        String value = null;
+        final Properties recorded = m_recorded.get();
+        if( recorded != null )
+        {
+            value = recorded.getProperty( key );
+        }
+        if( value == null )
+        {
+            value = super.getProperty( key );
+        }
         if( value == null )
         {
             value = m_defaults.getProperty( key, defaultValue );
@@ -89,11 +102,51 @@ public class AuditedProperties
     public synchronized Object setProperty( String key, String value )
     {
         final String replaced = replacePlaceholders( value );
+        final Properties recorded = m_recorded.get();
+        if( recorded != null )
+        {
+            LOGGER.trace( "Recording system property [" + key + "=" + replaced + "]" );
+            final Object previous = recorded.setProperty( key, replaced );
+            return previous != null ? previous : super.getProperty( key );
+        }
         LOGGER.trace( "Setting system property [" + key + "=" + replaced + "]" );
         return super.setProperty( key, replaced );
     }
 
+    /**
+     * Starts recording the properties set by the current thread instead of setting them. While recording, the current
+     * thread sees the recorded properties but other threads do not.
+     */
+    public void startRecording()
+    {
+        m_recorded.set( new Properties() );
+    }
+
+    /**
+     * Stops recording the properties set by the current thread.
+     *
+     * @return properties recorded since recording started
+     */
+    public Properties stopRecording()
+    {
+        final Properties recorded = m_recorded.get();
+        m_recorded.remove();
+        return recorded != null ? recorded : new Properties();
+    }
 
+    /**
+     * Sets properties previously recorded. Placeholders were already replaced while recording.
+     *
+     * @param recorded recorded properties
+     */
+    public synchronized void replay( final Properties recorded )
+    {
+        for( Map.Entry<Object, Object> entry : recorded.entrySet() )
+        {
+            LOGGER.trace( "Setting system property [" + entry.getKey() + "=" + entry.getValue() + "]" );
+            super.setProperty( (String) entry.getKey(), (String) entry.getValue() );
+        }
+    }
 
     /**
      * Replaces placeholders = ${*}.
@@ -18,6 +18,7 @@
 package org.ops4j.pax.runner;
 
 import java.util.List;
+import java.util.Set;
 
 /**
  * Abstracts accesss to command line arguments.
@@ -108,6 +109,18 @@ public interface CommandLine
      * Daemon Timeout option.
      */
     static final String OPTION_DAEMON_TIMEOUT = "daemonTimeout";
+    /**
+     * Number of threads used for scanning provision specs option.
+     */
+    static final String OPTION_SCAN_THREADS = "scanThreads";
+    /**
+     * Launch plan cache option.
+     */
+    static final String OPTION_LAUNCH_PLAN = "launchPlan";
+    /**
+     * Launch trace file option.
+     */
+    static final String OPTION_TRACE = "trace";
 
     /**
      * Returns the value of an option by key. If option is not defined returns null.
@@ -134,4 +147,11 @@ public interface CommandLine
      */
     List<String> getArguments();
 
+    /**
+     * Returns the names of all options.
+     *
+     * @return set of option names; if there are no options returns an empty set
+     */
+    Set<String> getOptionNames();
+
 }
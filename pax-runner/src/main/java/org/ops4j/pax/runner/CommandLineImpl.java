@@ -30,6 +30,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -228,6 +229,14 @@ public class CommandLineImpl implements CommandLine
         return m_arguments;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public Set<String> getOptionNames()
+    {
+        return m_options.keySet();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -19,9 +19,10 @@ package org.ops4j.pax.runner;
 
 import java.util.List;
 import java.util.Properties;
-import org.apache.felix.framework.ServiceRegistry;
-import org.apache.felix.framework.util.EventDispatcher;
+import org.apache.commons.logging.Log;
 import org.ops4j.pax.runner.osgi.RunnerBundle;
+import org.ops4j.pax.runner.osgi.RunnerServiceRegistry;
+import org.ops4j.pax.runner.platform.DownloadQueue;
 
 /**
  * Runner context. Holder for objects to be passed arround.
@@ -85,7 +86,7 @@ public interface Context
      *
      * @return a service registry
      */
-    ServiceRegistry getServiceRegistry();
+    RunnerServiceRegistry getServiceRegistry();
 
     /**
      * Sets the service registry  in use.
@@ -94,23 +95,7 @@ public interface Context
      *
      * @return self, for fluent api.
      */
-    Context setServiceRegistry( ServiceRegistry serviceRegistry );
-
-    /**
-     * Returns the event dispatcher in use.
-     *
-     * @return a event dispatcher
-     */
-    EventDispatcher getEventDispatcher();
-
-    /**
-     * Sets the event dispatcher  in use.
-     *
-     * @param eventDispatcher an event dispatcher
-     *
-     * @return self, for fluent api.
-     */
-    Context setEventDispatcher( EventDispatcher eventDispatcher );
+    Context setServiceRegistry( RunnerServiceRegistry serviceRegistry );
 
     /**
      * Adds a runner bundle to the list of bunsles to be installed in the platform
@@ -143,4 +128,36 @@ public interface Context
      * @return java Properties
      */
     Properties getSystemProperties();
+
+    /**
+     * Sets the queue where installed bundles are offered for download, before the platform is started.
+     *
+     * @param downloadQueue a download queue; can be null
+     *
+     * @return self, for fluent api
+     */
+    Context setDownloadQueue( DownloadQueue downloadQueue );
+
+    /**
+     * Returns the queue where installed bundles are offered for download.
+     *
+     * @return a download queue or null if bundles are downloaded only on platform start
+     */
+    DownloadQueue getDownloadQueue();
+
+    /**
+     * Sets the logger of the run, so runs in the same jvm may log at different levels.
+     *
+     * @param logger a logger
+     *
+     * @return self, for fluent api
+     */
+    Context setLogger( Log logger );
+
+    /**
+     * Returns the logger of the run.
+     *
+     * @return logger or null if not set
+     */
+    Log getLogger();
 }
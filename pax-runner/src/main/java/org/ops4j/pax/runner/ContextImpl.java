@@ -20,9 +20,10 @@ package org.ops4j.pax.runner;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import org.apache.felix.framework.ServiceRegistry;
-import org.apache.felix.framework.util.EventDispatcher;
+import org.apache.commons.logging.Log;
 import org.ops4j.pax.runner.osgi.RunnerBundle;
+import org.ops4j.pax.runner.osgi.RunnerServiceRegistry;
+import org.ops4j.pax.runner.platform.DownloadQueue;
 
 /**
  * Bean like implementation of context.
@@ -52,17 +53,21 @@ public class ContextImpl
      */
     private List<RunnerBundle> m_bundles;
     /**
-     * Felix Service Registry.
+     * Service Registry.
      */
-    private ServiceRegistry m_serviceRegistry;
-    /**
-     * Felix Event dispatcher.
-     */
-    private EventDispatcher m_dispatcher;
+    private RunnerServiceRegistry m_serviceRegistry;
     /**
      * System properties to be used when starting the platform.
      */
     private Properties m_systemProperties;
+    /**
+     * Queue where installed bundles are offered for download.
+     */
+    private DownloadQueue m_downloadQueue;
+    /**
+     * Logger of the run.
+     */
+    private Log m_logger;
 
     /**
      * Create a new Context implementation.
@@ -126,7 +131,7 @@ public class ContextImpl
     /**
      * {@inheritDoc}
      */
-    public ServiceRegistry getServiceRegistry()
+    public RunnerServiceRegistry getServiceRegistry()
     {
         return m_serviceRegistry;
     }
@@ -134,7 +139,7 @@ public class ContextImpl
     /**
      * {@inheritDoc}
      */
-    public Context setServiceRegistry( ServiceRegistry serviceRegistry )
+    public Context setServiceRegistry( RunnerServiceRegistry serviceRegistry )
     {
         m_serviceRegistry = serviceRegistry;
         return this;
@@ -143,51 +148,69 @@ public class ContextImpl
     /**
      * {@inheritDoc}
      */
-    public EventDispatcher getEventDispatcher()
+    public Context addBundle( final RunnerBundle bundle )
+    {
+        m_bundles.add( bundle );
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<RunnerBundle> getBundles()
     {
-        return m_dispatcher;
+        return m_bundles;
     }
 
     /**
      * {@inheritDoc}
      */
-    public Context setEventDispatcher( EventDispatcher dispatcher )
+    public Context setSystemProperties( Properties properties )
     {
-        m_dispatcher = dispatcher;
+        m_systemProperties = properties;
         return this;
     }
 
     /**
      * {@inheritDoc}
      */
-    public Context addBundle( final RunnerBundle bundle )
+    public Properties getSystemProperties()
     {
-        m_bundles.add( bundle );
+        return m_systemProperties;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Context setDownloadQueue( final DownloadQueue downloadQueue )
+    {
+        m_downloadQueue = downloadQueue;
         return this;
     }
 
     /**
      * {@inheritDoc}
      */
-    public List<RunnerBundle> getBundles()
+    public DownloadQueue getDownloadQueue()
     {
-        return m_bundles;
+        return m_downloadQueue;
     }
 
     /**
      * {@inheritDoc}
      */
-    public Context setSystemProperties( Properties properties )
+    public Context setLogger( final Log logger )
     {
-        m_systemProperties = properties;
+        m_logger = logger;
         return this;
     }
 
     /**
      * {@inheritDoc}
      */
-    public Properties getSystemProperties()
+    public Log getLogger()
     {
-        return m_systemProperties;
+        return m_logger;
     }
+
 }
@@ -0,0 +1,824 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.runner.platform.JavaRunner;
+import org.ops4j.pax.runner.platform.PlatformException;
+
+/**
+ * Resolved launch of a platform (vm options, classpath, program options, ...) together with the fingerprint of the
+ * inputs it was resolved from and the files it depends on. As long as inputs and files did not change, the launch
+ * plan can be executed directly, without going through scanners, handlers and platform resolution.
+ *
+ * @since 1.8.6
+ */
+class LaunchPlan
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( LaunchPlan.class );
+    /**
+     * Name of the file where the plan is saved, relative to runner working directory.
+     */
+    static final String FILE_NAME = "launch.plan";
+    /**
+     * File extensions of working files, that change between runs without affecting the launch.
+     */
+    private static final String[] UNTRACKED_EXTENSIONS = { ".properties", ".lock", ".part", ".validators", ".tmp" };
+    /**
+     * Explicit scanner schema of a provision spec, as "scan-file:".
+     */
+    private static final Pattern SCANNER = Pattern.compile( "scan-([a-z]+):" );
+    /**
+     * Scanners whose source lists further provision sources.
+     */
+    private static final List<String> LISTING_SCANNERS = Arrays.asList( "file", "composite", "pom", "features" );
+    /**
+     * Listing scanners whose source is a provision file, with one provision source per line.
+     */
+    private static final List<String> PROVISION_FILE_SCANNERS = Arrays.asList( "file", "composite" );
+    /**
+     * Url protocol; single letters are windows drives.
+     */
+    private static final Pattern PROTOCOL = Pattern.compile( "([a-zA-Z][a-zA-Z0-9+.-]+):" );
+    /**
+     * Url protocols that wrap another url, as "wrap:file:bundle.jar".
+     */
+    private static final List<String> WRAPPING_PROTOCOLS = Arrays.asList(
+        "wrap", "war", "war-i", "warref", "webbundle", "assembly", "assemblyref", "dir"
+    );
+    /**
+     * Maximum nesting of provision files listing other provision files.
+     */
+    private static final int MAX_SOURCE_DEPTH = 5;
+
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String VM_OPTIONS = "vmOptions";
+    private static final String CLASSPATH = "classpath";
+    private static final String MAIN_CLASS = "mainClass";
+    private static final String PROGRAM_OPTIONS = "programOptions";
+    private static final String JAVA_HOME = "javaHome";
+    private static final String WORKING_DIRECTORY = "workingDirectory";
+    private static final String ENV_OPTIONS = "envOptions";
+    private static final String FILE = "file";
+
+    private final String m_fingerprint;
+    private final String[] m_vmOptions;
+    private final String[] m_classpath;
+    private final String m_mainClass;
+    private final String[] m_programOptions;
+    private final String m_javaHome;
+    private final File m_workingDir;
+    private final String[] m_envOptions;
+    /**
+     * Files the launch depends on, as file -> {size, last modified, checksum}.
+     */
+    private final Map<File, String[]> m_files;
+
+    /**
+     * Creates a new launch plan. Arguments are the same as the ones of {@link JavaRunner#exec}.
+     *
+     * @param fingerprint    fingerprint of launch inputs; mandatory
+     * @param vmOptions      selected JVM options
+     * @param classpath      application class path
+     * @param mainClass      main program entry point
+     * @param programOptions program specific options
+     * @param javaHome       java home directory
+     * @param workingDir     working directory
+     * @param envOptions     optional environment variables
+     */
+    LaunchPlan( final String fingerprint,
+                final String[] vmOptions,
+                final String[] classpath,
+                final String mainClass,
+                final String[] programOptions,
+                final String javaHome,
+                final File workingDir,
+                final String[] envOptions )
+    {
+        NullArgumentException.validateNotEmpty( fingerprint, "Fingerprint" );
+        m_fingerprint = fingerprint;
+        m_vmOptions = vmOptions;
+        m_classpath = classpath;
+        m_mainClass = mainClass;
+        m_programOptions = programOptions;
+        m_javaHome = javaHome;
+        m_workingDir = workingDir;
+        m_envOptions = envOptions;
+        m_files = new TreeMap<File, String[]>();
+    }
+
+    /**
+     * Calculates the fingerprint of launch inputs: runner version, command line (including arguments files),
+     * content of local provision sources, configuration and system properties. Provision sources are local files or
+     * directories referenced by arguments or by provision specs derived from options (as profiles), as well as the
+     * local sources listed by provision files.
+     *
+     * @param version        runner version
+     * @param commandLine    command line; mandatory
+     * @param config         configuration; mandatory
+     * @param provisionSpecs provision specs derived from options; can be null
+     *
+     * @return hex encoded fingerprint or null if a provision source may change without a local change (remote urls,
+     *         maven snapshots or latest versions, maven artifacts listing other sources)
+     *
+     * @throws IOException if fingerprint cannot be calculated
+     */
+    static String fingerprint( final String version,
+                               final CommandLine commandLine,
+                               final Configuration config,
+                               final List<String> provisionSpecs )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( commandLine, "Command line" );
+        NullArgumentException.validateNotNull( config, "Configuration" );
+        final MessageDigest digest = createDigest();
+        update( digest, "version", version );
+        final List<String> sources = new ArrayList<String>( commandLine.getArguments() );
+        if( provisionSpecs != null )
+        {
+            sources.addAll( provisionSpecs );
+        }
+        for( String argument : sources )
+        {
+            update( digest, "argument", argument );
+            if( !updateSource( digest, argument, 0 ) )
+            {
+                LOGGER.debug( "Launch plan will not be used as provision source [" + argument + "] is not local" );
+                return null;
+            }
+        }
+        for( String name : new TreeSet<String>( commandLine.getOptionNames() ) )
+        {
+            update( digest, "option." + name, Arrays.toString( commandLine.getMultipleOption( name ) ) );
+        }
+        for( String name : new TreeSet<String>( Arrays.asList( config.getPropertyNames( ".*" ) ) ) )
+        {
+            update( digest, "config." + name, config.getProperty( name ) );
+        }
+        final Properties systemProperties = System.getProperties();
+        for( Object name : new TreeSet<Object>( systemProperties.keySet() ) )
+        {
+            update( digest, "system." + name, systemProperties.getProperty( (String) name ) );
+        }
+        update( digest, "env.JAVA_HOME", System.getenv( "JAVA_HOME" ) );
+        return toHex( digest.digest() );
+    }
+
+    /**
+     * Tracks the files the launch depends on: classpath entries, working directory bundles and files referenced by
+     * options.
+     *
+     * @throws IOException if files cannot be read
+     */
+    void trackFiles()
+        throws IOException
+    {
+        if( m_classpath != null )
+        {
+            for( String entry : m_classpath )
+            {
+                track( resolve( entry ) );
+            }
+        }
+        if( m_workingDir != null )
+        {
+            final File[] bundles = new File( m_workingDir, "bundles" ).listFiles();
+            if( bundles != null )
+            {
+                for( File bundle : bundles )
+                {
+                    if( !isUntracked( bundle ) )
+                    {
+                        track( bundle );
+                    }
+                }
+            }
+        }
+        trackOptionFiles( m_vmOptions );
+        trackOptionFiles( m_programOptions );
+    }
+
+    /**
+     * Checks if the plan was created out of the same inputs and none of the files it depends on changed. Files with
+     * the same size and last modification time are considered unchanged; otherwise their checksum is compared.
+     *
+     * @param fingerprint fingerprint of current inputs
+     *
+     * @return true if plan can be executed as is
+     */
+    boolean isUpToDate( final String fingerprint )
+    {
+        if( !m_fingerprint.equals( fingerprint ) )
+        {
+            LOGGER.debug( "Launch inputs changed" );
+            return false;
+        }
+        for( Map.Entry<File, String[]> entry : m_files.entrySet() )
+        {
+            final File file = entry.getKey();
+            final String[] state = entry.getValue();
+            if( !file.isFile() || file.length() != Long.parseLong( state[ 0 ] ) )
+            {
+                LOGGER.debug( "Launch file [" + file + "] changed" );
+                return false;
+            }
+            if( file.lastModified() != Long.parseLong( state[ 1 ] ) )
+            {
+                try
+                {
+                    if( !checksum( file ).equals( state[ 2 ] ) )
+                    {
+                        LOGGER.debug( "Launch file [" + file + "] changed" );
+                        return false;
+                    }
+                }
+                catch( IOException e )
+                {
+                    LOGGER.debug( "Launch file [" + file + "] cannot be read" );
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes the plan.
+     *
+     * @param runner java runner to be used; mandatory
+     *
+     * @throws PlatformException re-thrown from java runner
+     */
+    void exec( final JavaRunner runner )
+        throws PlatformException
+    {
+        NullArgumentException.validateNotNull( runner, "Java runner" );
+        runner.exec(
+            m_vmOptions, m_classpath, m_mainClass, m_programOptions, m_javaHome, m_workingDir, m_envOptions
+        );
+    }
+
+    /**
+     * Loads a saved plan.
+     *
+     * @param file file the plan was saved to; mandatory
+     *
+     * @return loaded plan or null if there is no plan or plan cannot be read
+     */
+    static LaunchPlan load( final File file )
+    {
+        NullArgumentException.validateNotNull( file, "File" );
+        if( !file.isFile() )
+        {
+            return null;
+        }
+        final Properties properties = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+            properties.load( in );
+            final String fingerprint = properties.getProperty( FINGERPRINT );
+            final String mainClass = properties.getProperty( MAIN_CLASS );
+            if( fingerprint == null || mainClass == null )
+            {
+                return null;
+            }
+            final String workingDir = properties.getProperty( WORKING_DIRECTORY );
+            final LaunchPlan plan = new LaunchPlan(
+                fingerprint,
+                getArray( properties, VM_OPTIONS ),
+                getArray( properties, CLASSPATH ),
+                mainClass,
+                getArray( properties, PROGRAM_OPTIONS ),
+                properties.getProperty( JAVA_HOME ),
+                workingDir == null ? null : new File( workingDir ),
+                getArray( properties, ENV_OPTIONS )
+            );
+            final String[] files = getArray( properties, FILE );
+            if( files != null )
+            {
+                for( int i = 0; i < files.length; i++ )
+                {
+                    final String[] state = properties.getProperty( FILE + "." + i + ".state", "" ).split( ":" );
+                    if( state.length != 3 )
+                    {
+                        return null;
+                    }
+                    plan.m_files.put( new File( files[ i ] ), state );
+                }
+            }
+            return plan;
+        }
+        catch( Exception e )
+        {
+            LOGGER.debug( "Launch plan [" + file + "] cannot be read: " + e.getMessage() );
+            return null;
+        }
+        finally
+        {
+            close( in );
+        }
+    }
+
+    /**
+     * Saves the plan. The plan is written to a temporary file that replaces the target file, so a concurrent load
+     * sees either the old plan or the new one.
+     *
+     * @param file file to save the plan to; mandatory
+     *
+     * @throws IOException if plan cannot be saved
+     */
+    void save( final File file )
+        throws IOException
+    {
+        NullArgumentException.validateNotNull( file, "File" );
+        final Properties properties = new Properties();
+        properties.setProperty( FINGERPRINT, m_fingerprint );
+        setArray( properties, VM_OPTIONS, m_vmOptions );
+        setArray( properties, CLASSPATH, m_classpath );
+        properties.setProperty( MAIN_CLASS, m_mainClass );
+        setArray( properties, PROGRAM_OPTIONS, m_programOptions );
+        if( m_javaHome != null )
+        {
+            properties.setProperty( JAVA_HOME, m_javaHome );
+        }
+        if( m_workingDir != null )
+        {
+            properties.setProperty( WORKING_DIRECTORY, m_workingDir.getPath() );
+        }
+        setArray( properties, ENV_OPTIONS, m_envOptions );
+        final List<String> files = new ArrayList<String>();
+        for( Map.Entry<File, String[]> entry : m_files.entrySet() )
+        {
+            final String[] state = entry.getValue();
+            properties.setProperty(
+                FILE + "." + files.size() + ".state", state[ 0 ] + ":" + state[ 1 ] + ":" + state[ 2 ]
+            );
+            files.add( entry.getKey().getPath() );
+        }
+        setArray( properties, FILE, files.toArray( new String[files.size()] ) );
+
+        final File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        final File temp = File.createTempFile( file.getName(), ".tmp", parent );
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( temp );
+            properties.store( out, "Pax Runner launch plan" );
+        }
+        finally
+        {
+            close( out );
+        }
+        if( !temp.renameTo( file ) )
+        {
+            // on some platforms rename does not replace an existing file
+            file.delete();
+            if( !temp.renameTo( file ) )
+            {
+                temp.delete();
+                throw new IOException( "Could not save launch plan to [" + file + "]" );
+            }
+        }
+    }
+
+    /**
+     * Returns the files the plan depends on.
+     *
+     * @return tracked files
+     */
+    Collection<File> getFiles()
+    {
+        return m_files.keySet();
+    }
+
+    private void track( final File file )
+        throws IOException
+    {
+        if( file.isFile() )
+        {
+            m_files.put(
+                file.getAbsoluteFile(),
+                new String[]{ String.valueOf( file.length() ), String.valueOf( file.lastModified() ), checksum( file ) }
+            );
+        }
+    }
+
+    /**
+     * Tracks files referenced by option values as "-Dkey=value" or "--key=value", where value is a file path or a
+     * file url.
+     */
+    private void trackOptionFiles( final String[] options )
+        throws IOException
+    {
+        if( options == null )
+        {
+            return;
+        }
+        for( String option : options )
+        {
+            if( option == null )
+            {
+                continue;
+            }
+            String value = option;
+            final int index = option.indexOf( '=' );
+            if( index >= 0 )
+            {
+                value = option.substring( index + 1 );
+            }
+            if( value.startsWith( "file:" ) )
+            {
+                value = value.substring( "file:".length() );
+            }
+            if( value.length() > 0 )
+            {
+                track( resolve( value ) );
+            }
+        }
+    }
+
+    private File resolve( final String path )
+    {
+        final File file = new File( path );
+        if( file.isAbsolute() || m_workingDir == null )
+        {
+            return file;
+        }
+        return new File( m_workingDir, path );
+    }
+
+    /**
+     * Adds the content of a provision source to the fingerprint. Scanner schema, scanner options and wrapping
+     * protocols are stripped; what remains is either a local path (or file url), whose content is added, or an url
+     * whose content cannot be checked locally. Maven urls of released versions never change, so they are covered by
+     * the argument itself, unless read by a listing scanner (composite, pom, ...) as the sources they list may change.
+     *
+     * @param digest digest to update
+     * @param source provision source
+     * @param depth  nesting depth of provision files
+     *
+     * @return false if the source may change without a local change
+     *
+     * @throws IOException if a local source cannot be read
+     */
+    private static boolean updateSource( final MessageDigest digest, final String source, final int depth )
+        throws IOException
+    {
+        String location = source.trim();
+        boolean listing = false;
+        boolean provisionFile = false;
+        final Matcher scanner = SCANNER.matcher( location );
+        if( scanner.lookingAt() )
+        {
+            listing = LISTING_SCANNERS.contains( scanner.group( 1 ) );
+            provisionFile = PROVISION_FILE_SCANNERS.contains( scanner.group( 1 ) );
+            location = location.substring( scanner.end() );
+        }
+        if( location.contains( "@" ) )
+        {
+            location = location.substring( 0, location.indexOf( "@" ) );
+        }
+        Matcher protocol = PROTOCOL.matcher( location );
+        while( protocol.lookingAt() && WRAPPING_PROTOCOLS.contains( protocol.group( 1 ) ) )
+        {
+            location = location.substring( protocol.end() );
+            // drop wrapping instructions ("$") and assembly path patterns ("!")
+            location = location.split( "[$!]" )[ 0 ];
+            protocol = PROTOCOL.matcher( location );
+        }
+        if( location.length() == 0 )
+        {
+            return true;
+        }
+        if( protocol.lookingAt() && !"file".equals( protocol.group( 1 ) ) )
+        {
+            if( "mvn".equals( protocol.group( 1 ) ) && !listing )
+            {
+                // a released artifact does not change, but the sources it lists may be unversioned or snapshots
+                // mvn:[repository!]groupId/artifactId[/version[/type[/classifier]]]
+                final String[] segments = location.substring( location.indexOf( '!' ) + 1 ).split( "/" );
+                return segments.length > 2 && segments[ 2 ].length() > 0 && !segments[ 2 ].endsWith( "SNAPSHOT" );
+            }
+            return false;
+        }
+        if( protocol.lookingAt() )
+        {
+            location = location.substring( "file:".length() );
+            if( location.startsWith( "//" ) )
+            {
+                location = location.substring( 2 );
+            }
+        }
+        final File file = new File( location );
+        if( !scanner.lookingAt() )
+        {
+            // no explicit scanner, so files that are not bundles are scanned as provision files
+            provisionFile = file.isFile() && !isArchive( file ) && !file.getName().toLowerCase().endsWith( ".xml" );
+        }
+        return updateFile( digest, file, provisionFile, depth );
+    }
+
+    private static boolean updateFile( final MessageDigest digest,
+                                       final File file,
+                                       final boolean listing,
+                                       final int depth )
+        throws IOException
+    {
+        if( file.isDirectory() )
+        {
+            final File[] children = file.listFiles();
+            if( children != null )
+            {
+                Arrays.sort( children );
+                for( File child : children )
+                {
+                    updateFile( digest, child, false, depth );
+                }
+            }
+            return true;
+        }
+        if( !file.isFile() )
+        {
+            update( digest, "source." + file.getAbsolutePath(), null );
+            return true;
+        }
+        update( digest, "source." + file.getAbsolutePath(), checksum( file ) );
+        if( !listing || depth >= MAX_SOURCE_DEPTH )
+        {
+            return true;
+        }
+        BufferedReader reader = null;
+        try
+        {
+            reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+            String line;
+            while( ( line = reader.readLine() ) != null )
+            {
+                line = line.trim();
+                if( line.length() > 0 && !line.startsWith( "#" ) && !line.startsWith( "-" )
+                    && !updateSource( digest, line, depth + 1 ) )
+                {
+                    return false;
+                }
+            }
+        }
+        finally
+        {
+            close( reader );
+        }
+        return true;
+    }
+
+    private static boolean isArchive( final File file )
+        throws IOException
+    {
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+            return in.read() == 'P' && in.read() == 'K';
+        }
+        finally
+        {
+            close( in );
+        }
+    }
+
+    private static boolean isUntracked( final File file )
+    {
+        for( String extension : UNTRACKED_EXTENSIONS )
+        {
+            if( file.getName().endsWith( extension ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] getArray( final Properties properties, final String key )
+    {
+        final String size = properties.getProperty( key + ".size" );
+        if( size == null )
+        {
+            return null;
+        }
+        final String[] values = new String[Integer.parseInt( size )];
+        for( int i = 0; i < values.length; i++ )
+        {
+            values[ i ] = properties.getProperty( key + "." + i );
+        }
+        return values;
+    }
+
+    private static void setArray( final Properties properties, final String key, final String[] values )
+    {
+        if( values == null )
+        {
+            return;
+        }
+        properties.setProperty( key + ".size", String.valueOf( values.length ) );
+        for( int i = 0; i < values.length; i++ )
+        {
+            if( values[ i ] != null )
+            {
+                properties.setProperty( key + "." + i, values[ i ] );
+            }
+        }
+    }
+
+    private static void update( final MessageDigest digest, final String key, final String value )
+        throws IOException
+    {
+        digest.update( key.getBytes( "UTF-8" ) );
+        digest.update( (byte) 0 );
+        if( value != null )
+        {
+            digest.update( value.getBytes( "UTF-8" ) );
+        }
+        digest.update( (byte) 0 );
+    }
+
+    static String checksum( final File file )
+        throws IOException
+    {
+        final MessageDigest digest = createDigest();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+            final byte[] buffer = new byte[8192];
+            int read;
+            while( ( read = in.read( buffer ) ) > 0 )
+            {
+                digest.update( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            close( in );
+        }
+        return toHex( digest.digest() );
+    }
+
+    private static MessageDigest createDigest()
+        throws IOException
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-256" );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            // every JVM must support SHA-256
+            throw new IOException( "SHA-256 is not supported" );
+        }
+    }
+
+    private static String toHex( final byte[] bytes )
+    {
+        final StringBuilder hex = new StringBuilder();
+        for( byte b : bytes )
+        {
+            hex.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) );
+            hex.append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return hex.toString();
+    }
+
+    private static void close( final Closeable closeable )
+    {
+        if( closeable != null )
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch( IOException ignore )
+            {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Java runner that saves the launch plan before delegating the execution.
+     */
+    static class Recorder
+        implements JavaRunner
+    {
+
+        private final String m_fingerprint;
+        private final File m_file;
+        private final JavaRunner m_delegate;
+
+        /**
+         * Creates a new recording runner.
+         *
+         * @param fingerprint fingerprint of launch inputs; mandatory
+         * @param file        file to save the plan to; mandatory
+         * @param delegate    runner that executes the launch; mandatory
+         */
+        Recorder( final String fingerprint, final File file, final JavaRunner delegate )
+        {
+            NullArgumentException.validateNotEmpty( fingerprint, "Fingerprint" );
+            NullArgumentException.validateNotNull( file, "File" );
+            NullArgumentException.validateNotNull( delegate, "Java runner" );
+            m_fingerprint = fingerprint;
+            m_file = file;
+            m_delegate = delegate;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void exec( final String[] vmOptions,
+                          final String[] classpath,
+                          final String mainClass,
+                          final String[] programOptions,
+                          final String javaHome,
+                          final File workingDir,
+                          final String[] environmentVariables )
+            throws PlatformException
+        {
+            final LaunchPlan plan = new LaunchPlan(
+                m_fingerprint, vmOptions, classpath, mainClass, programOptions, javaHome, workingDir,
+                environmentVariables
+            );
+            try
+            {
+                plan.trackFiles();
+                plan.save( m_file );
+                LOGGER.debug( "Saved launch plan to [" + m_file + "]" );
+            }
+            catch( IOException e )
+            {
+                LOGGER.warn( "Could not save launch plan due to: " + e.getMessage() );
+            }
+            m_delegate.exec( vmOptions, classpath, mainClass, programOptions, javaHome, workingDir,
+                             environmentVariables
+            );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void exec( final String[] vmOptions,
+                          final String[] classpath,
+                          final String mainClass,
+                          final String[] programOptions,
+                          final String javaHome,
+                          final File workingDir )
+            throws PlatformException
+        {
+            exec( vmOptions, classpath, mainClass, programOptions, javaHome, workingDir, null );
+        }
+
+    }
+
+}
@@ -18,6 +18,7 @@
 package org.ops4j.pax.runner;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -86,8 +87,9 @@ public class OptionResolverImpl
         NullArgumentException.validateNotNull( configuration, "Configuration" );
         m_commandLine = commandLine;
         m_configuration = configuration;
-        m_cacheOptions = new HashMap<String, String>();
-        m_cacheMultipleOptions = new HashMap<String, String[]>();
+        // resolver may be shared by runs in parallel threads
+        m_cacheOptions = Collections.synchronizedMap( new HashMap<String, String>() );
+        m_cacheMultipleOptions = Collections.synchronizedMap( new HashMap<String, String[]>() );
     }
 
     /**
@@ -22,24 +22,38 @@ package org.ops4j.pax.runner;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.logging.LogLevel;
-import org.apache.felix.framework.Logger;
-import org.apache.felix.framework.ServiceRegistry;
-import org.apache.felix.framework.util.EventDispatcher;
 import org.ops4j.io.FileUtils;
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.pax.runner.commons.Info;
+import org.ops4j.pax.runner.commons.ScopedSystemProperties;
+import org.ops4j.pax.runner.commons.Trace;
+import org.ops4j.pax.runner.osgi.ActivatorIndex;
+import org.ops4j.pax.runner.osgi.LazyActivator;
+import org.ops4j.pax.runner.osgi.LazyScanner;
+import org.ops4j.pax.runner.osgi.LazyURLStreamHandlerService;
 import org.ops4j.pax.runner.osgi.RunnerBundle;
 import org.ops4j.pax.runner.osgi.RunnerBundleContext;
+import org.ops4j.pax.runner.osgi.RunnerServiceRegistry;
 import org.ops4j.pax.runner.osgi.RunnerStartLevel;
 import org.ops4j.pax.runner.platform.*;
 import org.ops4j.pax.scanner.*;
+import org.ops4j.pax.scanner.Scanner;
 import org.osgi.framework.*;
+import org.osgi.service.url.URLConstants;
+import org.osgi.service.url.URLStreamHandlerService;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import static org.ops4j.pax.runner.CommandLine.*;
 
@@ -53,9 +67,10 @@ public class Run
 {
 
     /**
-     * Logger.
+     * Process wide logger, as the one used by the libraries embedded into runner. Its level is set only by main.
+     * Runs log via the logger of their context.
      */
-    private static Log LOGGER;
+    private static volatile Log LOGGER;
     /**
      * Handler service configuration property name.
      */
@@ -68,6 +83,14 @@ public class Run
      * Platform extender configuration property name.
      */
     private static final String PLATFORM_SERVICE = "platform.service";
+    /**
+     * Suffix of handler configuration property listing the protocols of a handler that can be started on first use.
+     */
+    private static final String HANDLER_PROTOCOLS = ".protocols";
+    /**
+     * Suffix of scanner configuration property with the schema of a scanner that can be started on first use.
+     */
+    private static final String SCANNER_SCHEMA = ".schema";
     /**
      * Clean start configuration property name.
      */
@@ -76,20 +99,63 @@ public class Run
      * Working directory configuration property name.
      */
     private static final String WORKING_DIRECTORY = "workingDirectory";
+    /**
+     * Options that force bundles to be downloaded again.
+     */
+    private static final String[] OVERWRITE_OPTIONS = {
+        org.ops4j.pax.runner.platform.ServiceConstants.CONFIG_OVERWRITE,
+        org.ops4j.pax.runner.platform.ServiceConstants.CONFIG_OVERWRITE_USER_BUNDLES,
+        org.ops4j.pax.runner.platform.ServiceConstants.CONFIG_OVERWRITE_SYSTEM_BUNDLES
+    };
     /**
      * Handler URLs to support keepOriginalUrls option configuration property name.
      */
     private static final String KEEP_ORIGINAL_HANDLER_URLS = "keep.original.handler.urls";
 
+    /**
+     * Logger of this runner. The logger of the context once started, the process wide logger before.
+     */
+    private volatile Log m_logger;
+    /**
+     * Runner that installed the services and url handlers used by this runner. Null if this runner installs its own.
+     */
+    private final Run m_shared;
+    /**
+     * Activators started by this runner, in start order. Guarded by itself.
+     */
+    private final List<StartedActivator> m_activators;
+    /**
+     * Activators that this runner installed to be started on first use. Guarded by activators.
+     */
+    private final List<LazyActivator> m_lazyActivators;
+
     /**
      * Creates a new runner.
      */
     public Run()
     {
-        if( LOGGER == null )
-        {
-            createLogger();
-        }
+        createLogger();
+        m_logger = LOGGER;
+        m_shared = null;
+        m_activators = new ArrayList<StartedActivator>();
+        m_lazyActivators = new ArrayList<LazyActivator>();
+    }
+
+    /**
+     * Creates a new runner that uses the services and url handlers installed by another runner via
+     * {@link #startShared(CommandLine, Configuration, OptionResolver)}, instead of installing its own. As url handlers
+     * are process wide, this lets long running processes (as the launch daemon) install them once.
+     *
+     * @param shared runner that installed the services and url handlers; mandatory
+     */
+    public Run( final Run shared )
+    {
+        NullArgumentException.validateNotNull( shared, "Shared runner" );
+        createLogger();
+        m_logger = LOGGER;
+        m_shared = shared;
+        m_activators = new ArrayList<StartedActivator>();
+        m_lazyActivators = new ArrayList<LazyActivator>();
     }
 
     /**
@@ -192,19 +258,136 @@ public class Run
                        final JavaRunner runner )
     {
         final Context context = createContext( commandLine, config, resolver );
-        LOGGER.info( commandLine );
-        // cleanup if requested
-        cleanup( resolver );
-        // install aditional services
+        context.setLogger( createLogger( resolver ) );
+        m_logger = context.getLogger();
+        m_logger.info( commandLine );
+        // the trace is owned by this run, so only spans of this run are recorded in it
+        final Trace trace = startTrace( resolver );
+        try
+        {
+            // cleanup if requested
+            cleanup( resolver );
+            // go straight to java runner if nothing changed since last launch; embedded launches have no launch plan
+            final String fingerprint = runner instanceof EmbeddedJavaRunner ? null : launchPlanFingerprint( context );
+            if( fingerprint != null && execLaunchPlan( fingerprint, resolver, runner ) )
+            {
+                return;
+            }
+            if( m_shared == null )
+            {
+                // install aditional services
+                installServices( context );
+                // install aditional handlers
+                installHandlers( context );
+            }
+            // install provisioning
+            final ProvisionService provisionService = installScanners( context );
+            // install platform before bundles, so bundles can be downloaded while the rest of them are provisioned
+            final Platform platform = installPlatform( context );
+            context.setDownloadQueue( createDownloadQueue( platform ) );
+            try
+            {
+                // install bundles
+                installBundles( provisionService, new ExtensionBasedProvisionSchemaResolver(), context );
+                // start up the platform
+                startPlatform(
+                    platform, context, runner == null ? createJavaRunner( resolver ) : runner, fingerprint
+                );
+            }
+            finally
+            {
+                if( context.getDownloadQueue() != null )
+                {
+                    context.getDownloadQueue().close();
+                }
+            }
+        }
+        finally
+        {
+            if( trace != null )
+            {
+                trace.stop();
+            }
+        }
+    }
+
+    /**
+     * Installs the additional services and the url handlers only, to be used by runners created via
+     * {@link #Run(Run)}.
+     *
+     * @param commandLine comand line to use
+     * @param config      configuration to use
+     * @param resolver    an option resolver
+     */
+    public void startShared( final CommandLine commandLine, final Configuration config,
+                             final OptionResolver resolver )
+    {
+        final Context context = createContext( commandLine, config, resolver );
+        context.setLogger( createLogger( resolver ) );
+        m_logger = context.getLogger();
         installServices( context );
-        // install aditional handlers
         installHandlers( context );
-        // install provisioning and bundles
-        installBundles( installScanners( context ), new ExtensionBasedProvisionSchemaResolver(), context );
-        // stop the dispatcher as there are no longer events around
-        EventDispatcher.shutdown();
-        // install platform and start it up
-        startPlatform( installPlatform( context ), context, runner == null ? createJavaRunner( resolver ) : runner );
+    }
+
+    /**
+     * Stops the activators started by this runner (services, url handlers, scanners and platform), in reverse start
+     * order, so what they registered is released. Activators that fail to stop are logged and skipped.
+     * The platform itself is not stopped, as it is owned by the java runner.
+     */
+    public void stop()
+    {
+        final List<StartedActivator> activators;
+        final List<LazyActivator> lazyActivators;
+        synchronized( m_activators )
+        {
+            activators = new ArrayList<StartedActivator>( m_activators );
+            lazyActivators = new ArrayList<LazyActivator>( m_lazyActivators );
+            m_activators.clear();
+            m_lazyActivators.clear();
+        }
+        for( LazyActivator activator : lazyActivators )
+        {
+            try
+            {
+                activator.stop();
+            }
+            catch( Exception e )
+            {
+                m_logger.warn( "Could not stop lazy activator: " + e.getMessage() );
+            }
+        }
+        Collections.reverse( activators );
+        for( StartedActivator started : activators )
+        {
+            try
+            {
+                started.m_activator.stop( started.m_bundleContext );
+            }
+            catch( Exception e )
+            {
+                m_logger.warn( "Could not stop [" + started.m_bundleName + "]: " + e.getMessage() );
+            }
+        }
+    }
+
+    /**
+     * Starts tracing of launch phases if option specified. The launch is over once the platform is spawned or
+     * embedded, so the trace does not wait for the platform to exit.
+     *
+     * @param resolver option resolver
+     *
+     * @return started trace or null if tracing is not requested
+     */
+    Trace startTrace( final OptionResolver resolver )
+    {
+        final String option = resolver.get( OPTION_TRACE );
+        if( option != null && option.trim().length() > 0 && !"false".equalsIgnoreCase( option ) )
+        {
+            // an option without value (--trace) is set to true
+            final Trace trace = Trace.start( new File( "true".equalsIgnoreCase( option ) ? "trace.json" : option ) );
+            return trace.stopAfter( "spawn", "embed" );
+        }
+        return null;
     }
 
     /**
@@ -218,11 +401,98 @@ public class Run
         if( cleanStart )
         {
             final File workingDir = new File( resolver.getMandatory( WORKING_DIRECTORY ) );
-            LOGGER.debug( "Removing working directory [" + workingDir.getAbsolutePath() + "]" );
+            m_logger.debug( "Removing working directory [" + workingDir.getAbsolutePath() + "]" );
             FileUtils.delete( workingDir );
         }
     }
 
+    /**
+     * Calculates the fingerprint of launch inputs, used to find out if the launch plan saved by a previous launch can
+     * be reused. Launch plan is not used when disabled by option, for embedded launches, as they do not go through a
+     * java command, or when bundles are to be overwritten or provisioned from remote sources (including the profiles,
+     * which resolve to their latest version), as changes of remote content cannot be detected.
+     *
+     * @param context the running context
+     *
+     * @return fingerprint or null if launch plan should not be used
+     */
+    String launchPlanFingerprint( final Context context )
+    {
+        final OptionResolver resolver = context.getOptionResolver();
+        if( "false".equalsIgnoreCase( resolver.get( OPTION_LAUNCH_PLAN ) )
+            || "embedded".equalsIgnoreCase( resolver.get( OPTION_EXECUTOR ) )
+            || Boolean.valueOf( resolver.get( OPTION_PLATFORM_VERSION_SNAPSHOT ) ) )
+        {
+            return null;
+        }
+        for( String option : OVERWRITE_OPTIONS )
+        {
+            if( Boolean.valueOf( resolver.get( option ) ) )
+            {
+                return null;
+            }
+        }
+        try
+        {
+            return LaunchPlan.fingerprint(
+                getVersion(),
+                context.getCommandLine(),
+                context.getConfiguration(),
+                transformProfilesToProvisionSpecs( context )
+            );
+        }
+        catch( IOException e )
+        {
+            m_logger.debug( "Launch plan will not be used due to: " + e.getMessage() );
+            return null;
+        }
+    }
+
+    /**
+     * Executes the launch plan saved by a previous launch, if it is up to date.
+     *
+     * @param fingerprint fingerprint of launch inputs
+     * @param resolver    an option resolver
+     * @param runner      java runner service
+     *
+     * @return true if launch plan was executed, false if there is no launch plan or is not up to date
+     */
+    private boolean execLaunchPlan( final String fingerprint, final OptionResolver resolver, final JavaRunner runner )
+    {
+        final LaunchPlan plan = LaunchPlan.load( getLaunchPlanFile( resolver ) );
+        if( plan == null || !plan.isUpToDate( fingerprint ) )
+        {
+            return false;
+        }
+        m_logger.info( "Using launch plan from previous run" );
+        JavaRunner javaRunner = runner == null ? createJavaRunner( resolver ) : runner;
+        if( javaRunner == null )
+        {
+            javaRunner = new DefaultJavaRunner();
+        }
+        try
+        {
+            plan.exec( javaRunner );
+        }
+        catch( PlatformException e )
+        {
+            throw new RuntimeException( e );
+        }
+        return true;
+    }
+
+    /**
+     * Returns the file where the launch plan is saved.
+     *
+     * @param resolver an option resolver
+     *
+     * @return launch plan file
+     */
+    private File getLaunchPlanFile( final OptionResolver resolver )
+    {
+        return new File( resolver.getMandatory( WORKING_DIRECTORY ), LaunchPlan.FILE_NAME );
+    }
+
     /**
      * Creates and initialize the context.
      *
@@ -238,23 +508,11 @@ public class Run
         NullArgumentException.validateNotNull( config, "Configuration" );
         NullArgumentException.validateNotNull( resolver, "PropertyResolver" );
 
-        final ServiceRegistry serviceRegistry = new ServiceRegistry( null );
-        final EventDispatcher dispatcher = EventDispatcher.start( new Logger( Logger.LOG_DEBUG ) );
-        serviceRegistry.addServiceListener( new ServiceListener()
-        {
-            public void serviceChanged( ServiceEvent event )
-            {
-                dispatcher.fireServiceEvent( event );
-            }
-        }
-        );
-
         return new ContextImpl()
             .setCommandLine( commandLine )
             .setConfiguration( config )
             .setOptionResolver( resolver )
-            .setServiceRegistry( serviceRegistry )
-            .setEventDispatcher( dispatcher );
+            .setServiceRegistry( new RunnerServiceRegistry() );
     }
 
     /**
@@ -268,33 +526,38 @@ public class Run
     {
         NullArgumentException.validateNotNull( resolver, "PropertyResolver" );
 
-        LOGGER.debug( "Creating Java Runner" );
+        m_logger.debug( "Creating Java Runner" );
         final String executor = resolver.get( OPTION_EXECUTOR );
         if( executor == null || executor.trim().length() == 0 )
         {
-            LOGGER.debug( "Using default executor" );
+            m_logger.debug( "Using default executor" );
             return null;
         }
         else if( "noop".equalsIgnoreCase( executor ) )
         {
-            LOGGER.debug( "Using noop executor" );
+            m_logger.debug( "Using noop executor" );
             return new NoopJavaRunner();
         }
         else if( "script".equalsIgnoreCase( executor ) )
         {
-            LOGGER.debug( "Using script executor" );
+            m_logger.debug( "Using script executor" );
             return new ScriptJavaRunner();
         }
         else if( "zip".equalsIgnoreCase( executor ) )
         {
-            LOGGER.debug( "Using zip executor" );
+            m_logger.debug( "Using zip executor" );
             return new ZipJavaRunner();
         }
         else if( "inProcess".equalsIgnoreCase( executor ) )
         {
-            LOGGER.debug( "Using in process executor" );
+            m_logger.debug( "Using in process executor" );
             return new InProcessJavaRunner();
         }
+        else if( "embedded".equalsIgnoreCase( executor ) )
+        {
+            m_logger.debug( "Using embedded executor" );
+            return new EmbeddedJavaRunner();
+        }
         else if( executor.startsWith("init.d" ))
         {
             String[] data    = executor.split(",");
@@ -303,12 +566,12 @@ public class Run
         }
         else if( executor.startsWith("daemon-start" ))
         {
-            LOGGER.debug( "Using daemon-start executor" );
+            m_logger.debug( "Using daemon-start executor" );
             return new DaemonStartRunner(resolver.get(OPTION_DAEMON_TIMEOUT));
         }
         else if( executor.startsWith("daemon-stop" ))
         {
-            LOGGER.debug( "Using daemon-stop executor" );
+            m_logger.debug( "Using daemon-stop executor" );
             return new DaemonStopRunner();
         }
         else
@@ -316,12 +579,12 @@ public class Run
             try
             {
                 final JavaRunner javaRunner = (JavaRunner) getClass().getClassLoader().loadClass( executor ).newInstance();
-                LOGGER.debug( "Using " + executor + " executor" );
+                m_logger.debug( "Using " + executor + " executor" );
                 return javaRunner;
             }
             catch( Exception ignore )
             {
-                LOGGER.debug( "Connot load executor: " + executor + " reason: " + ignore.getMessage() );
+                m_logger.debug( "Connot load executor: " + executor + " reason: " + ignore.getMessage() );
             }
         }
         throw new ConfigurationException( "Executor [" + executor + "] is not supported" );
@@ -334,7 +597,7 @@ public class Run
      */
     void installHandlers( final Context context )
     {
-        LOGGER.debug( "Installing handlers" );
+        m_logger.debug( "Installing handlers" );
         final String option = context.getOptionResolver().get( OPTION_HANDLERS );
         if( option != null )
         {
@@ -344,13 +607,21 @@ public class Run
             for( String segment : segments )
             {
                 NullArgumentException.validateNotEmpty( segment, "Handler entry" );
-                LOGGER.debug( "Handler [" + segment + "]" );
+                m_logger.debug( "Handler [" + segment + "]" );
                 final String activatorName = config.getProperty( segment );
                 if( activatorName == null || activatorName.trim().length() == 0 )
                 {
                     throw new ConfigurationException( "Handler [" + segment + "] is not supported" );
                 }
-                createActivator( segment, activatorName, context );
+                final String protocols = config.getProperty( segment + HANDLER_PROTOCOLS );
+                if( protocols != null && protocols.trim().length() > 0 )
+                {
+                    installLazyHandler( segment, activatorName, protocols.trim().split( "\\s*,\\s*" ), context );
+                }
+                else
+                {
+                    createActivator( segment, activatorName, context );
+                }
             }
             // then install the handler service
             // maintain this order as in this way the bundle context will be easier to respond to getServiceListeners
@@ -372,7 +643,7 @@ public class Run
      */
     ProvisionService installScanners( final Context context )
     {
-        LOGGER.debug( "Installing provisioning" );
+        m_logger.debug( "Installing provisioning" );
         final String option = context.getOptionResolver().getMandatory( OPTION_SCANNERS );
         // first install a dummy start level service that will record the start level set by scanners
         RunnerStartLevel.install( context.getServiceRegistry() );
@@ -381,13 +652,21 @@ public class Run
         for( String segment : segments )
         {
             NullArgumentException.validateNotEmpty( segment, "Scanner entry" );
-            LOGGER.debug( "Scanner [" + segment + "]" );
+            m_logger.debug( "Scanner [" + segment + "]" );
             final String activatorName = context.getConfiguration().getProperty( segment );
             if( activatorName == null || activatorName.trim().length() == 0 )
             {
                 throw new ConfigurationException( "Scanner [" + segment + "] is not supported" );
             }
-            createActivator( segment, activatorName, context );
+            final String schema = context.getConfiguration().getProperty( segment + SCANNER_SCHEMA );
+            if( schema != null && schema.trim().length() > 0 )
+            {
+                installLazyScanner( segment, activatorName, schema.trim(), context );
+            }
+            else
+            {
+                createActivator( segment, activatorName, context );
+            }
         }
         // then install the provisioning service
         // maintain this order as in this way the bundle context will be easier to respond to getServiceListeners
@@ -410,6 +689,65 @@ public class Run
         return (ProvisionService) bundleContext.getService( reference );
     }
 
+    /**
+     * Registers a placeholder url stream handler service for the protocols of a handler, that will start the handler
+     * on first use of one of the protocols.
+     *
+     * @param handlerName   name of the handler
+     * @param activatorName class name of handler activator
+     * @param protocols     protocols handled by handler
+     * @param context       the running context
+     */
+    void installLazyHandler( final String handlerName,
+                             final String activatorName,
+                             final String[] protocols,
+                             final Context context )
+    {
+        m_logger.debug( "Handler [" + handlerName + "] will be started on first use of " + Arrays.toString( protocols ) );
+        final LazyActivator activator = new LazyActivator(
+            handlerName, activatorName, context, URLStreamHandlerService.class.getName()
+        );
+        synchronized( m_activators )
+        {
+            m_lazyActivators.add( activator );
+        }
+        final Hashtable<String, Object> properties = new Hashtable<String, Object>();
+        properties.put( URLConstants.URL_HANDLER_PROTOCOL, protocols );
+        new RunnerBundleContext( context ).registerService(
+            URLStreamHandlerService.class.getName(),
+            new LazyURLStreamHandlerService( activator, protocols[ 0 ] ),
+            properties
+        );
+    }
+
+    /**
+     * Registers a placeholder scanner for the schema of a scanner, that will start the scanner on first scan.
+     *
+     * @param scannerName   name of the scanner
+     * @param activatorName class name of scanner activator
+     * @param schema        provision schema handled by scanner
+     * @param context       the running context
+     */
+    void installLazyScanner( final String scannerName,
+                             final String activatorName,
+                             final String schema,
+                             final Context context )
+    {
+        m_logger.debug( "Scanner [" + scannerName + "] will be started on first use of [" + schema + "]" );
+        final LazyActivator activator = new LazyActivator(
+            scannerName, activatorName, context, Scanner.class.getName()
+        );
+        synchronized( m_activators )
+        {
+            m_lazyActivators.add( activator );
+        }
+        final Hashtable<String, Object> properties = new Hashtable<String, Object>();
+        properties.put( Scanner.SCHEMA_PROPERTY, schema );
+        new RunnerBundleContext( context ).registerService(
+            Scanner.class.getName(), new LazyScanner( activator, schema ), properties
+        );
+    }
+
     /**
      * Installs additional services.
      *
@@ -417,7 +755,7 @@ public class Run
      */
     void installServices( final Context context )
     {
-        LOGGER.debug( "Installing additional services" );
+        m_logger.debug( "Installing additional services" );
         final String option = context.getOptionResolver().get( OPTION_SERVICES );
         if( option != null )
         {
@@ -426,7 +764,7 @@ public class Run
             for( String segment : segments )
             {
                 NullArgumentException.validateNotEmpty( segment, "Service entry" );
-                LOGGER.debug( "Installing service [" + segment + "]" );
+                m_logger.debug( "Installing service [" + segment + "]" );
                 final String activatorName = config.getProperty( segment );
                 if( activatorName == null || activatorName.trim().length() == 0 )
                 {
@@ -457,39 +795,76 @@ public class Run
         provisionSpecs.addAll( context.getCommandLine().getArguments() );
         provisionSpecs.addAll( transformProfilesToProvisionSpecs( context ) );
 
-        // backup properties and replace them with audited properties
-        final Properties sysPropsBackup = System.getProperties();
+        // system properties set while scanning are audited in the scope of this run, so runs in other threads of
+        // the same jvm do not see them
+        final ScopedSystemProperties systemProperties = ScopedSystemProperties.install();
+        final AuditedProperties auditedProperties = new AuditedProperties( systemProperties.snapshot() );
+        final ExecutorService scanner = createScanExecutor( context, provisionSpecs.size() );
         try
         {
-            context.setSystemProperties( new AuditedProperties( sysPropsBackup ) );
-            System.setProperties( context.getSystemProperties() );
+            context.setSystemProperties( auditedProperties );
+            systemProperties.bind( auditedProperties );
+
+            // start scanning all specs in the same time, if there is more then one scan thread
+            final List<Future<ScanResult>> scans = new ArrayList<Future<ScanResult>>();
+            if( scanner != null )
+            {
+                for( final String provisionSpec : provisionSpecs )
+                {
+                    scans.add( scanner.submit( new Callable<ScanResult>()
+                    {
+                        public ScanResult call()
+                            throws Exception
+                        {
+                            // properties set by scanners are recorded, to be set in the order of specs
+                            systemProperties.bind( auditedProperties );
+                            auditedProperties.startRecording();
+                            Properties recorded = null;
+                            try
+                            {
+                                final List<ScannedBundle> bundles = scan(
+                                    provisionService, schemaResolver, provisionSpec
+                                );
+                                recorded = auditedProperties.stopRecording();
+                                return new ScanResult( bundles, recorded );
+                            }
+                            finally
+                            {
+                                if( recorded == null )
+                                {
+                                    auditedProperties.stopRecording();
+                                }
+                                systemProperties.unbind();
+                            }
+                        }
+                    }
+                    ) );
+                }
+            }
 
             final Set<ScannedBundle> scannedBundles = new HashSet<ScannedBundle>();
-            // then scan those url's
-            for( String provisionSpec : provisionSpecs )
+            int offeredBundles = context.getBundles().size();
+            boolean propertiesChanged = false;
+            // then install the scanned bundles in the order of specs
+            for( int i = 0; i < provisionSpecs.size(); i++ )
             {
                 try
                 {
-                    try
+                    final List<ScannedBundle> bundles;
+                    if( scanner == null || propertiesChanged )
                     {
-                        provisionService.wrap(
-                            filterUnique( scannedBundles, provisionService.scan( provisionSpec ) )
-                        ).install();
+                        bundles = scan( provisionService, schemaResolver, provisionSpecs.get( i ) );
                     }
-                    catch( UnsupportedSchemaException e )
+                    else
                     {
-                        final String resolvedProvisionURL = schemaResolver.resolve( provisionSpec );
-                        if( resolvedProvisionURL != null && !resolvedProvisionURL.equals( provisionSpec ) )
-                        {
-                            provisionService.wrap(
-                                filterUnique( scannedBundles, provisionService.scan( resolvedProvisionURL ) )
-                            ).install();
-                        }
-                        else
-                        {
-                            throw e;
-                        }
+                        final ScanResult result = awaitScan( scans.get( i ) );
+                        auditedProperties.replay( result.properties );
+                        // rest of specs were scanned without seeing the properties set by this spec, so they are
+                        // scanned again one by one, as the outcome may depend on those properties
+                        propertiesChanged = !result.properties.isEmpty();
+                        bundles = result.bundles;
                     }
+                    provisionService.wrap( filterUnique( scannedBundles, bundles ) ).install();
                 }
                 catch( MalformedSpecificationException e )
                 {
@@ -503,15 +878,163 @@ public class Run
                 {
                     throw new RuntimeException( e );
                 }
+                // start downloading the bundles installed so far, while the rest of specs are scanned
+                offeredBundles = offerBundles( context, offeredBundles );
             }
         }
         finally
         {
-            // restore the backup-ed properties
-            System.setProperties( sysPropsBackup );
+            if( scanner != null )
+            {
+                scanner.shutdownNow();
+            }
+            systemProperties.unbind();
         }
     }
 
+    /**
+     * Scans a provision spec. If the spec has no schema, scans the spec as resolved by schema resolver.
+     *
+     * @param provisionService installed provision service
+     * @param schemaResolver   a provision schema resolver
+     * @param provisionSpec    provision spec to scan
+     *
+     * @return scanned bundles
+     *
+     * @throws MalformedSpecificationException re-thrown from provision service
+     * @throws ScannerException                re-thrown from provision service
+     */
+    private List<ScannedBundle> scan( final ProvisionService provisionService,
+                                      final ProvisionSchemaResolver schemaResolver,
+                                      final String provisionSpec )
+        throws MalformedSpecificationException, ScannerException
+    {
+        final Trace.Span span = Trace.begin( "scan", provisionSpec );
+        try
+        {
+            return provisionService.scan( provisionSpec );
+        }
+        catch( UnsupportedSchemaException e )
+        {
+            final String resolvedProvisionURL = schemaResolver.resolve( provisionSpec );
+            if( resolvedProvisionURL != null && !resolvedProvisionURL.equals( provisionSpec ) )
+            {
+                return provisionService.scan( resolvedProvisionURL );
+            }
+            throw e;
+        }
+        finally
+        {
+            span.end();
+        }
+    }
+
+    /**
+     * Waits for a scan to finish.
+     *
+     * @param scan scan to wait for
+     *
+     * @return scan result
+     *
+     * @throws MalformedSpecificationException re-thrown from provision service
+     * @throws ScannerException                re-thrown from provision service
+     */
+    private ScanResult awaitScan( final Future<ScanResult> scan )
+        throws MalformedSpecificationException, ScannerException
+    {
+        try
+        {
+            return scan.get();
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while scanning", e );
+        }
+        catch( ExecutionException e )
+        {
+            final Throwable cause = e.getCause();
+            if( cause instanceof MalformedSpecificationException )
+            {
+                throw (MalformedSpecificationException) cause;
+            }
+            if( cause instanceof ScannerException )
+            {
+                throw (ScannerException) cause;
+            }
+            if( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException( cause );
+        }
+    }
+
+    /**
+     * Creates the executor used for scanning provision specs in the same time.
+     *
+     * @param context        the running context
+     * @param provisionSpecs number of provision specs to be scanned
+     *
+     * @return an executor or null if specs should be scanned one by one
+     */
+    private ExecutorService createScanExecutor( final Context context, final int provisionSpecs )
+    {
+        final String option = context.getOptionResolver().get( OPTION_SCAN_THREADS );
+        int threads = 1;
+        if( option != null && option.trim().length() > 0 )
+        {
+            try
+            {
+                threads = Integer.parseInt( option.trim() );
+            }
+            catch( NumberFormatException e )
+            {
+                throw new ConfigurationException( "Invalid number of scan threads [" + option + "]" );
+            }
+        }
+        threads = Math.min( threads, provisionSpecs );
+        if( threads < 2 )
+        {
+            return null;
+        }
+        m_logger.debug( "Using [" + threads + "] scan threads" );
+        return Executors.newFixedThreadPool( threads, new ThreadFactory()
+        {
+            private int m_counter;
+
+            public synchronized Thread newThread( final Runnable runnable )
+            {
+                final Thread thread = new Thread( runnable, "Pax Runner Scanner " + ( ++m_counter ) );
+                thread.setDaemon( true );
+                return thread;
+            }
+        }
+        );
+    }
+
+    /**
+     * Offers the bundles installed since last offer to the download queue, if any.
+     *
+     * @param context the running context
+     * @param from    index of first bundle not yet offered
+     *
+     * @return index of first bundle not yet offered, after offering
+     */
+    private int offerBundles( final Context context, final int from )
+    {
+        final DownloadQueue downloadQueue = context.getDownloadQueue();
+        final List<RunnerBundle> installedBundles = context.getBundles();
+        if( downloadQueue != null )
+        {
+            for( int i = from; i < installedBundles.size(); i++ )
+            {
+                downloadQueue.offer( createBundleReference( installedBundles.get( i ) ) );
+            }
+        }
+        return installedBundles.size();
+    }
+
     /**
      * Transforms requested profiles (--profiles option) to provisioning specs (scan-composite).
      *
@@ -583,7 +1106,7 @@ public class Run
      */
     Platform installPlatform( final Context context )
     {
-        LOGGER.debug( "Installing platform" );
+        m_logger.debug( "Installing platform" );
         // first install platform
         final String platform = context.getOptionResolver().getMandatory( OPTION_PLATFORM );
         String version;
@@ -641,40 +1164,80 @@ public class Run
     }
 
     /**
-     * Starts the installed platform.
+     * Creates a queue where bundles can be offered for download before the platform is started.
      *
-     * @param context  the running context
      * @param platform installed platform
-     * @param runner   Java runner service
+     *
+     * @return a download queue or null if the platform cannot queue downloads or the queue could not be created, so
+     *         bundles will be downloaded on start
+     */
+    DownloadQueue createDownloadQueue( final Platform platform )
+    {
+        if( !( platform instanceof QueueingPlatform ) )
+        {
+            return null;
+        }
+        try
+        {
+            return ( (QueueingPlatform) platform ).createDownloadQueue( null );
+        }
+        catch( PlatformException e )
+        {
+            m_logger.warn( "Bundles will be downloaded only on platform start due to: " + e.getMessage() );
+            return null;
+        }
+    }
+
+    /**
+     * Starts the installed platform.
+     *
+     * @param context     the running context
+     * @param platform    installed platform
+     * @param runner      Java runner service
+     * @param fingerprint fingerprint of launch inputs or null if launch plan should not be saved
      */
-    private void startPlatform( final Platform platform, final Context context, final JavaRunner runner )
+    private void startPlatform( final Platform platform, final Context context, final JavaRunner runner,
+                                final String fingerprint )
     {
-        LOGGER.debug( "Starting platform" );
+        m_logger.debug( "Starting platform" );
         if( platform == null )
         {
             throw new RuntimeException( "Could not resolve a platform" );
         }
         final List<RunnerBundle> installedBundles = context.getBundles();
         final List<BundleReference> references = new ArrayList<BundleReference>();
+        // snapshots and updated bundles may change remotely so their launch plan could not be trusted
+        boolean saveLaunchPlan = fingerprint != null;
         if( installedBundles != null )
         {
             for( RunnerBundle bundle : installedBundles )
             {
-                LOGGER.info( "Provision bundle [" + bundle + "]" );
-                references.add(
-                    new BundleReferenceBean(
-                        bundle.getLocationAsURL().toExternalForm(),
-                        bundle.getLocationAsURL(),
-                        bundle.getStartLevel(),
-                        bundle.shouldStart(),
-                        bundle.shouldUpdate()
-                    )
+                m_logger.info( "Provision bundle [" + bundle + "]" );
+                references.add( createBundleReference( bundle ) );
+                if( bundle.shouldUpdate() || bundle.getLocationAsURL().toExternalForm().contains( "SNAPSHOT" ) )
+                {
+                    saveLaunchPlan = false;
+                }
+            }
+        }
+        JavaRunner javaRunner = runner;
+        if( fingerprint != null )
+        {
+            final File launchPlanFile = getLaunchPlanFile( context.getOptionResolver() );
+            // the saved plan is out of date, otherwise it would have been used
+            launchPlanFile.delete();
+            if( saveLaunchPlan )
+            {
+                javaRunner = new LaunchPlan.Recorder(
+                    fingerprint, launchPlanFile, runner == null ? new DefaultJavaRunner() : runner
                 );
             }
         }
         try
         {
-            platform.start( determineSystemFiles( context ), references, context.getSystemProperties(), null, runner );
+            platform.start(
+                determineSystemFiles( context ), references, context.getSystemProperties(), null, javaRunner
+            );
         }
         catch( PlatformException e )
         {
@@ -682,6 +1245,24 @@ public class Run
         }
     }
 
+    /**
+     * Creates a platform bundle reference out of an installed runner bundle.
+     *
+     * @param bundle installed runner bundle
+     *
+     * @return bundle reference
+     */
+    private BundleReference createBundleReference( final RunnerBundle bundle )
+    {
+        return new BundleReferenceBean(
+            bundle.getLocationAsURL().toExternalForm(),
+            bundle.getLocationAsURL(),
+            bundle.getStartLevel(),
+            bundle.shouldStart(),
+            bundle.shouldUpdate()
+        );
+    }
+
     List<SystemFileReference> determineSystemFiles( final Context context )
     {
         final List<SystemFileReference> systemFiles = new ArrayList<SystemFileReference>();
@@ -717,7 +1298,7 @@ public class Run
                         {
                             NullArgumentException.validateNotEmpty(key, "Handler URL entry");
                             String handlerUrl = configuration.getProperty(key);
-                            LOGGER.debug( "Handler URL [" + handlerUrl + "]" );
+                            m_logger.debug( "Handler URL [" + handlerUrl + "]" );
                             if( handlerUrl == null || handlerUrl.trim().length() == 0 )
                             {
                                 throw new ConfigurationException( "Handler URL [" + key + "] is not supported" );
@@ -747,17 +1328,26 @@ public class Run
      */
     BundleContext createActivator( final String bundleName, final String activatorClazz, final Context context )
     {
+        final Trace.Span span = Trace.begin( "activator", bundleName );
         try
         {
-            final BundleActivator activator = (BundleActivator) Class.forName( activatorClazz ).newInstance();
+            final BundleActivator activator = ActivatorIndex.createActivator( activatorClazz );
             final BundleContext bundleContext = new RunnerBundleContext( context );
             activator.start( bundleContext );
+            synchronized( m_activators )
+            {
+                m_activators.add( new StartedActivator( bundleName, activator, bundleContext ) );
+            }
             return bundleContext;
         }
         catch( Exception e )
         {
             throw new RuntimeException( "Could not create [" + bundleName + "]", e );
         }
+        finally
+        {
+            span.end();
+        }
     }
 
     /**
@@ -786,7 +1376,7 @@ public class Run
      *
      * @return pax runner version
      */
-    private static String getVersion()
+    static String getVersion()
     {
         try
         {
@@ -852,28 +1442,67 @@ public class Run
     }
 
     /**
-     * Initialize the logger based on option "debug".
+     * Initialize the process wide logger based on option "log". Only main sets it, as the process then belongs to the
+     * run; runs started otherwise set only the level of their own logger.
      *
      * @param commandLine command lin ein use
      */
-    private static void initializeLogger( final CommandLine commandLine )
+    private static synchronized void initializeLogger( final CommandLine commandLine )
     {
         String debug = commandLine.getOption( OPTION_LOG );
+        LogLevel logLevel = LogLevel.INFO;
         if( debug != null )
         {
             try
             {
-                createLogger( LogLevel.valueOf( debug.toUpperCase() ) );
+                logLevel = LogLevel.valueOf( debug.toUpperCase() );
             }
             catch( Exception ignore )
             {
-                createLogger( LogLevel.INFO );
-                LOGGER.warn( "Unknown debug option [" + debug + "], switching to INFO" );
+                // reported by the logger of the run
             }
         }
-        else
+        createLogger( logLevel );
+    }
+
+    /**
+     * Creates the logger of a run, at the level set by option "log". The logger is not shared with other runs, so
+     * the level of a run does not change what other runs log. In case that the JCL in the classpath is not the
+     * embedded one it will fallback to standard JCL usage.
+     *
+     * @param resolver option resolver of the run
+     *
+     * @return logger of the run
+     */
+    private static Log createLogger( final OptionResolver resolver )
+    {
+        final String debug = resolver.get( OPTION_LOG );
+        try
         {
-            createLogger( LogLevel.INFO );
+            LogLevel logLevel = LogLevel.INFO;
+            boolean unknown = false;
+            if( debug != null )
+            {
+                try
+                {
+                    logLevel = LogLevel.valueOf( debug.toUpperCase() );
+                }
+                catch( IllegalArgumentException ignore )
+                {
+                    unknown = true;
+                }
+            }
+            final Log logger = LogFactory.newLog( Run.class, logLevel );
+            if( unknown )
+            {
+                logger.warn( "Unknown debug option [" + debug + "], switching to " + logLevel );
+            }
+            return logger;
+        }
+        catch( LinkageError ignore )
+        {
+            // fall back to standard JCL
+            return LogFactory.getLog( Run.class );
         }
     }
 
@@ -884,7 +1513,7 @@ public class Run
      *
      * @param logLevel log level to use
      */
-    private static void createLogger( final LogLevel logLevel )
+    private static synchronized void createLogger( final LogLevel logLevel )
     {
         try
         {
@@ -898,10 +1527,14 @@ public class Run
     }
 
     /**
-     * Creates a default logger at INFo level.
+     * Creates a default logger at INFo level, if there is no logger yet.
      */
-    private static void createLogger()
+    private static synchronized void createLogger()
     {
+        if( LOGGER != null )
+        {
+            return;
+        }
         try
         {
             createLogger( LogLevel.INFO );
@@ -912,4 +1545,47 @@ public class Run
             LOGGER = LogFactory.getLog( Run.class );
         }
     }
+
+    /**
+     * Outcome of scanning a provision spec.
+     */
+    private static class ScanResult
+    {
+
+        /**
+         * Scanned bundles.
+         */
+        final List<ScannedBundle> bundles;
+        /**
+         * System properties set while scanning.
+         */
+        final Properties properties;
+
+        ScanResult( final List<ScannedBundle> bundles, final Properties properties )
+        {
+            this.bundles = bundles;
+            this.properties = properties;
+        }
+
+    }
+
+    /**
+     * An activator started by the runner.
+     */
+    private static class StartedActivator
+    {
+
+        final String m_bundleName;
+        final BundleActivator m_activator;
+        final BundleContext m_bundleContext;
+
+        StartedActivator( final String bundleName, final BundleActivator activator, final BundleContext bundleContext )
+        {
+            m_bundleName = bundleName;
+            m_activator = activator;
+            m_bundleContext = bundleContext;
+        }
+
+    }
+
 }
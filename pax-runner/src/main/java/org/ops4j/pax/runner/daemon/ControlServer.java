@@ -0,0 +1,559 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.daemon;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.pax.runner.commons.StandardCharsets;
+import org.ops4j.pax.runner.commons.StringUtils;
+
+/**
+ * Control port of the daemon, served by one thread on a non blocking selector, so idle connections and frequent
+ * short connections (as health probes) do not cost a thread each.
+ * <br/>
+ * Commands are framed by lines. A command is the first word of the line, the rest of the line is its argument.
+ * Each command gets a one line response, and a connection can send as many commands as it wants.
+ * Clients that do not connect from the loopback adapter must first enter the password, if one is set.
+ * <br/>
+ * Buffers of each connection are bounded: a command longer then {@link #MAX_FRAME} bytes or a client that does not read
+ * its responses gets disconnected. The number of connections accepted per second and the number of open connections
+ * are limited; connections over the limits are closed as soon as accepted. Idle connections are closed after the
+ * network timeout.
+ *
+ * @since 1.8.6
+ */
+public class ControlServer
+{
+
+    /**
+     * Maximum length of a command, in bytes. Cut off to avoid DoS attack.
+     */
+    public static final int MAX_FRAME = 128;
+    /**
+     * Maximum number of open connections.
+     */
+    public static final int MAX_CONNECTIONS = 64;
+    /**
+     * Logger.
+     */
+    private static final Log LOG = LogFactory.getLog( ControlServer.class );
+    /**
+     * Maximum number of response bytes waiting for a client to read them.
+     */
+    private static final int MAX_OUTPUT = 1024;
+    /**
+     * Maximum number of password attempts.
+     */
+    private static final int PASSWORD_ATTEMPTS = 3;
+    private static final String NEWLINE = "\r\n";
+
+    /**
+     * Executes the commands.
+     */
+    private final Handler m_handler;
+    /**
+     * Time in milliseconds after which an idle connection is closed. 0 if idle connections are not closed.
+     */
+    private final int m_idleTimeout;
+    /**
+     * Maximum number of connections accepted per second.
+     */
+    private final int m_maxConnectionRate;
+    private final Selector m_selector;
+    private ServerSocketChannel m_serverChannel;
+    private volatile boolean m_closed;
+    /**
+     * Connections that can still be accepted in the current second.
+     */
+    private double m_acceptTokens;
+    private long m_lastRefill;
+    /**
+     * Counters. Changed only by the selector thread.
+     */
+    private volatile int m_open;
+    private volatile long m_accepted;
+    private volatile long m_rejected;
+    private volatile long m_commands;
+
+    /**
+     * Creates a new control server.
+     *
+     * @param handler           command handler
+     * @param idleTimeout       time in milliseconds after which an idle connection is closed; 0 to never close
+     * @param maxConnectionRate maximum number of connections accepted per second
+     *
+     * @throws IOException if the selector cannot be opened
+     */
+    public ControlServer( final Handler handler, final int idleTimeout, final int maxConnectionRate )
+        throws IOException
+    {
+        m_handler = handler;
+        m_idleTimeout = Math.max( idleTimeout, 0 );
+        m_maxConnectionRate = Math.max( maxConnectionRate, 1 );
+        m_acceptTokens = m_maxConnectionRate;
+        m_lastRefill = System.nanoTime();
+        m_selector = Selector.open();
+    }
+
+    /**
+     * Opens the control port.
+     *
+     * @param port port to listen on; 0 for any free port
+     *
+     * @return port listening on
+     *
+     * @throws IOException if the port cannot be opened
+     */
+    public int open( final int port )
+        throws IOException
+    {
+        m_serverChannel = ServerSocketChannel.open();
+        try
+        {
+            m_serverChannel.socket().bind( new InetSocketAddress( port ) );
+            m_serverChannel.configureBlocking( false );
+            m_serverChannel.register( m_selector, SelectionKey.OP_ACCEPT );
+        }
+        catch( IOException e )
+        {
+            m_serverChannel.close();
+            throw e;
+        }
+        return m_serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Serves the connections until closed.
+     */
+    public void run()
+    {
+        final long selectTimeout = m_idleTimeout > 0 ? Math.min( m_idleTimeout, 1000 ) : 0;
+        while( !m_closed )
+        {
+            try
+            {
+                m_selector.select( selectTimeout );
+            }
+            catch( IOException e )
+            {
+                LOG.debug( "Stopped serving connections: " + e.getMessage() );
+                break;
+            }
+            final Iterator<SelectionKey> keys = m_selector.selectedKeys().iterator();
+            while( keys.hasNext() )
+            {
+                final SelectionKey key = keys.next();
+                keys.remove();
+                try
+                {
+                    if( !key.isValid() )
+                    {
+                        continue;
+                    }
+                    if( key.isAcceptable() )
+                    {
+                        accept();
+                    }
+                    else
+                    {
+                        if( key.isReadable() )
+                        {
+                            read( key );
+                        }
+                        if( key.isValid() && key.isWritable() )
+                        {
+                            write( key );
+                        }
+                    }
+                }
+                catch( IOException e )
+                {
+                    LOG.trace( "Connection dropped: " + e.getMessage() );
+                    close( key );
+                }
+            }
+            closeIdle();
+        }
+        for( SelectionKey key : m_selector.keys() )
+        {
+            close( key );
+        }
+        try
+        {
+            m_selector.close();
+        }
+        catch( IOException ignore )
+        {
+            // ignore
+        }
+        LOG.trace( "Finished serving connections" );
+    }
+
+    /**
+     * Closes the control port and stops serving. Can be called from any thread.
+     */
+    public void close()
+    {
+        m_closed = true;
+        m_selector.wakeup();
+    }
+
+    /**
+     * Returns the connection metrics.
+     *
+     * @return metrics as "name=value" pairs
+     */
+    public String getMetrics()
+    {
+        return "connections=" + m_open
+               + " accepted=" + m_accepted
+               + " rejected=" + m_rejected
+               + " commands=" + m_commands;
+    }
+
+    private void accept()
+        throws IOException
+    {
+        final SocketChannel channel = m_serverChannel.accept();
+        if( channel == null )
+        {
+            return;
+        }
+        if( !acquireAcceptToken() || m_open >= MAX_CONNECTIONS )
+        {
+            m_rejected++;
+            LOG.debug( "Rejected connection from [" + channel.socket().getRemoteSocketAddress() + "]" );
+            channel.close();
+            return;
+        }
+        m_accepted++;
+        m_open++;
+        final Socket socket = channel.socket();
+        final Connection connection = new Connection( socket.getInetAddress().isLoopbackAddress() );
+        channel.configureBlocking( false );
+        final SelectionKey key = channel.register( m_selector, SelectionKey.OP_READ, connection );
+        LOG.trace( "Connected [" + socket.getRemoteSocketAddress() + "]" );
+        if( !connection.local )
+        {
+            connection.passwordHash = m_handler.getPasswordHash();
+            if( connection.passwordHash == null )
+            {
+                respond( key, "Remote access is not configured." );
+                connection.closeAfterWrite = true;
+                return;
+            }
+            final String welcome = "Welcome to Pax-Runner Remote Console";
+            final String underline = "===============================================";
+            respond( key, underline.substring( 0, welcome.length() ) );
+            respond( key, welcome );
+            respond( key, underline.substring( 0, welcome.length() ) );
+            if( connection.passwordHash.trim().length() > 0 )
+            {
+                prompt( key, "Please enter password: " );
+            }
+            else
+            {
+                connection.authenticated = true;
+            }
+        }
+    }
+
+    private boolean acquireAcceptToken()
+    {
+        final long now = System.nanoTime();
+        m_acceptTokens = Math.min(
+            m_maxConnectionRate, m_acceptTokens + ( now - m_lastRefill ) * m_maxConnectionRate / 1e9
+        );
+        m_lastRefill = now;
+        if( m_acceptTokens < 1 )
+        {
+            return false;
+        }
+        m_acceptTokens--;
+        return true;
+    }
+
+    private void read( final SelectionKey key )
+        throws IOException
+    {
+        final Connection connection = (Connection) key.attachment();
+        if( ( (SocketChannel) key.channel() ).read( connection.in ) < 0 )
+        {
+            endOfStream( key, connection );
+            return;
+        }
+        if( connection.closeAfterWrite )
+        {
+            // no more commands are executed on a connection to be closed. input is discarded, as closing with unread
+            // input would reset the connection before the client gets the last response
+            connection.in.clear();
+            return;
+        }
+        connection.lastActive = System.currentTimeMillis();
+        final ByteBuffer in = connection.in;
+        in.flip();
+        int start = in.position();
+        while( in.hasRemaining() && key.isValid() && !connection.closeAfterWrite )
+        {
+            if( in.get() == '\n' )
+            {
+                final int end = in.position() - 1;
+                final byte[] frame = new byte[end - start];
+                in.position( start );
+                in.get( frame );
+                in.get();
+                start = in.position();
+                frame( key, connection, StringUtils.newStringUtf8( frame ).trim() );
+            }
+        }
+        in.position( start );
+        in.compact();
+        if( !in.hasRemaining() && !connection.closeAfterWrite )
+        {
+            respond( key, "ERROR Command too long" );
+            connection.closeAfterWrite = true;
+        }
+        if( connection.closeAfterWrite )
+        {
+            in.clear();
+        }
+    }
+
+    /**
+     * Executes the pending input as a last command, as clients may close the stream without terminating their command
+     * by a new line, then closes the connection once the responses are written.
+     */
+    private void endOfStream( final SelectionKey key, final Connection connection )
+    {
+        final ByteBuffer in = connection.in;
+        if( !connection.closeAfterWrite && in.position() > 0 )
+        {
+            in.flip();
+            final byte[] frame = new byte[in.remaining()];
+            in.get( frame );
+            frame( key, connection, StringUtils.newStringUtf8( frame ).trim() );
+        }
+        in.clear();
+        if( !key.isValid() )
+        {
+            return;
+        }
+        if( connection.out.position() == 0 )
+        {
+            close( key );
+            return;
+        }
+        connection.closeAfterWrite = true;
+        key.interestOps( SelectionKey.OP_WRITE );
+    }
+
+    private void frame( final SelectionKey key, final Connection connection, final String frame )
+    {
+        if( frame.length() == 0 )
+        {
+            return;
+        }
+        if( !connection.local && !connection.authenticated )
+        {
+            if( connection.passwordHash.trim().equals( Daemon.encrypt( frame ) ) )
+            {
+                connection.authenticated = true;
+                respond( key, "OK" );
+            }
+            else if( ++connection.passwordAttempts < PASSWORD_ATTEMPTS )
+            {
+                prompt( key, "Please enter password: " );
+            }
+            else
+            {
+                respond( key, "Invalid password attempts exceeded limits." );
+                respond( key, "Try connecting again." );
+                connection.closeAfterWrite = true;
+            }
+            return;
+        }
+        m_commands++;
+        final int separator = frame.indexOf( ' ' );
+        final String command = separator > 0 ? frame.substring( 0, separator ) : frame;
+        final String argument = separator > 0 ? frame.substring( separator + 1 ).trim() : null;
+        LOG.trace( "Received command [" + frame + "]" );
+        String response;
+        try
+        {
+            response = m_handler.execute( command, argument );
+        }
+        catch( RuntimeException e )
+        {
+            LOG.debug( "Command [" + frame + "] failed", e );
+            response = "ERROR " + e.getMessage();
+        }
+        respond( key, response );
+    }
+
+    private void prompt( final SelectionKey key, final String prompt )
+    {
+        queue( key, prompt );
+    }
+
+    private void respond( final SelectionKey key, final String line )
+    {
+        queue( key, line + NEWLINE );
+    }
+
+    private void queue( final SelectionKey key, final String text )
+    {
+        if( !key.isValid() )
+        {
+            return;
+        }
+        final Connection connection = (Connection) key.attachment();
+        final byte[] bytes = text.getBytes( StandardCharsets.UTF_8 );
+        if( bytes.length > connection.out.remaining() )
+        {
+            // client does not read its responses
+            LOG.debug( "Output limit exceeded, closing connection" );
+            close( key );
+            return;
+        }
+        connection.out.put( bytes );
+        key.interestOps( key.interestOps() | SelectionKey.OP_WRITE );
+    }
+
+    private void write( final SelectionKey key )
+        throws IOException
+    {
+        final Connection connection = (Connection) key.attachment();
+        final ByteBuffer out = connection.out;
+        out.flip();
+        ( (SocketChannel) key.channel() ).write( out );
+        out.compact();
+        if( out.position() == 0 )
+        {
+            if( connection.closeAfterWrite )
+            {
+                discardInput( key );
+                close( key );
+                return;
+            }
+            key.interestOps( key.interestOps() & ~SelectionKey.OP_WRITE );
+        }
+    }
+
+    private void discardInput( final SelectionKey key )
+        throws IOException
+    {
+        final ByteBuffer in = ( (Connection) key.attachment() ).in;
+        in.clear();
+        while( ( (SocketChannel) key.channel() ).read( in ) > 0 )
+        {
+            in.clear();
+        }
+    }
+
+    private void closeIdle()
+    {
+        if( m_idleTimeout == 0 )
+        {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        for( SelectionKey key : m_selector.keys() )
+        {
+            final Connection connection = (Connection) key.attachment();
+            if( connection != null && now - connection.lastActive > m_idleTimeout )
+            {
+                LOG.trace( "Closing idle connection" );
+                close( key );
+            }
+        }
+    }
+
+    private void close( final SelectionKey key )
+    {
+        if( key.attachment() != null && key.isValid() )
+        {
+            m_open--;
+        }
+        key.cancel();
+        try
+        {
+            key.channel().close();
+        }
+        catch( IOException ignore )
+        {
+            // ignore
+        }
+    }
+
+    /**
+     * Executes the commands received on the control port.
+     */
+    public static interface Handler
+    {
+
+        /**
+         * Returns the password remote clients have to enter.
+         *
+         * @return password hash, empty if no password is required or null if remote clients are not allowed
+         */
+        String getPasswordHash();
+
+        /**
+         * Executes a command.
+         *
+         * @param command  command
+         * @param argument command argument; null if none
+         *
+         * @return one line response
+         */
+        String execute( String command, String argument );
+
+    }
+
+    /**
+     * State of a connection.
+     */
+    private static class Connection
+    {
+
+        final boolean local;
+        final ByteBuffer in = ByteBuffer.allocate( MAX_FRAME );
+        final ByteBuffer out = ByteBuffer.allocate( MAX_OUTPUT );
+        long lastActive = System.currentTimeMillis();
+        String passwordHash;
+        boolean authenticated;
+        int passwordAttempts;
+        boolean closeAfterWrite;
+
+        Connection( final boolean local )
+        {
+            this.local = local;
+        }
+
+    }
+
+}
@@ -6,15 +6,12 @@ import org.ops4j.net.Base64Encoder;
 import org.ops4j.pax.runner.CommandLine;
 import org.ops4j.pax.runner.CommandLineImpl;
 import org.ops4j.pax.runner.Run;
-import org.ops4j.pax.runner.commons.StandardCharsets;
 import org.ops4j.pax.runner.commons.StringUtils;
 import org.ops4j.pax.runner.platform.DefaultJavaRunner;
+import org.ops4j.pax.runner.platform.PlatformException;
 import org.ops4j.pax.runner.platform.StoppableJavaRunner;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.security.AccessControlException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Properties;
 
@@ -26,6 +23,11 @@ import java.util.Properties;
  * <br/>
  * The Daemon process terminates either when the Pax-Runner completes execution,
  * or when a shutdown command is issued via shutdown port.
+ * <br/>
+ * The shutdown port is served by a {@link ControlServer} and accepts the
+ * commands: shutdown (or the configured shutdown command, optionally followed
+ * by the shutdown timeout), status, metrics and restart. As shutdown, restart
+ * requires the configured shutdown command, as in "restart shutdown".
  * 
  * @author <a href="mailto:open4thomas@gmail.com">Thomas Joseph</a>
  * @since 0.20.0 (29 April 2009)
@@ -46,16 +48,20 @@ public class Daemon {
     private static final String OPT_SHUTDOWN_TIMEOUT = "org.ops4j.pax.runner.daemon.shutdown.timeout";
     private static final String OPT_SHUTDOWN_CMD = "org.ops4j.pax.runner.daemon.shutdown.cmd";
     private static final String OPT_SHUTDOWN_PORT = "org.ops4j.pax.runner.daemon.shutdown.port";
+    private static final String OPT_MAX_CONNECTION_RATE = "org.ops4j.pax.runner.daemon.max.connection.rate";
 
     // Attributes ----------------------------------------------------
     private CommandLine commandLine = null;
     private String[] cmdArgs = null;
-    private StoppableJavaRunner runner = null;
+    private volatile StoppableJavaRunner runner = null;
     private Thread shutdownHook = null;
     private int networkTimeout = 1000*60;
     private long shutdownTimeout = 0;
-    private ServerSocket serverSocket = null;
-    private boolean continueAwait = true;
+    private int maxConnectionRate = 20;
+    private volatile ControlServer controlServer = null;
+    private volatile RunnerLauncher launcher = null;
+    private long startTime = 0;
+    private volatile int restarts = 0;
 
     private static Daemon instance = null;
     private static String shutdown = "shutdown";
@@ -64,6 +70,8 @@ public class Daemon {
     // Static --------------------------------------------------------
     /** logger. */
     private static final Log LOG = LogFactory.getLog(Daemon.class);
+    /** interval of stopping again a runner that did not end on restart, in milliseconds. */
+    private static final long RESTART_POLL = 1000;
 
     /**
      * Launches a new Daemon instance, that will bring up the Pax Runner.
@@ -112,6 +120,7 @@ public class Daemon {
         setShutdown(commandLine.getOption(OPT_SHUTDOWN_CMD));
         setShutdownPort(commandLine.getOption(OPT_SHUTDOWN_PORT));
         setShutdownTimeout(commandLine.getOption(OPT_SHUTDOWN_TIMEOUT));
+        setMaxConnectionRate(commandLine.getOption(OPT_MAX_CONNECTION_RATE));
     }
 
     /**
@@ -120,7 +129,9 @@ public class Daemon {
      * 
      */
     public void start() {
-        new RunnerLauncher().start();
+        startTime = System.currentTimeMillis();
+        launcher = new RunnerLauncher();
+        launcher.start();
         await();
     }
 
@@ -234,55 +245,100 @@ public class Daemon {
         shutdownHook = createShutdownHook();
         Runtime.getRuntime().addShutdownHook(shutdownHook);
 
-        // Set up a server socket to wait on
+        // Set up the control port to wait on
+        final ControlServer server;
         try {
             LOG.debug("Setting up shutdown port on " + getShutdownPort());
-            serverSocket =
-                new ServerSocket(getShutdownPort());
+            server = new ControlServer(new CommandHandler(), networkTimeout, maxConnectionRate);
+            server.open(getShutdownPort());
         } catch (IOException e) {
             throw new RuntimeException("Unable to set up shutdown port ["
                     + getShutdownPort()
                     + "].", e);
         }
-
-        // Loop waiting for a connection and a valid command
-        while (continueAwait) {
-            // Wait for the next connection
-            try {
-                // handle each new connection in a separate thread
-                new ClientHandler().handle(serverSocket.accept());
-            } catch (IOException e) {
-                LOG.debug("Stopped accepting connections." + e.getMessage());
+        synchronized (this) {
+            controlServer = server;
+            if (launcher == null) {
+                // stopped while setting up the control port
+                server.close();
             }
         }
 
-        // Close the server socket and return
-        try {
-            if (serverSocket != null) {
-                serverSocket.close();
-            }
-        } catch (IOException e) {
-            ;
-        }
+        // Serve connections and commands until stopped
+        server.run();
         LOG.trace("Finished awaiting...");
     }
 
-    private void stopAwait() {
-        continueAwait = false;
-        try {
-            if (serverSocket != null) {
-                serverSocket.close();
-                serverSocket = null;
-                LOG.info("Stopped shutdown port.");
-            }
-        } catch (IOException e) {
-            ;
+    private synchronized void stopAwait() {
+        if (controlServer != null) {
+            controlServer.close();
+            controlServer = null;
+            LOG.info("Stopped shutdown port.");
         }
     }
 
+    /**
+     * Stops the running Pax Runner and launches it again, in a separate thread
+     * as the control port should not wait for it.
+     */
+    private void restart() {
+        new Thread(new Runnable() {
+            public void run() {
+                final RunnerLauncher previous = launcher;
+                final RunnerLauncher next = new RunnerLauncher();
+                // the previous launcher does not shut down the daemon once it is not the current one
+                launcher = next;
+                final StoppableJavaRunner stopped;
+                synchronized (Daemon.this) {
+                    stopped = runner;
+                    runner = null;
+                    restarts++;
+                }
+                if (stopped != null) {
+                    LOG.debug("Bringing down Runner for restart...");
+                    stopped.shutdown();
+                }
+                try {
+                    // the runner may still be on its way to start the platform,
+                    // so it is stopped again until the previous launcher ends
+                    while (previous != null && previous.isAlive()) {
+                        previous.join(RESTART_POLL);
+                        if (stopped != null && previous.isAlive()) {
+                            stopped.shutdown();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    LOG.warn("Problems in waiting for the Runner to stop.");
+                }
+                if (launcher == next) {
+                    next.start();
+                    LOG.info("Pax Runner restarted.");
+                }
+            }
+        }, "Pax Runner Daemon Restart").start();
+    }
+
+    /**
+     * Stops the daemon after the shutdown timeout, in a separate thread as the
+     * control port should not wait for it.
+     */
+    private void scheduleStop(final long timeout) {
+        new Thread(new Runnable() {
+            public void run() {
+                LOG.trace("Stop after " + timeout + "ms.");
+                try {
+                    Thread.sleep(timeout);
+                } catch (InterruptedException e) {
+                    LOG.warn("Problems in shutdown timeout.");
+                }
+                stop();
+            }
+        }, "Pax Runner Daemon Stop").start();
+    }
+
     private StoppableJavaRunner createJavaRunner()
     {
-        return new DefaultJavaRunner();
+        return new CancellableJavaRunner(new DefaultJavaRunner());
     }
 
     /**
@@ -358,11 +414,16 @@ public class Daemon {
     }
 
     private void shutdown() {
+        launcher = null;
         stopAwait();
-        if (runner != null) {
-            LOG.debug("Bringing down Runner...");
-            runner.shutdown();
+        final StoppableJavaRunner stopped;
+        synchronized (this) {
+            stopped = runner;
             runner = null;
+        }
+        if (stopped != null) {
+            LOG.debug("Bringing down Runner...");
+            stopped.shutdown();
             LOG.info("Pax Runner daemon stopped.");
         }
     }
@@ -385,6 +446,12 @@ public class Daemon {
         }
     }
 
+    private void setMaxConnectionRate(String maxConnectionRate) {
+        if (parseSafeInt(maxConnectionRate) > 0) {
+            this.maxConnectionRate = parseSafeInt(maxConnectionRate);
+        }
+    }
+
     /**
      * Returns the file reference of the Runner's home directory. Creates one if
      * it doesn't exist and if the create flag is set to <code>true</code>.
@@ -436,164 +503,104 @@ public class Daemon {
         }
 
         public void run() {
-            if (runner == null) {
-                runner = createJavaRunner();
-                LOG.trace("Created Runner.");
+            final StoppableJavaRunner javaRunner;
+            synchronized (Daemon.this) {
+                if (runner == null) {
+                    runner = createJavaRunner();
+                    LOG.trace("Created Runner.");
+                }
+                javaRunner = runner;
             }
             try {
-                Run.main(runner, cmdArgs);
+                Run.main(javaRunner, cmdArgs);
             } finally {
-                instance.shutdown();
+                // a restarted runner does not bring down the daemon
+                if (launcher == this) {
+                    Daemon.this.shutdown();
+                }
             }
         }
     }
 
     /**
-     * Handles a individual client on the given socket as a separate thread. If
-     * the client is connecting from a loopback adapter (localhost), no password is required.
-     * If the client connects via telnet, password is required to issue commands.
-     * The shutdown sequence begins if the client enters the correct shutdown command.
-     * 
-     * @author Thomas Joseph.
-     *
+     * Java runner that does not start the platform once shut down, so a runner
+     * stopped before it got to start the platform does not start it afterwards.
      */
-    class ClientHandler {
-        public void handle(final Socket socket) {
-            new Thread(
-                new Runnable () {
-                    public void run() {
-                        boolean isLocalConnect = false;
-                        InputStream stream = null;
-                        PrintWriter out = null;
-                        try {
-                            isLocalConnect = socket.getInetAddress().isLoopbackAddress();
-                            socket.setSoTimeout(networkTimeout);
-                            LOG.trace("Connected.");
-                            stream = socket.getInputStream();
-                            out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
-                                    socket.getOutputStream(), StandardCharsets.UTF_8)), true);
-                        } catch (AccessControlException ace) {
-                            LOG.warn("StandardServer.accept security exception: "
-                                               + ace.getMessage(), ace);
-                            return;
-                        } catch (IOException e) {
-                            //LOG.error("StandardServer.await: accept: ", e);
-                            return;
-                        }
+    static class CancellableJavaRunner implements StoppableJavaRunner {
+        private final StoppableJavaRunner delegate;
+        private boolean cancelled = false;
 
-                        // ASK FOR PASSWORD for remote system
-                        if (!isLocalConnect) {
-                            // Write a welcome note
-                            String welcome = "Welcome to Pax-Runner Remote Console";
-                            String underline = "===============================================";
-                            out.write(underline.substring(0, welcome.length()) + NEWLINE);
-                            out.write(welcome + NEWLINE);
-                            out.write(underline.substring(0, welcome.length()) + NEWLINE);
-                            out.flush();
-
-                            String passwordHash = new String(readEncryptedPassword());
-                            if (passwordHash != null && passwordHash.trim().length() > 0) {
-                                int count = 3;
-                                boolean matched = false;
-                                while (count > 0) {
-                                    --count;
-                                    out.write("Please enter password: ");
-                                    out.flush();
-                                    String clientPassword = readStream(stream);
-                                    readStream(stream); // skipping control character
-                                    clientPassword = new String(encrypt(clientPassword));
-                                    if (passwordHash.trim().equals(clientPassword.trim())) {
-                                        matched = true;
-                                        break;
-                                    }
-                                }
-                                if (!matched) {
-                                    out.write("Invalid password attempts exceeded limits."+NEWLINE);
-                                    out.write("Try connecting again."+NEWLINE);
-                                    out.flush();
-                                    try {
-                                        socket.close();
-                                    } catch (IOException e) {
-                                        ;
-                                    }
-                                    return;
-                                }
-                            }
-                        }
+        CancellableJavaRunner(StoppableJavaRunner delegate) {
+            this.delegate = delegate;
+        }
 
-                        LOG.trace("Going to ask the client to supply command.");
-                        out.write("Enter the command to shutdown the Pax Runner:"+NEWLINE);
-                        out.write("> ");
-                        out.flush();
-
-                        // Read a set of characters from the socket
-                        String command = readStream(stream);
-                        LOG.trace("Recieved Command [ " + command + "] from ["
-                                +socket.getRemoteSocketAddress() + "].");
-
-                        try {
-                            String[] commands = command.split("\\\\s+");
-                            if (commands.length > 1) {
-                                command = commands[0];
-                                setShutdownTimeout(command);
-                            }
-                        } catch (Exception e) {
-                            ;// ignore
-                        }
+        public void exec(String[] vmOptions, String[] classpath, String mainClass,
+                         String[] programOptions, String javaHome, File workingDir)
+                throws PlatformException {
+            exec(vmOptions, classpath, mainClass, programOptions, javaHome, workingDir, new String[0]);
+        }
 
-                        // Match against our command string
-                        boolean match = command.toString().equals(shutdown);
-                        if (match) {
-                            LOG.trace("Shutdown command recieved via Telnet.");
-                            LOG.trace("Stop after " + shutdownTimeout + "ms.");
-                            try {
-                                Thread.sleep(shutdownTimeout);
-                            } catch (InterruptedException e) {
-                                LOG.warn("Problems in shutdown timeout.");
-                            }
-                            stop();
-                            return;
-                        } else {
-                            LOG.warn("Pax Runner: Invalid command.");
-                            out.write("Invalid Command!"+NEWLINE);
-                            out.flush();
-                        }
+        public void exec(String[] vmOptions, String[] classpath, String mainClass,
+                         String[] programOptions, String javaHome, File workingDir,
+                         String[] envOptions)
+                throws PlatformException {
+            synchronized (this) {
+                if (cancelled) {
+                    LOG.debug("Runner stopped before the platform was started.");
+                    return;
+                }
+            }
+            delegate.exec(vmOptions, classpath, mainClass, programOptions, javaHome, workingDir, envOptions);
+        }
 
-                        // Close the socket now that we are done with it
-                        try {
-                            LOG.trace("Closing the socket now that we are done with it...");
-                            socket.close();
-                        } catch (IOException e) {
-                            LOG.warn("Exception in closing socket..", e);
-                        }
-                    }
-                }, "ClientHandler-" + socket.getRemoteSocketAddress()
-            ).start();
+        public void shutdown() {
+            synchronized (this) {
+                cancelled = true;
+            }
+            delegate.shutdown();
         }
+    }
 
-        /**
-         * Reads the given stream for string commands.
-         * 
-         * @param stream
-         * @return the command that was issued in the input stream.
-         */
-        private String readStream(final InputStream stream) {
-            byte[] chs = new byte[128];   // Cut off to avoid DoS attack
-            int n;
-            for (n = 0; n < chs.length; n++) {
-                int ch;
-                try {
-                    ch = stream.read();
-                } catch (IOException e) {
-                    break;
-                }
-                // Assume that stream uses an ISO derived encoding
-                if (Character.isISOControl(ch)) {
-                    break;
+    /**
+     * Executes the commands issued on the shutdown port. Runs on the control
+     * port thread so commands that take time are executed in separate threads.
+     */
+    class CommandHandler implements ControlServer.Handler {
+
+        public String getPasswordHash() {
+            try {
+                return readEncryptedPassword();
+            } catch (RuntimeException e) {
+                LOG.warn("Cannot read the password file: " + e.getMessage());
+                return null;
+            }
+        }
+
+        public String execute(String command, String argument) {
+            if (command.equals(shutdown)) {
+                LOG.trace("Shutdown command recieved.");
+                long timeout = shutdownTimeout;
+                if (parseSafeInt(argument) != -1) {
+                    timeout = parseSafeInt(argument);
                 }
-                chs[n] = (byte) ch;
+                scheduleStop(timeout);
+                return "OK";
+            }
+            if ("status".equals(command)) {
+                return "OK " + (runner != null ? "running" : "stopped")
+                        + " uptime=" + (System.currentTimeMillis() - startTime) + "ms"
+                        + " restarts=" + restarts;
+            }
+            if ("metrics".equals(command)) {
+                final ControlServer server = controlServer;
+                return "OK " + (server != null ? server.getMetrics() : "");
+            }
+            if ("restart".equals(command) && shutdown.equals(argument)) {
+                restart();
+                return "OK";
             }
-            return StringUtils.newStringUtf8(chs, 0, n);
+            LOG.warn("Pax Runner: Invalid command.");
+            return "ERROR Invalid Command!";
         }
     }
 
@@ -1,7 +1,9 @@
 package org.ops4j.pax.runner.daemon;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.net.UnknownHostException;
@@ -22,6 +24,7 @@ import org.ops4j.pax.runner.commons.StandardCharsets;
  *      <li>Start attached to the console.</li>
  *      <li>Start detached from the console.</li>
  *      <li>Stop the Pax Runner Daemon launched, if any.</li>
+ *      <li>Serve launch requests as a {@link LaunchDaemon}.</li>
  * </ul>
  * 
  * @author <a href="mailto:open4thomas@gmail.com">Thomas Joseph</a>
@@ -35,6 +38,7 @@ public class DaemonLauncher {
     public static final String OPTION_START = "--start";
     public static final String OPTION_STARTD = "--startd";
     public static final String OPTION_STOP = "--stop";
+    public static final String OPTION_SERVE = "--serve";
 
     public static final String SPACE = " ";
 
@@ -74,11 +78,14 @@ public class DaemonLauncher {
         } else if (OPTION_STOP.equals(operation)) {
             launcher.load(args);
             launcher.stop();
+        } else if (OPTION_SERVE.equals(operation)) {
+            launcher.load(args);
+            launcher.serve();
         } else {
             throw new RuntimeException("No valid option specified for Pax Runner" +
                     " Daemon. The specified option should be first argument.\n" +
                     "Valid options: "+ OPTION_START +" | " + OPTION_STARTD
-                    +" | " + OPTION_STOP);
+                    +" | " + OPTION_STOP + " | " + OPTION_SERVE);
         }
     }
 
@@ -176,6 +183,33 @@ public class DaemonLauncher {
         }
     }
 
+    /**
+     * Starts a launch daemon in this process and waits until it is shut down.
+     */
+    private void serve() {
+        final LaunchDaemon daemon = new LaunchDaemon();
+        int port = LaunchDaemon.DEFAULT_LAUNCH_PORT;
+        String sPort = commandLine.getOption(LaunchDaemon.OPT_LAUNCH_PORT);
+        if (sPort != null && sPort.length() > 0) {
+            port = Integer.parseInt(sPort);
+        }
+        try {
+            daemon.start(port);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to set up launch port [" + port + "].", e);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                daemon.stop();
+            }
+        }, "Pax-Runner Launch Daemon Shutdown Hook"));
+        try {
+            daemon.await();
+        } catch (InterruptedException e) {
+            LOG.warn("Problems in waiting for the launch daemon.");
+        }
+    }
+
     // Package protected ---------------------------------------------
 
     // Protected -----------------------------------------------------
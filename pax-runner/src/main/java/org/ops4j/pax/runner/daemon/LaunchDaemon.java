@@ -0,0 +1,1027 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.daemon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ops4j.pax.runner.CommandLine;
+import org.ops4j.pax.runner.CommandLineImpl;
+import org.ops4j.pax.runner.Configuration;
+import org.ops4j.pax.runner.ConfigurationImpl;
+import org.ops4j.pax.runner.OptionResolver;
+import org.ops4j.pax.runner.OptionResolverImpl;
+import org.ops4j.pax.runner.Run;
+import org.ops4j.pax.runner.commons.StandardCharsets;
+import org.ops4j.pax.runner.platform.EmbeddedHost;
+import org.ops4j.pax.runner.platform.StoppableJavaRunner;
+import org.ops4j.pax.runner.platform.internal.BundleMetadataIndex;
+
+/**
+ * Long running runner process that launches platforms on request. Launched platforms are embedded into the daemon
+ * process, so a launch does not pay for starting a jvm, and what the daemon keeps loaded (classes, configurations,
+ * bundle metadata indexes) is reused by the next launches.
+ * <br/>
+ * Requests are accepted on a local (loopback) port. A connection starts with the token the daemon wrote, readable only
+ * by its owner, to the token file (see {@link #getTokenFile(int)}); connections without the token are refused.
+ * A request is a command line followed by one line per argument and ends with an empty line (or the end of stream).
+ * The response is one line, starting with OK or ERROR. Commands:
+ * <ul>
+ * <li>launch, with the runner arguments: launches a platform and responds with the launch id</li>
+ * <li>stop, with the launch id: stops the platform of a launch</li>
+ * <li>status: responds with the ids of the running launches</li>
+ * <li>shutdown: stops all launches and the daemon</li>
+ * </ul>
+ * Running launches cannot share a working directory. The additional services and url handlers are installed once per
+ * daemon, by the first launch, and shared by all launches, so the services, handlers and handler options (as
+ * --repositories or --localRepository) of the first launch apply to all launches; a launch that sets other ones is
+ * refused. The scanners and the platform are installed per launch and stopped with the launch.
+ *
+ * @since 1.8.6
+ */
+public class LaunchDaemon
+{
+
+    /**
+     * Configuration option to specify the port the daemon listens on.
+     */
+    public static final String OPT_LAUNCH_PORT = "org.ops4j.pax.runner.daemon.launch.port";
+    /**
+     * Default port the daemon listens on.
+     */
+    public static final int DEFAULT_LAUNCH_PORT = 8009;
+    /**
+     * Logger.
+     */
+    private static final Log LOG = LogFactory.getLog( LaunchDaemon.class );
+    /**
+     * Configuration used when not specified by arguments.
+     */
+    private static final String DEFAULT_CONFIG = "classpath:META-INF/runner.properties";
+    /**
+     * Option to specify the configuration.
+     */
+    private static final String OPTION_CONFIG = "config";
+    /**
+     * Option to specify the working directory of the platform.
+     */
+    private static final String OPTION_WORKING_DIRECTORY = "org.ops4j.pax.runner.platform.workingDirectory";
+    /**
+     * Prefix of the url handler options.
+     */
+    private static final String HANDLER_OPTION_PREFIX = "org.ops4j.pax.url.";
+    /**
+     * Pattern of the configuration properties giving aliases to url handler options.
+     */
+    private static final String HANDLER_ALIASES = "alias\\.org\\.ops4j\\.pax\\.url\\..*";
+    /**
+     * Maximum number of arguments of a request.
+     */
+    private static final int MAX_ARGUMENTS = 1024;
+    /**
+     * Time in milliseconds a connection may be idle.
+     */
+    private static final int NETWORK_TIMEOUT = 60 * 1000;
+    private static final String NEWLINE = "\r\n";
+
+    /**
+     * Host of the embedded platforms.
+     */
+    private final EmbeddedHost m_host;
+    /**
+     * Running launches, by launch id.
+     */
+    private final Map<Integer, Launch> m_launches;
+    /**
+     * Working directories of running and starting launches. Guarded by launches.
+     */
+    private final Set<File> m_directories;
+    /**
+     * Runner that installed the services and url handlers shared by all launches. Null until the first launch runs.
+     * Guarded by launches.
+     */
+    private Run m_shared;
+    /**
+     * Option resolver of the first launch, which installed the url handlers. Null before the first launch. Guarded by
+     * launches.
+     */
+    private OptionResolver m_handlerResolver;
+    /**
+     * Names of the handler options set by the first launch. Guarded by launches.
+     */
+    private Set<String> m_handlerOptions;
+    /**
+     * True once stopped. Guarded by launches.
+     */
+    private boolean m_closed;
+    /**
+     * Last launch id.
+     */
+    private final AtomicInteger m_lastId;
+    /**
+     * Configurations read so far, by url.
+     */
+    private final Map<String, LoadedConfiguration> m_configurations;
+    /**
+     * Signals the stop of the daemon.
+     */
+    private final CountDownLatch m_stopped;
+    /**
+     * File to write the token to. Null for the default one of the port.
+     */
+    private final File m_tokenFile;
+    /**
+     * File the token was written to. Null if not started.
+     */
+    private File m_writtenTokenFile;
+    /**
+     * Token a connection must start with. Null if not started.
+     */
+    private volatile String m_token;
+    /**
+     * Handles connections.
+     */
+    private ExecutorService m_connections;
+    /**
+     * Socket accepting connections. Null if not started.
+     */
+    private ServerSocket m_serverSocket;
+
+    /**
+     * Creates a new, not yet started, launch daemon, that writes its token to the default token file of its port.
+     */
+    public LaunchDaemon()
+    {
+        this( null );
+    }
+
+    /**
+     * Creates a new, not yet started, launch daemon.
+     *
+     * @param tokenFile file to write the token to; null for the default token file of the port
+     */
+    public LaunchDaemon( final File tokenFile )
+    {
+        m_host = new EmbeddedHost();
+        m_launches = new TreeMap<Integer, Launch>();
+        m_directories = new HashSet<File>();
+        m_lastId = new AtomicInteger();
+        m_configurations = new ConcurrentHashMap<String, LoadedConfiguration>();
+        m_stopped = new CountDownLatch( 1 );
+        m_tokenFile = tokenFile;
+    }
+
+    /**
+     * Starts accepting requests.
+     *
+     * @param port port to listen on; 0 for any free port
+     *
+     * @return port the daemon listens on
+     *
+     * @throws IOException if the port cannot be opened or the token cannot be written
+     */
+    public synchronized int start( final int port )
+        throws IOException
+    {
+        if( m_serverSocket != null )
+        {
+            throw new IllegalStateException( "Launch daemon already started" );
+        }
+        final ServerSocket serverSocket = new ServerSocket( port, 50, InetAddress.getByName( null ) );
+        final File tokenFile = m_tokenFile != null ? m_tokenFile : getTokenFile( serverSocket.getLocalPort() );
+        final String token = new BigInteger( 130, new SecureRandom() ).toString( 32 );
+        try
+        {
+            writeToken( tokenFile, token );
+        }
+        catch( IOException e )
+        {
+            serverSocket.close();
+            throw e;
+        }
+        m_serverSocket = serverSocket;
+        m_writtenTokenFile = tokenFile;
+        m_token = token;
+        m_connections = Executors.newCachedThreadPool( new ThreadFactory()
+        {
+            private final AtomicInteger m_counter = new AtomicInteger();
+
+            public Thread newThread( final Runnable runnable )
+            {
+                final Thread thread = new Thread(
+                    runnable, "Pax Runner Launch Daemon Connection " + m_counter.incrementAndGet()
+                );
+                thread.setDaemon( true );
+                return thread;
+            }
+        }
+        );
+        final Thread acceptor = new Thread( "Pax Runner Launch Daemon" )
+        {
+            @Override
+            public void run()
+            {
+                accept( serverSocket );
+            }
+        };
+        acceptor.setDaemon( true );
+        acceptor.start();
+        LOG.info( "Pax Runner launch daemon listening on port " + serverSocket.getLocalPort() );
+        LOG.debug( "Launch daemon token written to [" + tokenFile + "]" );
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Waits until the daemon is stopped.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void await()
+        throws InterruptedException
+    {
+        m_stopped.await();
+    }
+
+    /**
+     * Stops all launches and the daemon. Has no effect if the daemon is not started.
+     */
+    public void stop()
+    {
+        final ServerSocket serverSocket;
+        final File tokenFile;
+        synchronized( this )
+        {
+            serverSocket = m_serverSocket;
+            tokenFile = m_writtenTokenFile;
+            m_serverSocket = null;
+            m_writtenTokenFile = null;
+        }
+        if( serverSocket == null )
+        {
+            return;
+        }
+        try
+        {
+            serverSocket.close();
+        }
+        catch( IOException ignore )
+        {
+            // ignore
+        }
+        tokenFile.delete();
+        final List<Launch> launches;
+        synchronized( m_launches )
+        {
+            m_closed = true;
+            launches = new ArrayList<Launch>( m_launches.values() );
+            m_launches.clear();
+            m_directories.clear();
+        }
+        for( Launch launch : launches )
+        {
+            launch.m_runner.shutdown();
+            stop( launch.m_run );
+            BundleMetadataIndex.close( launch.m_directory );
+        }
+        final Run shared;
+        synchronized( m_launches )
+        {
+            shared = m_shared;
+            m_shared = null;
+        }
+        stop( shared );
+        m_host.shutdown();
+        m_configurations.clear();
+        m_connections.shutdown();
+        m_stopped.countDown();
+        LOG.info( "Pax Runner launch daemon stopped" );
+    }
+
+    /**
+     * Launches a platform.
+     *
+     * @param args runner arguments
+     *
+     * @return launch id
+     */
+    public int launch( final String... args )
+    {
+        final CommandLine commandLine = new CommandLineImpl( args );
+        String configURL = commandLine.getOption( OPTION_CONFIG );
+        if( configURL == null )
+        {
+            configURL = DEFAULT_CONFIG;
+        }
+        final Configuration config = getConfiguration( configURL );
+        final OptionResolver resolver = new OptionResolverImpl( commandLine, config );
+        final File directory = getWorkingDirectory( resolver );
+        reserve( directory, resolver, getHandlerOptions( commandLine, config ) );
+        final StoppableJavaRunner runner;
+        try
+        {
+            runner = createJavaRunner();
+        }
+        catch( RuntimeException e )
+        {
+            release( directory );
+            throw e;
+        }
+        final Run run;
+        try
+        {
+            run = run( commandLine, config, runner );
+        }
+        catch( RuntimeException e )
+        {
+            runner.shutdown();
+            release( directory );
+            throw e;
+        }
+        final int id = m_lastId.incrementAndGet();
+        final boolean closed;
+        synchronized( m_launches )
+        {
+            closed = m_closed;
+            if( !closed )
+            {
+                m_launches.put( id, new Launch( runner, run, directory, configURL ) );
+            }
+        }
+        if( closed )
+        {
+            // daemon was stopped while launching
+            runner.shutdown();
+            stop( run );
+            BundleMetadataIndex.close( directory );
+            throw new IllegalStateException( "Launch daemon stopped" );
+        }
+        LOG.info( "Launched [" + id + "] in [" + directory + "]" );
+        return id;
+    }
+
+    /**
+     * Stops the platform of a launch.
+     *
+     * @param id launch id
+     *
+     * @return true if stopped, false if there is no running launch with the id
+     */
+    public boolean stop( final int id )
+    {
+        final Launch launch;
+        boolean configUsed = false;
+        synchronized( m_launches )
+        {
+            launch = m_launches.remove( id );
+            if( launch == null )
+            {
+                return false;
+            }
+            for( Launch running : m_launches.values() )
+            {
+                configUsed = configUsed || running.m_configURL.equals( launch.m_configURL );
+            }
+        }
+        launch.m_runner.shutdown();
+        stop( launch.m_run );
+        if( !configUsed )
+        {
+            m_configurations.remove( launch.m_configURL );
+        }
+        BundleMetadataIndex.close( launch.m_directory );
+        release( launch.m_directory );
+        LOG.info( "Stopped [" + id + "]" );
+        return true;
+    }
+
+    /**
+     * Returns the ids of the running launches.
+     *
+     * @return launch ids, in launch order
+     */
+    public List<Integer> getLaunches()
+    {
+        synchronized( m_launches )
+        {
+            return new ArrayList<Integer>( m_launches.keySet() );
+        }
+    }
+
+    /**
+     * Returns the default file a daemon listening on a port writes its token to.
+     *
+     * @param port port the daemon listens on
+     *
+     * @return token file, in the pax runner directory of the user home
+     */
+    public static File getTokenFile( final int port )
+    {
+        return new File(
+            System.getProperty( "user.home" ) + File.separator + ".pax" + File.separator + "runner",
+            "launch-" + port + ".token"
+        );
+    }
+
+    /**
+     * Sends a request to a launch daemon listening on a local port, that wrote its token to the default token file.
+     *
+     * @param port    port the daemon listens on
+     * @param command request command
+     * @param args    request arguments
+     *
+     * @return response line
+     *
+     * @throws IOException if the token cannot be read or the request cannot be sent
+     */
+    public static String request( final int port, final String command, final String... args )
+        throws IOException
+    {
+        return request( getTokenFile( port ), port, command, args );
+    }
+
+    /**
+     * Sends a request to a launch daemon listening on a local port.
+     *
+     * @param tokenFile file the daemon wrote its token to
+     * @param port      port the daemon listens on
+     * @param command   request command
+     * @param args      request arguments
+     *
+     * @return response line
+     *
+     * @throws IOException if the token cannot be read or the request cannot be sent
+     */
+    public static String request( final File tokenFile, final int port, final String command, final String... args )
+        throws IOException
+    {
+        final String token = readToken( tokenFile );
+        final Socket socket = new Socket( InetAddress.getByName( null ), port );
+        try
+        {
+            socket.setSoTimeout( NETWORK_TIMEOUT );
+            final Writer out = new OutputStreamWriter( socket.getOutputStream(), StandardCharsets.UTF_8 );
+            out.write( token + NEWLINE );
+            out.write( command + NEWLINE );
+            for( String arg : args )
+            {
+                out.write( arg + NEWLINE );
+            }
+            out.write( NEWLINE );
+            out.flush();
+            return new BufferedReader(
+                new InputStreamReader( socket.getInputStream(), StandardCharsets.UTF_8 )
+            ).readLine();
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    /**
+     * Creates the java runner of a launch.
+     *
+     * @return java runner embedding the platform into this process
+     */
+    StoppableJavaRunner createJavaRunner()
+    {
+        return m_host.createRunner();
+    }
+
+    /**
+     * Runs the runner, which returns once the platform is started. The runner uses the services and url handlers shared
+     * by all launches, installing them first if this is the first launch.
+     *
+     * @param commandLine command line
+     * @param config      configuration
+     * @param runner      java runner
+     *
+     * @return started runner, to be stopped with the launch
+     */
+    Run run( final CommandLine commandLine, final Configuration config, final StoppableJavaRunner runner )
+    {
+        final Run run = new Run( getShared( commandLine, config ) );
+        try
+        {
+            run.start( commandLine, config, new OptionResolverImpl( commandLine, config ), runner );
+        }
+        catch( RuntimeException e )
+        {
+            run.stop();
+            throw e;
+        }
+        return run;
+    }
+
+    /**
+     * Executes a request.
+     *
+     * @param command request command
+     * @param args    request arguments
+     *
+     * @return response
+     */
+    String execute( final String command, final List<String> args )
+    {
+        try
+        {
+            if( "launch".equals( command ) )
+            {
+                return "OK " + launch( args.toArray( new String[args.size()] ) );
+            }
+            if( "stop".equals( command ) && args.size() == 1 )
+            {
+                return stop( Integer.parseInt( args.get( 0 ).trim() ) )
+                       ? "OK"
+                       : "ERROR No running launch [" + args.get( 0 ) + "]";
+            }
+            if( "status".equals( command ) )
+            {
+                return "OK " + getLaunches();
+            }
+            if( "shutdown".equals( command ) )
+            {
+                return "OK";
+            }
+            return "ERROR Invalid request [" + command + "] " + args;
+        }
+        catch( NumberFormatException e )
+        {
+            return "ERROR Invalid launch id " + args;
+        }
+        catch( RuntimeException e )
+        {
+            LOG.debug( "Request [" + command + "] " + args + " failed", e );
+            return "ERROR " + e.getMessage();
+        }
+    }
+
+    /**
+     * Returns the runner that installed the services and url handlers shared by all launches, installing them if not
+     * installed yet.
+     *
+     * @param commandLine command line of the launch
+     * @param config      configuration of the launch
+     *
+     * @return shared runner
+     *
+     * @throws IllegalStateException if the daemon is stopped
+     */
+    private Run getShared( final CommandLine commandLine, final Configuration config )
+    {
+        synchronized( m_launches )
+        {
+            if( m_closed )
+            {
+                throw new IllegalStateException( "Launch daemon stopped" );
+            }
+            if( m_shared == null )
+            {
+                final Run shared = new Run();
+                shared.startShared( commandLine, config, new OptionResolverImpl( commandLine, config ) );
+                m_shared = shared;
+            }
+            return m_shared;
+        }
+    }
+
+    /**
+     * Stops the activators of a runner.
+     *
+     * @param run runner to stop; null if there is no runner
+     */
+    private static void stop( final Run run )
+    {
+        if( run != null )
+        {
+            run.stop();
+        }
+    }
+
+    /**
+     * Returns the configuration read from an url. A configuration read before is reused as long as its file was not
+     * modified since.
+     *
+     * @param url configuration url
+     *
+     * @return configuration
+     */
+    private Configuration getConfiguration( final String url )
+    {
+        final long lastModified = lastModified( url );
+        final LoadedConfiguration loaded = m_configurations.get( url );
+        if( loaded != null && loaded.m_lastModified == lastModified )
+        {
+            return loaded.m_configuration;
+        }
+        final Configuration config = new ConfigurationImpl( url );
+        m_configurations.put( url, new LoadedConfiguration( config, lastModified ) );
+        return config;
+    }
+
+    /**
+     * Returns the last modification time of a configuration url.
+     *
+     * @param url configuration url
+     *
+     * @return last modification time of the file of a file url; 0 for other urls, which are not expected to change
+     */
+    private static long lastModified( final String url )
+    {
+        if( !url.startsWith( "file:" ) )
+        {
+            return 0;
+        }
+        try
+        {
+            return new File( new URL( url ).getPath() ).lastModified();
+        }
+        catch( MalformedURLException e )
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the working directory of the platform of a launch.
+     *
+     * @param resolver option resolver of the launch
+     *
+     * @return working directory
+     */
+    private static File getWorkingDirectory( final OptionResolver resolver )
+    {
+        final File directory = new File( resolver.getMandatory( OPTION_WORKING_DIRECTORY ) ).getAbsoluteFile();
+        try
+        {
+            return directory.getCanonicalFile();
+        }
+        catch( IOException e )
+        {
+            return directory;
+        }
+    }
+
+    /**
+     * Returns the names of the url handler options set by the command line of a launch, directly or by alias.
+     *
+     * @param commandLine command line of the launch
+     * @param config      configuration of the launch
+     *
+     * @return names of the handler options, including the handlers and services options
+     */
+    private static Set<String> getHandlerOptions( final CommandLine commandLine, final Configuration config )
+    {
+        final Set<String> names = new HashSet<String>();
+        names.add( CommandLine.OPTION_HANDLERS );
+        names.add( CommandLine.OPTION_SERVICES );
+        final Set<String> options = commandLine.getOptionNames();
+        for( String option : options )
+        {
+            if( option.startsWith( HANDLER_OPTION_PREFIX ) )
+            {
+                names.add( option );
+            }
+        }
+        for( String alias : config.getPropertyNames( HANDLER_ALIASES ) )
+        {
+            for( String option : config.getProperty( alias ).split( "," ) )
+            {
+                if( options.contains( option.trim() ) )
+                {
+                    names.add( alias.substring( "alias.".length() ) );
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Reserves the working directory of a starting launch. The first launch records its handler options, the next ones
+     * must resolve the handler options set by the first launch or by themselves to the same values.
+     *
+     * @param directory      working directory of the launch
+     * @param resolver       option resolver of the launch
+     * @param handlerOptions names of the handler options set by the launch
+     *
+     * @throws IllegalStateException    if the daemon is stopped or the directory is used by another launch
+     * @throws IllegalArgumentException if the handler options are not the ones of the first launch
+     */
+    private void reserve( final File directory, final OptionResolver resolver, final Set<String> handlerOptions )
+    {
+        synchronized( m_launches )
+        {
+            if( m_closed )
+            {
+                throw new IllegalStateException( "Launch daemon stopped" );
+            }
+            if( m_directories.contains( directory ) )
+            {
+                throw new IllegalStateException( "Working directory [" + directory + "] is used by another launch" );
+            }
+            if( m_handlerResolver == null )
+            {
+                m_handlerResolver = resolver;
+                m_handlerOptions = handlerOptions;
+            }
+            final Set<String> names = new TreeSet<String>( m_handlerOptions );
+            names.addAll( handlerOptions );
+            for( String name : names )
+            {
+                final String expected = m_handlerResolver.get( name );
+                final String value = resolver.get( name );
+                if( expected == null ? value != null : !expected.equals( value ) )
+                {
+                    throw new IllegalArgumentException(
+                        "Handler option [" + name + "] must be [" + expected + "] as for the first launch,"
+                        + " as services and url handlers are shared by all launches"
+                    );
+                }
+            }
+            m_directories.add( directory );
+        }
+    }
+
+    /**
+     * Releases the working directory of a launch.
+     *
+     * @param directory working directory of the launch
+     */
+    private void release( final File directory )
+    {
+        synchronized( m_launches )
+        {
+            m_directories.remove( directory );
+        }
+    }
+
+    /**
+     * Accepts connections until the socket is closed.
+     *
+     * @param serverSocket socket to accept on
+     */
+    private void accept( final ServerSocket serverSocket )
+    {
+        while( !serverSocket.isClosed() )
+        {
+            try
+            {
+                final Socket socket = serverSocket.accept();
+                m_connections.execute( new Runnable()
+                {
+                    public void run()
+                    {
+                        handle( socket );
+                    }
+                }
+                );
+            }
+            catch( IOException e )
+            {
+                LOG.trace( "Stopped accepting connections: " + e.getMessage() );
+            }
+        }
+    }
+
+    /**
+     * Handles the requests of a connection, until the end of stream or shutdown.
+     *
+     * @param socket connected socket
+     */
+    private void handle( final Socket socket )
+    {
+        boolean shutdown = false;
+        try
+        {
+            socket.setSoTimeout( NETWORK_TIMEOUT );
+            final BufferedReader in = new BufferedReader(
+                new InputStreamReader( socket.getInputStream(), StandardCharsets.UTF_8 )
+            );
+            final Writer out = new OutputStreamWriter( socket.getOutputStream(), StandardCharsets.UTF_8 );
+            if( !isToken( in.readLine() ) )
+            {
+                LOG.warn( "Refused connection without a valid token" );
+                out.write( "ERROR Invalid token" + NEWLINE );
+                out.flush();
+                return;
+            }
+            String command;
+            while( !shutdown && ( command = in.readLine() ) != null )
+            {
+                command = command.trim();
+                if( command.length() == 0 )
+                {
+                    continue;
+                }
+                final List<String> args = new ArrayList<String>();
+                String line;
+                while( ( line = in.readLine() ) != null && line.length() > 0 )
+                {
+                    if( args.size() == MAX_ARGUMENTS )
+                    {
+                        throw new IOException( "More then " + MAX_ARGUMENTS + " arguments" );
+                    }
+                    args.add( line );
+                }
+                LOG.debug( "Request [" + command + "] " + args );
+                out.write( execute( command, args ) + NEWLINE );
+                out.flush();
+                shutdown = "shutdown".equals( command );
+            }
+        }
+        catch( SocketException e )
+        {
+            LOG.trace( "Connection closed: " + e.getMessage() );
+        }
+        catch( IOException e )
+        {
+            LOG.debug( "Connection dropped due to: " + e.getMessage() );
+        }
+        finally
+        {
+            try
+            {
+                socket.close();
+            }
+            catch( IOException ignore )
+            {
+                // ignore
+            }
+        }
+        if( shutdown )
+        {
+            stop();
+        }
+    }
+
+    /**
+     * Checks a connection token, in a time that does not depend on how much of it matches.
+     *
+     * @param candidate token sent by the connection; can be null
+     *
+     * @return true if the token is the one of the daemon
+     */
+    private boolean isToken( final String candidate )
+    {
+        final String token = m_token;
+        if( token == null || candidate == null || candidate.length() != token.length() )
+        {
+            return false;
+        }
+        int difference = 0;
+        for( int i = 0; i < token.length(); i++ )
+        {
+            difference |= token.charAt( i ) ^ candidate.charAt( i );
+        }
+        return difference == 0;
+    }
+
+    /**
+     * Writes a token to a file readable and writable only by its owner.
+     *
+     * @param file  token file
+     * @param token token
+     *
+     * @throws IOException if the file cannot be written or its permissions cannot be restricted
+     */
+    private static void writeToken( final File file, final String token )
+        throws IOException
+    {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if( !parent.isDirectory() && !parent.mkdirs() )
+        {
+            throw new IOException( "Cannot create directory [" + parent + "]" );
+        }
+        if( file.exists() && !file.delete() )
+        {
+            throw new IOException( "Cannot replace token file [" + file + "]" );
+        }
+        if( !file.createNewFile()
+            || !file.setReadable( false, false ) || !file.setWritable( false, false )
+            || !file.setReadable( true, true ) || !file.setWritable( true, true ) )
+        {
+            throw new IOException( "Cannot create token file [" + file + "] readable only by its owner" );
+        }
+        final Writer out = new OutputStreamWriter( new FileOutputStream( file ), StandardCharsets.UTF_8 );
+        try
+        {
+            out.write( token + NEWLINE );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the token of a daemon.
+     *
+     * @param file token file
+     *
+     * @return token
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private static String readToken( final File file )
+        throws IOException
+    {
+        final BufferedReader in = new BufferedReader(
+            new InputStreamReader( new FileInputStream( file ), StandardCharsets.UTF_8 )
+        );
+        try
+        {
+            final String token = in.readLine();
+            if( token == null )
+            {
+                throw new IOException( "Empty token file [" + file + "]" );
+            }
+            return token.trim();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * A running launch.
+     */
+    private static class Launch
+    {
+
+        final StoppableJavaRunner m_runner;
+        final Run m_run;
+        final File m_directory;
+        final String m_configURL;
+
+        Launch( final StoppableJavaRunner runner, final Run run, final File directory, final String configURL )
+        {
+            m_runner = runner;
+            m_run = run;
+            m_directory = directory;
+            m_configURL = configURL;
+        }
+
+    }
+
+    /**
+     * A configuration, with the modification time of its file when read.
+     */
+    private static class LoadedConfiguration
+    {
+
+        final Configuration m_configuration;
+        final long m_lastModified;
+
+        LoadedConfiguration( final Configuration configuration, final long lastModified )
+        {
+            m_configuration = configuration;
+            m_lastModified = lastModified;
+        }
+
+    }
+
+}
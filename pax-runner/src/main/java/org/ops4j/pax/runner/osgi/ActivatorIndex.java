@@ -0,0 +1,305 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.osgi;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.osgi.framework.BundleActivator;
+
+/**
+ * Index of the activators known by runner (the ones referenced by runner.properties), by class name. Indexed
+ * activators are created directly, without reflection. Activators that are not indexed (e.g. set via a custom
+ * configuration) are still created reflectively.
+ * Every activator referenced by runner.properties must be indexed, as verified by the build.
+ *
+ * @since 1.8.6
+ */
+public class ActivatorIndex
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( ActivatorIndex.class );
+    /**
+     * Activator factories by activator class name.
+     */
+    private static final Map<String, Factory> FACTORIES = new HashMap<String, Factory>();
+
+    static
+    {
+        // services
+        FACTORIES.put( "org.ops4j.pax.runner.handler.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.runner.handler.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.scanner.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.scanner.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.runner.platform.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.runner.platform.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.apache.felix.bundlerepository.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.apache.felix.bundlerepository.Activator();
+            }
+        }
+        );
+        // handlers
+        FACTORIES.put( "org.ops4j.pax.url.assembly.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.url.assembly.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.url.cache.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.url.cache.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.url.classpath.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.url.classpath.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.url.dir.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.url.dir.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.url.mvn.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.url.mvn.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.url.link.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.url.link.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.url.obr.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.url.obr.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.url.reference.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.url.reference.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.url.war.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.url.war.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.url.wrap.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.url.wrap.internal.Activator();
+            }
+        }
+        );
+        // scanners
+        FACTORIES.put( "org.ops4j.pax.scanner.bundle.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.scanner.bundle.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.scanner.composite.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.scanner.composite.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.scanner.dir.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.scanner.dir.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.scanner.features.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.scanner.features.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.scanner.file.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.scanner.file.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.scanner.obr.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.scanner.obr.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.scanner.pom.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.scanner.pom.internal.Activator();
+            }
+        }
+        );
+        // platforms
+        FACTORIES.put( "org.ops4j.pax.runner.platform.concierge.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.runner.platform.concierge.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.runner.platform.equinox.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.runner.platform.equinox.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.runner.platform.felix.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.runner.platform.felix.internal.Activator();
+            }
+        }
+        );
+        FACTORIES.put( "org.ops4j.pax.runner.platform.knopflerfish.internal.Activator", new Factory()
+        {
+            public BundleActivator create()
+            {
+                return new org.ops4j.pax.runner.platform.knopflerfish.internal.Activator();
+            }
+        }
+        );
+    }
+
+    /**
+     * Utility class.
+     */
+    private ActivatorIndex()
+    {
+        // utility class
+    }
+
+    /**
+     * Creates an activator.
+     *
+     * @param activatorClazz class name of the activator
+     *
+     * @return created activator
+     *
+     * @throws Exception if a not indexed activator cannot be loaded or instantiated
+     */
+    public static BundleActivator createActivator( final String activatorClazz )
+        throws Exception
+    {
+        final Factory factory = FACTORIES.get( activatorClazz );
+        if( factory != null )
+        {
+            return factory.create();
+        }
+        LOGGER.debug( "Activator [" + activatorClazz + "] is not indexed. Loading it reflectively" );
+        return (BundleActivator) Class.forName( activatorClazz ).newInstance();
+    }
+
+    /**
+     * Returns the class names of the indexed activators.
+     *
+     * @return set of class names
+     */
+    public static Set<String> getActivatorClasses()
+    {
+        return Collections.unmodifiableSet( FACTORIES.keySet() );
+    }
+
+    /**
+     * Creates an activator without reflection.
+     */
+    private static interface Factory
+    {
+
+        BundleActivator create();
+
+    }
+
+}
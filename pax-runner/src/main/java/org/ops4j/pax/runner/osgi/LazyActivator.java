@@ -0,0 +1,262 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.osgi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.ops4j.pax.runner.Context;
+import org.ops4j.pax.runner.commons.Trace;
+
+/**
+ * A bundle activator that is started only when the services it registers are first needed.
+ * The services of the class given at construction time registered by the activator are not registered in the service
+ * registry but kept by the lazy activator, as a placeholder is already registered in their place. All other services
+ * are registered as usual.
+ *
+ * @since 1.8.6
+ */
+public class LazyActivator
+{
+
+    /**
+     * Logger.
+     */
+    private static final Log LOGGER = LogFactory.getLog( LazyActivator.class );
+
+    /**
+     * Name of the bundle (handler / scanner).
+     */
+    private final String m_bundleName;
+    /**
+     * Class name of the activator.
+     */
+    private final String m_activatorClazz;
+    /**
+     * The runner context.
+     */
+    private final Context m_context;
+    /**
+     * Class name of services to keep.
+     */
+    private final String m_serviceClazz;
+    /**
+     * Services registered by activator. Null until activator is started.
+     */
+    private volatile List<RegisteredService> m_services;
+    /**
+     * Started activator. Null until activator is started or after stopped.
+     */
+    private BundleActivator m_activator;
+    /**
+     * Bundle context of started activator.
+     */
+    private BundleContext m_bundleContext;
+
+    /**
+     * Creates a new lazy activator.
+     *
+     * @param bundleName     name of the bundle (handler / scanner)
+     * @param activatorClazz class name of the activator
+     * @param context        the running context
+     * @param serviceClazz   class name of the services to keep
+     */
+    public LazyActivator( final String bundleName,
+                          final String activatorClazz,
+                          final Context context,
+                          final String serviceClazz )
+    {
+        m_bundleName = bundleName;
+        m_activatorClazz = activatorClazz;
+        m_context = context;
+        m_serviceClazz = serviceClazz;
+    }
+
+    /**
+     * Returns a service registered by the activator that has the property set to a value (or to an array containing
+     * the value). Starts the activator if not already started.
+     *
+     * @param property service property name
+     * @param value    expected property value
+     *
+     * @return found service
+     *
+     * @throws IllegalStateException if activator did not register such a service
+     */
+    public Object getService( final String property, final String value )
+    {
+        for( RegisteredService service : getServices() )
+        {
+            final Object propertyValue = service.properties == null ? null : service.properties.get( property );
+            if( value.equals( propertyValue )
+                || ( propertyValue instanceof String[] && contains( (String[]) propertyValue, value ) ) )
+            {
+                return service.service;
+            }
+        }
+        throw new IllegalStateException(
+            "[" + m_bundleName + "] did not register a " + m_serviceClazz + " with " + property + "=" + value
+        );
+    }
+
+    /**
+     * Stops the activator, if started. Services kept stay with their placeholders, but are not used anymore.
+     *
+     * @throws Exception re-thrown from activator stop
+     */
+    public synchronized void stop()
+        throws Exception
+    {
+        if( m_activator != null )
+        {
+            LOGGER.debug( "Stopping [" + m_bundleName + "]" );
+            final BundleActivator activator = m_activator;
+            m_activator = null;
+            activator.stop( m_bundleContext );
+            m_bundleContext = null;
+        }
+    }
+
+    /**
+     * Returns the services registered by the activator, starting the activator if not already started.
+     *
+     * @return list of registered services
+     */
+    private List<RegisteredService> getServices()
+    {
+        List<RegisteredService> services = m_services;
+        if( services == null )
+        {
+            synchronized( this )
+            {
+                services = m_services;
+                if( services == null )
+                {
+                    services = start();
+                    m_services = services;
+                }
+            }
+        }
+        return services;
+    }
+
+    /**
+     * Starts the activator.
+     *
+     * @return list of registered services
+     */
+    private List<RegisteredService> start()
+    {
+        LOGGER.debug( "Starting [" + m_bundleName + "] on first use" );
+        final Trace.Span span = Trace.begin( "activator", m_bundleName ).arg( "lazy", "true" );
+        try
+        {
+            final List<RegisteredService> services = new ArrayList<RegisteredService>();
+            final BundleActivator activator = ActivatorIndex.createActivator( m_activatorClazz );
+            final BundleContext bundleContext = new RunnerBundleContext( m_context )
+            {
+                @Override
+                public ServiceRegistration registerService( final String clazz,
+                                                            final Object service,
+                                                            final Dictionary properties )
+                {
+                    if( !m_serviceClazz.equals( clazz ) )
+                    {
+                        return super.registerService( clazz, service, properties );
+                    }
+                    final RegisteredService registered = new RegisteredService( service, properties );
+                    services.add( registered );
+                    return registered;
+                }
+            };
+            activator.start( bundleContext );
+            m_activator = activator;
+            m_bundleContext = bundleContext;
+            return Collections.unmodifiableList( services );
+        }
+        catch( Exception e )
+        {
+            throw new RuntimeException( "Could not create [" + m_bundleName + "]", e );
+        }
+        finally
+        {
+            span.end();
+        }
+    }
+
+    private static boolean contains( final String[] values, final String value )
+    {
+        for( String candidate : values )
+        {
+            if( value.equals( candidate ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A service kept by the lazy activator. Changes of service properties are honored, unregistration is ignored as
+     * the placeholder service will stay registered.
+     */
+    private static class RegisteredService
+        implements ServiceRegistration
+    {
+
+        /**
+         * Registered service.
+         */
+        final Object service;
+        /**
+         * Service properties.
+         */
+        volatile Dictionary properties;
+
+        RegisteredService( final Object service, final Dictionary properties )
+        {
+            this.service = service;
+            this.properties = properties == null ? new Hashtable() : properties;
+        }
+
+        public ServiceReference getReference()
+        {
+            return null;
+        }
+
+        public void setProperties( final Dictionary properties )
+        {
+            this.properties = properties == null ? new Hashtable() : properties;
+        }
+
+        public void unregister()
+        {
+            // placeholder stays registered
+        }
+
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.osgi;
+
+import java.util.List;
+import org.ops4j.pax.scanner.MalformedSpecificationException;
+import org.ops4j.pax.scanner.ProvisionSpec;
+import org.ops4j.pax.scanner.ScannedBundle;
+import org.ops4j.pax.scanner.Scanner;
+import org.ops4j.pax.scanner.ScannerException;
+
+/**
+ * Placeholder scanner registered for the schema of a scanner that was not yet started.
+ * Starts the scanner on first scan and delegates to the scanner it registers for the schema.
+ *
+ * @since 1.8.6
+ */
+public class LazyScanner
+    implements Scanner
+{
+
+    /**
+     * Activator of the scanner.
+     */
+    private final LazyActivator m_activator;
+    /**
+     * Provision schema handled by scanner.
+     */
+    private final String m_schema;
+
+    /**
+     * Creates a new placeholder.
+     *
+     * @param activator activator of the scanner
+     * @param schema    provision schema handled by scanner
+     */
+    public LazyScanner( final LazyActivator activator, final String schema )
+    {
+        m_activator = activator;
+        m_schema = schema;
+    }
+
+    public List<ScannedBundle> scan( final ProvisionSpec provisionSpec )
+        throws MalformedSpecificationException, ScannerException
+    {
+        return ( (Scanner) m_activator.getService( Scanner.SCHEMA_PROPERTY, m_schema ) ).scan( provisionSpec );
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.osgi;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.URLConnection;
+import org.osgi.service.url.URLConstants;
+import org.osgi.service.url.URLStreamHandlerService;
+import org.osgi.service.url.URLStreamHandlerSetter;
+
+/**
+ * Placeholder url stream handler service registered for the protocols of a handler that was not yet started.
+ * Starts the handler on first use and delegates to the url stream handler service registered by the handler for the
+ * protocol of the url.
+ *
+ * @since 1.8.6
+ */
+public class LazyURLStreamHandlerService
+    implements URLStreamHandlerService
+{
+
+    /**
+     * Activator of the handler.
+     */
+    private final LazyActivator m_activator;
+    /**
+     * Protocol used for calls without an url.
+     */
+    private final String m_defaultProtocol;
+
+    /**
+     * Creates a new placeholder.
+     *
+     * @param activator       activator of the handler
+     * @param defaultProtocol protocol used for calls without an url
+     */
+    public LazyURLStreamHandlerService( final LazyActivator activator, final String defaultProtocol )
+    {
+        m_activator = activator;
+        m_defaultProtocol = defaultProtocol;
+    }
+
+    public URLConnection openConnection( final URL url )
+        throws IOException
+    {
+        return getHandler( url ).openConnection( url );
+    }
+
+    public void parseURL( final URLStreamHandlerSetter realHandler,
+                          final URL url,
+                          final String spec,
+                          final int start,
+                          final int limit )
+    {
+        getHandler( url ).parseURL( realHandler, url, spec, start, limit );
+    }
+
+    public String toExternalForm( final URL url )
+    {
+        return getHandler( url ).toExternalForm( url );
+    }
+
+    public boolean equals( final URL url1, final URL url2 )
+    {
+        return getHandler( url1 ).equals( url1, url2 );
+    }
+
+    public int getDefaultPort()
+    {
+        return getHandler( m_defaultProtocol ).getDefaultPort();
+    }
+
+    public InetAddress getHostAddress( final URL url )
+    {
+        return getHandler( url ).getHostAddress( url );
+    }
+
+    public int hashCode( final URL url )
+    {
+        return getHandler( url ).hashCode( url );
+    }
+
+    public boolean hostsEqual( final URL url1, final URL url2 )
+    {
+        return getHandler( url1 ).hostsEqual( url1, url2 );
+    }
+
+    public boolean sameFile( final URL url1, final URL url2 )
+    {
+        return getHandler( url1 ).sameFile( url1, url2 );
+    }
+
+    private URLStreamHandlerService getHandler( final URL url )
+    {
+        return getHandler( url.getProtocol() );
+    }
+
+    private URLStreamHandlerService getHandler( final String protocol )
+    {
+        return (URLStreamHandlerService) m_activator.getService( URLConstants.URL_HANDLER_PROTOCOL, protocol );
+    }
+
+}
@@ -21,7 +21,6 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Dictionary;
 import java.util.List;
-import org.apache.felix.framework.FilterImpl;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.Filter;
@@ -60,7 +59,7 @@ public class RunnerBundleContext
     public Filter createFilter( final String filter )
         throws InvalidSyntaxException
     {
-        return new FilterImpl( filter );
+        return m_context.getServiceRegistry().getFilter( filter );
     }
 
     @Override
@@ -72,7 +71,19 @@ public class RunnerBundleContext
         {
             osgiFilter = createFilter( filter );
         }
-        m_context.getEventDispatcher().addListener( m_bundle, ServiceListener.class, serviceListener, osgiFilter );
+        m_context.getServiceRegistry().addServiceListener( serviceListener, osgiFilter );
+    }
+
+    @Override
+    public void addServiceListener( final ServiceListener serviceListener )
+    {
+        m_context.getServiceRegistry().addServiceListener( serviceListener, null );
+    }
+
+    @Override
+    public void removeServiceListener( final ServiceListener serviceListener )
+    {
+        m_context.getServiceRegistry().removeServiceListener( serviceListener );
     }
 
     @Override
@@ -81,11 +92,19 @@ public class RunnerBundleContext
         try
         {
             final ServiceReference[] references = getServiceReferences( clazz, null );
-            if( references != null && references.length > 0 )
+            // the service with the highest ranking, or the first registered for equal rankings
+            ServiceReference best = null;
+            if( references != null )
             {
-                return references[ 0 ];
+                for( ServiceReference reference : references )
+                {
+                    if( best == null || ( (Comparable) reference ).compareTo( best ) > 0 )
+                    {
+                        best = reference;
+                    }
+                }
             }
-            return null;
+            return best;
         }
         catch( InvalidSyntaxException ignore )
         {
@@ -102,17 +121,13 @@ public class RunnerBundleContext
         {
             osgiFilter = createFilter( filter );
         }
-        //noinspection unchecked
         final List<ServiceReference> references =
             m_context.getServiceRegistry().getServiceReferences( clazz, osgiFilter );
-        if( references != null )
-        {
-            return references.toArray( new ServiceReference[references.size()] );
-        }
-        else
+        if( references.isEmpty() )
         {
             return null;
         }
+        return references.toArray( new ServiceReference[references.size()] );
     }
 
     @Override
@@ -132,6 +147,13 @@ public class RunnerBundleContext
         return m_context.getServiceRegistry().getService( m_bundle, serviceReference );
     }
 
+    @Override
+    public boolean ungetService( final ServiceReference serviceReference )
+    {
+        // services are not tracked per using bundle
+        return true;
+    }
+
     @Override
     public String getProperty( final String key )
     {
@@ -0,0 +1,429 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.osgi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.felix.framework.FilterImpl;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceFactory;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Minimal service registry used by the bundle contexts of runner activators. Services are kept in registration order
+ * and service events are delivered synchronously to the listeners, on the thread that changed the service.
+ * Parsed filters are cached by their string form.
+ *
+ * @since 1.8.6
+ */
+public class RunnerServiceRegistry
+{
+
+    /**
+     * Registered services, in registration order.
+     */
+    private final List<Registration> m_registrations;
+    /**
+     * Registered service listeners.
+     */
+    private final List<Listener> m_listeners;
+    /**
+     * Parsed filters by their string form.
+     */
+    private final ConcurrentMap<String, Filter> m_filters;
+    /**
+     * Id of next registered service.
+     */
+    private final AtomicLong m_nextId;
+
+    /**
+     * Creates a new empty registry.
+     */
+    public RunnerServiceRegistry()
+    {
+        m_registrations = new CopyOnWriteArrayList<Registration>();
+        m_listeners = new CopyOnWriteArrayList<Listener>();
+        m_filters = new ConcurrentHashMap<String, Filter>();
+        m_nextId = new AtomicLong( 1 );
+    }
+
+    /**
+     * Registers a service and notifies matching service listeners.
+     *
+     * @param bundle     bundle registering the service
+     * @param classes    names of classes the service is registered under
+     * @param service    service object or a service factory
+     * @param properties service properties (can be null)
+     *
+     * @return service registration
+     */
+    public ServiceRegistration registerService( final Bundle bundle,
+                                                final String[] classes,
+                                                final Object service,
+                                                final Dictionary properties )
+    {
+        final Registration registration = new Registration( bundle, classes, service, properties );
+        m_registrations.add( registration );
+        fireServiceEvent( new ServiceEvent( ServiceEvent.REGISTERED, registration ) );
+        return registration;
+    }
+
+    /**
+     * Returns the references to services registered under a class and matching a filter.
+     *
+     * @param clazz  class name; if null all services are considered
+     * @param filter filter to match; if null all services are considered
+     *
+     * @return list of references, in registration order (never null)
+     */
+    public List<ServiceReference> getServiceReferences( final String clazz, final Filter filter )
+    {
+        final List<ServiceReference> references = new ArrayList<ServiceReference>();
+        for( Registration registration : m_registrations )
+        {
+            if( ( clazz == null || registration.isRegisteredUnder( clazz ) )
+                && ( filter == null || filter.match( registration ) ) )
+            {
+                references.add( registration );
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Returns the service object of a service reference.
+     *
+     * @param bundle    bundle getting the service
+     * @param reference service reference
+     *
+     * @return service object or null if the service was unregistered
+     */
+    public Object getService( final Bundle bundle, final ServiceReference reference )
+    {
+        if( !( reference instanceof Registration ) )
+        {
+            return null;
+        }
+        return ( (Registration) reference ).getService( bundle );
+    }
+
+    /**
+     * Adds a service listener. Replaces the filter if the listener was already added.
+     *
+     * @param listener service listener
+     * @param filter   filter of services the listener is interested in (can be null)
+     */
+    public void addServiceListener( final ServiceListener listener, final Filter filter )
+    {
+        removeServiceListener( listener );
+        m_listeners.add( new Listener( listener, filter ) );
+    }
+
+    /**
+     * Removes a service listener. Does nothing if the listener was not added.
+     *
+     * @param listener service listener
+     */
+    public void removeServiceListener( final ServiceListener listener )
+    {
+        for( Listener candidate : m_listeners )
+        {
+            if( candidate.listener == listener )
+            {
+                m_listeners.remove( candidate );
+            }
+        }
+    }
+
+    /**
+     * Returns a filter for the string form, parsing it only the first time the string form is used.
+     *
+     * @param filter string form of filter
+     *
+     * @return filter
+     *
+     * @throws InvalidSyntaxException if filter cannot be parsed
+     */
+    public Filter getFilter( final String filter )
+        throws InvalidSyntaxException
+    {
+        Filter parsed = m_filters.get( filter );
+        if( parsed == null )
+        {
+            parsed = new SynchronizedFilter( new FilterImpl( filter ) );
+            m_filters.putIfAbsent( filter, parsed );
+        }
+        return parsed;
+    }
+
+    /**
+     * Notifies listeners interested in the changed service.
+     *
+     * @param event service event
+     */
+    private void fireServiceEvent( final ServiceEvent event )
+    {
+        for( Listener listener : m_listeners )
+        {
+            if( listener.filter == null || listener.filter.match( event.getServiceReference() ) )
+            {
+                listener.listener.serviceChanged( event );
+            }
+        }
+    }
+
+    /**
+     * A service listener together with its filter.
+     */
+    private static class Listener
+    {
+
+        final ServiceListener listener;
+        final Filter filter;
+
+        Listener( final ServiceListener listener, final Filter filter )
+        {
+            this.listener = listener;
+            this.filter = filter;
+        }
+
+    }
+
+    /**
+     * Shared filter. Felix filters keep the evaluated reference in a field while matching so matches are serialized.
+     */
+    private static class SynchronizedFilter
+        implements Filter
+    {
+
+        private final Filter m_filter;
+
+        SynchronizedFilter( final Filter filter )
+        {
+            m_filter = filter;
+        }
+
+        public synchronized boolean match( final ServiceReference reference )
+        {
+            return m_filter.match( reference );
+        }
+
+        public synchronized boolean match( final Dictionary dictionary )
+        {
+            return m_filter.match( dictionary );
+        }
+
+        public synchronized boolean matchCase( final Dictionary dictionary )
+        {
+            return m_filter.matchCase( dictionary );
+        }
+
+        @Override
+        public boolean equals( final Object object )
+        {
+            return object instanceof SynchronizedFilter && m_filter.equals( ( (SynchronizedFilter) object ).m_filter );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return m_filter.hashCode();
+        }
+
+        @Override
+        public String toString()
+        {
+            return m_filter.toString();
+        }
+
+    }
+
+    /**
+     * A registered service, acting as both service registration and service reference.
+     */
+    private class Registration
+        implements ServiceRegistration, ServiceReference, Comparable
+    {
+
+        private final Bundle m_bundle;
+        private final String[] m_classes;
+        private final Object m_service;
+        private final Long m_id;
+        /**
+         * Service properties with keys in lower case, mapped to original key and value.
+         */
+        private volatile Map<String, Object[]> m_properties;
+        /**
+         * Service object created by service factory.
+         */
+        private Object m_factoryService;
+        private volatile boolean m_unregistered;
+
+        Registration( final Bundle bundle, final String[] classes, final Object service, final Dictionary properties )
+        {
+            m_bundle = bundle;
+            m_classes = classes.clone();
+            m_service = service;
+            m_id = m_nextId.getAndIncrement();
+            m_properties = toMap( properties );
+        }
+
+        private Map<String, Object[]> toMap( final Dictionary properties )
+        {
+            final Map<String, Object[]> map = new TreeMap<String, Object[]>();
+            if( properties != null )
+            {
+                for( Enumeration keys = properties.keys(); keys.hasMoreElements(); )
+                {
+                    final Object key = keys.nextElement();
+                    map.put( key.toString().toLowerCase(), new Object[]{ key.toString(), properties.get( key ) } );
+                }
+            }
+            map.put( Constants.OBJECTCLASS.toLowerCase(), new Object[]{ Constants.OBJECTCLASS, m_classes } );
+            map.put( Constants.SERVICE_ID.toLowerCase(), new Object[]{ Constants.SERVICE_ID, m_id } );
+            return Collections.unmodifiableMap( map );
+        }
+
+        boolean isRegisteredUnder( final String clazz )
+        {
+            for( String candidate : m_classes )
+            {
+                if( candidate.equals( clazz ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized Object getService( final Bundle bundle )
+        {
+            if( m_unregistered )
+            {
+                return null;
+            }
+            if( !( m_service instanceof ServiceFactory ) )
+            {
+                return m_service;
+            }
+            if( m_factoryService == null )
+            {
+                m_factoryService = ( (ServiceFactory) m_service ).getService( bundle, this );
+            }
+            return m_factoryService;
+        }
+
+        public ServiceReference getReference()
+        {
+            return this;
+        }
+
+        public void setProperties( final Dictionary properties )
+        {
+            m_properties = toMap( properties );
+            fireServiceEvent( new ServiceEvent( ServiceEvent.MODIFIED, this ) );
+        }
+
+        public void unregister()
+        {
+            if( m_unregistered )
+            {
+                throw new IllegalStateException( "Service already unregistered" );
+            }
+            fireServiceEvent( new ServiceEvent( ServiceEvent.UNREGISTERING, this ) );
+            m_registrations.remove( this );
+            m_unregistered = true;
+        }
+
+        public Object getProperty( final String key )
+        {
+            final Object[] entry = m_properties.get( key.toLowerCase() );
+            return entry == null ? null : entry[ 1 ];
+        }
+
+        public String[] getPropertyKeys()
+        {
+            final List<String> keys = new ArrayList<String>();
+            for( Object[] entry : m_properties.values() )
+            {
+                keys.add( (String) entry[ 0 ] );
+            }
+            return keys.toArray( new String[keys.size()] );
+        }
+
+        public Bundle getBundle()
+        {
+            return m_unregistered ? null : m_bundle;
+        }
+
+        public Bundle[] getUsingBundles()
+        {
+            return null;
+        }
+
+        public boolean isAssignableTo( final Bundle bundle, final String className )
+        {
+            return true;
+        }
+
+        /**
+         * Orders references as by {@link ServiceReference#compareTo(Object)}: a higher ranking compares greater and,
+         * for equal rankings, a lower service id compares greater.
+         */
+        public int compareTo( final Object object )
+        {
+            final Registration other = (Registration) object;
+            final int ranking = ranking( this ) - ranking( other );
+            if( ranking != 0 )
+            {
+                return ranking;
+            }
+            return other.m_id.compareTo( m_id );
+        }
+
+        private int ranking( final Registration registration )
+        {
+            final Object ranking = registration.getProperty( Constants.SERVICE_RANKING );
+            return ranking instanceof Integer ? (Integer) ranking : 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Service " + m_id + " " + Arrays.toString( m_classes );
+        }
+
+    }
+
+}
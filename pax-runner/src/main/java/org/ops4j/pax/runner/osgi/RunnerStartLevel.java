@@ -1,6 +1,5 @@
 package org.ops4j.pax.runner.osgi;
 
-import org.apache.felix.framework.ServiceRegistry;
 import org.osgi.framework.Bundle;
 import org.osgi.service.startlevel.StartLevel;
 
@@ -9,11 +8,11 @@ public class RunnerStartLevel
 {
 
     /**
-     * Installs itself as a service in felix service registry.
+     * Installs itself as a service in runner service registry.
      *
-     * @param serviceRegistry a felix service registry
+     * @param serviceRegistry a runner service registry
      */
-    public static void install( final ServiceRegistry serviceRegistry )
+    public static void install( final RunnerServiceRegistry serviceRegistry )
     {
         serviceRegistry.registerService(
             new UnsupportedBundle(),
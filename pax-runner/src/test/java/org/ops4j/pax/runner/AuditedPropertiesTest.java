@@ -128,4 +128,35 @@ public class AuditedPropertiesTest
         assertEquals( "Filtered property value", "${value", audited.getProperty( "filtered" ) );
     }
 
+    /**
+     * Test that recorded properties are seen only by the recording thread until replayed.
+     */
+    @Test
+    public void recordedProperties()
+        throws Exception
+    {
+        Properties defaults = new Properties();
+        defaults.setProperty( "holder", "value" );
+        final AuditedProperties audited = new AuditedProperties( defaults );
+        audited.startRecording();
+        audited.setProperty( "recorded", "${holder}" );
+        assertEquals( "Recorded property value", "value", audited.getProperty( "recorded" ) );
+        final String[] seenByOtherThread = new String[1];
+        Thread other = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                seenByOtherThread[ 0 ] = audited.getProperty( "recorded" );
+            }
+        };
+        other.start();
+        other.join();
+        assertNull( "Recorded property seen by other thread", seenByOtherThread[ 0 ] );
+        Properties recorded = audited.stopRecording();
+        assertNull( "Recorded property after recording", audited.getProperty( "recorded" ) );
+        audited.replay( recorded );
+        assertEquals( "Replayed property value", "value", audited.getProperty( "recorded" ) );
+    }
+
 }
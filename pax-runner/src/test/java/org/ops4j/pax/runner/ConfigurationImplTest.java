@@ -57,4 +57,20 @@ public class ConfigurationImplTest
         );
     }
 
+    // test that the mvn handler gets the download read timeout of the default configuration
+    @Test
+    public void mvnTimeoutFromReadTimeout()
+    {
+        final Configuration config = new ConfigurationImpl( "classpath:META-INF/runner.properties" );
+        assertEquals(
+            "Default timeout", "60000",
+            new OptionResolverImpl( new CommandLineImpl(), config ).get( "org.ops4j.pax.url.mvn.timeout" )
+        );
+        assertEquals(
+            "Read timeout", "1000",
+            new OptionResolverImpl( new CommandLineImpl( "--readTimeout=1000" ), config )
+                .get( "org.ops4j.pax.url.mvn.timeout" )
+        );
+    }
+
 }
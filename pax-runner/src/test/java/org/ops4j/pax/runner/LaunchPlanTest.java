@@ -0,0 +1,202 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import static org.easymock.EasyMock.*;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+import org.ops4j.pax.runner.platform.JavaRunner;
+
+public class LaunchPlanTest
+{
+
+    private File m_workDir;
+    private File m_planFile;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        m_workDir = File.createTempFile( "runner", "" );
+        m_workDir.delete();
+        m_workDir = new File( m_workDir.getAbsolutePath() );
+        m_workDir.mkdirs();
+        m_workDir.deleteOnExit();
+        m_planFile = new File( m_workDir, LaunchPlan.FILE_NAME );
+    }
+
+    @After
+    public void tearDown()
+    {
+        FileUtils.delete( m_workDir );
+    }
+
+    @Test
+    public void loadMissingPlan()
+    {
+        assertNull( "Plan", LaunchPlan.load( m_planFile ) );
+    }
+
+    @Test
+    public void recordAndExec()
+        throws Exception
+    {
+        write( "bundles/bundle.jar", "bundle" );
+        write( "bundles/bundle.jar.lock", "lock" );
+        write( "felix.jar", "framework" );
+        write( "config.ini", "config" );
+
+        final JavaRunner delegate = createMock( JavaRunner.class );
+        delegate.exec(
+            aryEq( new String[]{ "-Dfelix.config.properties=file:config.ini" } ),
+            aryEq( new String[]{ "felix.jar" } ),
+            eq( "Main" ),
+            aryEq( new String[]{ "--console" } ),
+            eq( "/java" ),
+            eq( m_workDir ),
+            (String[]) isNull()
+        );
+        expectLastCall().times( 2 );
+        replay( delegate );
+
+        new LaunchPlan.Recorder( "fingerprint", m_planFile, delegate ).exec(
+            new String[]{ "-Dfelix.config.properties=file:config.ini" },
+            new String[]{ "felix.jar" },
+            "Main",
+            new String[]{ "--console" },
+            "/java",
+            m_workDir
+        );
+        final LaunchPlan plan = LaunchPlan.load( m_planFile );
+        assertNotNull( "Plan", plan );
+        assertEquals( "Tracked files", 3, plan.getFiles().size() );
+        assertTrue( "Up to date", plan.isUpToDate( "fingerprint" ) );
+        assertFalse( "Up to date with other fingerprint", plan.isUpToDate( "other" ) );
+        plan.exec( delegate );
+
+        verify( delegate );
+    }
+
+    @Test
+    public void changedFile()
+        throws Exception
+    {
+        final File bundle = write( "bundles/bundle.jar", "bundle" );
+        final LaunchPlan plan = new LaunchPlan(
+            "fingerprint", new String[0], new String[0], "Main", new String[0], null, m_workDir, null
+        );
+        plan.trackFiles();
+        plan.save( m_planFile );
+
+        // same content but touched
+        bundle.setLastModified( bundle.lastModified() - 10000 );
+        assertTrue( "Up to date after touch", LaunchPlan.load( m_planFile ).isUpToDate( "fingerprint" ) );
+
+        write( "bundles/bundle.jar", "BUNDLE" );
+        bundle.setLastModified( bundle.lastModified() - 20000 );
+        assertFalse( "Up to date after change", LaunchPlan.load( m_planFile ).isUpToDate( "fingerprint" ) );
+
+        bundle.delete();
+        assertFalse( "Up to date after delete", LaunchPlan.load( m_planFile ).isUpToDate( "fingerprint" ) );
+    }
+
+    @Test
+    public void fingerprintCoversProvisionSources()
+        throws Exception
+    {
+        final File listed = write( "provision/listed.jar", "listed" );
+        write( "provision/dir/bundle.jar", "bundle" );
+        write(
+            "provision/bundles.txt",
+            "# comment\n-Dsome.property=value\nmvn:org.ops4j/bundle/1.0\n" + listed.toURL().toExternalForm() + "@5\n"
+        );
+        final Configuration config = createMock( Configuration.class );
+        expect( config.getPropertyNames( ".*" ) ).andReturn( new String[0] ).anyTimes();
+        replay( config );
+
+        final String file = fingerprint( config, new File( m_workDir, "provision/bundles.txt" ).getPath() );
+        final String dir = fingerprint( config, "scan-dir:" + new File( m_workDir, "provision/dir" ).toURL() );
+        assertNotNull( "Fingerprint of provision file", file );
+        assertEquals(
+            "Fingerprint of unchanged provision file",
+            file, fingerprint( config, new File( m_workDir, "provision/bundles.txt" ).getPath() )
+        );
+
+        write( "provision/listed.jar", "changed" );
+        write( "provision/dir/bundle.jar", "changed" );
+        assertFalse(
+            "Fingerprint changed after change of listed file",
+            file.equals( fingerprint( config, new File( m_workDir, "provision/bundles.txt" ).getPath() ) )
+        );
+        assertFalse(
+            "Fingerprint changed after change of scanned directory",
+            dir.equals( fingerprint( config, "scan-dir:" + new File( m_workDir, "provision/dir" ).toURL() ) )
+        );
+
+        assertNull( "Fingerprint with remote source", fingerprint( config, "http://localhost/bundle.jar" ) );
+        assertNull( "Fingerprint with snapshot", fingerprint( config, "wrap:mvn:org.ops4j/bundle/1.0-SNAPSHOT" ) );
+        assertNull( "Fingerprint without version", fingerprint( config, "mvn:org.ops4j/bundle" ) );
+        assertNull(
+            "Fingerprint with released composite", fingerprint( config, "scan-composite:mvn:org.ops4j/profile/1.0" )
+        );
+        assertNull( "Fingerprint with released pom", fingerprint( config, "scan-pom:mvn:org.ops4j/project/1.0/pom" ) );
+        assertNull(
+            "Fingerprint with profile",
+            LaunchPlan.fingerprint(
+                "version", new CommandLineImpl(), config,
+                Arrays.asList( "scan-composite:mvn:org.ops4j.pax.runner.profiles/log//composite" )
+            )
+        );
+        write( "provision/remote.txt", "http://localhost/bundle.jar\n" );
+        assertNull(
+            "Fingerprint with remote listed source",
+            fingerprint( config, "scan-file:" + new File( m_workDir, "provision/remote.txt" ).toURL() )
+        );
+    }
+
+    private static String fingerprint( final Configuration config, final String argument )
+        throws IOException
+    {
+        return LaunchPlan.fingerprint( "version", new CommandLineImpl( argument ), config, null );
+    }
+
+    private File write( final String path, final String content )
+        throws IOException
+    {
+        final File file = new File( m_workDir, path );
+        file.getParentFile().mkdirs();
+        final FileOutputStream out = new FileOutputStream( file );
+        try
+        {
+            out.write( content.getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+
+}
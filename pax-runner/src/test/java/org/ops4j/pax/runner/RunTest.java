@@ -18,23 +18,37 @@
 package org.ops4j.pax.runner;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Hashtable;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import static org.easymock.EasyMock.*;
+import org.apache.commons.logging.Log;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
+import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.ServiceReference;
+import org.osgi.service.url.URLConstants;
+import org.osgi.service.url.URLStreamHandlerService;
 import static org.ops4j.pax.runner.CommandLine.*;
+import org.ops4j.pax.runner.commons.Trace;
+import org.ops4j.pax.runner.osgi.RunnerBundleContext;
+import org.ops4j.pax.runner.platform.DownloadQueue;
 import org.ops4j.pax.runner.platform.JavaRunner;
 import org.ops4j.pax.runner.platform.Platform;
+import org.ops4j.pax.runner.platform.QueueingPlatform;
 import org.ops4j.pax.runner.platform.SystemFileReference;
 import org.ops4j.pax.scanner.InstallableBundles;
 import org.ops4j.pax.scanner.MalformedSpecificationException;
 import org.ops4j.pax.scanner.ProvisionService;
 import org.ops4j.pax.scanner.ScannedBundle;
+import org.ops4j.pax.scanner.ProvisionSpec;
+import org.ops4j.pax.scanner.ScannedBundleBean;
+import org.ops4j.pax.scanner.Scanner;
 import org.ops4j.pax.scanner.ScannerException;
 import org.ops4j.pax.scanner.UnsupportedSchemaException;
 
@@ -83,23 +97,41 @@ public class RunTest
     @Test
     public void startFlow()
     {
+        expect( m_resolver.get( "log" ) ).andReturn( null );
+        m_recorder.record( "startTrace()" );
         m_recorder.record( "cleanup()" );
+        m_recorder.record( "launchPlanFingerprint()" );
         m_recorder.record( "installServices()" );
         m_recorder.record( "installHandlers()" );
         m_recorder.record( "installScanners()" );
+        m_recorder.record( "installPlatform()" );
+        m_recorder.record( "createDownloadQueue()" );
         m_recorder.record( "installBundles()" );
         m_recorder.record( "createJavaRunner()" );
-        m_recorder.record( "installPlatform()" );
         m_recorder.record( "determineSystemFiles()" );
         replay( m_commandLine, m_config, m_recorder, m_resolver, m_bundleContext );
         new Run()
         {
+            @Override
+            Trace startTrace( final OptionResolver resolver )
+            {
+                m_recorder.record( "startTrace()" );
+                return null;
+            }
+
             @Override
             void cleanup( final OptionResolver resolver )
             {
                 m_recorder.record( "cleanup()" );
             }
 
+            @Override
+            String launchPlanFingerprint( final Context context )
+            {
+                m_recorder.record( "launchPlanFingerprint()" );
+                return null;
+            }
+
             @Override
             void installHandlers( final Context context )
             {
@@ -120,6 +152,13 @@ public class RunTest
                 return m_platform;
             }
 
+            @Override
+            DownloadQueue createDownloadQueue( final Platform platform )
+            {
+                m_recorder.record( "createDownloadQueue()" );
+                return null;
+            }
+
             @Override
             void installBundles( final ProvisionService provisionService, final ProvisionSchemaResolver schemaResolver,
                                  final Context context )
@@ -191,7 +230,9 @@ public class RunTest
         expect( m_resolver.get( "handlers" ) ).andReturn( "handler.1,handler.2" );
         expect( m_config.getProperty( "handler.service" ) ).andReturn( "handler.service.Activator" );
         expect( m_config.getProperty( "handler.1" ) ).andReturn( "handler.1.Activator" );
+        expect( m_config.getProperty( "handler.1.protocols" ) ).andReturn( null );
         expect( m_config.getProperty( "handler.2" ) ).andReturn( "handler.2.Activator" );
+        expect( m_config.getProperty( "handler.2.protocols" ) ).andReturn( null );
 
         m_recorder.record( "handler.service.Activator" );
         m_recorder.record( "handler.1.Activator" );
@@ -205,7 +246,10 @@ public class RunTest
     @Test( expected = ConfigurationException.class )
     public void startWithInvalidHandlers()
     {
+        expect( m_resolver.get( "log" ) ).andReturn( null );
+        expect( m_resolver.get( "trace" ) ).andReturn( null );
         expect( m_resolver.get( "clean" ) ).andReturn( null );
+        expect( m_resolver.get( "launchPlan" ) ).andReturn( "false" );
         expect( m_resolver.get( "executor" ) ).andReturn( null );
         expect( m_resolver.get( "services" ) ).andReturn( null );
         expect( m_resolver.get( "handlers" ) ).andReturn( "handler.1" );
@@ -243,6 +287,7 @@ public class RunTest
 
         expect( m_resolver.get( "handlers" ) ).andReturn( "handler.1" );
         expect( m_config.getProperty( "handler.1" ) ).andReturn( "handler.1.Activator" );
+        expect( m_config.getProperty( "handler.1.protocols" ) ).andReturn( null );
         expect( m_config.getProperty( "handler.service" ) ).andReturn( null );
 
         m_recorder.record( "handler.1.Activator" );
@@ -290,6 +335,7 @@ public class RunTest
 
         expect( m_resolver.getMandatory( "scanners" ) ).andReturn( "scanner.1" );
         expect( m_config.getProperty( "scanner.1" ) ).andReturn( "scanner.1.Activator" );
+        expect( m_config.getProperty( "scanner.1.schema" ) ).andReturn( null );
         expect( m_config.getProperty( "provision.service" ) ).andReturn( null );
 
         m_recorder.record( "scanner.1.Activator" );
@@ -339,7 +385,9 @@ public class RunTest
         expect( m_resolver.getMandatory( "scanners" ) ).andReturn( "scanner.1,scanner.2" );
         expect( m_config.getProperty( "provision.service" ) ).andReturn( "provision.service.Activator" );
         expect( m_config.getProperty( "scanner.1" ) ).andReturn( "scanner.1.Activator" );
+        expect( m_config.getProperty( "scanner.1.schema" ) ).andReturn( null );
         expect( m_config.getProperty( "scanner.2" ) ).andReturn( "scanner.2.Activator" );
+        expect( m_config.getProperty( "scanner.2.schema" ) ).andReturn( null );
         expect( m_bundleContext.getServiceReference( ProvisionService.class.getName() ) ).andReturn(
             createMock( ServiceReference.class )
         );
@@ -354,6 +402,88 @@ public class RunTest
         verify( m_commandLine, m_config, m_resolver, m_recorder, m_bundleContext );
     }
 
+    // test that scanners with a known schema are only started on first scan
+    @Test
+    public void startWithLazyScanners()
+        throws Exception
+    {
+        Run run = new Run()
+        {
+            @Override
+            BundleContext createActivator( final String handlerName, final String activatorName, final Context context )
+            {
+                m_recorder.record( activatorName );
+                return m_bundleContext;
+            }
+        };
+        Context context = run.createContext( m_commandLine, m_config, m_resolver );
+
+        expect( m_resolver.getMandatory( "scanners" ) ).andReturn( "scanner.1" );
+        expect( m_config.getProperty( "provision.service" ) ).andReturn( "provision.service.Activator" );
+        expect( m_config.getProperty( "scanner.1" ) ).andReturn( LazyScannerActivator.class.getName() );
+        expect( m_config.getProperty( "scanner.1.schema" ) ).andReturn( "scan-lazy" );
+        expect( m_bundleContext.getServiceReference( ProvisionService.class.getName() ) ).andReturn(
+            createMock( ServiceReference.class )
+        );
+        expect( m_bundleContext.getService( (ServiceReference) notNull() ) ).andReturn( m_provisionService );
+
+        m_recorder.record( "provision.service.Activator" );
+
+        replay( m_commandLine, m_config, m_resolver, m_recorder, m_bundleContext );
+        LazyScannerActivator.starts = 0;
+        run.installScanners( context );
+        verify( m_commandLine, m_config, m_resolver, m_recorder, m_bundleContext );
+
+        final BundleContext bundleContext = new RunnerBundleContext( context );
+        final ServiceReference[] references = bundleContext.getServiceReferences(
+            Scanner.class.getName(), "(" + Scanner.SCHEMA_PROPERTY + "=scan-lazy)"
+        );
+        assertNotNull( "Scanner placeholder", references );
+        assertEquals( "Scanner placeholders", 1, references.length );
+        assertEquals( "Starts before scan", 0, LazyScannerActivator.starts );
+        final Scanner scanner = (Scanner) bundleContext.getService( references[ 0 ] );
+        assertEquals( "Scanned", 1, scanner.scan( null ).size() );
+        assertEquals( "Scanned", 1, scanner.scan( null ).size() );
+        assertEquals( "Starts after scan", 1, LazyScannerActivator.starts );
+    }
+
+    // test that handlers with known protocols are registered as placeholders without starting them
+    @Test
+    public void startWithLazyHandlers()
+        throws Exception
+    {
+        Run run = new Run()
+        {
+            @Override
+            BundleContext createActivator( final String handlerName, final String activatorName, final Context context )
+            {
+                m_recorder.record( activatorName );
+                return m_bundleContext;
+            }
+        };
+        Context context = run.createContext( m_commandLine, m_config, m_resolver );
+
+        expect( m_resolver.get( "handlers" ) ).andReturn( "handler.1" );
+        expect( m_config.getProperty( "handler.service" ) ).andReturn( "handler.service.Activator" );
+        expect( m_config.getProperty( "handler.1" ) ).andReturn( "handler.1.Activator" );
+        expect( m_config.getProperty( "handler.1.protocols" ) ).andReturn( "lazy1, lazy2" );
+
+        m_recorder.record( "handler.service.Activator" );
+
+        replay( m_commandLine, m_config, m_resolver, m_recorder, m_bundleContext );
+        run.installHandlers( context );
+        verify( m_commandLine, m_config, m_resolver, m_recorder, m_bundleContext );
+
+        final ServiceReference reference =
+            new RunnerBundleContext( context ).getServiceReference( URLStreamHandlerService.class.getName() );
+        assertNotNull( "Handler placeholder", reference );
+        assertArrayEquals(
+            "Protocols",
+            new String[]{ "lazy1", "lazy2" },
+            (String[]) reference.getProperty( URLConstants.URL_HANDLER_PROTOCOL )
+        );
+    }
+
     // test that we getOption a runtime exception not a NullPointerException
     @Test( expected = RuntimeException.class )
     public void installBundlesWithNullProvisionService()
@@ -379,6 +509,7 @@ public class RunTest
         List<ScannedBundle> scannedBundles = new ArrayList<ScannedBundle>();
 
         expect( m_resolver.get( OPTION_PROFILES ) ).andReturn( null );
+        expect( m_resolver.get( OPTION_SCAN_THREADS ) ).andReturn( null );
         List<String> args = new ArrayList<String>();
         args.add( "scan-file:file:bundles1.txt" );
         args.add( "scan-file:file:bundles2.txt" );
@@ -413,6 +544,7 @@ public class RunTest
         ProvisionSchemaResolver schemaResolver = createMock( ProvisionSchemaResolver.class );
 
         expect( m_resolver.get( OPTION_PROFILES ) ).andReturn( null );
+        expect( m_resolver.get( OPTION_SCAN_THREADS ) ).andReturn( null );
         List<String> args = new ArrayList<String>();
         args.add( "bundles.txt" );
         expect( m_commandLine.getArguments() ).andReturn( args );
@@ -431,6 +563,166 @@ public class RunTest
         );
     }
 
+    // test that specs scanned concurrently are installed in the order of specs, without duplicates
+    @Test
+    public void installBundlesScannedConcurrently()
+        throws Exception
+    {
+        Run run = new Run();
+        Context context = run.createContext( m_commandLine, m_config, m_resolver );
+
+        final ScannedBundle bundle1 = new ScannedBundleBean( "file:bundle1.jar", null, null, null );
+        final ScannedBundle bundle2 = new ScannedBundleBean( "file:bundle2.jar", null, null, null );
+        final ScannedBundle bundle3 = new ScannedBundleBean( "file:bundle3.jar", null, null, null );
+        final List<List<ScannedBundle>> installed = new ArrayList<List<ScannedBundle>>();
+        final ProvisionService provisionService = new StubProvisionService( installed )
+        {
+            public List<ScannedBundle> scan( final String spec )
+            {
+                if( "slow".equals( spec ) )
+                {
+                    // finish after the second spec
+                    sleep( 200 );
+                    return Arrays.asList( bundle1, bundle2 );
+                }
+                return Arrays.asList( bundle2, bundle3 );
+            }
+        };
+
+        expect( m_resolver.get( OPTION_PROFILES ) ).andReturn( null );
+        expect( m_resolver.get( OPTION_SCAN_THREADS ) ).andReturn( "2" );
+        expect( m_commandLine.getArguments() ).andReturn( Arrays.asList( "slow", "fast" ) );
+
+        replay( m_commandLine, m_config, m_resolver );
+        run.installBundles( provisionService, null, context );
+        verify( m_commandLine, m_config, m_resolver );
+        assertEquals( "Installed bundles", Arrays.asList( Arrays.asList( bundle1, bundle2 ), Arrays.asList( bundle3 ) ),
+                      installed
+        );
+    }
+
+    // test that specs are scanned again if a previous spec sets system properties
+    @Test
+    public void installBundlesScannedConcurrentlyWithSystemProperties()
+        throws Exception
+    {
+        Run run = new Run();
+        Context context = run.createContext( m_commandLine, m_config, m_resolver );
+
+        final List<List<ScannedBundle>> installed = new ArrayList<List<ScannedBundle>>();
+        final ProvisionService provisionService = new StubProvisionService( installed )
+        {
+            public List<ScannedBundle> scan( final String spec )
+            {
+                if( "setter".equals( spec ) )
+                {
+                    sleep( 200 );
+                    System.setProperty( "run.test.bundle", "file:set.jar" );
+                    return Collections.emptyList();
+                }
+                final ScannedBundle bundle = new ScannedBundleBean(
+                    System.getProperty( "run.test.bundle", "file:unset.jar" ), null, null, null
+                );
+                return Arrays.asList( bundle );
+            }
+        };
+
+        expect( m_resolver.get( OPTION_PROFILES ) ).andReturn( null );
+        expect( m_resolver.get( OPTION_SCAN_THREADS ) ).andReturn( "2" );
+        expect( m_commandLine.getArguments() ).andReturn( Arrays.asList( "setter", "reader" ) );
+
+        replay( m_commandLine, m_config, m_resolver );
+        run.installBundles( provisionService, null, context );
+        verify( m_commandLine, m_config, m_resolver );
+        assertEquals( "Bundle of second spec", "file:set.jar", installed.get( 1 ).get( 0 ).getLocation() );
+        assertEquals( "System property", "file:set.jar", context.getSystemProperties().getProperty( "run.test.bundle" ) );
+        assertNull( "System property after install", System.getProperty( "run.test.bundle" ) );
+    }
+
+    // test that a download queue is created only by platforms that can queue downloads
+    @Test
+    public void createDownloadQueue()
+        throws Exception
+    {
+        final Platform platform = createMock( Platform.class );
+        final QueueingPlatform queueingPlatform = createMock( QueueingPlatform.class );
+        final DownloadQueue downloadQueue = createMock( DownloadQueue.class );
+        expect( queueingPlatform.createDownloadQueue( null ) ).andReturn( downloadQueue );
+
+        replay( platform, queueingPlatform, downloadQueue );
+        final Run run = new Run();
+        assertNull( "No platform", run.createDownloadQueue( null ) );
+        assertNull( "Platform without queue", run.createDownloadQueue( platform ) );
+        assertSame( "Queue", downloadQueue, run.createDownloadQueue( queueingPlatform ) );
+        verify( platform, queueingPlatform, downloadQueue );
+    }
+
+    // test that runs started in the same time in parallel threads see only the system properties they set and log at
+    // their own level
+    @Test
+    public void startConcurrently()
+        throws Exception
+    {
+        final int runs = 32;
+        final Log processLogger = Run.getLogger();
+        final boolean processLogLevel = processLogger.isInfoEnabled();
+        final CountDownLatch startGate = new CountDownLatch( 1 );
+        final List<Throwable> failures = Collections.synchronizedList( new ArrayList<Throwable>() );
+        final Context[] contexts = new Context[runs];
+        final List<List<List<ScannedBundle>>> installed = new ArrayList<List<List<ScannedBundle>>>();
+        final Thread[] threads = new Thread[runs];
+        for( int i = 0; i < runs; i++ )
+        {
+            final int index = i;
+            installed.add( new ArrayList<List<ScannedBundle>>() );
+            threads[i] = new Thread( "Run " + i )
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        final CommandLine commandLine = new CommandLineImpl(
+                            "--" + OPTION_SCAN_THREADS + "=2", "--log=" + ( index % 2 == 0 ? "warning" : "error" ),
+                            "scan-setter:" + index, "scan-reader:"
+                        );
+                        final Configuration config = createNiceMock( Configuration.class );
+                        final Platform platform = createNiceMock( Platform.class );
+                        replay( config, platform );
+                        startGate.await();
+                        new ConcurrentRun( index, installed.get( index ), platform, contexts ).start(
+                            commandLine, config, new OptionResolverImpl( commandLine, config )
+                        );
+                    }
+                    catch( Throwable t )
+                    {
+                        failures.add( t );
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        startGate.countDown();
+        for( Thread thread : threads )
+        {
+            thread.join( 30000 );
+        }
+        assertEquals( "Failures", Collections.<Throwable>emptyList(), failures );
+        for( int i = 0; i < runs; i++ )
+        {
+            final String expected = "file:run-" + i + ".jar";
+            assertEquals( "Bundle of run " + i, expected, installed.get( i ).get( 1 ).get( 0 ).getLocation() );
+            assertEquals(
+                "System property of run " + i, expected,
+                contexts[i].getSystemProperties().getProperty( "run.test.bundle" )
+            );
+            assertEquals( "Log level of run " + i, i % 2 == 0, contexts[i].getLogger().isWarnEnabled() );
+        }
+        assertSame( "Process wide logger", processLogger, Run.getLogger() );
+        assertEquals( "Process wide log level", processLogLevel, processLogger.isInfoEnabled() );
+        assertNull( "System property after runs", System.getProperty( "run.test.bundle" ) );
+    }
+
     // test bundles installation with no arguments and no default configuration
     // expected to just pass and do nothing
     public void installBundlesWithNoArgumentsAndNoDefault()
@@ -448,4 +740,163 @@ public class RunTest
         verify( m_commandLine, m_config, m_resolver, m_recorder, m_bundleContext, provisionService );
     }
 
+    /**
+     * Run that scans with a stub provision service and records its context instead of starting the platform.
+     */
+    private static class ConcurrentRun
+        extends Run
+    {
+
+        private final int m_index;
+        private final List<List<ScannedBundle>> m_installed;
+        private final Platform m_platform;
+        private final Context[] m_contexts;
+
+        ConcurrentRun( final int index, final List<List<ScannedBundle>> installed, final Platform platform,
+                       final Context[] contexts )
+        {
+            m_index = index;
+            m_installed = installed;
+            m_platform = platform;
+            m_contexts = contexts;
+        }
+
+        @Override
+        String launchPlanFingerprint( final Context context )
+        {
+            return null;
+        }
+
+        @Override
+        void installServices( final Context context )
+        {
+            // no additional services
+        }
+
+        @Override
+        void installHandlers( final Context context )
+        {
+            // no handlers
+        }
+
+        @Override
+        ProvisionService installScanners( final Context context )
+        {
+            return new StubProvisionService( m_installed )
+            {
+                public List<ScannedBundle> scan( final String spec )
+                {
+                    if( spec.startsWith( "scan-setter:" ) )
+                    {
+                        sleep( 20 );
+                        System.setProperty( "run.test.bundle", "file:run-" + m_index + ".jar" );
+                        return Collections.emptyList();
+                    }
+                    final ScannedBundle bundle = new ScannedBundleBean(
+                        System.getProperty( "run.test.bundle", "file:unset.jar" ), null, null, null
+                    );
+                    return Arrays.asList( bundle );
+                }
+            };
+        }
+
+        @Override
+        Platform installPlatform( final Context context )
+        {
+            synchronized( m_contexts )
+            {
+                m_contexts[m_index] = context;
+            }
+            return m_platform;
+        }
+
+        @Override
+        DownloadQueue createDownloadQueue( final Platform platform )
+        {
+            return null;
+        }
+
+        @Override
+        JavaRunner createJavaRunner( final OptionResolver resolver )
+        {
+            return null;
+        }
+
+        @Override
+        List<SystemFileReference> determineSystemFiles( final Context context )
+        {
+            return Collections.emptyList();
+        }
+
+    }
+
+    /**
+     * Provision service that records the bundles to be installed.
+     */
+    private static abstract class StubProvisionService
+        implements ProvisionService
+    {
+
+        private final List<List<ScannedBundle>> m_installed;
+
+        StubProvisionService( final List<List<ScannedBundle>> installed )
+        {
+            m_installed = installed;
+        }
+
+        public InstallableBundles wrap( final List<ScannedBundle> scannedBundles )
+        {
+            m_installed.add( scannedBundles );
+            final InstallableBundles installables = createNiceMock( InstallableBundles.class );
+            replay( installables );
+            return installables;
+        }
+
+        static void sleep( final long millis )
+        {
+            try
+            {
+                Thread.sleep( millis );
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+    public static class LazyScannerActivator
+        implements BundleActivator
+    {
+
+        static int starts;
+
+        public void start( final BundleContext bundleContext )
+        {
+            starts++;
+            final Hashtable<String, Object> properties = new Hashtable<String, Object>();
+            properties.put( Scanner.SCHEMA_PROPERTY, "scan-lazy" );
+            bundleContext.registerService(
+                Scanner.class.getName(),
+                new Scanner()
+                {
+                    public List<ScannedBundle> scan( final ProvisionSpec provisionSpec )
+                    {
+                        return Collections.<ScannedBundle>singletonList(
+                            new ScannedBundleBean( "file:lazy.jar", null, null, null )
+                        );
+                    }
+                },
+                properties
+            );
+        }
+
+        public void stop( final BundleContext bundleContext )
+        {
+            // nothing to stop
+        }
+
+    }
+
 }
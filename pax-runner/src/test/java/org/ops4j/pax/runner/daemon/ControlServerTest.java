@@ -0,0 +1,206 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.daemon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Test;
+
+public class ControlServerTest
+{
+
+    private List<String> m_commands;
+    private ControlServer m_server;
+    private Thread m_serverThread;
+    private int m_port;
+
+    @After
+    public void tearDown()
+        throws InterruptedException
+    {
+        if( m_server != null )
+        {
+            m_server.close();
+            m_serverThread.join( 5000 );
+        }
+    }
+
+    // normal flow: several commands on the same connection, each with a response
+    @Test
+    public void commandsFramedByLines()
+        throws Exception
+    {
+        start( 0, 100 );
+        final Socket socket = connect();
+        final BufferedReader in = reader( socket );
+        write( socket, "status\r\nshutdown 500\n" );
+        assertEquals( "First response", "OK status", in.readLine() );
+        assertEquals( "Second response", "OK shutdown 500", in.readLine() );
+        write( socket, "metr" );
+        write( socket, "ics\n" );
+        assertEquals( "Command in two writes", "OK metrics", in.readLine() );
+        assertEquals( "Commands", Arrays.asList( "status", "shutdown 500", "metrics" ), m_commands );
+        socket.close();
+    }
+
+    // test that a command not terminated by a new line is executed when the client closes its output
+    @Test
+    public void commandAtEndOfStream()
+        throws Exception
+    {
+        start( 0, 100 );
+        final Socket socket = connect();
+        final BufferedReader in = reader( socket );
+        write( socket, "status\nshutdown" );
+        socket.shutdownOutput();
+        assertEquals( "First response", "OK status", in.readLine() );
+        assertEquals( "Last response", "OK shutdown", in.readLine() );
+        assertNull( "Connection closed", in.readLine() );
+        assertEquals( "Commands", Arrays.asList( "status", "shutdown" ), m_commands );
+        socket.close();
+    }
+
+    // test that a command longer then the frame limit is rejected and the connection closed
+    @Test
+    public void commandTooLong()
+        throws Exception
+    {
+        start( 0, 100 );
+        final Socket socket = connect();
+        final BufferedReader in = reader( socket );
+        final char[] command = new char[ControlServer.MAX_FRAME + 10];
+        Arrays.fill( command, 'x' );
+        write( socket, new String( command ) );
+        assertEquals( "Response", "ERROR Command too long", in.readLine() );
+        assertNull( "Connection closed", in.readLine() );
+        assertEquals( "Commands", Collections.emptyList(), m_commands );
+        socket.close();
+    }
+
+    // test that idle connections are closed after the timeout
+    @Test
+    public void idleConnectionClosed()
+        throws Exception
+    {
+        start( 200, 100 );
+        final Socket socket = connect();
+        socket.setSoTimeout( 5000 );
+        final long start = System.currentTimeMillis();
+        assertEquals( "End of stream", -1, socket.getInputStream().read() );
+        assertTrue( "Closed after timeout", System.currentTimeMillis() - start >= 150 );
+        socket.close();
+    }
+
+    // test that connections over the rate limit are closed as soon as accepted
+    @Test
+    public void connectionRateLimited()
+        throws Exception
+    {
+        start( 0, 2 );
+        int served = 0;
+        for( int i = 0; i < 6; i++ )
+        {
+            final Socket socket = connect();
+            try
+            {
+                write( socket, "status\n" );
+                if( "OK status".equals( reader( socket ).readLine() ) )
+                {
+                    served++;
+                }
+            }
+            catch( IOException ignore )
+            {
+                // rejected
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+        assertTrue( "Served connections " + served, served >= 2 && served < 6 );
+        assertTrue( "Metrics " + m_server.getMetrics(), m_server.getMetrics().contains( "rejected=" + ( 6 - served ) ) );
+    }
+
+    private void start( final int idleTimeout, final int maxConnectionRate )
+        throws IOException
+    {
+        m_commands = Collections.synchronizedList( new ArrayList<String>() );
+        m_server = new ControlServer(
+            new ControlServer.Handler()
+            {
+                public String getPasswordHash()
+                {
+                    return null;
+                }
+
+                public String execute( final String command, final String argument )
+                {
+                    final String frame = argument == null ? command : command + " " + argument;
+                    m_commands.add( frame );
+                    return "OK " + frame;
+                }
+            },
+            idleTimeout,
+            maxConnectionRate
+        );
+        m_port = m_server.open( 0 );
+        m_serverThread = new Thread( "Control Server" )
+        {
+            @Override
+            public void run()
+            {
+                m_server.run();
+            }
+        };
+        m_serverThread.start();
+    }
+
+    private Socket connect()
+        throws IOException
+    {
+        final Socket socket = new Socket( InetAddress.getByName( null ), m_port );
+        socket.setSoTimeout( 5000 );
+        return socket;
+    }
+
+    private static BufferedReader reader( final Socket socket )
+        throws IOException
+    {
+        return new BufferedReader( new InputStreamReader( socket.getInputStream(), "UTF-8" ) );
+    }
+
+    private static void write( final Socket socket, final String text )
+        throws IOException
+    {
+        final OutputStream out = socket.getOutputStream();
+        out.write( text.getBytes( "UTF-8" ) );
+        out.flush();
+    }
+
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.daemon;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLStreamHandlerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ops4j.io.FileUtils;
+import org.ops4j.pax.runner.CommandLine;
+import org.ops4j.pax.runner.Configuration;
+import org.ops4j.pax.runner.Run;
+import org.ops4j.pax.runner.handler.internal.CompositeURLStreamHandlerFactory;
+import org.ops4j.pax.runner.handler.internal.URLUtils;
+import org.ops4j.pax.runner.platform.BundleReference;
+import org.ops4j.pax.runner.platform.JavaRunner;
+import org.ops4j.pax.runner.platform.Platform;
+import org.ops4j.pax.runner.platform.PlatformException;
+import org.ops4j.pax.runner.platform.StoppableJavaRunner;
+import org.ops4j.pax.runner.platform.SystemFileReference;
+import org.osgi.framework.BundleActivator;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+
+public class LaunchDaemonTest
+{
+
+    private List<List<String>> m_runs;
+    private List<Configuration> m_configurations;
+    private List<StubRunner> m_runners;
+    private String m_failure;
+    private File m_tokenFile;
+    private LaunchDaemon m_daemon;
+    private int m_port;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        m_runs = Collections.synchronizedList( new ArrayList<List<String>>() );
+        m_configurations = Collections.synchronizedList( new ArrayList<Configuration>() );
+        m_runners = Collections.synchronizedList( new ArrayList<StubRunner>() );
+        m_tokenFile = File.createTempFile( "launch", ".token" );
+        m_daemon = new LaunchDaemon( m_tokenFile )
+        {
+            @Override
+            StoppableJavaRunner createJavaRunner()
+            {
+                final StubRunner runner = new StubRunner();
+                m_runners.add( runner );
+                return runner;
+            }
+
+            @Override
+            Run run( final CommandLine commandLine, final Configuration config, final StoppableJavaRunner runner )
+            {
+                if( m_failure != null )
+                {
+                    throw new RuntimeException( m_failure );
+                }
+                m_runs.add( commandLine.getArguments() );
+                m_configurations.add( config );
+                return null;
+            }
+        };
+        m_port = m_daemon.start( 0 );
+    }
+
+    @After
+    public void tearDown()
+    {
+        m_daemon.stop();
+        m_tokenFile.delete();
+    }
+
+    // normal flow: launch, see it in status, stop it
+    @Test
+    public void launchStatusStop()
+        throws IOException
+    {
+        assertEquals( "Launch", "OK 1", request( "launch", "scan-file:bundles.txt" ) );
+        assertEquals( "Arguments", Arrays.asList( "scan-file:bundles.txt" ), m_runs.get( 0 ) );
+        assertEquals( "Status", "OK [1]", request( "status" ) );
+        assertEquals( "Stop", "OK", request( "stop", "1" ) );
+        assertTrue( "Runner shut down", m_runners.get( 0 ).m_shutdown );
+        assertEquals( "Status after stop", "OK []", request( "status" ) );
+    }
+
+    // test that the configuration is read once and reused by the next launches
+    @Test
+    public void configurationReused()
+        throws IOException
+    {
+        assertEquals( "First launch", "OK 1", request( "launch" ) );
+        assertEquals( "Second launch", "OK 2", request( "launch", "--dir=runner2" ) );
+        assertNotNull( "Configuration", m_configurations.get( 0 ) );
+        assertSame( "Reused configuration", m_configurations.get( 0 ), m_configurations.get( 1 ) );
+        assertEquals( "Status", "OK [1, 2]", request( "status" ) );
+    }
+
+    // test that a failed launch is reported and its runner shut down
+    @Test
+    public void launchFailure()
+        throws IOException
+    {
+        m_failure = "Could not resolve a platform";
+        assertEquals( "Launch", "ERROR Could not resolve a platform", request( "launch" ) );
+        assertTrue( "Runner shut down", m_runners.get( 0 ).m_shutdown );
+        assertEquals( "Status", "OK []", request( "status" ) );
+    }
+
+    // test that invalid requests are reported
+    @Test
+    public void invalidRequests()
+        throws IOException
+    {
+        assertTrue( "Unknown launch", request( "stop", "7" ).startsWith( "ERROR" ) );
+        assertTrue( "Invalid id", request( "stop", "x" ).startsWith( "ERROR" ) );
+        assertTrue( "Unknown command", request( "restart" ).startsWith( "ERROR" ) );
+    }
+
+    // test that shutdown stops the launches and the daemon
+    @Test
+    public void shutdown()
+        throws Exception
+    {
+        assertEquals( "Launch", "OK 1", request( "launch" ) );
+        assertEquals( "Shutdown", "OK", request( "shutdown" ) );
+        m_daemon.await();
+        assertTrue( "Runner shut down", m_runners.get( 0 ).m_shutdown );
+        assertFalse( "Token file deleted", m_tokenFile.exists() );
+        try
+        {
+            LaunchDaemon.request( m_port, "status" );
+            fail( "Expected the daemon to not accept requests anymore" );
+        }
+        catch( IOException expected )
+        {
+            // expected
+        }
+    }
+
+    // test that a configuration file is read again once changed, and forgotten once its launches stopped
+    @Test
+    public void configurationReadAgainWhenChanged()
+        throws IOException
+    {
+        final File configFile = File.createTempFile( "runner", ".properties" );
+        try
+        {
+            final String directories = "alias.workingDirectory=dir\n"
+                                       + "default.org.ops4j.pax.runner.platform.workingDirectory=${workingDirectory}\n";
+            write( configFile, directories + "default.workingDirectory=runner1" );
+            final String config = "--config=" + configFile.toURI();
+            assertEquals( "First launch", "OK 1", request( "launch", config ) );
+            write( configFile, directories + "default.workingDirectory=runner2" );
+            configFile.setLastModified( configFile.lastModified() + 10000 );
+            assertEquals( "Launch after change", "OK 2", request( "launch", config ) );
+            assertNotSame( "Configuration read again", m_configurations.get( 0 ), m_configurations.get( 1 ) );
+            assertEquals( "Launch with same configuration", "OK 3", request( "launch", config, "--dir=runner3" ) );
+            assertSame( "Reused configuration", m_configurations.get( 1 ), m_configurations.get( 2 ) );
+            assertEquals( "Stop", "OK", request( "stop", "1" ) );
+            assertEquals( "Stop", "OK", request( "stop", "2" ) );
+            assertEquals( "Stop", "OK", request( "stop", "3" ) );
+            assertEquals( "Launch after stop", "OK 4", request( "launch", config ) );
+            assertNotSame( "Configuration forgotten", m_configurations.get( 2 ), m_configurations.get( 3 ) );
+        }
+        finally
+        {
+            configFile.delete();
+        }
+    }
+
+    // test that a working directory cannot be used by two running launches
+    @Test
+    public void workingDirectoryInUse()
+        throws IOException
+    {
+        assertEquals( "Launch", "OK 1", request( "launch" ) );
+        assertTrue( "Same directory", request( "launch", "--dir=runner" ).startsWith( "ERROR" ) );
+        assertEquals( "Other directory", "OK 2", request( "launch", "--dir=runner2" ) );
+        assertEquals( "Stop", "OK", request( "stop", "1" ) );
+        assertEquals( "Same directory after stop", "OK 3", request( "launch" ) );
+    }
+
+    // test that the handler options cannot differ from the ones of the first launch
+    @Test
+    public void handlerOptionsOfFirstLaunch()
+        throws IOException
+    {
+        assertEquals( "Launch", "OK 1", request( "launch" ) );
+        assertTrue(
+            "Other repositories", request( "launch", "--dir=runner2", "--repositories=file:repo" ).startsWith( "ERROR" )
+        );
+        assertTrue(
+            "Other handlers", request( "launch", "--dir=runner2", "--handlers=handler.mvn" ).startsWith( "ERROR" )
+        );
+        assertEquals( "Same handler options", "OK 2", request( "launch", "--dir=runner2" ) );
+        assertEquals( "Launches", 2, m_runs.size() );
+    }
+
+    // test that real launches share the url handlers and release what they installed once stopped
+    @Test
+    public void realLaunchesShareHandlers()
+        throws Exception
+    {
+        final File workDir = File.createTempFile( "runner", "" );
+        workDir.delete();
+        workDir.mkdirs();
+        // default configuration with a stub platform, so nothing is downloaded
+        final Properties properties = new Properties();
+        final InputStream in = getClass().getResourceAsStream( "/META-INF/runner.properties" );
+        properties.load( in );
+        in.close();
+        properties.setProperty( "default.platform", "platform.stub" );
+        properties.setProperty( "default.platform.stub.version", "TEST" );
+        properties.setProperty( "platform.stub.TEST", StubPlatformActivator.class.getName() );
+        final File configFile = new File( workDir, "runner.properties" );
+        final OutputStream out = new FileOutputStream( configFile );
+        properties.store( out, null );
+        out.close();
+        final LaunchDaemon daemon = new LaunchDaemon( File.createTempFile( "real", ".token" ) )
+        {
+            @Override
+            StoppableJavaRunner createJavaRunner()
+            {
+                return new StubRunner();
+            }
+        };
+        daemon.start( 0 );
+        try
+        {
+            final String config = "--config=" + configFile.toURI();
+            final int factories = countFactories();
+            final int first = daemon.launch( config, "--dir=" + new File( workDir, "runner0" ) );
+            final int sharedFactories = countFactories();
+            assertTrue( "Handlers installed", sharedFactories <= factories + 1 );
+            for( int i = 1; i <= 5; i++ )
+            {
+                final int id = daemon.launch( config, "--dir=" + new File( workDir, "runner" + i ) );
+                assertTrue( "Stopped", daemon.stop( id ) );
+                assertEquals( "Factories after launch " + i, sharedFactories, countFactories() );
+            }
+            assertEquals( "Platforms started", 6, StubPlatformActivator.STARTED.get() );
+            assertEquals( "Platforms stopped", 5, StubPlatformActivator.STOPPED.get() );
+            assertTrue( "Stopped", daemon.stop( first ) );
+            assertEquals( "Platforms stopped", 6, StubPlatformActivator.STOPPED.get() );
+        }
+        finally
+        {
+            daemon.stop();
+            FileUtils.delete( workDir );
+        }
+    }
+
+    // test that requests without the token are refused
+    @Test
+    public void invalidToken()
+        throws IOException
+    {
+        final File tokenFile = File.createTempFile( "other", ".token" );
+        try
+        {
+            write( tokenFile, "guess" );
+            assertEquals( "Refused", "ERROR Invalid token", LaunchDaemon.request( tokenFile, m_port, "launch" ) );
+            assertTrue( "Nothing launched", m_runs.isEmpty() );
+            assertEquals( "Status", "OK []", request( "status" ) );
+        }
+        finally
+        {
+            tokenFile.delete();
+        }
+    }
+
+    private static int countFactories()
+    {
+        final URLStreamHandlerFactory factory = URLUtils.getURLStreamHandlerFactory();
+        if( factory instanceof CompositeURLStreamHandlerFactory )
+        {
+            return ( (CompositeURLStreamHandlerFactory) factory ).getFactories().size();
+        }
+        return factory == null ? 0 : 1;
+    }
+
+    private String request( final String command, final String... args )
+        throws IOException
+    {
+        return LaunchDaemon.request( m_tokenFile, m_port, command, args );
+    }
+
+    private static void write( final File file, final String content )
+        throws IOException
+    {
+        final FileWriter writer = new FileWriter( file );
+        writer.write( content );
+        writer.close();
+    }
+
+    private static class StubRunner
+        implements StoppableJavaRunner
+    {
+
+        volatile boolean m_shutdown;
+
+        public void exec( final String[] vmOptions, final String[] classpath, final String mainClass,
+                          final String[] programOptions, final String javaHome, final File workingDir )
+            throws PlatformException
+        {
+            // not used
+        }
+
+        public void exec( final String[] vmOptions, final String[] classpath, final String mainClass,
+                          final String[] programOptions, final String javaHome, final File workingDir,
+                          final String[] envOptions )
+            throws PlatformException
+        {
+            // not used
+        }
+
+        public void shutdown()
+        {
+            m_shutdown = true;
+        }
+
+    }
+
+    public static class StubPlatformActivator
+        implements BundleActivator
+    {
+
+        static final AtomicInteger STARTED = new AtomicInteger();
+        static final AtomicInteger STOPPED = new AtomicInteger();
+
+        private ServiceRegistration m_registration;
+
+        public void start( final BundleContext bundleContext )
+        {
+            final Hashtable<String, Object> properties = new Hashtable<String, Object>();
+            properties.put( "version", "TEST" );
+            m_registration = bundleContext.registerService(
+                Platform.class.getName(),
+                new Platform()
+                {
+                    public void start( final List<SystemFileReference> systemFiles,
+                                       final List<BundleReference> bundles,
+                                       final Properties platformProperties,
+                                       final Dictionary config,
+                                       final JavaRunner runner )
+                    {
+                        STARTED.incrementAndGet();
+                    }
+                },
+                properties
+            );
+        }
+
+        public void stop( final BundleContext bundleContext )
+        {
+            m_registration.unregister();
+            STOPPED.incrementAndGet();
+        }
+
+    }
+
+}
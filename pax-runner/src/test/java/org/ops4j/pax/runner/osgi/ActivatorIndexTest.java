@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.osgi;
+
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.osgi.framework.BundleActivator;
+
+public class ActivatorIndexTest
+{
+
+    // every activator referenced by runner.properties must be indexed and every indexed activator must be referenced
+    @Test
+    public void indexMatchesConfiguration()
+        throws Exception
+    {
+        final Properties properties = new Properties();
+        final InputStream in = getClass().getResourceAsStream( "/META-INF/runner.properties" );
+        try
+        {
+            properties.load( in );
+        }
+        finally
+        {
+            in.close();
+        }
+        final Set<String> referenced = new HashSet<String>();
+        for( Object key : properties.keySet() )
+        {
+            final String value = properties.getProperty( (String) key ).trim();
+            if( value.endsWith( ".Activator" ) )
+            {
+                assertTrue(
+                    "Activator [" + value + "] of [" + key + "] is not indexed",
+                    ActivatorIndex.getActivatorClasses().contains( value )
+                );
+                referenced.add( value );
+            }
+        }
+        for( String activatorClazz : ActivatorIndex.getActivatorClasses() )
+        {
+            assertTrue( "Activator [" + activatorClazz + "] is not referenced", referenced.contains( activatorClazz ) );
+            assertEquals(
+                "Activator class", activatorClazz,
+                ActivatorIndex.createActivator( activatorClazz ).getClass().getName()
+            );
+        }
+    }
+
+    @Test
+    public void notIndexedActivator()
+        throws Exception
+    {
+        final BundleActivator activator = ActivatorIndex.createActivator( TestActivator.class.getName() );
+        assertTrue( "Activator type", activator instanceof TestActivator );
+    }
+
+    @Test( expected = ClassNotFoundException.class )
+    public void unknownActivator()
+        throws Exception
+    {
+        ActivatorIndex.createActivator( "org.example.internal.Activator" );
+    }
+
+    public static class TestActivator
+        implements BundleActivator
+    {
+
+        public void start( final org.osgi.framework.BundleContext bundleContext )
+        {
+            // nothing to start
+        }
+
+        public void stop( final org.osgi.framework.BundleContext bundleContext )
+        {
+            // nothing to stop
+        }
+
+    }
+
+}
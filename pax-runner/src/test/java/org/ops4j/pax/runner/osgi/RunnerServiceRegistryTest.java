@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.runner.osgi;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+public class RunnerServiceRegistryTest
+{
+
+    @Test
+    public void registerAndLookup()
+        throws Exception
+    {
+        final RunnerServiceRegistry registry = new RunnerServiceRegistry();
+        final Hashtable<String, Object> properties = new Hashtable<String, Object>();
+        properties.put( "protocol", "mvn" );
+        registry.registerService( new UnsupportedBundle(), new String[]{ "service.A" }, "a", properties );
+        registry.registerService( new UnsupportedBundle(), new String[]{ "service.B" }, "b", null );
+
+        final List<ServiceReference> references = registry.getServiceReferences(
+            "service.A", registry.getFilter( "(Protocol=mvn)" )
+        );
+        assertEquals( "References", 1, references.size() );
+        assertEquals( "Service", "a", registry.getService( null, references.get( 0 ) ) );
+        assertEquals( "Property", "mvn", references.get( 0 ).getProperty( "PROTOCOL" ) );
+        assertArrayEquals( "Object class", new String[]{ "service.A" },
+                           (String[]) references.get( 0 ).getProperty( "objectClass" )
+        );
+        assertEquals( "All references", 2, registry.getServiceReferences( null, null ).size() );
+        assertEquals(
+            "Filtered references", 1,
+            registry.getServiceReferences( null, registry.getFilter( "(objectClass=service.B)" ) ).size()
+        );
+    }
+
+    // references should compare as by ServiceReference contract: higher ranking, then lower service id is greater
+    @Test
+    public void compareReferences()
+        throws Exception
+    {
+        final RunnerServiceRegistry registry = new RunnerServiceRegistry();
+        final Hashtable<String, Object> ranked = new Hashtable<String, Object>();
+        ranked.put( Constants.SERVICE_RANKING, 10 );
+        final ServiceReference first = registry.registerService(
+            new UnsupportedBundle(), new String[]{ "service.A" }, "first", null
+        ).getReference();
+        final ServiceReference second = registry.registerService(
+            new UnsupportedBundle(), new String[]{ "service.A" }, "second", null
+        ).getReference();
+        final ServiceReference best = registry.registerService(
+            new UnsupportedBundle(), new String[]{ "service.A" }, "best", ranked
+        ).getReference();
+        assertTrue( "Higher ranking is greater", ( (Comparable) best ).compareTo( first ) > 0 );
+        assertTrue( "Lower ranking is smaller", ( (Comparable) first ).compareTo( best ) < 0 );
+        assertTrue( "Lower service id is greater", ( (Comparable) first ).compareTo( second ) > 0 );
+    }
+
+    @Test
+    public void filterIsCached()
+        throws Exception
+    {
+        final RunnerServiceRegistry registry = new RunnerServiceRegistry();
+        assertSame( "Filter", registry.getFilter( "(a=b)" ), registry.getFilter( "(a=b)" ) );
+    }
+
+    // listeners should be notified synchronously, only for services matching their filter
+    @Test
+    public void serviceEvents()
+        throws Exception
+    {
+        final RunnerServiceRegistry registry = new RunnerServiceRegistry();
+        final List<Integer> events = new ArrayList<Integer>();
+        final ServiceListener listener = new ServiceListener()
+        {
+            public void serviceChanged( final ServiceEvent event )
+            {
+                events.add( event.getType() );
+            }
+        };
+        registry.addServiceListener( listener, registry.getFilter( "(objectClass=service.A)" ) );
+        final ServiceRegistration registration =
+            registry.registerService( new UnsupportedBundle(), new String[]{ "service.A" }, "a", null );
+        registry.registerService( new UnsupportedBundle(), new String[]{ "service.B" }, "b", null );
+        registration.setProperties( new Hashtable() );
+        registration.unregister();
+        registry.removeServiceListener( listener );
+        registry.registerService( new UnsupportedBundle(), new String[]{ "service.A" }, "a", null );
+
+        assertEquals( "Events", 3, events.size() );
+        assertEquals( "Registered", ServiceEvent.REGISTERED, (int) events.get( 0 ) );
+        assertEquals( "Modified", ServiceEvent.MODIFIED, (int) events.get( 1 ) );
+        assertEquals( "Unregistering", ServiceEvent.UNREGISTERING, (int) events.get( 2 ) );
+        assertNull( "Unregistered service", registry.getService( null, registration.getReference() ) );
+        assertEquals( "References", 1, registry.getServiceReferences( "service.A", null ).size() );
+    }
+
+}